@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.benchmarks.simulation;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParametersDelegate;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * End-to-end load test: generates synthetic data set, runs {@code align}, {@code assemble} and {@code exportClones}
+ * in separate JVMs (as in production) and prints wall-clock time of each stage together with recall of simulated
+ * clones:
+ * <pre>
+ * java -cp benchmarks.jar com.milaboratory.mixcr.benchmarks.simulation.MacroBenchmark -n 10000000 -w work \
+ *      --jvm-args -Xmx16g --mixcr-args "-t 32"
+ * </pre>
+ */
+public final class MacroBenchmark {
+    public static final class MacroBenchmarkParameters {
+        @ParametersDelegate
+        public Simulate.SimulationParameters simulation = new Simulate.SimulationParameters();
+
+        @Parameter(names = {"-w", "--work-dir"}, description = "Working directory")
+        public String workDir = "macrobenchmark";
+
+        @Parameter(names = {"--single"}, description = "Generate single-end reads")
+        public boolean single = false;
+
+        @Parameter(names = {"--reuse"}, description = "Reuse previously generated reads from the working directory")
+        public boolean reuse = false;
+
+        @Parameter(names = {"--jvm-args"}, description = "Arguments for MiXCR JVM, separated by spaces")
+        public String jvmArgs = "";
+
+        @Parameter(names = {"--mixcr-args"}, description = "Additional arguments for align and assemble")
+        public String mixcrArgs = "";
+
+        @Parameter(names = {"--min-reads"}, description = "Minimal number of reads of simulated clone to count in recall")
+        public long minReads = 10;
+    }
+
+    private MacroBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        MacroBenchmarkParameters p = new MacroBenchmarkParameters();
+        new JCommander(p, args);
+
+        File dir = new File(p.workDir);
+        dir.mkdirs();
+        String r1 = new File(dir, "R1.fastq.gz").getPath(), r2 = new File(dir, "R2.fastq.gz").getPath(),
+                truth = new File(dir, "truth.tsv").getPath(), vdjca = new File(dir, "alignments.vdjca").getPath(),
+                clns = new File(dir, "clones.clns").getPath(), clones = new File(dir, "clones.txt").getPath(),
+                report = new File(dir, "report.txt").getPath();
+
+        Map<String, Long> timings = new LinkedHashMap<>();
+        if (!p.reuse || !new File(truth).exists()) {
+            p.simulation.files = p.single ? Arrays.asList(r1, truth) : Arrays.asList(r1, r2, truth);
+            long start = System.nanoTime();
+            Simulate.run(p.simulation);
+            timings.put("simulate", System.nanoTime() - start);
+        }
+
+        List<String> align = new ArrayList<>(Arrays.asList("align", "-f", "-r", report,
+                "-s", p.simulation.species, "-l", p.simulation.locus));
+        align.addAll(split(p.mixcrArgs));
+        align.add(r1);
+        if (!p.single)
+            align.add(r2);
+        align.add(vdjca);
+        timings.put("align", runMiXCR(p, align));
+
+        List<String> assemble = new ArrayList<>(Arrays.asList("assemble", "-f", "-r", report));
+        assemble.addAll(split(p.mixcrArgs));
+        assemble.addAll(Arrays.asList(vdjca, clns));
+        timings.put("assemble", runMiXCR(p, assemble));
+
+        timings.put("exportClones", runMiXCR(p, Arrays.asList("exportClones", "-f", "-count", "-nFeature", "CDR3",
+                clns, clones)));
+
+        System.out.println();
+        System.out.printf("%-14s%12s%16s%n", "Stage", "Time, s", "Reads/s");
+        for (Map.Entry<String, Long> e : timings.entrySet()) {
+            double seconds = e.getValue() / 1E9;
+            System.out.printf("%-14s%12.2f%16.0f%n", e.getKey(), seconds, p.simulation.reads / seconds);
+        }
+        System.out.printf("Recall of clones with >= %d reads: %.4f%n", p.minReads, recall(truth, clones, p.minReads));
+    }
+
+    static List<String> split(String args) {
+        List<String> result = new ArrayList<>();
+        for (String arg : args.trim().split("\\s+"))
+            if (!arg.isEmpty())
+                result.add(arg);
+        return result;
+    }
+
+    static long runMiXCR(MacroBenchmarkParameters p, List<String> args) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        command.addAll(split(p.jvmArgs));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("com.milaboratory.mixcr.cli.Main");
+        command.addAll(args);
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).inheritIO().start();
+        int exitCode = process.waitFor();
+        long time = System.nanoTime() - start;
+        if (exitCode != 0)
+            throw new RuntimeException("MiXCR " + args.get(0) + " failed with exit code " + exitCode);
+        return time;
+    }
+
+    /**
+     * Fraction of simulated clones with at least {@code minReads} reads whose CDR3 was found among exported clones.
+     */
+    static double recall(String truth, String clones, long minReads) throws IOException {
+        Set<String> found = new HashSet<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(clones))) {
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null)
+                found.add(line.split("\t")[1]);
+        }
+        int total = 0, recalled = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(truth))) {
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (Long.parseLong(fields[1]) < minReads)
+                    continue;
+                ++total;
+                if (found.contains(fields[6]))
+                    ++recalled;
+            }
+        }
+        return total == 0 ? Double.NaN : 1.0 * recalled / total;
+    }
+}
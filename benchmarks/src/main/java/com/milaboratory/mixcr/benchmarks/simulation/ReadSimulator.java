@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.benchmarks.simulation;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Generates single-end or paired-end fastq reads from simulated clones. Quality decays along the read, sequencing
+ * errors are introduced with probabilities given by qualities, a fraction of reads are duplicates of the previous
+ * molecule (with independent errors). Read description contains the id of the source clone.
+ */
+public final class ReadSimulator {
+    final List<SimulatedClone> clones;
+    final double[] cumulativeWeights;
+    final Random random;
+    int readLength = 150;
+    int qualityStart = 38, qualityEnd = 25;
+    double duplicateRate = 0.0;
+
+    public ReadSimulator(List<SimulatedClone> clones, long seed) {
+        this.clones = clones;
+        this.random = new Random(seed);
+        this.cumulativeWeights = new double[clones.size()];
+        double sum = 0;
+        for (int i = 0; i < clones.size(); i++)
+            cumulativeWeights[i] = sum += clones.get(i).weight;
+    }
+
+    public ReadSimulator setReadLength(int readLength) {
+        this.readLength = readLength;
+        return this;
+    }
+
+    public ReadSimulator setQuality(int qualityStart, int qualityEnd) {
+        this.qualityStart = qualityStart;
+        this.qualityEnd = qualityEnd;
+        return this;
+    }
+
+    public ReadSimulator setDuplicateRate(double duplicateRate) {
+        this.duplicateRate = duplicateRate;
+        return this;
+    }
+
+    /**
+     * Writes {@code numberOfReads} reads (pairs) to {@code r1} (and {@code r2}, if not null). Files with names ending
+     * with ".gz" are compressed.
+     */
+    public void write(long numberOfReads, String r1, String r2) throws IOException {
+        try (Writer w1 = open(r1); Writer w2 = r2 == null ? null : open(r2)) {
+            SimulatedClone clone = null;
+            int start = 0;
+            char[] quality = new char[readLength];
+            for (long i = 0; i < numberOfReads; i++) {
+                if (clone == null || random.nextDouble() >= duplicateRate) {
+                    clone = nextClone();
+                    start = r2 == null ? singleEndStart(clone) : pairedEndStart(clone);
+                }
+                ++clone.reads;
+                String name = "sim_" + i + " clone=" + clone.id;
+                String seq = clone.sequence;
+                int end = Math.min(seq.length(), start + readLength);
+                writeRecord(w1, name, seq.substring(start, end), quality);
+                if (w2 != null)
+                    writeRecord(w2, name, reverseComplement(seq.substring(Math.max(start, seq.length() - readLength))),
+                            quality);
+            }
+        }
+    }
+
+    /**
+     * Writes clones with number of generated reads as tab-separated table.
+     */
+    public void writeTruth(String fileName) throws IOException {
+        try (PrintStream ps = new PrintStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+            ps.println(SimulatedClone.TRUTH_HEADER);
+            for (SimulatedClone clone : clones)
+                ps.println(clone.toTruthLine());
+        }
+    }
+
+    SimulatedClone nextClone() {
+        double r = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+        int i = Arrays.binarySearch(cumulativeWeights, r);
+        if (i < 0)
+            i = -i - 1;
+        return clones.get(Math.min(i, clones.size() - 1));
+    }
+
+    /**
+     * Single-end read covers CDR3 if possible
+     */
+    int singleEndStart(SimulatedClone clone) {
+        int from = Math.max(0, clone.cdr3End - readLength),
+                to = Math.max(from, Math.min(clone.cdr3Begin, clone.sequence.length() - readLength));
+        return from + random.nextInt(to - from + 1);
+    }
+
+    /**
+     * R1 starts in V region, R2 starts at the end of J region
+     */
+    int pairedEndStart(SimulatedClone clone) {
+        return random.nextInt(Math.max(1, clone.cdr3Begin - readLength / 2));
+    }
+
+    void writeRecord(Writer writer, String name, String sequence, char[] quality) throws IOException {
+        char[] seq = sequence.toCharArray();
+        for (int i = 0; i < seq.length; i++) {
+            double q = qualityStart - (qualityStart - qualityEnd) * Math.pow(1.0 * i / readLength, 2)
+                    + random.nextGaussian() * 2;
+            int qi = Math.max(2, Math.min(41, (int) Math.round(q)));
+            if (random.nextDouble() < Math.pow(10, -qi / 10.0))
+                seq[i] = RepertoireSimulator.substitute(seq[i], random);
+            quality[i] = (char) (qi + 33);
+        }
+        writer.write('@');
+        writer.write(name);
+        writer.write('\n');
+        writer.write(seq);
+        writer.write("\n+\n");
+        writer.write(quality, 0, seq.length);
+        writer.write('\n');
+    }
+
+    static String reverseComplement(String sequence) {
+        char[] result = new char[sequence.length()];
+        for (int i = 0; i < result.length; i++) {
+            char c = sequence.charAt(sequence.length() - 1 - i);
+            switch (c) {
+                case 'A':
+                    c = 'T';
+                    break;
+                case 'T':
+                    c = 'A';
+                    break;
+                case 'G':
+                    c = 'C';
+                    break;
+                case 'C':
+                    c = 'G';
+                    break;
+            }
+            result[i] = c;
+        }
+        return new String(result);
+    }
+
+    static Writer open(String fileName) throws IOException {
+        OutputStream os = new FileOutputStream(fileName);
+        if (fileName.endsWith(".gz"))
+            os = new GZIPOutputStream(os, 1 << 16);
+        return new BufferedWriter(new OutputStreamWriter(os, "US-ASCII"), 1 << 16);
+    }
+}
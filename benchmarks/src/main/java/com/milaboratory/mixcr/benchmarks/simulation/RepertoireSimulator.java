@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.benchmarks.simulation;
+
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.mixcr.reference.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic repertoire from reference alleles: V/D/J trimming, N-insertions, somatic hypermutations and
+ * clone size distribution are modeled with a few simple parameters.
+ */
+public final class RepertoireSimulator {
+    static final char[] NUCLEOTIDES = {'A', 'C', 'G', 'T'};
+
+    /**
+     * Clone size distributions
+     */
+    public enum CloneSizes {
+        /**
+         * weight ~ 1 / rank^exponent
+         */
+        PowerLaw,
+        /**
+         * All clones have equal weights
+         */
+        Uniform,
+        /**
+         * First clone takes {@code spikeFraction} of reads, others are uniform
+         */
+        Spike
+    }
+
+    final List<Allele> vAlleles = new ArrayList<>(), dAlleles = new ArrayList<>(), jAlleles = new ArrayList<>();
+    final Random random;
+    CloneSizes cloneSizes = CloneSizes.PowerLaw;
+    double powerLawExponent = 1.5, spikeFraction = 0.3, shmRate = 0.0;
+    double meanDeletion = 3.0, meanInsertion = 4.0;
+
+    public RepertoireSimulator(LocusContainer locus, boolean functionalOnly, long seed) {
+        this.random = new Random(seed);
+        for (Allele allele : locus.getAllAlleles()) {
+            if (functionalOnly && !allele.isFunctional())
+                continue;
+            switch (allele.getGeneType()) {
+                case Variable:
+                    if (allele.getFeature(GeneFeature.VRegion) != null &&
+                            allele.getPartitioning().getRelativePosition(GeneFeature.VRegion, ReferencePoint.CDR3Begin) >= 0)
+                        vAlleles.add(allele);
+                    break;
+                case Diversity:
+                    if (allele.getFeature(GeneFeature.DRegion) != null)
+                        dAlleles.add(allele);
+                    break;
+                case Joining:
+                    if (allele.getFeature(GeneFeature.JRegion) != null &&
+                            allele.getPartitioning().getRelativePosition(GeneFeature.JRegion, ReferencePoint.CDR3End) >= 0)
+                        jAlleles.add(allele);
+                    break;
+            }
+        }
+        if (vAlleles.isEmpty() || jAlleles.isEmpty())
+            throw new IllegalArgumentException("No V or J alleles with required reference points in " + locus.getLocus());
+    }
+
+    public RepertoireSimulator setCloneSizes(CloneSizes cloneSizes) {
+        this.cloneSizes = cloneSizes;
+        return this;
+    }
+
+    public RepertoireSimulator setPowerLawExponent(double powerLawExponent) {
+        this.powerLawExponent = powerLawExponent;
+        return this;
+    }
+
+    public RepertoireSimulator setSpikeFraction(double spikeFraction) {
+        this.spikeFraction = spikeFraction;
+        return this;
+    }
+
+    /**
+     * Sets probability of substitution per nucleotide, applied to V and J germline parts
+     */
+    public RepertoireSimulator setShmRate(double shmRate) {
+        this.shmRate = shmRate;
+        return this;
+    }
+
+    public RepertoireSimulator setMeanDeletion(double meanDeletion) {
+        this.meanDeletion = meanDeletion;
+        return this;
+    }
+
+    public RepertoireSimulator setMeanInsertion(double meanInsertion) {
+        this.meanInsertion = meanInsertion;
+        return this;
+    }
+
+    public List<SimulatedClone> generate(int numberOfClones) {
+        List<SimulatedClone> clones = new ArrayList<>(numberOfClones);
+        for (int i = 0; i < numberOfClones; i++)
+            clones.add(generateClone(i, weight(i, numberOfClones)));
+        return clones;
+    }
+
+    double weight(int rank, int numberOfClones) {
+        switch (cloneSizes) {
+            case PowerLaw:
+                return 1.0 / Math.pow(rank + 1, powerLawExponent);
+            case Spike:
+                if (numberOfClones == 1)
+                    return 1.0;
+                return rank == 0 ? spikeFraction * (numberOfClones - 1) / (1.0 - spikeFraction) : 1.0;
+            default:
+                return 1.0;
+        }
+    }
+
+    SimulatedClone generateClone(int id, double weight) {
+        // Retrying until CDR3 is in frame
+        while (true) {
+            Allele v = vAlleles.get(random.nextInt(vAlleles.size())),
+                    j = jAlleles.get(random.nextInt(jAlleles.size())),
+                    d = dAlleles.isEmpty() ? null : dAlleles.get(random.nextInt(dAlleles.size()));
+
+            String vSeq = mutate(v.getFeature(GeneFeature.VRegion)),
+                    jSeq = mutate(j.getFeature(GeneFeature.JRegion));
+            int vCDR3Begin = v.getPartitioning().getRelativePosition(GeneFeature.VRegion, ReferencePoint.CDR3Begin),
+                    jCDR3End = j.getPartitioning().getRelativePosition(GeneFeature.JRegion, ReferencePoint.CDR3End);
+
+            // Conserved Cys and Phe/Trp codons are never trimmed
+            int vDel = Math.min(geometric(meanDeletion), vSeq.length() - vCDR3Begin - 3),
+                    jDel = Math.min(geometric(meanDeletion), Math.max(0, jCDR3End - 3));
+
+            StringBuilder sequence = new StringBuilder();
+            sequence.append(vSeq, 0, vSeq.length() - Math.max(0, vDel));
+            randomNucleotides(sequence, geometric(meanInsertion));
+            if (d != null) {
+                String dSeq = d.getFeature(GeneFeature.DRegion).toString();
+                int d5 = geometric(meanDeletion), d3 = geometric(meanDeletion);
+                if (d5 + d3 < dSeq.length())
+                    sequence.append(dSeq, d5, dSeq.length() - d3);
+                randomNucleotides(sequence, geometric(meanInsertion));
+            }
+            int cdr3End = sequence.length() + jCDR3End - jDel;
+            sequence.append(jSeq, jDel, jSeq.length());
+
+            if ((cdr3End - vCDR3Begin) % 3 != 0 || cdr3End - vCDR3Begin < 12)
+                continue;
+            return new SimulatedClone(id, v, d, j, sequence.toString(), vCDR3Begin, cdr3End, weight);
+        }
+    }
+
+    String mutate(NucleotideSequence germline) {
+        char[] seq = germline.toString().toCharArray();
+        if (shmRate > 0)
+            for (int i = 0; i < seq.length; i++)
+                if (random.nextDouble() < shmRate)
+                    seq[i] = substitute(seq[i], random);
+        return new String(seq);
+    }
+
+    void randomNucleotides(StringBuilder sb, int length) {
+        for (int i = 0; i < length; i++)
+            sb.append(NUCLEOTIDES[random.nextInt(4)]);
+    }
+
+    /**
+     * Geometric distribution (number of failures before success) with given mean
+     */
+    int geometric(double mean) {
+        if (mean <= 0)
+            return 0;
+        double p = 1.0 / (mean + 1);
+        return (int) (Math.log(1.0 - random.nextDouble()) / Math.log(1.0 - p));
+    }
+
+    static char substitute(char nucleotide, Random random) {
+        char r;
+        do {
+            r = NUCLEOTIDES[random.nextInt(4)];
+        } while (r == nucleotide);
+        return r;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.benchmarks.simulation;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.milaboratory.mixcr.reference.LociLibraryManager;
+import com.milaboratory.mixcr.reference.Locus;
+import com.milaboratory.mixcr.reference.LocusContainer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line entry point of the simulator:
+ * <pre>
+ * java -cp benchmarks.jar com.milaboratory.mixcr.benchmarks.simulation.Simulate -n 1000000 -c 10000 \
+ *      R1.fastq.gz R2.fastq.gz truth.tsv
+ * </pre>
+ */
+public final class Simulate {
+    public static final class SimulationParameters {
+        @Parameter(description = "R1.fastq[.gz] [R2.fastq[.gz]] truth.tsv")
+        public List<String> files = new ArrayList<>();
+
+        @Parameter(names = {"-s", "--species"}, description = "Species")
+        public String species = "hs";
+
+        @Parameter(names = {"-l", "--locus"}, description = "Locus")
+        public String locus = "IGH";
+
+        @Parameter(names = {"-n", "--reads"}, description = "Number of reads (pairs)")
+        public long reads = 1000000;
+
+        @Parameter(names = {"-c", "--clones"}, description = "Number of clones")
+        public int clones = 10000;
+
+        @Parameter(names = {"--clone-sizes"}, description = "Clone size distribution: PowerLaw, Uniform, Spike")
+        public String cloneSizes = "PowerLaw";
+
+        @Parameter(names = {"--power-law-exponent"}, description = "Exponent of power law clone size distribution")
+        public double powerLawExponent = 1.5;
+
+        @Parameter(names = {"--spike-fraction"}, description = "Fraction of reads of the spike clone")
+        public double spikeFraction = 0.3;
+
+        @Parameter(names = {"--shm-rate"}, description = "Somatic hypermutation rate per nucleotide of V and J")
+        public double shmRate = 0.0;
+
+        @Parameter(names = {"--mean-deletion"}, description = "Mean number of nucleotides trimmed from each gene end")
+        public double meanDeletion = 3.0;
+
+        @Parameter(names = {"--mean-insertion"}, description = "Mean length of each N region")
+        public double meanInsertion = 4.0;
+
+        @Parameter(names = {"--read-length"}, description = "Read length")
+        public int readLength = 150;
+
+        @Parameter(names = {"--quality"}, description = "Mean quality at the beginning and at the end of read, e.g. 38:25")
+        public String quality = "38:25";
+
+        @Parameter(names = {"--duplicate-rate"}, description = "Probability for a read to duplicate previous molecule")
+        public double duplicateRate = 0.0;
+
+        @Parameter(names = {"--seed"}, description = "Random seed")
+        public long seed = 0;
+
+        public boolean isPaired() {
+            return files.size() == 3;
+        }
+
+        public void validate() {
+            if (files.size() != 2 && files.size() != 3)
+                throw new ParameterException("Wrong number of files.");
+        }
+    }
+
+    private Simulate() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        SimulationParameters parameters = new SimulationParameters();
+        new JCommander(parameters, args);
+        parameters.validate();
+        run(parameters);
+    }
+
+    /**
+     * Generates repertoire and reads, returns simulated clones with number of generated reads.
+     */
+    public static List<SimulatedClone> run(SimulationParameters p) throws Exception {
+        Locus locus = Locus.fromId(p.locus);
+        if (locus == null)
+            throw new ParameterException("Unknown locus: " + p.locus);
+        LocusContainer container = LociLibraryManager.getDefault().getLibrary("mi").getLocus(p.species, locus);
+        if (container == null)
+            throw new ParameterException("No " + p.locus + " for " + p.species);
+
+        List<SimulatedClone> clones = new RepertoireSimulator(container, true, p.seed)
+                .setCloneSizes(RepertoireSimulator.CloneSizes.valueOf(p.cloneSizes))
+                .setPowerLawExponent(p.powerLawExponent)
+                .setSpikeFraction(p.spikeFraction)
+                .setShmRate(p.shmRate)
+                .setMeanDeletion(p.meanDeletion)
+                .setMeanInsertion(p.meanInsertion)
+                .generate(p.clones);
+
+        String[] quality = p.quality.split(":");
+        ReadSimulator reads = new ReadSimulator(clones, p.seed + 1)
+                .setReadLength(p.readLength)
+                .setQuality(Integer.parseInt(quality[0]), Integer.parseInt(quality[1]))
+                .setDuplicateRate(p.duplicateRate);
+        reads.write(p.reads, p.files.get(0), p.isPaired() ? p.files.get(1) : null);
+        reads.writeTruth(p.files.get(p.files.size() - 1));
+        return clones;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.benchmarks.simulation;
+
+import com.milaboratory.mixcr.reference.Allele;
+import com.milaboratory.mixcr.reference.LocusContainer;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Synthetic clonotype: rearranged sequence from the beginning of FR1 to the end of FR4 with known origin.
+ */
+public final class SimulatedClone {
+    final int id;
+    final Allele v, d, j;
+    final String sequence;
+    final int cdr3Begin, cdr3End;
+    final double weight;
+    long reads;
+
+    SimulatedClone(int id, Allele v, Allele d, Allele j, String sequence, int cdr3Begin, int cdr3End, double weight) {
+        this.id = id;
+        this.v = v;
+        this.d = d;
+        this.j = j;
+        this.sequence = sequence;
+        this.cdr3Begin = cdr3Begin;
+        this.cdr3End = cdr3End;
+        this.weight = weight;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getSequence() {
+        return sequence;
+    }
+
+    public String getCDR3() {
+        return sequence.substring(cdr3Begin, cdr3End);
+    }
+
+    public double getWeight() {
+        return weight;
+    }
+
+    /**
+     * Number of reads generated from this clone.
+     */
+    public long getReads() {
+        return reads;
+    }
+
+    static final String TRUTH_HEADER =
+            "cloneId\treads\tweight\tallV\tallD\tallJ\tnSeqCDR3\tsequence\tcdr3Begin\tcdr3End";
+
+    String toTruthLine() {
+        return id + "\t" + reads + "\t" + weight + "\t" + v.getName() + "\t" + (d == null ? "" : d.getName()) +
+                "\t" + j.getName() + "\t" + getCDR3() + "\t" + sequence + "\t" + cdr3Begin + "\t" + cdr3End;
+    }
+
+    /**
+     * Reads clones written by {@link ReadSimulator#writeTruth(String)}.
+     *
+     * @param fileName truth file
+     * @param locus    locus the clones were generated from
+     */
+    public static List<SimulatedClone> readTruth(String fileName, LocusContainer locus) throws IOException {
+        List<SimulatedClone> clones = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+            String line = reader.readLine();
+            if (!TRUTH_HEADER.equals(line))
+                throw new IOException("Wrong header of truth file " + fileName + ": " + line);
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 10)
+                    throw new IOException("Wrong line in truth file " + fileName + ": " + line);
+                SimulatedClone clone = new SimulatedClone(Integer.parseInt(fields[0]), allele(locus, fields[3]),
+                        fields[4].isEmpty() ? null : allele(locus, fields[4]), allele(locus, fields[5]), fields[7],
+                        Integer.parseInt(fields[8]), Integer.parseInt(fields[9]), Double.parseDouble(fields[2]));
+                clone.reads = Long.parseLong(fields[1]);
+                if (!clone.getCDR3().equals(fields[6]))
+                    throw new IOException("CDR3 doesn't match clone sequence: " + line);
+                clones.add(clone);
+            }
+        }
+        return clones;
+    }
+
+    private static Allele allele(LocusContainer locus, String name) throws IOException {
+        Allele allele = locus.getAllele(name);
+        if (allele == null)
+            throw new IOException("No allele " + name + " in " + locus.getLocus());
+        return allele;
+    }
+}
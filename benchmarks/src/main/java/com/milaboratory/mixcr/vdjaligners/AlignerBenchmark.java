@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.vdjaligners;
+
+import cc.redberry.pipe.CUtils;
+import com.milaboratory.core.alignment.batch.AlignmentHit;
+import com.milaboratory.core.io.sequence.PairedRead;
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.fastq.PairedFastqReader;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.mixcr.basictypes.VDJCAlignments;
+import com.milaboratory.mixcr.basictypes.VDJCHit;
+import com.milaboratory.mixcr.reference.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of aligner hot paths. Each operation processes one read (or one D region / V hit) from the read set,
+ * cycling through the set. Read set is a pair of {@code <readSet>_R1.fastq} and {@code <readSet>_R2.fastq} files, taken
+ * from the file system or, if there are no such files, from {@code reads/} resources (fastq files from test resources of
+ * the main module); it is selected with {@code -p readSet=<path prefix> -p species=<species> -p locus=<locus>}.
+ *
+ * <p>The class is placed into the aligners package to reach package-private {@link SingleDAligner#align0} and
+ * {@link VDJCAlignerPVFirst#calculateVEndScore}.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AlignerBenchmark {
+    @Param({"sample_IGH"})
+    public String readSet;
+
+    @Param({"hs"})
+    public String species;
+
+    @Param({"IGH"})
+    public String locus;
+
+    VDJCAlignerParameters parameters;
+    VDJCAlignerSJFirst sjFirst;
+    VDJCAlignerPVFirst pvFirst;
+    VDJCAlignerWithMerge withMerge;
+    SingleDAligner warmDAligner;
+    List<Allele> dAlleles;
+    Set<Locus> loci;
+
+    List<SingleRead> singleReads = new ArrayList<>();
+    List<PairedRead> pairedReads = new ArrayList<>(),
+            overlappingReads = new ArrayList<>(),
+            nonOverlappingReads = new ArrayList<>();
+    List<DRegion> dRegions = new ArrayList<>();
+    List<AlignmentHit<NucleotideSequence, Allele>> vHits = new ArrayList<>();
+
+    int singleIndex, pairedIndex, overlappingIndex, nonOverlappingIndex, dIndex, vHitIndex;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        int species = Species.fromString(this.species);
+        Locus locus = Locus.valueOf(this.locus);
+        loci = EnumSet.of(locus);
+
+        try (PairedFastqReader reader = new PairedFastqReader(resource("R1"), resource("R2"), true)) {
+            for (PairedRead read : CUtils.it(reader)) {
+                pairedReads.add(read);
+                singleReads.add(read.getR1());
+            }
+        }
+
+        parameters = VDJCParametersPresets.getByName("default");
+        LocusContainer lc = LociLibraryManager.getDefault().getLibrary("mi").getLocus(species, locus);
+        sjFirst = addAlleles(new VDJCAlignerSJFirst(parameters), lc);
+        pvFirst = addAlleles(new VDJCAlignerPVFirst(parameters), lc);
+        withMerge = addAlleles(new VDJCAlignerWithMerge(parameters), lc);
+        dAlleles = sjFirst.getDAllelesToAlign();
+
+        // Splitting reads by merge outcome, to measure merge and fallback paths separately
+        final Set<Long> overlapped = new HashSet<>();
+        withMerge.setEventsListener(new VDJCAlignerEventListener() {
+            @Override
+            public void onFailedAlignment(SequenceRead read, VDJCAlignmentFailCause cause) {
+            }
+
+            @Override
+            public void onSuccessfulAlignment(SequenceRead read, VDJCAlignments alignment) {
+            }
+
+            @Override
+            public void onSuccessfulOverlap(SequenceRead read, VDJCAlignments alignments) {
+                overlapped.add(read.getId());
+            }
+        });
+        for (PairedRead read : pairedReads)
+            withMerge.process(read);
+        withMerge.setEventsListener(null);
+        for (PairedRead read : pairedReads)
+            (overlapped.contains(read.getId()) ? overlappingReads : nonOverlappingReads).add(read);
+
+        // D regions (between V and J alignments) and V hits
+        pvFirst.ensureInitialized();
+        for (SingleRead read : singleReads) {
+            VDJCAlignmentResult<SingleRead> result = sjFirst.process(read);
+            if (result.alignment != null) {
+                VDJCHit vHit = result.alignment.getBestHit(GeneType.Variable),
+                        jHit = result.alignment.getBestHit(GeneType.Joining);
+                if (vHit != null && jHit != null && vHit.getAlignment(0) != null && jHit.getAlignment(0) != null) {
+                    int from = vHit.getAlignment(0).getSequence2Range().getUpper(),
+                            to = jHit.getAlignment(0).getSequence2Range().getLower();
+                    if (from <= to)
+                        dRegions.add(new DRegion(result.alignment.getTarget(0).getSequence(), from, to));
+                }
+            }
+            vHits.addAll(pvFirst.vAligner.align(read.getData().getSequence()).getHits());
+        }
+
+        if (dAlleles.isEmpty())
+            dRegions.clear();
+        else {
+            warmDAligner = newDAligner();
+            for (DRegion region : dRegions)
+                warmDAligner.align0(region.sequence, loci, region.from, region.to);
+        }
+    }
+
+    SingleDAligner newDAligner() {
+        return new SingleDAligner(parameters.getDAlignerParameters(), dAlleles);
+    }
+
+    private InputStream resource(String read) throws IOException {
+        File file = new File(readSet + "_" + read + ".fastq");
+        if (file.isFile())
+            return new FileInputStream(file);
+        String name = "reads/" + readSet + "_" + read + ".fastq";
+        InputStream stream = AlignerBenchmark.class.getClassLoader().getResourceAsStream(name);
+        if (stream == null)
+            throw new IllegalArgumentException("No read set " + readSet + " (neither " + file + " nor resource " +
+                    name + " exists)");
+        return stream;
+    }
+
+    /**
+     * Called when benchmark cycles to the beginning of the set, to fail with clear message if the set is empty.
+     */
+    private void checkNotEmpty(List<?> set, String description) {
+        if (set.isEmpty())
+            throw new IllegalStateException("Read set " + readSet + " has no " + description + ".");
+    }
+
+    private static <A extends VDJCAligner> A addAlleles(A aligner, LocusContainer lc) {
+        for (Allele allele : lc.getAllAlleles())
+            if (aligner.getParameters().containsRequiredFeature(allele))
+                aligner.addAllele(allele);
+        return aligner;
+    }
+
+    @Benchmark
+    public Object sjFirst() {
+        if (singleIndex == singleReads.size()) {
+            checkNotEmpty(singleReads, "reads");
+            singleIndex = 0;
+        }
+        return sjFirst.process(singleReads.get(singleIndex++));
+    }
+
+    @Benchmark
+    public Object pvFirst() {
+        if (pairedIndex == pairedReads.size()) {
+            checkNotEmpty(pairedReads, "reads");
+            pairedIndex = 0;
+        }
+        return pvFirst.process(pairedReads.get(pairedIndex++));
+    }
+
+    @Benchmark
+    public Object withMergeOverlapping() {
+        if (overlappingIndex == overlappingReads.size()) {
+            checkNotEmpty(overlappingReads, "overlapping read pairs");
+            overlappingIndex = 0;
+        }
+        return withMerge.process(overlappingReads.get(overlappingIndex++));
+    }
+
+    @Benchmark
+    public Object withMergeFallback() {
+        if (nonOverlappingIndex == nonOverlappingReads.size()) {
+            checkNotEmpty(nonOverlappingReads, "non-overlapping read pairs");
+            nonOverlappingIndex = 0;
+        }
+        return withMerge.process(nonOverlappingReads.get(nonOverlappingIndex++));
+    }
+
+    @Benchmark
+    public Object dAlignerWarm() {
+        if (dIndex == dRegions.size()) {
+            checkNotEmpty(dRegions, "D regions (or no D alleles for the locus)");
+            dIndex = 0;
+        }
+        DRegion region = dRegions.get(dIndex++);
+        return warmDAligner.align0(region.sequence, loci, region.from, region.to);
+    }
+
+    /**
+     * Aligns all D regions of the read set with an empty results cache; one operation is a pass over the whole set.
+     */
+    @Benchmark
+    public Object dAlignerCold(ColdDAligner cold) {
+        checkNotEmpty(dRegions, "D regions (or no D alleles for the locus)");
+        Object result = null;
+        for (DRegion region : dRegions)
+            result = cold.aligner.align0(region.sequence, loci, region.from, region.to);
+        return result;
+    }
+
+    @Benchmark
+    public float calculateVEndScore() {
+        if (vHitIndex == vHits.size()) {
+            checkNotEmpty(vHits, "V hits");
+            vHitIndex = 0;
+        }
+        return pvFirst.calculateVEndScore(vHits.get(vHitIndex++));
+    }
+
+    /**
+     * Fresh D aligner (with empty cache) for each invocation.
+     */
+    @State(Scope.Thread)
+    public static class ColdDAligner {
+        SingleDAligner aligner;
+
+        @Setup(Level.Invocation)
+        public void setup(AlignerBenchmark benchmark) {
+            aligner = benchmark.newDAligner();
+        }
+    }
+
+    static final class DRegion {
+        final NucleotideSequence sequence;
+        final int from, to;
+
+        DRegion(NucleotideSequence sequence, int from, int to) {
+            this.sequence = sequence;
+            this.from = from;
+            this.to = to;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.benchmarks.simulation;
+
+import com.milaboratory.mixcr.reference.LociLibraryManager;
+import com.milaboratory.mixcr.reference.Locus;
+import com.milaboratory.mixcr.reference.LocusContainer;
+import com.milaboratory.mixcr.reference.Species;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+public class SimulationTest {
+    static LocusContainer locus() {
+        return LociLibraryManager.getDefault().getLibrary("mi").getLocus(Species.HomoSapiens, Locus.IGH);
+    }
+
+    static List<SimulatedClone> generate(long seed) {
+        return new RepertoireSimulator(locus(), true, seed)
+                .setShmRate(0.01)
+                .generate(50);
+    }
+
+    @Test
+    public void testRepertoireDeterministic() throws Exception {
+        List<SimulatedClone> a = generate(42), b = generate(42), c = generate(43);
+        Assert.assertEquals(a.size(), b.size());
+        for (int i = 0; i < a.size(); i++) {
+            assertSameClone(a.get(i), b.get(i));
+            SimulatedClone clone = a.get(i);
+            // CDR3 is in frame
+            Assert.assertEquals(0, clone.getCDR3().length() % 3);
+        }
+        boolean different = false;
+        for (int i = 0; i < a.size(); i++)
+            different |= !a.get(i).getSequence().equals(c.get(i).getSequence());
+        Assert.assertTrue(different);
+    }
+
+    @Test
+    public void testReadsDeterministic() throws Exception {
+        File dir = Files.createTempDirectory("simulation").toFile();
+        try {
+            byte[][] r1 = new byte[3][], r2 = new byte[3][];
+            long[] seeds = {7, 7, 8};
+            for (int i = 0; i < 3; i++) {
+                List<SimulatedClone> clones = generate(42);
+                File f1 = new File(dir, i + "_R1.fastq"), f2 = new File(dir, i + "_R2.fastq");
+                new ReadSimulator(clones, seeds[i])
+                        .setDuplicateRate(0.1)
+                        .write(1000, f1.getPath(), f2.getPath());
+                r1[i] = Files.readAllBytes(f1.toPath());
+                r2[i] = Files.readAllBytes(f2.toPath());
+
+                long reads = 0;
+                for (SimulatedClone clone : clones)
+                    reads += clone.getReads();
+                Assert.assertEquals(1000, reads);
+            }
+            Assert.assertArrayEquals(r1[0], r1[1]);
+            Assert.assertArrayEquals(r2[0], r2[1]);
+            Assert.assertFalse(Arrays.equals(r1[0], r1[2]));
+        } finally {
+            for (File file : dir.listFiles())
+                file.delete();
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testTruthRoundTrip() throws Exception {
+        List<SimulatedClone> clones = generate(42);
+        File reads = File.createTempFile("reads", ".fastq"), truth = File.createTempFile("truth", ".tsv");
+        try {
+            ReadSimulator simulator = new ReadSimulator(clones, 1);
+            simulator.write(500, reads.getPath(), null);
+            simulator.writeTruth(truth.getPath());
+
+            List<SimulatedClone> restored = SimulatedClone.readTruth(truth.getPath(), locus());
+            Assert.assertEquals(clones.size(), restored.size());
+            for (int i = 0; i < clones.size(); i++) {
+                assertSameClone(clones.get(i), restored.get(i));
+                Assert.assertEquals(clones.get(i).getReads(), restored.get(i).getReads());
+            }
+        } finally {
+            reads.delete();
+            truth.delete();
+        }
+    }
+
+    static void assertSameClone(SimulatedClone expected, SimulatedClone actual) {
+        Assert.assertEquals(expected.getId(), actual.getId());
+        Assert.assertEquals(expected.getSequence(), actual.getSequence());
+        Assert.assertEquals(expected.getCDR3(), actual.getCDR3());
+        Assert.assertEquals(expected.getWeight(), actual.getWeight(), 0.0);
+        Assert.assertSame(expected.v, actual.v);
+        Assert.assertSame(expected.d, actual.d);
+        Assert.assertSame(expected.j, actual.j);
+    }
+}
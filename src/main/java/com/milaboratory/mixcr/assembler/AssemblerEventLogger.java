@@ -31,6 +31,8 @@ package com.milaboratory.mixcr.assembler;
 import cc.redberry.pipe.CUtils;
 import cc.redberry.pipe.OutputPortCloseable;
 import com.milaboratory.core.io.util.IOUtil;
+import com.milaboratory.mixcr.util.MemoryBudget;
+import com.milaboratory.mixcr.util.SpillFile;
 import com.milaboratory.mixcr.util.TempFileManager;
 
 import java.io.*;
@@ -42,19 +44,34 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import static com.milaboratory.core.io.util.IOUtil.*;
 
 public final class AssemblerEventLogger {
+    /**
+     * Default (and minimal) capacity of the buffer of events received out of order
+     */
     static final int MAX_BUFFER_SIZE = 30_000;
+    /**
+     * Estimated heap size of a buffered event
+     */
+    static final int EVENT_BYTES = 48;
     final AtomicBoolean closed = new AtomicBoolean(false);
     final File file;
+    final SpillFile spill;
     final OutputStream os;
     //todo replace with ArrayDeque
     final ArrayList<AssemblerEvent> eventsBuffer = new ArrayList<>();
+    volatile int maxBufferSize = MAX_BUFFER_SIZE;
+    MemoryBudget.Consumer budgetConsumer = null;
     long counter = 0;
     long previousReadId = 0;
 
     public AssemblerEventLogger() {
+        this(TempFileManager.getDefault());
+    }
+
+    public AssemblerEventLogger(TempFileManager tempFileManager) {
         try {
-            this.file = TempFileManager.getTempFile();
-            this.os = new BufferedOutputStream(new FileOutputStream(file));
+            this.spill = tempFileManager.createSpillFile();
+            this.file = spill.getFile();
+            this.os = spill.openOutput();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -62,6 +79,7 @@ public final class AssemblerEventLogger {
 
     public AssemblerEventLogger(File file) {
         this.file = file;
+        this.spill = null;
         try {
             this.os = new BufferedOutputStream(new FileOutputStream(file));
         } catch (FileNotFoundException e) {
@@ -69,12 +87,34 @@ public final class AssemblerEventLogger {
         }
     }
 
+    /**
+     * Makes capacity of the buffer of events received out of order governed by memory budget. Capacity is only
+     * increased: buffered events can't be dropped, and shrinking it below the current disorder would be reported as a
+     * missing event.
+     */
+    public synchronized void setMemoryBudget(MemoryBudget budget) {
+        budgetConsumer = budget.register("Assembler events buffer", (long) MAX_BUFFER_SIZE * EVENT_BYTES,
+                64L << 20, 0.5, new MemoryBudget.Probe() {
+                    @Override
+                    public long getUsedBytes() {
+                        return (long) eventsBuffer.size() * EVENT_BYTES;
+                    }
+                }, new MemoryBudget.Listener() {
+                    @Override
+                    public void onLimitChanged(long limit) {
+                        int size = (int) Math.min(Integer.MAX_VALUE, limit / EVENT_BYTES);
+                        if (size > maxBufferSize)
+                            maxBufferSize = size;
+                    }
+                });
+    }
+
     public synchronized void newEvent(AssemblerEvent event) {
         if (event.alignmentsIndex != counter) {
             if (event.alignmentsIndex < counter)
                 throw new IllegalArgumentException("Duplicate event detected.");
             eventsBuffer.add(event);
-            if (eventsBuffer.size() > MAX_BUFFER_SIZE)
+            if (eventsBuffer.size() > maxBufferSize)
                 throw new RuntimeException("Missing event detected.");
             return;
         }
@@ -118,19 +158,16 @@ public final class AssemblerEventLogger {
         return new Iterable<AssemblerEvent>() {
             @Override
             public Iterator<AssemblerEvent> iterator() {
-                try {
-                    return new CUtils.OPIterator<>(new EventsPort(new BufferedInputStream(new FileInputStream(file))));
-                } catch (FileNotFoundException e) {
-                    throw new RuntimeException(e);
-                }
+                return new CUtils.OPIterator<>(createEventsPort());
             }
         };
     }
 
     public OutputPortCloseable<AssemblerEvent> createEventsPort() {
         try {
-            return new EventsPort(new BufferedInputStream(new FileInputStream(file)));
-        } catch (FileNotFoundException e) {
+            return new EventsPort(spill == null ? new BufferedInputStream(new FileInputStream(file)) :
+                    spill.openInput());
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
@@ -150,6 +187,8 @@ public final class AssemblerEventLogger {
             try {
                 if (!eventsBuffer.isEmpty())
                     throw new IllegalStateException("Some elements left in buffer.");
+                if (budgetConsumer != null)
+                    budgetConsumer.unregister();
                 os.close();
             } catch (IOException e) {
                 throw new RuntimeException(e);
@@ -160,7 +199,10 @@ public final class AssemblerEventLogger {
      * Deletes underlying file with log information.
      */
     public void close() {
-        file.delete();
+        if (spill == null)
+            file.delete();
+        else
+            spill.delete();
     }
 
     private static final class EventsPort implements OutputPortCloseable<AssemblerEvent> {
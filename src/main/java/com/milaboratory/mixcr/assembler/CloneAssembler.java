@@ -49,6 +49,8 @@ import com.milaboratory.mixcr.reference.Allele;
 import com.milaboratory.mixcr.reference.AlleleId;
 import com.milaboratory.mixcr.reference.GeneFeature;
 import com.milaboratory.mixcr.reference.GeneType;
+import com.milaboratory.mixcr.util.MemoryBudget;
+import com.milaboratory.mixcr.util.TempFileManager;
 import com.milaboratory.util.CanReportProgress;
 import com.milaboratory.util.Factory;
 import com.milaboratory.util.RandomUtil;
@@ -72,6 +74,13 @@ public final class CloneAssembler implements CanReportProgress, AutoCloseable {
     final AtomicInteger cloneIndexGenerator = new AtomicInteger();
     // Storage
     private final ConcurrentHashMap<ClonalSequence, CloneAccumulator> clones = new ConcurrentHashMap<>();
+    /**
+     * Estimated heap size of a clone accumulator
+     */
+    static final int CLONE_BYTES = 1024;
+    final TempFileManager tempFileManager;
+    private volatile MemoryBudget memoryBudget;
+    private MemoryBudget.Consumer clonesConsumer;
     final AssemblerEventLogger globalLogger;
     private AssemblerEventLogger deferredAlignmentsLogger;
     private TIntIntHashMap idMapping;
@@ -91,11 +100,20 @@ public final class CloneAssembler implements CanReportProgress, AutoCloseable {
     };
 
     public CloneAssembler(CloneAssemblerParameters parameters, boolean logAssemblerEvents, Collection<Allele> alleles) {
+        this(parameters, logAssemblerEvents, alleles, TempFileManager.getDefault());
+    }
+
+    /**
+     * @param tempFileManager manager of temporary files for assembler event logs
+     */
+    public CloneAssembler(CloneAssemblerParameters parameters, boolean logAssemblerEvents, Collection<Allele> alleles,
+                          TempFileManager tempFileManager) {
         this.parameters = parameters.clone();
+        this.tempFileManager = tempFileManager;
         if (!logAssemblerEvents && !parameters.isMappingEnabled())
             globalLogger = null;
         else
-            globalLogger = new AssemblerEventLogger();
+            globalLogger = new AssemblerEventLogger(tempFileManager);
         for (Allele allele : alleles)
             usedAlleles.put(allele.getId(), allele);
     }
@@ -147,6 +165,21 @@ public final class CloneAssembler implements CanReportProgress, AutoCloseable {
             listener.onClustered(majorClone, minorClone);
     }
 
+    /**
+     * Accounts memory occupied by clones in the budget, and makes buffer of event loggers governed by the budget.
+     */
+    public void setMemoryBudget(MemoryBudget budget) {
+        this.memoryBudget = budget;
+        clonesConsumer = budget.registerFixed("Clones", new MemoryBudget.Probe() {
+            @Override
+            public long getUsedBytes() {
+                return (long) clones.size() * CLONE_BYTES;
+            }
+        });
+        if (globalLogger != null)
+            globalLogger.setMemoryBudget(budget);
+    }
+
     public void setListener(CloneAssemblerListener listener) {
         this.listener = listener;
     }
@@ -211,7 +244,9 @@ public final class CloneAssembler implements CanReportProgress, AutoCloseable {
         globalLogger.end(totalAlignments.get());
         if (!deferredExists)
             return false;
-        deferredAlignmentsLogger = new AssemblerEventLogger();
+        deferredAlignmentsLogger = new AssemblerEventLogger(tempFileManager);
+        if (memoryBudget != null)
+            deferredAlignmentsLogger.setMemoryBudget(memoryBudget);
         mappingTree = new SequenceTreeMap<>(NucleotideSequence.ALPHABET);
         for (CloneAccumulator accumulator : clones.values())
             mappingTree.createIfAbsent(accumulator.getSequence().getConcatenated().getSequence(), LIST_FACTORY).add(accumulator);
@@ -292,6 +327,10 @@ public final class CloneAssembler implements CanReportProgress, AutoCloseable {
 
     @Override
     public void close() {
+        if (clonesConsumer != null) {
+            clonesConsumer.unregister();
+            clonesConsumer = null;
+        }
         if (globalLogger != null)
             globalLogger.close();
         if (deferredAlignmentsLogger != null)
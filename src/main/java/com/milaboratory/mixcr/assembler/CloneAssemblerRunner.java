@@ -28,11 +28,13 @@
  */
 package com.milaboratory.mixcr.assembler;
 
-import cc.redberry.pipe.CUtils;
 import cc.redberry.pipe.OutputPortCloseable;
 import cc.redberry.pipe.blocks.FilteringPort;
 import com.milaboratory.mixcr.basictypes.CloneSet;
 import com.milaboratory.mixcr.basictypes.VDJCAlignments;
+import com.milaboratory.mixcr.util.Pipeline;
+import com.milaboratory.mixcr.util.PipelineMetrics;
+import com.milaboratory.mixcr.util.StageMetrics;
 import com.milaboratory.util.CanReportProgress;
 import com.milaboratory.util.CanReportProgressAndStage;
 
@@ -43,6 +45,7 @@ public class CloneAssemblerRunner implements CanReportProgressAndStage {
     volatile String stage = "Initialization";
     volatile CanReportProgress innerProgress;
     volatile boolean isFinished = false;
+    PipelineMetrics metrics = null;
 
     public CloneAssemblerRunner(AlignmentsProvider alignmentsProvider, CloneAssembler assembler, int threads) {
         this.alignmentsProvider = alignmentsProvider;
@@ -50,6 +53,13 @@ public class CloneAssemblerRunner implements CanReportProgressAndStage {
         this.threads = Math.min(threads, Runtime.getRuntime().availableProcessors());
     }
 
+    /**
+     * Enables collection of timings of assembling stages.
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     @Override
     public String getStage() {
         return stage;
@@ -68,6 +78,18 @@ public class CloneAssemblerRunner implements CanReportProgressAndStage {
     }
 
     public void run() {
+        PipelineMetrics metrics = this.metrics == null ? new PipelineMetrics("assemble", false) : this.metrics;
+        Pipeline pipeline = new Pipeline(metrics);
+        try {
+            run(pipeline, metrics);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } finally {
+            pipeline.close();
+        }
+    }
+
+    private void run(Pipeline pipeline, PipelineMetrics metrics) throws InterruptedException {
         //run initial assembler
         try (OutputPortCloseable<VDJCAlignments> alignmentsPort = alignmentsProvider.create()) {
             synchronized (this) {
@@ -75,11 +97,8 @@ public class CloneAssemblerRunner implements CanReportProgressAndStage {
                 if (alignmentsPort instanceof CanReportProgress)
                     innerProgress = (CanReportProgress) alignmentsPort;
             }
-            try {
-                CUtils.processAllInParallel(CUtils.buffered(alignmentsPort, 128), assembler.getInitialAssembler(), threads);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
+            pipeline.forEach("Initial assembly", metrics.stage("Reading").timed(alignmentsPort),
+                    assembler.getInitialAssembler(), threads);
         }
         //run mapping
         if (assembler.parameters.isMappingEnabled()) {
@@ -94,14 +113,8 @@ public class CloneAssemblerRunner implements CanReportProgressAndStage {
                         if (alignmentsPort instanceof CanReportProgress)
                             innerProgress = (CanReportProgress) alignmentsPort;
                     }
-                    try {
-                        CUtils.processAllInParallel(CUtils.buffered(
-                                        new FilteringPort<>(alignmentsPort,
-                                                assembler.getDeferredAlignmentsFilter()), 128),
-                                assembler.getDeferredAlignmentsMapper(), threads);
-                    } catch (InterruptedException e) {
-                        throw new RuntimeException(e);
-                    }
+                    pipeline.forEach("Mapping", new FilteringPort<>(metrics.stage("Reading").timed(alignmentsPort),
+                            assembler.getDeferredAlignmentsFilter()), assembler.getDeferredAlignmentsMapper(), threads);
                 }
                 assembler.endMapping();
             }
@@ -112,14 +125,18 @@ public class CloneAssemblerRunner implements CanReportProgressAndStage {
                 stage = "Clustering";
                 innerProgress = assembler;
             }
+            StageMetrics.Timer timer = metrics.stage("Clustering").start();
             assembler.runClustering();
+            timer.stop(0, 0);
         }
         //build clones
         synchronized (this) {
             stage = "Building clones";
             innerProgress = assembler;
         }
+        StageMetrics.Timer timer = metrics.stage("Building clones").start();
         assembler.buildClones();
+        timer.stop(0, 0);
         isFinished = true;
     }
 
@@ -31,9 +31,11 @@ package com.milaboratory.mixcr.assembler;
 import cc.redberry.pipe.OutputPortCloseable;
 import com.milaboratory.mixcr.basictypes.VDJCAlignments;
 import com.milaboratory.mixcr.basictypes.VDJCAlignmentsReader;
+import com.milaboratory.mixcr.basictypes.VDJCAlignmentsSection;
 import com.milaboratory.util.CanReportProgress;
 import com.milaboratory.util.Factory;
 
+import java.util.EnumSet;
 import java.util.concurrent.atomic.AtomicLong;
 
 class VDJCAlignmentsReaderWrapper implements AlignmentsProvider {
@@ -59,6 +61,8 @@ class VDJCAlignmentsReaderWrapper implements AlignmentsProvider {
 
         private OP(VDJCAlignmentsReader reader) {
             this.reader = reader;
+            // Assembler uses only targets and hits
+            this.reader.setProjection(EnumSet.of(VDJCAlignmentsSection.Hits));
         }
 
         @Override
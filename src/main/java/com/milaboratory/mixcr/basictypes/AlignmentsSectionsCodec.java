@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.basictypes;
+
+import com.milaboratory.core.alignment.Alignment;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.mixcr.reference.Allele;
+import com.milaboratory.mixcr.reference.GeneFeature;
+import com.milaboratory.mixcr.reference.GeneType;
+import com.milaboratory.primitivio.PrimitivI;
+import com.milaboratory.primitivio.PrimitivO;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes and decodes optional sections of {@link VDJCAlignments} records (see {@link VDJCAlignmentsSection}).
+ *
+ * <p>Each section is serialized into a separate stream which shares only the static set of known references written
+ * in the file header (alleles and sequences of their aligned features), so any section of any record can be decoded
+ * independently of all others. For this reason gene features of hits are not written with {@code writeObject} (gene
+ * feature serializer registers new known references on the fly).</p>
+ *
+ * <p>Since MiXCR.VDJC.V08 original reads are encoded relative to targets of the record (see {@link
+ * OriginalReadsCodec}). Since MiXCR.VDJC.V09 descriptions are tokenized and encoded relative to descriptions of
+ * previous records of the same block (see {@link DescriptionsCodec}), so they are decoded sequentially by the reader
+ * as records are read; {@link #beginRecord()} / {@link #beginDecodedRecord()} must be called for each record.</p>
+ *
+ * <p>Encoding is not thread-safe (single writer), decoding of hits and original reads is thread-safe.</p>
+ */
+final class AlignmentsSectionsCodec {
+    /**
+     * Marks sections that were skipped by the reader because of projection.
+     */
+    static final byte[] EXCLUDED = new byte[0];
+
+    final HasFeatureToAlign featuresToAlign;
+    final List<Allele> alleles;
+    final boolean relativeOriginalReads, tokenizedDescriptions;
+
+    // Encoder
+    private Buffer buffer;
+    private PrimitivO sectionOutput;
+    private final DescriptionsCodec descriptionsEncoder;
+
+    // Sequential decoder of descriptions
+    private final DescriptionsCodec descriptionsDecoder;
+
+    // Decoders
+    private final ThreadLocal<SectionInput> sectionInputs = new ThreadLocal<SectionInput>() {
+        @Override
+        protected SectionInput initialValue() {
+            return new SectionInput();
+        }
+    };
+
+    AlignmentsSectionsCodec(HasFeatureToAlign featuresToAlign, List<Allele> alleles) {
+        this(featuresToAlign, alleles, VDJCAlignmentsWriter.MAGIC);
+    }
+
+    /**
+     * @param magic format of the file (MiXCR.VDJC.V07 or later)
+     */
+    AlignmentsSectionsCodec(HasFeatureToAlign featuresToAlign, List<Allele> alleles, String magic) {
+        this.featuresToAlign = featuresToAlign;
+        this.alleles = alleles;
+        this.relativeOriginalReads = magic.compareTo(VDJCAlignmentsWriter.MAGIC_V8) >= 0;
+        this.tokenizedDescriptions = magic.compareTo(VDJCAlignmentsWriter.MAGIC_V9) >= 0;
+        this.descriptionsEncoder = tokenizedDescriptions
+                ? new DescriptionsCodec(VDJCAlignmentsFooter.DEFAULT_BLOCK_SIZE) : null;
+        this.descriptionsDecoder = tokenizedDescriptions
+                ? new DescriptionsCodec(VDJCAlignmentsFooter.DEFAULT_BLOCK_SIZE) : null;
+    }
+
+    /* Encoding */
+
+    /**
+     * Must be called by the writer before each record, including records written in serialized form.
+     */
+    void beginRecord() {
+        if (tokenizedDescriptions)
+            descriptionsEncoder.nextRecord();
+    }
+
+    private void initEncoder() {
+        if (buffer == null) {
+            buffer = new Buffer();
+            sectionOutput = new PrimitivO(buffer);
+            IOUtil.registerAlleleReferences(sectionOutput, alleles, featuresToAlign);
+        }
+    }
+
+    void writeSections(PrimitivO output, VDJCAlignments alignments) {
+        initEncoder();
+
+        buffer.reset();
+        encodeHits(sectionOutput, alignments.getHitsMap());
+        flushSection(output);
+
+        writeDescriptionsSection(output, alignments.getDescriptions());
+
+        NSequenceWithQuality[] originalSequences = alignments.getOriginalSequences();
+        if (originalSequences == null)
+            output.writeVarInt(0);
+        else {
+            buffer.reset();
+            if (relativeOriginalReads)
+                OriginalReadsCodec.encode(sectionOutput, originalSequences, alignments.targets);
+            else
+                sectionOutput.writeObject(originalSequences);
+            flushSection(output);
+        }
+    }
+
+    /**
+     * Writes descriptions section of the current record (also used to re-encode descriptions of records copied in
+     * serialized form).
+     */
+    void writeDescriptionsSection(PrimitivO output, String[] descriptions) {
+        if (descriptions == null) {
+            output.writeVarInt(0);
+            return;
+        }
+        initEncoder();
+        buffer.reset();
+        if (tokenizedDescriptions)
+            descriptionsEncoder.encode(sectionOutput, descriptions);
+        else
+            sectionOutput.writeObject(descriptions);
+        flushSection(output);
+    }
+
+    /**
+     * Returns descriptions section (with length prefix) encoded without context of previous records, so it can be
+     * placed into any record of any file in current format.
+     */
+    static byte[] standaloneDescriptionsSection(String[] descriptions) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PrimitivO output = new PrimitivO(bos);
+        if (descriptions == null)
+            output.writeVarInt(0);
+        else {
+            Buffer section = new Buffer();
+            DescriptionsCodec.encodeStandalone(new PrimitivO(section), descriptions);
+            output.writeVarInt(section.size());
+            output.write(section.array(), 0, section.size());
+        }
+        return bos.toByteArray();
+    }
+
+    private void flushSection(PrimitivO output) {
+        output.writeVarInt(buffer.size());
+        output.write(buffer.array(), 0, buffer.size());
+    }
+
+    private void encodeHits(PrimitivO output, EnumMap<GeneType, VDJCHit[]> hits) {
+        output.writeByte(hits.size());
+        for (Map.Entry<GeneType, VDJCHit[]> entry : hits.entrySet()) {
+            GeneFeature featureToAlign = featuresToAlign.getFeatureToAlign(entry.getKey());
+            output.writeObject(entry.getKey());
+            output.writeVarInt(entry.getValue().length);
+            for (VDJCHit hit : entry.getValue()) {
+                output.writeObject(hit.getAllele());
+                if (hit.getAlignedFeature().equals(featureToAlign))
+                    output.writeByte(0);
+                else {
+                    output.writeByte(1);
+                    output.writeUTF(GeneFeature.encode(hit.getAlignedFeature()));
+                }
+                output.writeVarInt(hit.numberOfTargets());
+                for (int i = 0; i < hit.numberOfTargets(); ++i)
+                    output.writeObject(hit.getAlignment(i));
+                output.writeFloat(hit.getScore());
+            }
+        }
+    }
+
+    /* Decoding */
+
+    /**
+     * Reads length-prefixed section from the main stream.
+     *
+     * @param input   main stream
+     * @param load    whether section content is required
+     * @param scratch buffer used to skip not required sections
+     * @return raw section data, {@code null} if section is absent in record or {@link #EXCLUDED} if it was skipped
+     */
+    static byte[] readSection(PrimitivI input, boolean load, byte[] scratch) {
+        int length = input.readVarInt();
+        if (length == 0)
+            return null;
+        if (!load) {
+            while (length > 0) {
+                int chunk = Math.min(length, scratch.length);
+                input.readFully(scratch, 0, chunk);
+                length -= chunk;
+            }
+            return EXCLUDED;
+        }
+        byte[] data = new byte[length];
+        input.readFully(data);
+        return data;
+    }
+
+    EnumMap<GeneType, VDJCHit[]> decodeHits(byte[] data) {
+        PrimitivI input = sectionInputs.get().reset(data);
+        int size = input.readByte();
+        EnumMap<GeneType, VDJCHit[]> hits = new EnumMap<>(GeneType.class);
+        for (int i = 0; i < size; i++) {
+            GeneType geneType = input.readObject(GeneType.class);
+            VDJCHit[] gtHits = new VDJCHit[input.readVarInt()];
+            for (int j = 0; j < gtHits.length; j++) {
+                Allele allele = input.readObject(Allele.class);
+                GeneFeature alignedFeature = input.readByte() == 0
+                        ? featuresToAlign.getFeatureToAlign(geneType)
+                        : GeneFeature.parse(input.readUTF());
+                Alignment<NucleotideSequence>[] alignments = new Alignment[input.readVarInt()];
+                for (int t = 0; t < alignments.length; t++)
+                    alignments[t] = input.readObject(Alignment.class);
+                gtHits[j] = new VDJCHit(allele, alignments, alignedFeature, input.readFloat());
+            }
+            hits.put(geneType, gtHits);
+        }
+        return hits;
+    }
+
+    /**
+     * Must be called by the reader before decoding each record.
+     */
+    void beginDecodedRecord() {
+        if (tokenizedDescriptions)
+            descriptionsDecoder.nextRecord();
+    }
+
+    /**
+     * Decodes tokenized descriptions; must be called for every record with descriptions, in file order.
+     */
+    String[] decodeDescriptionsSequentially(byte[] data) {
+        return descriptionsDecoder.decode(sectionInputs.get().reset(data));
+    }
+
+    String[] decodeDescriptions(byte[] data) {
+        return sectionInputs.get().reset(data).readObject(String[].class);
+    }
+
+    NSequenceWithQuality[] decodeOriginalSequences(byte[] data, NSequenceWithQuality[] targets) {
+        PrimitivI input = sectionInputs.get().reset(data);
+        if (relativeOriginalReads)
+            return OriginalReadsCodec.decode(input, targets);
+        return input.readObject(NSequenceWithQuality[].class);
+    }
+
+    private final class SectionInput extends InputStream {
+        final PrimitivI input;
+        byte[] data;
+        int position;
+
+        SectionInput() {
+            this.input = new PrimitivI(this);
+            IOUtil.registerAlleleReferences(input, alleles, featuresToAlign);
+        }
+
+        PrimitivI reset(byte[] data) {
+            this.data = data;
+            this.position = 0;
+            return input;
+        }
+
+        @Override
+        public int read() {
+            if (position == data.length)
+                return -1;
+            return data[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position == data.length)
+                return -1;
+            len = Math.min(len, data.length - position);
+            System.arraycopy(data, position, b, off, len);
+            position += len;
+            return len;
+        }
+    }
+
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(1024);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+}
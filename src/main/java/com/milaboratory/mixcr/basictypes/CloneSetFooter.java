@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.basictypes;
+
+import com.milaboratory.mixcr.reference.Locus;
+import com.milaboratory.primitivio.PrimitivO;
+
+import java.io.*;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Summary of .clns file stored at its end: number of clones, total count, fraction of the top clone, number of clones
+ * per locus, hash of parameters and positions of every {@link #getBlockSize()}-th clone in the file.
+ *
+ * <p>Footer of uncompressed file can be read without scanning the file (see {@link #read(File)}).</p>
+ */
+public final class CloneSetFooter {
+    /**
+     * Number of clones between two consecutive entries of the block index
+     */
+    static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    final int numberOfClones;
+    final long totalCount;
+    final double topCloneFraction;
+    final EnumMap<Locus, Long> locusCounts;
+    final int parametersHash;
+    final int blockSize;
+    final long[] blockOffsets;
+
+    CloneSetFooter(int numberOfClones, long totalCount, double topCloneFraction, EnumMap<Locus, Long> locusCounts,
+                   int parametersHash, int blockSize, long[] blockOffsets) {
+        this.numberOfClones = numberOfClones;
+        this.totalCount = totalCount;
+        this.topCloneFraction = topCloneFraction;
+        this.locusCounts = locusCounts;
+        this.parametersHash = parametersHash;
+        this.blockSize = blockSize;
+        this.blockOffsets = blockOffsets;
+    }
+
+    /**
+     * Calculates footer for given clone set. Block index of such footer is empty.
+     *
+     * @param cloneSet clone set
+     */
+    public CloneSetFooter(CloneSet cloneSet) {
+        this(cloneSet, new long[0]);
+    }
+
+    CloneSetFooter(CloneSet cloneSet, long[] blockOffsets) {
+        this.numberOfClones = cloneSet.size();
+        this.totalCount = cloneSet.getTotalCount();
+        this.locusCounts = new EnumMap<>(Locus.class);
+        long topCount = 0;
+        for (Clone clone : cloneSet) {
+            topCount = Math.max(topCount, clone.getCount());
+            Locus locus = FooterIO.getLocus(clone);
+            if (locus != null)
+                FooterIO.increment(locusCounts, locus, 1);
+        }
+        this.topCloneFraction = totalCount == 0 ? 0.0 : 1.0 * topCount / totalCount;
+        this.parametersHash = parametersHash(cloneSet);
+        this.blockSize = DEFAULT_BLOCK_SIZE;
+        this.blockOffsets = blockOffsets;
+    }
+
+    /**
+     * Returns number of clones.
+     */
+    public int getNumberOfClones() {
+        return numberOfClones;
+    }
+
+    /**
+     * Returns sum of counts of all clones.
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Returns fraction of the most abundant clone.
+     */
+    public double getTopCloneFraction() {
+        return topCloneFraction;
+    }
+
+    /**
+     * Returns number of clones per locus (locus of the best V hit, or J, C, D hit if V hit is absent).
+     */
+    public Map<Locus, Long> getLocusCounts() {
+        return Collections.unmodifiableMap(locusCounts);
+    }
+
+    /**
+     * Returns CRC32 of assembling features and features aligned for each gene type, i.e. of the parameters stored in
+     * the header of the file. Clone sets with different hashes can't be compared clone-by-clone.
+     */
+    public int getParametersHash() {
+        return parametersHash;
+    }
+
+    /**
+     * Returns number of clones between two consecutive entries of the block index.
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Returns number of entries in the block index.
+     */
+    public int getNumberOfBlocks() {
+        return blockOffsets.length;
+    }
+
+    /**
+     * Returns offset of the clone with index {@code block * getBlockSize()} in the uncompressed stream.
+     */
+    public long getBlockOffset(int block) {
+        return blockOffsets[block];
+    }
+
+    void write(DataOutput output) throws IOException {
+        output.writeInt(numberOfClones);
+        output.writeLong(totalCount);
+        output.writeDouble(topCloneFraction);
+        FooterIO.writeLocusCounts(output, locusCounts);
+        output.writeInt(parametersHash);
+        output.writeInt(blockSize);
+        output.writeInt(blockOffsets.length);
+        for (long offset : blockOffsets)
+            output.writeLong(offset);
+    }
+
+    static CloneSetFooter read(DataInput input) throws IOException {
+        int numberOfClones = input.readInt();
+        long totalCount = input.readLong();
+        double topCloneFraction = input.readDouble();
+        EnumMap<Locus, Long> locusCounts = FooterIO.readLocusCounts(input);
+        int parametersHash = input.readInt();
+        int blockSize = input.readInt();
+        long[] blockOffsets = new long[input.readInt()];
+        for (int i = 0; i < blockOffsets.length; i++)
+            blockOffsets[i] = input.readLong();
+        return new CloneSetFooter(numberOfClones, totalCount, topCloneFraction, locusCounts,
+                parametersHash, blockSize, blockOffsets);
+    }
+
+    static int parametersHash(CloneSet cloneSet) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PrimitivO o = new PrimitivO(bos);
+        o.writeObject(cloneSet.getAssemblingFeatures());
+        IO.writeGT2GFMap(o, cloneSet.alignedFeatures);
+        CRC32 crc = new CRC32();
+        crc.update(bos.toByteArray());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Reads footer of .clns file without reading its content.
+     *
+     * @param file .clns file
+     * @return footer or null if file is compressed or is of a format version without footer (before
+     * MiXCR.CLNS.V04)
+     */
+    public static CloneSetFooter read(File file) throws IOException {
+        try (DataInputStream input = FooterIO.openFooter(file, CloneSetIO.MAGIC_V4, CloneSetIO.MAGIC)) {
+            return input == null ? null : read(input);
+        }
+    }
+}
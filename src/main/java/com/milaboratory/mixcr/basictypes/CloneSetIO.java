@@ -46,12 +46,14 @@ import java.util.List;
 public final class CloneSetIO {
     static final String MAGIC_V2 = "MiXCR.CLNS.V02";
     static final String MAGIC_V3 = "MiXCR.CLNS.V03";
-    static final String MAGIC = MAGIC_V3;
+    static final String MAGIC_V4 = "MiXCR.CLNS.V04";
+    static final String MAGIC = MAGIC_V4;
     static final int MAGIC_LENGTH = 14;
     static final byte[] MAGIC_BYTES = MAGIC.getBytes(StandardCharsets.US_ASCII);
 
     public static class CloneSetWriter implements CanReportProgressAndStage, Closeable {
         final String stage = "Writing clones";
+        final CountingOutputStream countingOutput;
         final PrimitivO output;
         final CloneSet cloneSet;
         final int size;
@@ -66,7 +68,7 @@ public final class CloneSetIO {
         }
 
         public CloneSetWriter(CloneSet cloneSet, OutputStream outputStream) {
-            this.output = new PrimitivO(outputStream);
+            this.output = new PrimitivO(this.countingOutput = new CountingOutputStream(outputStream));
             this.cloneSet = cloneSet;
             this.size = cloneSet.size();
         }
@@ -101,10 +103,23 @@ public final class CloneSetIO {
 
             output.writeInt(cloneSet.getClones().size());
 
+            long[] blockOffsets = new long[(size + CloneSetFooter.DEFAULT_BLOCK_SIZE - 1) /
+                    CloneSetFooter.DEFAULT_BLOCK_SIZE];
             for (Clone clone : cloneSet) {
+                if (current % CloneSetFooter.DEFAULT_BLOCK_SIZE == 0)
+                    blockOffsets[current / CloneSetFooter.DEFAULT_BLOCK_SIZE] = countingOutput.getCount();
                 output.writeObject(clone);
                 ++current;
             }
+
+            // Footer, ignored by the reader (see CloneSetFooter.read(File))
+            long footerOffset = countingOutput.getCount();
+            try {
+                new CloneSetFooter(cloneSet, blockOffsets).write(output);
+                FooterIO.writeTrailer(output, footerOffset);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
         }
 
         @Override
@@ -151,6 +166,7 @@ public final class CloneSetIO {
 
         switch (magicString) {
             case MAGIC_V2:
+            case MAGIC_V3:
             case MAGIC:
                 break;
             default:
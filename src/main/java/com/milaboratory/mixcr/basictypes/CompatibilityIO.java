@@ -56,9 +56,9 @@ public final class CompatibilityIO {
         @Override
         public void write(PrimitivO output, VDJCAlignments object) {
             output.writeObject(object.targets);
-            output.writeObject(object.descriptions);
-            output.writeByte(object.hits.size());
-            for (Map.Entry<GeneType, VDJCHit[]> entry : object.hits.entrySet()) {
+            output.writeObject(object.getDescriptions());
+            output.writeByte(object.getHitsMap().size());
+            for (Map.Entry<GeneType, VDJCHit[]> entry : object.getHitsMap().entrySet()) {
                 output.writeObject(entry.getKey());
                 output.writeObject(entry.getValue());
             }
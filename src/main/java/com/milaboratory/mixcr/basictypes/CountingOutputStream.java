@@ -26,64 +26,35 @@
  * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
  * PATENT, TRADEMARK OR OTHER RIGHTS.
  */
+package com.milaboratory.mixcr.basictypes;
 
-// a will be assigned to alignment
-a = null;
-V = null;
-D = null;
-J = null;
-C = null;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 
-function length(feature) {
-    sq = a.getFeature(feature);
-    return sq == null ? 0 : sq.size();
-}
-
-function targetMeanQuality(targetIndex) {
-    return a.getTarget(targetIndex).getQuality().meanValue();
-}
+/**
+ * Output stream counting bytes written through it.
+ */
+final class CountingOutputStream extends FilterOutputStream {
+    private long count;
 
-function numberOfTargets() {
-    return a.numberOfTargets();
-}
+    CountingOutputStream(OutputStream out) {
+        super(out);
+    }
 
-function contains(feature) {
-    return a.getFeature(feature) != null;
-}
+    long getCount() {
+        return count;
+    }
 
-function targetAlignedTop(targetIndex, geneType) {
-    gts = (typeof(geneType) === 'undefined' ? [V, D, J, C] : [geneType]);
-    for (var i = 0; i < gts.length; i++) {
-        var gt = gts[i];
-        hits = a.getHits(gt);
-        if (hits == null)
-            continue;
-        if (hits.length == 0)
-            continue;
-        hit = hits[0];
-        if (hit.getAlignment(targetIndex) != null)
-            return true;
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        ++count;
     }
-    return false;
-}
 
-function targetAlignedAny(targetIndex, geneType) {
-    gts = (typeof(geneType) === 'undefined' ? [V, D, J, C] : [geneType]);
-    for (var i = 0; i < gts.length; i++) {
-        var gt = gts[i];
-        hits = a.getHits(gt);
-        if (hits == null)
-            continue;
-        if (hits.length == 0)
-            continue;
-        for (hit in hits)
-            if (hit.getAlignment(targetIndex) != null)
-                return true;
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        count += len;
     }
-    return false;
 }
-
-function evaluate_filter() {
-    /*CODE*/
-    return Boolean(/*FILTER*/);
-}
\ No newline at end of file
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.basictypes;
+
+import com.milaboratory.primitivio.PrimitivI;
+import com.milaboratory.primitivio.PrimitivO;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tokenized encoding of read descriptions (e.g. Illumina headers like {@code M01234:55:000000000-A1B2C:1:1101:15589:1331
+ * 1:N:0:ATCACG}).
+ *
+ * <p>Description is split by delimiters into fields and encoded relative to the context description with the same
+ * delimiters: the previous description of the same record (R2 header relative to R1) or description of the same read
+ * of the previous record. Only changed fields are written: numeric fields as deltas, other fields as references to
+ * the dictionary of previously seen fields or as literals. Context and dictionary are reset every {@code blockSize}
+ * records, so records of each block can be decoded starting from the block beginning.</p>
+ *
+ * <p>Encoding and decoding are stateful, so records must be processed sequentially and both sides must call {@link
+ * #nextRecord()} for each record. Standalone descriptions ({@link #encodeStandalone(PrimitivO, String[])}) don't use
+ * and don't change the context.</p>
+ */
+final class DescriptionsCodec {
+    static final int MAX_DICTIONARY_SIZE = 4096;
+    static final String DELIMITERS = " \t:_-/#|.,;=";
+    // Description headers; CHANGES + n means same delimiters as context and n changed fields
+    static final int NULL = 0, LITERAL = 1, STANDALONE = 2, CHANGES = 3;
+    // Kinds of changed fields
+    static final int DELTA = 0, REFERENCE = 1, NEW = 2;
+
+    final int blockSize;
+    private long recordIndex = 0;
+    private final List<String> dictionary = new ArrayList<>();
+    private final Map<String, Integer> dictionaryIds = new HashMap<>();
+    private Tokens[] previous = new Tokens[0];
+
+    DescriptionsCodec(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Must be called before each record (including records without descriptions).
+     */
+    void nextRecord() {
+        if (recordIndex++ % blockSize == 0) {
+            dictionary.clear();
+            dictionaryIds.clear();
+            Arrays.fill(previous, null);
+        }
+    }
+
+    void encode(PrimitivO output, String[] descriptions) {
+        output.writeVarInt(descriptions.length);
+        Tokens[] current = new Tokens[descriptions.length];
+        for (int i = 0; i < descriptions.length; i++) {
+            String description = descriptions[i];
+            if (description == null) {
+                output.writeVarInt(NULL);
+                continue;
+            }
+            Tokens tokens = current[i] = new Tokens(description);
+            Tokens context = context(current, i);
+            if (context == null || !context.delimiters.equals(tokens.delimiters)) {
+                output.writeVarInt(LITERAL);
+                output.writeUTF(description);
+                addToDictionary(tokens);
+                continue;
+            }
+            int changes = 0;
+            for (int f = 0; f < tokens.fields.length; f++)
+                if (!tokens.fields[f].equals(context.fields[f]))
+                    ++changes;
+            output.writeVarInt(CHANGES + changes);
+            int next = 0;
+            for (int f = 0; f < tokens.fields.length; f++) {
+                String field = tokens.fields[f];
+                if (field.equals(context.fields[f]))
+                    continue;
+                int gap = f - next;
+                next = f + 1;
+                long delta = tokens.values[f] - context.values[f];
+                if (tokens.values[f] >= 0 && context.values[f] >= 0 && Math.abs(delta) < (1 << 29)) {
+                    output.writeVarInt(gap << 2 | DELTA);
+                    output.writeVarInt((int) ((delta << 1) ^ (delta >> 63)));
+                    continue;
+                }
+                Integer id = dictionaryIds.get(field);
+                if (id != null) {
+                    output.writeVarInt(gap << 2 | REFERENCE);
+                    output.writeVarInt(id);
+                } else {
+                    output.writeVarInt(gap << 2 | NEW);
+                    output.writeUTF(field);
+                    addToDictionary(field);
+                }
+            }
+        }
+        updatePrevious(current);
+    }
+
+    String[] decode(PrimitivI input) {
+        String[] descriptions = new String[input.readVarInt()];
+        Tokens[] current = new Tokens[descriptions.length];
+        boolean contextual = false;
+        for (int i = 0; i < descriptions.length; i++) {
+            int header = input.readVarInt();
+            switch (header) {
+                case NULL:
+                    break;
+                case STANDALONE:
+                    descriptions[i] = input.readUTF();
+                    break;
+                case LITERAL:
+                    contextual = true;
+                    descriptions[i] = input.readUTF();
+                    addToDictionary(current[i] = new Tokens(descriptions[i]));
+                    break;
+                default:
+                    contextual = true;
+                    Tokens context = context(current, i);
+                    String[] fields = context.fields.clone();
+                    int next = 0;
+                    for (int c = 0; c < header - CHANGES; c++) {
+                        int code = input.readVarInt();
+                        int f = next + (code >>> 2);
+                        next = f + 1;
+                        switch (code & 3) {
+                            case DELTA:
+                                int delta = input.readVarInt();
+                                fields[f] = Long.toString(context.values[f] + ((delta >>> 1) ^ -(delta & 1)));
+                                break;
+                            case REFERENCE:
+                                fields[f] = dictionary.get(input.readVarInt());
+                                break;
+                            default:
+                                fields[f] = input.readUTF();
+                                addToDictionary(fields[f]);
+                        }
+                    }
+                    current[i] = new Tokens(fields, context.delimiters);
+                    descriptions[i] = current[i].toString();
+            }
+        }
+        if (contextual)
+            updatePrevious(current);
+        return descriptions;
+    }
+
+    /**
+     * Writes descriptions without context, so they can be decoded in any position of any file.
+     */
+    static void encodeStandalone(PrimitivO output, String[] descriptions) {
+        output.writeVarInt(descriptions.length);
+        for (String description : descriptions)
+            if (description == null)
+                output.writeVarInt(NULL);
+            else {
+                output.writeVarInt(STANDALONE);
+                output.writeUTF(description);
+            }
+    }
+
+    private Tokens context(Tokens[] current, int index) {
+        if (index > 0 && current[index - 1] != null)
+            return current[index - 1];
+        return index < previous.length ? previous[index] : null;
+    }
+
+    private void updatePrevious(Tokens[] current) {
+        if (previous.length < current.length)
+            previous = Arrays.copyOf(previous, current.length);
+        for (int i = 0; i < current.length; i++)
+            if (current[i] != null)
+                previous[i] = current[i];
+    }
+
+    private void addToDictionary(Tokens tokens) {
+        for (int f = 0; f < tokens.fields.length; f++)
+            if (tokens.values[f] < 0)
+                addToDictionary(tokens.fields[f]);
+    }
+
+    private void addToDictionary(String field) {
+        if (dictionary.size() < MAX_DICTIONARY_SIZE && !dictionaryIds.containsKey(field)) {
+            dictionaryIds.put(field, dictionary.size());
+            dictionary.add(field);
+        }
+    }
+
+    /**
+     * Description split into fields; {@code delimiters.charAt(i)} separates fields {@code i} and {@code i + 1}.
+     */
+    static final class Tokens {
+        final String[] fields;
+        final String delimiters;
+        // Values of numeric fields (without leading zeros), -1 for other fields
+        final long[] values;
+
+        Tokens(String description) {
+            List<String> fields = new ArrayList<>();
+            StringBuilder delimiters = new StringBuilder();
+            int start = 0;
+            for (int i = 0; i < description.length(); i++) {
+                char c = description.charAt(i);
+                if (DELIMITERS.indexOf(c) >= 0) {
+                    fields.add(description.substring(start, i));
+                    delimiters.append(c);
+                    start = i + 1;
+                }
+            }
+            fields.add(description.substring(start));
+            this.fields = fields.toArray(new String[fields.size()]);
+            this.delimiters = delimiters.toString();
+            this.values = values(this.fields);
+        }
+
+        Tokens(String[] fields, String delimiters) {
+            this.fields = fields;
+            this.delimiters = delimiters;
+            this.values = values(fields);
+        }
+
+        private static long[] values(String[] fields) {
+            long[] values = new long[fields.length];
+            for (int f = 0; f < fields.length; f++)
+                values[f] = numericValue(fields[f]);
+            return values;
+        }
+
+        static long numericValue(String field) {
+            int length = field.length();
+            if (length == 0 || length > 18 || (length > 1 && field.charAt(0) == '0'))
+                return -1;
+            for (int i = 0; i < length; i++)
+                if (field.charAt(i) < '0' || field.charAt(i) > '9')
+                    return -1;
+            return Long.parseLong(field);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(fields[0]);
+            for (int i = 0; i < delimiters.length(); i++)
+                builder.append(delimiters.charAt(i)).append(fields[i + 1]);
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.basictypes;
+
+import com.milaboratory.core.io.CompressionType;
+import com.milaboratory.mixcr.reference.GeneType;
+import com.milaboratory.mixcr.reference.Locus;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Routines for file-level metadata footers of .vdjca and .clns files.
+ *
+ * <p>Footer is written at the very end of the file and is terminated by fixed-size trailer: offset of footer start
+ * (long) and magic bytes. This allows to read footer of uncompressed file without scanning its content. Footer is a
+ * part of the format starting from MiXCR.VDJC.V08 and MiXCR.CLNS.V04; files of earlier versions never have it.</p>
+ */
+final class FooterIO {
+    static final String MAGIC = "MiXCR.FOOT.V01";
+    static final byte[] MAGIC_BYTES = MAGIC.getBytes(StandardCharsets.US_ASCII);
+    static final int TRAILER_SIZE = 8 + MAGIC_BYTES.length;
+
+    private FooterIO() {
+    }
+
+    static void writeTrailer(DataOutput output, long footerOffset) throws IOException {
+        output.writeLong(footerOffset);
+        output.write(MAGIC_BYTES);
+    }
+
+    static void readTrailer(DataInput input) throws IOException {
+        input.readLong();
+        byte[] magic = new byte[MAGIC_BYTES.length];
+        input.readFully(magic);
+        if (!MAGIC.equals(new String(magic, StandardCharsets.US_ASCII)))
+            throw new IOException("Malformed file footer.");
+    }
+
+    /**
+     * Returns stream containing footer of the file (without trailer), or null if file is compressed or its format
+     * version does not define a footer.
+     *
+     * @param file             file
+     * @param firstFooterMagic magic bytes of the first version of the format having footer
+     * @param currentMagic     magic bytes of the current version of the format
+     */
+    static DataInputStream openFooter(File file, String firstFooterMagic, String currentMagic) throws IOException {
+        if (CompressionType.detectCompressionType(file) != CompressionType.None)
+            return null;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            byte[] actualMagic = new byte[currentMagic.length()];
+            if (length < actualMagic.length + TRAILER_SIZE)
+                return null;
+            raf.readFully(actualMagic);
+            // Versions of the same format differ only in the trailing digits, so they can be compared as strings
+            String magicString = new String(actualMagic, StandardCharsets.US_ASCII);
+            if (!hasFooter(magicString, firstFooterMagic, currentMagic))
+                return null;
+            raf.seek(length - TRAILER_SIZE);
+            long offset = raf.readLong();
+            byte[] magic = new byte[MAGIC_BYTES.length];
+            raf.readFully(magic);
+            if (!MAGIC.equals(new String(magic, StandardCharsets.US_ASCII))
+                    || offset < 0 || offset > length - TRAILER_SIZE)
+                return null;
+            byte[] footer = new byte[(int) (length - TRAILER_SIZE - offset)];
+            raf.seek(offset);
+            raf.readFully(footer);
+            return new DataInputStream(new ByteArrayInputStream(footer));
+        }
+    }
+
+    /**
+     * Returns whether files with given magic bytes have footer, i.e. are of the same format as {@code currentMagic} and
+     * not older than {@code firstFooterMagic}.
+     */
+    static boolean hasFooter(String magic, String firstFooterMagic, String currentMagic) {
+        String prefix = currentMagic.substring(0, currentMagic.lastIndexOf('.') + 1);
+        return magic.startsWith(prefix) && magic.length() == currentMagic.length()
+                && magic.compareTo(firstFooterMagic) >= 0 && magic.compareTo(currentMagic) <= 0;
+    }
+
+    /**
+     * Writes per-locus counts, null means that counts are not available.
+     */
+    static void writeLocusCounts(DataOutput output, Map<Locus, Long> counts) throws IOException {
+        if (counts == null) {
+            output.writeInt(-1);
+            return;
+        }
+        output.writeInt(counts.size());
+        for (Map.Entry<Locus, Long> e : counts.entrySet()) {
+            output.writeUTF(e.getKey().getId());
+            output.writeLong(e.getValue());
+        }
+    }
+
+    static EnumMap<Locus, Long> readLocusCounts(DataInput input) throws IOException {
+        int size = input.readInt();
+        if (size < 0)
+            return null;
+        EnumMap<Locus, Long> counts = new EnumMap<>(Locus.class);
+        for (int i = 0; i < size; i++) {
+            Locus locus = Locus.fromId(input.readUTF());
+            long count = input.readLong();
+            if (locus != null)
+                counts.put(locus, count);
+        }
+        return counts;
+    }
+
+    static void increment(EnumMap<Locus, Long> counts, Locus locus, long value) {
+        Long count = counts.get(locus);
+        counts.put(locus, count == null ? value : count + value);
+    }
+
+    private static final GeneType[] LOCUS_DETERMINING_GENES = {GeneType.Variable, GeneType.Joining,
+            GeneType.Constant, GeneType.Diversity};
+
+    /**
+     * Returns locus of the best hit of the first gene type (in order V, J, C, D) having hits.
+     */
+    static Locus getLocus(VDJCObject object) {
+        for (GeneType geneType : LOCUS_DETERMINING_GENES) {
+            VDJCHit hit = object.getBestHit(geneType);
+            if (hit != null)
+                return hit.getAllele().getLocus();
+        }
+        return null;
+    }
+}
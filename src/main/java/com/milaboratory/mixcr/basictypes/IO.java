@@ -39,6 +39,7 @@ import com.milaboratory.primitivio.PrimitivO;
 import com.milaboratory.primitivio.Serializer;
 
 import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.Map;
 
 class IO {
@@ -80,10 +81,10 @@ class IO {
         @Override
         public void write(PrimitivO output, VDJCAlignments object) {
             output.writeObject(object.targets);
-            output.writeObject(object.descriptions);
-            output.writeObject(object.originalSequences);
-            output.writeByte(object.hits.size());
-            for (Map.Entry<GeneType, VDJCHit[]> entry : object.hits.entrySet()) {
+            output.writeObject(object.getDescriptions());
+            output.writeObject(object.getOriginalSequences());
+            output.writeByte(object.getHitsMap().size());
+            for (Map.Entry<GeneType, VDJCHit[]> entry : object.getHitsMap().entrySet()) {
                 output.writeObject(entry.getKey());
                 output.writeObject(entry.getValue());
             }
@@ -118,6 +119,84 @@ class IO {
         }
     }
 
+    /**
+     * Serializer for MiXCR.VDJC.V07 and later formats. Optional parts of the record are written as independent
+     * length-prefixed sections (see {@link AlignmentsSectionsCodec}), so they can be skipped or decoded lazily on read.
+     */
+    public static final class VDJCAlignmentsSerializerV7 implements Serializer<VDJCAlignments> {
+        final AlignmentsSectionsCodec codec;
+        final boolean loadHits, loadDescriptions, loadOriginalSequences;
+        final byte[] scratch = new byte[4096];
+        // Set by reader that captures serialized form of records; used to locate read id and descriptions inside
+        // raw record
+        RecordingInputStream recording;
+        int readIdPosition = -1, descriptionsPosition = -1, descriptionsEnd = -1;
+        // Descriptions of the last read record, if decoded
+        String[] decodedDescriptions;
+        // Set by reader to decode tokenized descriptions excluded from projection (needed to re-encode raw records);
+        // must be set before the first record is read
+        boolean decodeDescriptions;
+
+        public VDJCAlignmentsSerializerV7(AlignmentsSectionsCodec codec) {
+            this(codec, EnumSet.allOf(VDJCAlignmentsSection.class));
+        }
+
+        public VDJCAlignmentsSerializerV7(AlignmentsSectionsCodec codec, EnumSet<VDJCAlignmentsSection> projection) {
+            this.codec = codec;
+            this.loadHits = projection.contains(VDJCAlignmentsSection.Hits);
+            this.loadDescriptions = projection.contains(VDJCAlignmentsSection.Descriptions);
+            this.loadOriginalSequences = projection.contains(VDJCAlignmentsSection.OriginalSequences);
+            this.decodeDescriptions = loadDescriptions;
+        }
+
+        @Override
+        public void write(PrimitivO output, VDJCAlignments object) {
+            output.writeObject(object.targets);
+            output.writeLong(object.readId);
+            codec.writeSections(output, object);
+        }
+
+        @Override
+        public VDJCAlignments read(PrimitivI input) {
+            codec.beginDecodedRecord();
+            NSequenceWithQuality[] targets = input.readObject(NSequenceWithQuality[].class);
+            long readId = input.readLong();
+            if (recording != null)
+                readIdPosition = recording.recordedSize() - 8;
+            byte[] hits = AlignmentsSectionsCodec.readSection(input, loadHits, scratch);
+            if (recording != null)
+                descriptionsPosition = recording.recordedSize();
+            // Tokenized descriptions depend on previous records, so they are decoded either for all records or for none
+            boolean decode = loadDescriptions || codec.tokenizedDescriptions && decodeDescriptions;
+            byte[] descriptions = AlignmentsSectionsCodec.readSection(input, decode, scratch);
+            if (recording != null)
+                descriptionsEnd = recording.recordedSize();
+            byte[] originalSequences = AlignmentsSectionsCodec.readSection(input, loadOriginalSequences, scratch);
+            if (!codec.tokenizedDescriptions || !decode) {
+                decodedDescriptions = null;
+                return new VDJCAlignments(readId, targets, codec, hits, descriptions, originalSequences);
+            }
+
+            decodedDescriptions = descriptions == null ? null : codec.decodeDescriptionsSequentially(descriptions);
+            VDJCAlignments alignments = new VDJCAlignments(readId, targets, codec, hits,
+                    descriptions == null || loadDescriptions ? null : AlignmentsSectionsCodec.EXCLUDED,
+                    originalSequences);
+            if (loadDescriptions)
+                alignments.setDescriptions(decodedDescriptions);
+            return alignments;
+        }
+
+        @Override
+        public boolean isReference() {
+            return true;
+        }
+
+        @Override
+        public boolean handlesReference() {
+            return false;
+        }
+    }
+
     public static class CloneSerializer implements Serializer<Clone> {
         @Override
         public void write(PrimitivO output, Clone object) {
@@ -49,6 +49,16 @@ public class IOUtil {
         for (Allele allele : alleles)
             output.writeObject(allele.getId());
 
+        registerAlleleReferences(output, alleles, featuresToAlign);
+    }
+
+    /**
+     * Puts alleles and sequences of their aligned features as known references, without writing anything to the
+     * stream. Used to create streams that can be decoded independently with the same set of references (see {@link
+     * #registerAlleleReferences(PrimitivI, List, HasFeatureToAlign)}).
+     */
+    public static void registerAlleleReferences(PrimitivO output, List<Allele> alleles,
+                                                HasFeatureToAlign featuresToAlign) {
         // Putting alleles references and feature sequences to be serialized/deserialized as references
         for (Allele allele : alleles) {
             output.putKnownReference(allele);
@@ -60,7 +70,7 @@ public class IOUtil {
                 NucleotideSequence featureSequence = allele.getFeature(featureToAlign);
                 if (featureSequence == null)
                     continue;
-                output.putKnownReference(allele.getFeature(featuresToAlign.getFeatureToAlign(allele.getGeneType())));
+                output.putKnownReference(featureSequence);
             }
         }
     }
@@ -78,6 +88,16 @@ public class IOUtil {
             alleles.add(allele);
         }
 
+        registerAlleleReferences(input, alleles, featuresToAlign);
+
+        return alleles;
+    }
+
+    /**
+     * Input counterpart of {@link #registerAlleleReferences(PrimitivO, List, HasFeatureToAlign)}.
+     */
+    public static void registerAlleleReferences(PrimitivI input, List<Allele> alleles,
+                                                HasFeatureToAlign featuresToAlign) {
         // Putting alleles references and feature sequences to be serialized/deserialized as references
         for (Allele allele : alleles) {
             input.putKnownReference(allele);
@@ -92,8 +112,6 @@ public class IOUtil {
                 input.putKnownReference(featureSequence);
             }
         }
-
-        return alleles;
     }
 
     public static InputStream createIS(String file) throws IOException {
@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.basictypes;
+
+import com.milaboratory.core.mutations.Mutation;
+import com.milaboratory.core.mutations.Mutations;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.SequenceQuality;
+import com.milaboratory.core.sequence.SequenceQualityBuilder;
+import com.milaboratory.primitivio.PrimitivI;
+import com.milaboratory.primitivio.PrimitivO;
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Encodes original reads of alignments (see {@link VDJCAlignments#getOriginalSequences()}) relative to their targets.
+ *
+ * <p>Targets are the reads themselves, possibly reverse-complemented, or sequences merged from overlapping paired
+ * reads, so each read is written as a reference to a region of one of the targets (or of its reverse complement): read
+ * position {@code i} corresponds to position {@code i + offset} of the reference. Only differences are stored: bases
+ * out of the reference, substituted bases and runs of qualities that differ from reference qualities (e.g. in the
+ * overlap of merged reads). Reads that don't match any target are written as is. Decoding is exact.</p>
+ */
+final class OriginalReadsCodec {
+    /**
+     * Length of read fragments used to find position of the read in the target.
+     */
+    static final int SEED_LENGTH = 12;
+    static final byte LITERAL = 0, RELATIVE = 1;
+
+    private OriginalReadsCodec() {
+    }
+
+    static void encode(PrimitivO output, NSequenceWithQuality[] reads, NSequenceWithQuality[] targets) {
+        NSequenceWithQuality[] rcTargets = new NSequenceWithQuality[targets.length];
+        output.writeVarInt(reads.length);
+        for (int i = 0; i < reads.length; i++) {
+            NSequenceWithQuality read = reads[i];
+            Match match = read.size() < 2 ? null : findMatch(read.getSequence(), i, targets, rcTargets);
+            if (match == null) {
+                output.writeByte(LITERAL);
+                output.writeObject(read);
+            } else {
+                output.writeByte(RELATIVE);
+                encodeRelative(output, read, match, reference(targets, rcTargets, match.target, match.reverse));
+            }
+        }
+    }
+
+    static NSequenceWithQuality[] decode(PrimitivI input, NSequenceWithQuality[] targets) {
+        NSequenceWithQuality[] reads = new NSequenceWithQuality[input.readVarInt()];
+        for (int i = 0; i < reads.length; i++)
+            if (input.readByte() == LITERAL)
+                reads[i] = input.readObject(NSequenceWithQuality.class);
+            else
+                reads[i] = decodeRelative(input, targets);
+        return reads;
+    }
+
+    private static void encodeRelative(PrimitivO output, NSequenceWithQuality read, Match match,
+                                       NSequenceWithQuality reference) {
+        int size = read.size(), offset = match.offset;
+        int from = Math.max(0, -offset), to = Math.min(size, reference.size() - offset);
+        output.writeVarInt(match.target << 1 | (match.reverse ? 1 : 0));
+        output.writeVarInt((offset << 1) ^ (offset >> 31));
+        output.writeVarInt(size);
+
+        // Bases out of the reference
+        NucleotideSequence sequence = read.getSequence();
+        output.writeObject(sequence.getRange(0, from));
+        output.writeObject(sequence.getRange(to, size));
+
+        // Substitutions (position delta, base)
+        NucleotideSequence refSequence = reference.getSequence();
+        TIntArrayList substitutions = new TIntArrayList();
+        for (int i = from; i < to; i++)
+            if (sequence.codeAt(i) != refSequence.codeAt(i + offset))
+                substitutions.add(i);
+        output.writeVarInt(substitutions.size());
+        int previous = 0;
+        for (int j = 0; j < substitutions.size(); j++) {
+            int position = substitutions.get(j);
+            output.writeVarInt(position - previous);
+            output.writeByte(sequence.codeAt(position));
+            previous = position;
+        }
+
+        // Runs of differing qualities (gap, length, values); qualities out of the reference always differ
+        SequenceQuality quality = read.getQuality(), refQuality = reference.getQuality();
+        TIntArrayList runs = new TIntArrayList();
+        int runStart = -1;
+        for (int i = 0; i <= size; i++) {
+            boolean differs = i < size && (i < from || i >= to || quality.value(i) != refQuality.value(i + offset));
+            if (differs && runStart == -1)
+                runStart = i;
+            else if (!differs && runStart != -1) {
+                runs.add(runStart);
+                runs.add(i - runStart);
+                runStart = -1;
+            }
+        }
+        output.writeVarInt(runs.size() / 2);
+        previous = 0;
+        for (int j = 0; j < runs.size(); j += 2) {
+            int start = runs.get(j), length = runs.get(j + 1);
+            output.writeVarInt(start - previous);
+            output.writeVarInt(length);
+            for (int i = start; i < start + length; i++)
+                output.writeByte(quality.value(i));
+            previous = start + length;
+        }
+    }
+
+    private static NSequenceWithQuality decodeRelative(PrimitivI input, NSequenceWithQuality[] targets) {
+        int ref = input.readVarInt();
+        NSequenceWithQuality reference = targets[ref >>> 1];
+        if ((ref & 1) != 0)
+            reference = reference.getReverseComplement();
+        int encodedOffset = input.readVarInt();
+        int offset = (encodedOffset >>> 1) ^ -(encodedOffset & 1);
+        int size = input.readVarInt();
+        int from = Math.max(0, -offset), to = Math.min(size, reference.size() - offset);
+
+        NucleotideSequence prefix = input.readObject(NucleotideSequence.class),
+                suffix = input.readObject(NucleotideSequence.class);
+        NucleotideSequence sequence = prefix
+                .concatenate(reference.getSequence().getRange(from + offset, to + offset))
+                .concatenate(suffix);
+
+        int[] substitutions = new int[input.readVarInt()];
+        int position = 0;
+        for (int j = 0; j < substitutions.length; j++) {
+            position += input.readVarInt();
+            substitutions[j] = Mutation.createSubstitution(position, sequence.codeAt(position), input.readByte());
+        }
+        if (substitutions.length > 0)
+            sequence = new Mutations<>(NucleotideSequence.ALPHABET, substitutions).mutate(sequence);
+
+        byte[] quality = new byte[size];
+        SequenceQuality refQuality = reference.getQuality();
+        for (int i = from; i < to; i++)
+            quality[i] = refQuality.value(i + offset);
+        int runs = input.readVarInt();
+        position = 0;
+        for (int j = 0; j < runs; j++) {
+            position += input.readVarInt();
+            int length = input.readVarInt();
+            for (int i = 0; i < length; i++)
+                quality[position++] = input.readByte();
+        }
+        SequenceQualityBuilder qualityBuilder = new SequenceQualityBuilder().ensureCapacity(size);
+        for (byte q : quality)
+            qualityBuilder.append(q);
+
+        return new NSequenceWithQuality(sequence, qualityBuilder.createAndDestroy());
+    }
+
+    /* Matching */
+
+    private static NSequenceWithQuality reference(NSequenceWithQuality[] targets, NSequenceWithQuality[] rcTargets,
+                                                  int target, boolean reverse) {
+        if (!reverse)
+            return targets[target];
+        if (rcTargets[target] == null)
+            rcTargets[target] = targets[target].getReverseComplement();
+        return rcTargets[target];
+    }
+
+    /**
+     * Finds target region (in any orientation) that differs from the read in the minimal number of bases; targets are
+     * tried starting from the one with the same index as the read.
+     *
+     * @return best match or null if no target matches at least 3/4 of read bases
+     */
+    static Match findMatch(NucleotideSequence read, int readIndex, NSequenceWithQuality[] targets,
+                           NSequenceWithQuality[] rcTargets) {
+        Match best = null;
+        for (int k = 0; k < targets.length; k++) {
+            int target = (readIndex + k) % targets.length;
+            for (int r = 0; r < 2; r++) {
+                NucleotideSequence reference = reference(targets, rcTargets, target, r == 1).getSequence();
+                best = matchOffsets(read, reference, target, r == 1, best);
+                if (best != null && best.cost == 0)
+                    return best;
+            }
+        }
+        return best == null || best.cost > read.size() / 4 ? null : best;
+    }
+
+    private static Match matchOffsets(NucleotideSequence read, NucleotideSequence reference, int target,
+                                      boolean reverse, Match best) {
+        best = tryOffset(read, reference, target, reverse, 0, best);
+        if (read.size() < SEED_LENGTH)
+            return best;
+        int[] seeds = {0, (read.size() - SEED_LENGTH) / 2, read.size() - SEED_LENGTH};
+        for (int seed : seeds) {
+            if (best != null && best.cost == 0)
+                return best;
+            int position = indexOf(reference, read, seed);
+            if (position != -1 && position != seed)
+                best = tryOffset(read, reference, target, reverse, position - seed, best);
+        }
+        return best;
+    }
+
+    private static Match tryOffset(NucleotideSequence read, NucleotideSequence reference, int target,
+                                   boolean reverse, int offset, Match best) {
+        int size = read.size();
+        int from = Math.max(0, -offset), to = Math.min(size, reference.size() - offset);
+        if (to - from < (size + 1) / 2)
+            return best;
+        int maxCost = best == null ? Integer.MAX_VALUE : best.cost;
+        int cost = size - (to - from);
+        for (int i = from; i < to && cost < maxCost; i++)
+            if (read.codeAt(i) != reference.codeAt(i + offset))
+                ++cost;
+        return cost < maxCost ? new Match(target, reverse, offset, cost) : best;
+    }
+
+    /**
+     * Returns first position of read fragment [seed, seed + SEED_LENGTH) in the reference or -1.
+     */
+    private static int indexOf(NucleotideSequence reference, NucleotideSequence read, int seed) {
+        OUT:
+        for (int i = 0; i <= reference.size() - SEED_LENGTH; i++) {
+            for (int j = 0; j < SEED_LENGTH; j++)
+                if (reference.codeAt(i + j) != read.codeAt(seed + j))
+                    continue OUT;
+            return i;
+        }
+        return -1;
+    }
+
+    static final class Match {
+        final int target;
+        final boolean reverse;
+        final int offset;
+        /**
+         * Number of bases that are not taken from the reference
+         */
+        final int cost;
+
+        Match(int target, boolean reverse, int offset, int cost) {
+            this.target = target;
+            this.reverse = reverse;
+            this.offset = offset;
+            this.cost = cost;
+        }
+    }
+}
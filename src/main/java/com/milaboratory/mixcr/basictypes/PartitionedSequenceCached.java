@@ -31,22 +31,63 @@ package com.milaboratory.mixcr.basictypes;
 import com.milaboratory.core.sequence.Seq;
 import com.milaboratory.mixcr.reference.GeneFeature;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Created by dbolotin on 26/06/14.
  */
 public abstract class PartitionedSequenceCached<S extends Seq<S>> extends PartitionedSequence<S> {
     private static final Object NULL_SEQUENCE = new Object();
-    final ConcurrentHashMap<GeneFeature, Object> cache = new ConcurrentHashMap<>();
+    // Marks slots of a table that was replaced by a larger one
+    private static final Object MOVED = new Object();
+    private static final int INITIAL_CACHE_SIZE = 8;
+
+    /**
+     * Cached features indexed by {@link GeneFeature#getId()}. Lookups and publication of computed values are
+     * lock-free, only table growth (which happens a few times per object at most) is performed under lock.
+     */
+    private volatile AtomicReferenceArray<Object> cache;
 
     @Override
-    public synchronized S getFeature(GeneFeature feature) {
-        Object seq;
-        // (IMPORTANT) Exactly the same reference must be returned for the same input for correct serialization/deserialization
-        if ((seq = cache.get(feature)) == null && !cache.containsKey(feature))
-            cache.put(feature, (seq = super.getFeature(feature)) == null ? NULL_SEQUENCE : seq);
-        return seq == NULL_SEQUENCE ? null : (S) seq;
+    public S getFeature(GeneFeature feature) {
+        final int id = feature.getId();
+        Object seq = null;
+        while (true) {
+            AtomicReferenceArray<Object> cache = this.cache;
+            if (cache == null || id >= cache.length()) {
+                growCache(cache, id);
+                continue;
+            }
+
+            Object value = cache.get(id);
+            if (value == MOVED)
+                continue;
+            if (value != null)
+                return value == NULL_SEQUENCE ? null : (S) value;
+
+            if (seq == null)
+                seq = (seq = super.getFeature(feature)) == null ? NULL_SEQUENCE : seq;
+
+            // (IMPORTANT) Exactly the same reference must be returned for the same input for correct
+            // serialization/deserialization, so value computed by other thread wins if it was published first
+            if (cache.compareAndSet(id, null, seq))
+                return seq == NULL_SEQUENCE ? null : (S) seq;
+        }
     }
-}
 
+    private synchronized void growCache(AtomicReferenceArray<Object> old, int id) {
+        if (cache != old)
+            return;
+
+        int size = old == null ? INITIAL_CACHE_SIZE : old.length();
+        while (size <= id)
+            size <<= 1;
+
+        AtomicReferenceArray<Object> newCache = new AtomicReferenceArray<>(size);
+        if (old != null)
+            // Freezing old slots guarantees that no value is published to the old table after it was copied
+            for (int i = 0; i < old.length(); ++i)
+                newCache.set(i, old.getAndSet(i, MOVED));
+        cache = newCache;
+    }
+}
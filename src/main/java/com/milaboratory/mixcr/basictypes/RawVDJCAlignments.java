@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.basictypes;
+
+/**
+ * Alignments record together with its serialized form, as stored in .vdjca file. Serialized form can be written
+ * as is (see {@link VDJCAlignmentsWriter#writeRaw(byte[])}) into a file with the same header (aligner parameters and
+ * alleles), avoiding re-encoding of the record.
+ */
+public final class RawVDJCAlignments {
+    final VDJCAlignments alignments;
+    final byte[] data;
+    // position of big-endian read id inside data
+    final int readIdPosition;
+    // descriptions section (encoded without context of previous records) and its decoded content
+    final int descriptionsPosition, descriptionsEnd;
+    final String[] descriptions;
+
+    RawVDJCAlignments(VDJCAlignments alignments, byte[] data, int readIdPosition,
+                      int descriptionsPosition, int descriptionsEnd, String[] descriptions) {
+        this.alignments = alignments;
+        this.data = data;
+        this.readIdPosition = readIdPosition;
+        this.descriptionsPosition = descriptionsPosition;
+        this.descriptionsEnd = descriptionsEnd;
+        this.descriptions = descriptions;
+    }
+
+    public VDJCAlignments getAlignments() {
+        return alignments;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+}
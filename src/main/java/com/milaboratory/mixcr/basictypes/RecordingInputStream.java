@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.basictypes;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Input stream that can record all bytes passing through it. Used to capture serialized form of records while they
+ * are deserialized.
+ */
+final class RecordingInputStream extends FilterInputStream {
+    private byte[] buffer = new byte[1024];
+    private int size;
+    private boolean recording;
+
+    RecordingInputStream(InputStream in) {
+        super(in);
+    }
+
+    void startRecording() {
+        size = 0;
+        recording = true;
+    }
+
+    /**
+     * Returns number of bytes recorded since last {@link #startRecording()}.
+     */
+    int recordedSize() {
+        return size;
+    }
+
+    byte[] stopRecording() {
+        recording = false;
+        return Arrays.copyOf(buffer, size);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (buffer.length < capacity)
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (recording && b >= 0) {
+            ensureCapacity(size + 1);
+            buffer[size++] = (byte) b;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (recording && n > 0) {
+            ensureCapacity(size + n);
+            System.arraycopy(b, off, buffer, size, n);
+            size += n;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (!recording)
+            return in.skip(n);
+        // skipped bytes must be recorded too
+        byte[] tmp = new byte[(int) Math.min(n, 4096)];
+        int read = read(tmp, 0, tmp.length);
+        return read < 0 ? 0 : read;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
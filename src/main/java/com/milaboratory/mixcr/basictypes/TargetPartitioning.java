@@ -33,25 +33,45 @@ import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.mixcr.reference.GeneType;
 import com.milaboratory.mixcr.reference.ReferencePoint;
 
+import java.util.Arrays;
 import java.util.EnumMap;
 
 public final class TargetPartitioning extends SequencePartitioning {
     final int targetIndex;
     final EnumMap<GeneType, VDJCHit> hits;
+    /**
+     * Positions of reference points with zero offset, indexed by {@link ReferencePoint#getBasicPointIndex()}. Filled
+     * on first request of each point; concurrent fills are benign since computed values are deterministic.
+     */
+    private final int[] positions = new int[ReferencePoint.TOTAL_NUMBER_OF_BASIC_POINTS];
 
     public TargetPartitioning(int targetIndex, VDJCHit hit) {
         this.targetIndex = targetIndex;
         this.hits = new EnumMap<>(GeneType.class);
         this.hits.put(hit.getGeneType(), hit);
+        Arrays.fill(positions, NOT_CALCULATED);
     }
 
     public TargetPartitioning(int targetIndex, EnumMap<GeneType, VDJCHit> hits) {
         this.targetIndex = targetIndex;
         this.hits = hits;
+        Arrays.fill(positions, NOT_CALCULATED);
     }
 
+    private static final int NOT_CALCULATED = Integer.MIN_VALUE;
+
     @Override
     public int getPosition(ReferencePoint referencePoint) {
+        if (!referencePoint.hasNoOffset())
+            return calculatePosition(referencePoint);
+        int index = referencePoint.getBasicPointIndex();
+        int position = positions[index];
+        if (position == NOT_CALCULATED)
+            positions[index] = position = calculatePosition(referencePoint);
+        return position;
+    }
+
+    private int calculatePosition(ReferencePoint referencePoint) {
         VDJCHit hit = hits.get(referencePoint.getGeneType());
         if (hit == null)
             return -1;
@@ -32,6 +32,7 @@ import com.milaboratory.core.sequence.NSequenceWithQuality;
 import com.milaboratory.mixcr.reference.GeneType;
 import com.milaboratory.primitivio.annotations.Serializable;
 
+import java.util.Arrays;
 import java.util.EnumMap;
 
 @Serializable(by = IO.VDJCAlignmentsSerializer.class)
@@ -41,27 +42,46 @@ public final class VDJCAlignments extends VDJCObject {
     final long readId;
     private volatile long alignmentsIndex = -1;
 
+    // Raw sections of records read from MiXCR.VDJC.V07+ files, decoded on first access (see AlignmentsSectionsCodec)
+    final AlignmentsSectionsCodec codec;
+    private volatile byte[] hitsData, descriptionsData, originalSequencesData;
+    private volatile EnumMap<GeneType, VDJCHit[]> decodedHits;
+
     public VDJCAlignments(long readId, long alignmentsIndex, VDJCAlignments alignments) {
-        super(alignments.hits, alignments.targets);
+        super(alignments.getHitsMap(), alignments.targets);
         this.readId = readId;
         this.alignmentsIndex = alignmentsIndex;
-        this.descriptions = alignments.descriptions;
+        this.descriptions = alignments.getDescriptions();
+        this.codec = null;
+    }
+
+    VDJCAlignments(long readId, NSequenceWithQuality[] targets, AlignmentsSectionsCodec codec,
+                   byte[] hitsData, byte[] descriptionsData, byte[] originalSequencesData) {
+        super((EnumMap<GeneType, VDJCHit[]>) null, targets);
+        this.readId = readId;
+        this.codec = codec;
+        this.hitsData = hitsData;
+        this.descriptionsData = descriptionsData;
+        this.originalSequencesData = originalSequencesData;
     }
 
     public VDJCAlignments(long readId, EnumMap<GeneType, VDJCHit[]> hits, NSequenceWithQuality target) {
         super(hits, new NSequenceWithQuality[]{target});
         this.readId = readId;
+        this.codec = null;
     }
 
     public VDJCAlignments(long readId, EnumMap<GeneType, VDJCHit[]> hits, NSequenceWithQuality... targets) {
         super(hits, targets);
         this.readId = readId;
+        this.codec = null;
     }
 
     public VDJCAlignments(long readId, VDJCHit[] vHits, VDJCHit[] dHits, VDJCHit[] jHits, VDJCHit[] cHits,
                           NSequenceWithQuality... targets) {
         super(vHits, dHits, jHits, cHits, targets);
         this.readId = readId;
+        this.codec = null;
     }
 
     public long getReadId() {
@@ -78,20 +98,76 @@ public final class VDJCAlignments extends VDJCObject {
 
     public void setDescriptions(String[] description) {
         this.descriptions = description;
+        this.descriptionsData = null;
     }
 
     public String[] getDescriptions() {
+        if (descriptionsData != null)
+            decodeDescriptions();
         return descriptions;
     }
 
     public void setOriginalSequences(NSequenceWithQuality[] originalSequences) {
         this.originalSequences = originalSequences;
+        this.originalSequencesData = null;
     }
 
     public NSequenceWithQuality[] getOriginalSequences() {
+        if (originalSequencesData != null)
+            decodeOriginalSequences();
         return originalSequences;
     }
 
+    @Override
+    EnumMap<GeneType, VDJCHit[]> getHitsMap() {
+        if (hits != null)
+            return hits;
+        EnumMap<GeneType, VDJCHit[]> result = decodedHits;
+        if (result == null)
+            result = decodeHits();
+        return result;
+    }
+
+    private synchronized EnumMap<GeneType, VDJCHit[]> decodeHits() {
+        if (decodedHits == null) {
+            checkLoaded(hitsData, VDJCAlignmentsSection.Hits);
+            decodedHits = codec.decodeHits(hitsData);
+            hitsData = null;
+        }
+        return decodedHits;
+    }
+
+    /**
+     * Returns true if hits of this record are available, i.e. were not excluded from projection of the reader.
+     */
+    boolean isHitsLoaded() {
+        return hits != null || hitsData != AlignmentsSectionsCodec.EXCLUDED;
+    }
+
+    private synchronized void decodeDescriptions() {
+        byte[] data = descriptionsData;
+        if (data == null)
+            return;
+        checkLoaded(data, VDJCAlignmentsSection.Descriptions);
+        descriptions = codec.decodeDescriptions(data);
+        descriptionsData = null;
+    }
+
+    private synchronized void decodeOriginalSequences() {
+        byte[] data = originalSequencesData;
+        if (data == null)
+            return;
+        checkLoaded(data, VDJCAlignmentsSection.OriginalSequences);
+        originalSequences = codec.decodeOriginalSequences(data, targets);
+        originalSequencesData = null;
+    }
+
+    private static void checkLoaded(byte[] data, VDJCAlignmentsSection section) {
+        if (data == AlignmentsSectionsCodec.EXCLUDED)
+            throw new IllegalStateException(section + " section was not loaded: it is excluded from projection " +
+                    "of the reader (see VDJCAlignmentsReader.setProjection).");
+    }
+
     /**
      * Returns {@code true} if at least ont V and one J hit among first {@code top} hits have same locus and false
      * otherwise (first {@code top} V hits have different locus from those have first {@code top} J hits).
@@ -101,6 +177,7 @@ public final class VDJCAlignments extends VDJCObject {
      * otherwise (first {@code top} V hits have different locus from those have first {@code top} J hits)
      */
     public final boolean hasSameVJLoci(final int top) {
+        EnumMap<GeneType, VDJCHit[]> hits = getHitsMap();
         VDJCHit[] vHits = hits.get(GeneType.Variable),
                 jHits = hits.get(GeneType.Joining);
         for (int v = 0; v < actualTop(vHits, top); ++v)
@@ -121,22 +198,32 @@ public final class VDJCAlignments extends VDJCObject {
         return top;
     }
 
+    /**
+     * Records are compared by read id, targets and hits. Hits take part in comparison only if they are loaded: a
+     * record read with a projection excluding {@link VDJCAlignmentsSection#Hits} is equal only to records which
+     * also have no hits loaded and have same read id and targets.
+     */
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof VDJCAlignments)) return false;
-        if (!super.equals(o)) return false;
 
         VDJCAlignments that = (VDJCAlignments) o;
 
         if (readId != that.readId) return false;
 
-        return true;
+        boolean hitsLoaded = isHitsLoaded();
+        if (hitsLoaded != that.isHitsLoaded()) return false;
+
+        if (hitsLoaded)
+            return super.equals(o);
+
+        return Arrays.equals(targets, that.targets);
     }
 
     @Override
     public int hashCode() {
-        int result = super.hashCode();
+        int result = isHitsLoaded() ? super.hashCode() : Arrays.hashCode(targets);
         result = 31 * result + (int) (readId ^ (readId >>> 32));
         return result;
     }
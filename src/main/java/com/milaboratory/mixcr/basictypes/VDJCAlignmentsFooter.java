@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.basictypes;
+
+import com.milaboratory.mixcr.reference.Locus;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Summary of .vdjca file stored at its end: number of records and processed reads, hash of aligner parameters, number
+ * of alignments per locus and positions of every {@link #getBlockSize()}-th record in the file.
+ *
+ * <p>Footer of uncompressed file can be read without scanning the file (see {@link #read(File)}).</p>
+ */
+public final class VDJCAlignmentsFooter {
+    /**
+     * Number of records between two consecutive entries of the block index
+     */
+    static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    final long numberOfRecords;
+    final long numberOfProcessedReads;
+    final int parametersHash;
+    final EnumMap<Locus, Long> locusCounts;
+    final int blockSize;
+    final long[] blockOffsets;
+
+    VDJCAlignmentsFooter(long numberOfRecords, long numberOfProcessedReads, int parametersHash,
+                         EnumMap<Locus, Long> locusCounts, int blockSize, long[] blockOffsets) {
+        this.numberOfRecords = numberOfRecords;
+        this.numberOfProcessedReads = numberOfProcessedReads;
+        this.parametersHash = parametersHash;
+        this.locusCounts = locusCounts;
+        this.blockSize = blockSize;
+        this.blockOffsets = blockOffsets;
+    }
+
+    /**
+     * Returns total number of alignments in the file.
+     */
+    public long getNumberOfRecords() {
+        return numberOfRecords;
+    }
+
+    /**
+     * Returns number of reads processed to produce the file.
+     */
+    public long getNumberOfProcessedReads() {
+        return numberOfProcessedReads;
+    }
+
+    /**
+     * Returns CRC32 of serialized aligner parameters. Files with equal hashes are produced with the same parameters
+     * (with high probability).
+     */
+    public int getParametersHash() {
+        return parametersHash;
+    }
+
+    /**
+     * Returns number of alignments per locus (locus of the best V hit, or J, C, D hit if V hit is absent).
+     *
+     * @return number of alignments per locus or null if hits were not available when the file was written
+     */
+    public Map<Locus, Long> getLocusCounts() {
+        return locusCounts == null ? null : Collections.unmodifiableMap(locusCounts);
+    }
+
+    /**
+     * Returns number of records between two consecutive entries of the block index.
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Returns number of entries in the block index.
+     */
+    public int getNumberOfBlocks() {
+        return blockOffsets.length;
+    }
+
+    /**
+     * Returns offset of the record with index {@code block * getBlockSize()} in the uncompressed stream.
+     */
+    public long getBlockOffset(int block) {
+        return blockOffsets[block];
+    }
+
+    void write(DataOutput output) throws IOException {
+        output.writeLong(numberOfRecords);
+        output.writeLong(numberOfProcessedReads);
+        output.writeInt(parametersHash);
+        FooterIO.writeLocusCounts(output, locusCounts);
+        output.writeInt(blockSize);
+        output.writeInt(blockOffsets.length);
+        for (long offset : blockOffsets)
+            output.writeLong(offset);
+    }
+
+    static VDJCAlignmentsFooter read(DataInput input) throws IOException {
+        long numberOfRecords = input.readLong();
+        long numberOfProcessedReads = input.readLong();
+        int parametersHash = input.readInt();
+        EnumMap<Locus, Long> locusCounts = FooterIO.readLocusCounts(input);
+        int blockSize = input.readInt();
+        long[] blockOffsets = new long[input.readInt()];
+        for (int i = 0; i < blockOffsets.length; i++)
+            blockOffsets[i] = input.readLong();
+        return new VDJCAlignmentsFooter(numberOfRecords, numberOfProcessedReads, parametersHash,
+                locusCounts, blockSize, blockOffsets);
+    }
+
+    /**
+     * Reads footer of .vdjca file without reading its content.
+     *
+     * @param file .vdjca file
+     * @return footer or null if file is compressed or is of a format version without footer (before
+     * MiXCR.VDJC.V08)
+     */
+    public static VDJCAlignmentsFooter read(File file) throws IOException {
+        try (DataInputStream input = FooterIO.openFooter(file, VDJCAlignmentsWriter.MAGIC_V8,
+                VDJCAlignmentsWriter.MAGIC)) {
+            return input == null ? null : read(input);
+        }
+    }
+}
@@ -39,6 +39,7 @@ import com.milaboratory.util.CanReportProgress;
 import com.milaboratory.util.CountingInputStream;
 
 import java.io.*;
+import java.util.EnumSet;
 import java.util.List;
 
 import static com.milaboratory.mixcr.basictypes.CompatibilityIO.registerV3Serializers;
@@ -57,6 +58,11 @@ public class VDJCAlignmentsReader implements OutputPortCloseable<VDJCAlignments>
     long counter = 0;
     final long size;
     final CountingInputStream countingInputStream;
+    final RecordingInputStream recordingInputStream;
+    EnumSet<VDJCAlignmentsSection> projection = EnumSet.allOf(VDJCAlignmentsSection.class);
+    IO.VDJCAlignmentsSerializerV7 serializer;
+    boolean recordsTaken = false;
+    VDJCAlignmentsFooter footer;
 
     public VDJCAlignmentsReader(String fileName, AlleleResolver alleleResolver) throws IOException {
         this(new File(fileName), alleleResolver);
@@ -66,9 +72,10 @@ public class VDJCAlignmentsReader implements OutputPortCloseable<VDJCAlignments>
         CompressionType ct = CompressionType.detectCompressionType(file);
         this.countingInputStream = new CountingInputStream(new FileInputStream(file));
         if (ct == CompressionType.None)
-            this.input = new PrimitivI(new BufferedInputStream(countingInputStream, 65536));
+            this.recordingInputStream = new RecordingInputStream(new BufferedInputStream(countingInputStream, 65536));
         else
-            this.input = new PrimitivI(ct.createInputStream(countingInputStream, 65536));
+            this.recordingInputStream = new RecordingInputStream(ct.createInputStream(countingInputStream, 65536));
+        this.input = new PrimitivI(recordingInputStream);
         this.alleleResolver = alleleResolver;
         this.size = file.length();
     }
@@ -78,7 +85,8 @@ public class VDJCAlignmentsReader implements OutputPortCloseable<VDJCAlignments>
     }
 
     public VDJCAlignmentsReader(InputStream input, AlleleResolver alleleResolver, long size) {
-        this.input = new PrimitivI(countingInputStream = new CountingInputStream(input));
+        this.input = new PrimitivI(recordingInputStream =
+                new RecordingInputStream(countingInputStream = new CountingInputStream(input)));
         this.alleleResolver = alleleResolver;
         this.size = size;
     }
@@ -102,6 +110,9 @@ public class VDJCAlignmentsReader implements OutputPortCloseable<VDJCAlignments>
             case MAGIC_V5:
                 registerV5Serializers(serializersManager);
                 break;
+            case MAGIC_V6:
+            case MAGIC_V7:
+            case MAGIC_V8:
             case MAGIC:
                 break;
             default:
@@ -114,6 +125,65 @@ public class VDJCAlignmentsReader implements OutputPortCloseable<VDJCAlignments>
         parameters = input.readObject(VDJCAlignerParameters.class);
 
         this.usedAlleles = IOUtil.readAlleleReferences(input, alleleResolver, parameters);
+
+        if (magicString.compareTo(MAGIC_V7) >= 0) {
+            serializer = new IO.VDJCAlignmentsSerializerV7(new AlignmentsSectionsCodec(parameters, usedAlleles,
+                    magicString), projection);
+            serializer.recording = recordingInputStream;
+            serializersManager.registerCustomSerializer(VDJCAlignments.class, serializer);
+        }
+    }
+
+    /**
+     * Creates reader of records of uncompressed file starting from the given entry of its block index (see {@link
+     * VDJCAlignmentsFooter#getBlockOffset(int)}). Header is read from the beginning of the file, so several such
+     * readers can be used to process different parts of the same file concurrently; records of each block of
+     * MiXCR.VDJC.V08+ files are decoded independently of previous blocks. Reader does not stop at the end of the
+     * block, caller must take not more than {@link VDJCAlignmentsFooter#getBlockSize()} records to read exactly one
+     * block. Record indices continue from the index of the first record of the block.
+     *
+     * @param file           uncompressed file having footer
+     * @param alleleResolver allele resolver
+     * @param footer         footer of the file
+     * @param block          index of the block
+     */
+    public static VDJCAlignmentsReader openBlock(File file, AlleleResolver alleleResolver,
+                                                 VDJCAlignmentsFooter footer, int block) throws IOException {
+        byte[] header = new byte[(int) footer.getBlockOffset(0)];
+        long offset = footer.getBlockOffset(block);
+        FileInputStream tail = new FileInputStream(file);
+        try {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                raf.readFully(header);
+            }
+            tail.getChannel().position(offset);
+        } catch (IOException | RuntimeException e) {
+            tail.close();
+            throw e;
+        }
+        VDJCAlignmentsReader reader = new VDJCAlignmentsReader(new BufferedInputStream(
+                new SequenceInputStream(new ByteArrayInputStream(header), tail), 65536),
+                alleleResolver, header.length + file.length() - offset);
+        reader.counter = (long) block * footer.getBlockSize();
+        return reader;
+    }
+
+    /**
+     * Sets parts of records that will be available in alignments returned by this reader. Sections excluded from
+     * projection are skipped without decoding and an exception is thrown on attempt to access them; included sections
+     * are decoded on first access. Has no effect for files written in formats prior to MiXCR.VDJC.V07, where all
+     * sections are always decoded. Descriptions in MiXCR.VDJC.V09+ files are encoded relative to previous records,
+     * so they are decoded for each record if included; if excluded, they are decoded only when records are read with
+     * {@link #takeRaw()}, which re-encodes them.
+     *
+     * <p>Must be called before the first record or header is read.</p>
+     *
+     * @param projection sections to load
+     */
+    public synchronized void setProjection(EnumSet<VDJCAlignmentsSection> projection) {
+        if (usedAlleles != null)
+            throw new IllegalStateException("Projection must be set before reading.");
+        this.projection = EnumSet.copyOf(projection);
     }
 
     public synchronized VDJCAlignerParameters getParameters() {
@@ -148,6 +218,16 @@ public class VDJCAlignmentsReader implements OutputPortCloseable<VDJCAlignments>
         return numberOfReads;
     }
 
+    /**
+     * Returns footer of the file. Available after all records were read, and only for files of format version
+     * MiXCR.VDJC.V08 or newer (see {@link VDJCAlignmentsFooter#read(File)} to read footer without reading records).
+     *
+     * @return footer of the file or null
+     */
+    public VDJCAlignmentsFooter getFooter() {
+        return footer;
+    }
+
     @Override
     public double getProgress() {
         if (size == 0)
@@ -173,9 +253,16 @@ public class VDJCAlignmentsReader implements OutputPortCloseable<VDJCAlignments>
             // If all alignments are read
             // footer with number of reads processed to produce this
             // file can be read form the stream.
-            if (onEnd)
+            if (onEnd) {
                 numberOfReads = input.readLong();
+                if (FooterIO.hasFooter(magic, MAGIC_V8, MAGIC)) {
+                    footer = VDJCAlignmentsFooter.read(input);
+                    FooterIO.readTrailer(input);
+                }
+            }
             input.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         } finally {
             closed = true;
         }
@@ -189,6 +276,7 @@ public class VDJCAlignmentsReader implements OutputPortCloseable<VDJCAlignments>
         init();
 
         VDJCAlignments alignments = input.readObject(VDJCAlignments.class);
+        recordsTaken = true;
 
         if (alignments == null)
             close(true);
@@ -197,4 +285,65 @@ public class VDJCAlignmentsReader implements OutputPortCloseable<VDJCAlignments>
 
         return alignments;
     }
+
+    /**
+     * Returns true if serialized form of records can be obtained with {@link #takeRaw()}, i.e. file is written in
+     * current format.
+     */
+    public synchronized boolean isRawRecordsSupported() {
+        init();
+        return MAGIC.equals(magic);
+    }
+
+    /**
+     * Reads next record together with its serialized form. Supported only for files in current format (see {@link
+     * #isRawRecordsSupported()}).
+     *
+     * @return next record with its serialized form or null if no more records
+     */
+    public synchronized RawVDJCAlignments takeRaw() {
+        if (closed)
+            return null;
+
+        if (!isRawRecordsSupported())
+            throw new IllegalStateException("Raw records are supported only for files of version " + MAGIC);
+
+        // Descriptions are needed to re-encode raw record; they can be decoded only starting from the first record
+        if (!serializer.decodeDescriptions) {
+            if (recordsTaken)
+                throw new IllegalStateException("Raw records can't be read after take() if descriptions are " +
+                        "excluded from projection.");
+            serializer.decodeDescriptions = true;
+        }
+        recordsTaken = true;
+
+        VDJCAlignments alignments;
+        byte[] data;
+        recordingInputStream.startRecording();
+        try {
+            alignments = input.readObject(VDJCAlignments.class);
+        } finally {
+            data = recordingInputStream.stopRecording();
+        }
+
+        if (alignments == null) {
+            close(true);
+            return null;
+        }
+
+        alignments.setAlignmentsIndex(counter++);
+
+        // Descriptions section is replaced with one encoded without context of previous records, so that the record
+        // can be written into any position of other file
+        String[] descriptions = serializer.decodedDescriptions;
+        byte[] descriptionsSection = AlignmentsSectionsCodec.standaloneDescriptionsSection(descriptions);
+        int descriptionsPosition = serializer.descriptionsPosition, descriptionsEnd = serializer.descriptionsEnd;
+        byte[] raw = new byte[data.length - (descriptionsEnd - descriptionsPosition) + descriptionsSection.length];
+        System.arraycopy(data, 0, raw, 0, descriptionsPosition);
+        System.arraycopy(descriptionsSection, 0, raw, descriptionsPosition, descriptionsSection.length);
+        System.arraycopy(data, descriptionsEnd, raw, descriptionsPosition + descriptionsSection.length,
+                data.length - descriptionsEnd);
+        return new RawVDJCAlignments(alignments, raw, serializer.readIdPosition,
+                descriptionsPosition, descriptionsPosition + descriptionsSection.length, descriptions);
+    }
 }
@@ -29,28 +29,46 @@
 package com.milaboratory.mixcr.basictypes;
 
 import com.milaboratory.mixcr.reference.Allele;
+import com.milaboratory.mixcr.reference.Locus;
 import com.milaboratory.mixcr.util.VersionInfoProvider;
 import com.milaboratory.mixcr.vdjaligners.VDJCAligner;
 import com.milaboratory.mixcr.vdjaligners.VDJCAlignerParameters;
 import com.milaboratory.primitivio.PrimitivO;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
 
 public final class VDJCAlignmentsWriter implements AutoCloseable {
     static final String MAGIC_V3 = "MiXCR.VDJC.V03";
     static final String MAGIC_V4 = "MiXCR.VDJC.V04";
     static final String MAGIC_V5 = "MiXCR.VDJC.V05";
     static final String MAGIC_V6 = "MiXCR.VDJC.V06";
-    static final String MAGIC = MAGIC_V6;
+    static final String MAGIC_V7 = "MiXCR.VDJC.V07";
+    static final String MAGIC_V8 = "MiXCR.VDJC.V08";
+    static final String MAGIC_V9 = "MiXCR.VDJC.V09";
+    static final String MAGIC = MAGIC_V9;
     static final int MAGIC_LENGTH = 14;
     static final byte[] MAGIC_BYTES = MAGIC.getBytes(StandardCharsets.US_ASCII);
+    final CountingOutputStream countingOutput;
     final PrimitivO output;
     long numberOfProcessedReads = -1;
     boolean header = false, closed = false;
+    AlignmentsSectionsCodec codec;
+    // Footer data
+    int parametersHash;
+    long numberOfRecords = 0;
+    long[] blockOffsets = new long[16];
+    int numberOfBlocks = 0;
+    final EnumMap<Locus, Long> locusCounts = new EnumMap<>(Locus.class);
+    boolean locusCountsAvailable = true, addedLocusCounts = false, recordsWithoutHits = false;
 
     public VDJCAlignmentsWriter(String fileName) throws IOException {
         this(new File(fileName));
@@ -61,7 +79,7 @@ public final class VDJCAlignmentsWriter implements AutoCloseable {
     }
 
     public VDJCAlignmentsWriter(OutputStream output) {
-        this.output = new PrimitivO(output);
+        this.output = new PrimitivO(this.countingOutput = new CountingOutputStream(output));
     }
 
     public void setNumberOfProcessedReads(long numberOfProcessedReads) {
@@ -90,9 +108,15 @@ public final class VDJCAlignmentsWriter implements AutoCloseable {
 
         // Writing parameters
         output.writeObject(parameters);
+        parametersHash = parametersHash(parameters);
 
         IOUtil.writeAlleleReferences(output, alleles, parameters);
 
+        // Records are written with independently decodable sections
+        codec = new AlignmentsSectionsCodec(parameters, alleles);
+        output.getSerializersManager().registerCustomSerializer(VDJCAlignments.class,
+                new IO.VDJCAlignmentsSerializerV7(codec));
+
         header = true;
     }
 
@@ -103,14 +127,114 @@ public final class VDJCAlignmentsWriter implements AutoCloseable {
         if (alignment == null)
             throw new NullPointerException();
 
+        beforeRecord(alignment);
         output.writeObject(alignment);
     }
 
+    /**
+     * Writes record in serialized form, as returned by {@link VDJCAlignmentsReader#takeRaw()}. Header of this file
+     * must be written with exactly the same parameters and list of alleles as header of the source file.
+     *
+     * @param record serialized record
+     */
+    public void writeRaw(byte[] record) {
+        if (!header)
+            throw new IllegalStateException();
+
+        beforeRecord(null);
+        output.write(record);
+    }
+
+    /**
+     * Writes record in serialized form shifting its read id by given offset (used to merge files with records from
+     * different sets of reads). Header requirements are the same as for {@link #writeRaw(byte[])}.
+     *
+     * @param record       serialized record
+     * @param readIdOffset value to add to read id
+     */
+    public void writeRaw(RawVDJCAlignments record, long readIdOffset) {
+        if (!header)
+            throw new IllegalStateException();
+
+        beforeRecord(record.alignments);
+        if (readIdOffset == 0)
+            output.write(record.data, 0, record.descriptionsPosition);
+        else {
+            output.write(record.data, 0, record.readIdPosition);
+            output.writeLong(record.alignments.getReadId() + readIdOffset);
+            int tail = record.readIdPosition + 8;
+            output.write(record.data, tail, record.descriptionsPosition - tail);
+        }
+        // Descriptions are re-encoded in context of this file
+        codec.writeDescriptionsSection(output, record.descriptions);
+        output.write(record.data, record.descriptionsEnd, record.data.length - record.descriptionsEnd);
+    }
+
+    /**
+     * Adds given per-locus counts to ones that will be stored in the footer. Used for records written without hits
+     * (e.g. copied from other files with {@link #writeRaw(RawVDJCAlignments, long)}), footers of source files already
+     * contain this information.
+     *
+     * @param counts counts to add; null if counts are not available for some of the sources
+     */
+    public void addLocusCounts(Map<Locus, Long> counts) {
+        if (counts == null) {
+            locusCountsAvailable = false;
+            return;
+        }
+        for (Map.Entry<Locus, Long> e : counts.entrySet())
+            FooterIO.increment(locusCounts, e.getKey(), e.getValue());
+        addedLocusCounts = true;
+    }
+
+    private void beforeRecord(VDJCAlignments alignments) {
+        if (numberOfRecords % VDJCAlignmentsFooter.DEFAULT_BLOCK_SIZE == 0) {
+            if (numberOfBlocks == blockOffsets.length)
+                blockOffsets = Arrays.copyOf(blockOffsets, numberOfBlocks * 2);
+            blockOffsets[numberOfBlocks++] = countingOutput.getCount();
+        }
+        ++numberOfRecords;
+        codec.beginRecord();
+
+        if (alignments == null || !alignments.isHitsLoaded()) {
+            recordsWithoutHits = true;
+            return;
+        }
+        Locus locus = FooterIO.getLocus(alignments);
+        if (locus != null)
+            FooterIO.increment(locusCounts, locus, 1);
+    }
+
+    /**
+     * Returns hash of aligner parameters as stored in the footer (see {@link VDJCAlignmentsFooter#getParametersHash()}).
+     */
+    public static int parametersHash(VDJCAlignerParameters parameters) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PrimitivO o = new PrimitivO(bos);
+        o.writeObject(parameters);
+        CRC32 crc = new CRC32();
+        crc.update(bos.toByteArray());
+        return (int) crc.getValue();
+    }
+
     @Override
     public void close() {
         if (!closed) {
             output.writeObject(null);
             output.writeLong(numberOfProcessedReads);
+
+            // Footer
+            long footerOffset = countingOutput.getCount();
+            try {
+                new VDJCAlignmentsFooter(numberOfRecords, numberOfProcessedReads, parametersHash,
+                        locusCountsAvailable && (!recordsWithoutHits || addedLocusCounts) ? locusCounts : null,
+                        VDJCAlignmentsFooter.DEFAULT_BLOCK_SIZE, Arrays.copyOf(blockOffsets, numberOfBlocks))
+                        .write(output);
+                FooterIO.writeTrailer(output, footerOffset);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+
             output.close();
             closed = true;
         }
@@ -43,7 +43,7 @@ import java.util.Map;
 public class VDJCObject {
     protected final NSequenceWithQuality[] targets;
     protected final EnumMap<GeneType, VDJCHit[]> hits;
-    protected VDJCPartitionedSequence[] partitionedTargets;
+    protected volatile VDJCPartitionedSequence[] partitionedTargets;
 
     public VDJCObject(EnumMap<GeneType, VDJCHit[]> hits, NSequenceWithQuality... targets) {
         this.targets = targets;
@@ -71,8 +71,16 @@ public class VDJCObject {
         return hits;
     }
 
+    /**
+     * Returns map of all hits. Subclasses may override this method to materialize hits lazily, so it must be used
+     * instead of direct access to {@link #hits}.
+     */
+    EnumMap<GeneType, VDJCHit[]> getHitsMap() {
+        return hits;
+    }
+
     public final VDJCHit[] getHits(GeneType type) {
-        VDJCHit[] hits = this.hits.get(type);
+        VDJCHit[] hits = getHitsMap().get(type);
         return hits == null ? new VDJCHit[0] : hits;
     }
 
@@ -85,22 +93,27 @@ public class VDJCObject {
     }
 
     public final VDJCPartitionedSequence getPartitionedTarget(int target) {
+        VDJCPartitionedSequence[] partitionedTargets = this.partitionedTargets;
         if (partitionedTargets == null) {
+            // built in local variable and published afterwards, so concurrent readers (e.g. several export threads)
+            // never observe partially filled array
             partitionedTargets = new VDJCPartitionedSequence[targets.length];
             EnumMap<GeneType, VDJCHit> topHits = new EnumMap<>(GeneType.class);
+            EnumMap<GeneType, VDJCHit[]> hitsMap = getHitsMap();
             for (GeneType geneType : GeneType.values()) {
-                VDJCHit[] hits = this.hits.get(geneType);
+                VDJCHit[] hits = hitsMap.get(geneType);
                 if (hits != null && hits.length > 0)
                     topHits.put(geneType, hits[0]);
             }
             for (int i = 0; i < targets.length; ++i)
                 partitionedTargets[i] = new VDJCPartitionedSequence(targets[i], new TargetPartitioning(i, topHits));
+            this.partitionedTargets = partitionedTargets;
         }
         return partitionedTargets[target];
     }
 
     public VDJCHit getBestHit(GeneType type) {
-        VDJCHit[] hits = this.hits.get(type);
+        VDJCHit[] hits = getHitsMap().get(type);
         if (hits == null || hits.length == 0)
             return null;
         return hits[0];
@@ -195,10 +208,12 @@ public class VDJCObject {
 
         VDJCObject that = (VDJCObject) o;
 
-        if (that.hits.size() != this.hits.size()) return false;
+        EnumMap<GeneType, VDJCHit[]> thisHits = this.getHitsMap(), thatHitsMap = that.getHitsMap();
+
+        if (thatHitsMap.size() != thisHits.size()) return false;
 
-        for (Map.Entry<GeneType, VDJCHit[]> entry : this.hits.entrySet()) {
-            VDJCHit[] thatHits = that.hits.get(entry.getKey());
+        for (Map.Entry<GeneType, VDJCHit[]> entry : thisHits.entrySet()) {
+            VDJCHit[] thatHits = thatHitsMap.get(entry.getKey());
             if (!Arrays.equals(entry.getValue(), thatHits))
                 return false;
         }
@@ -211,7 +226,7 @@ public class VDJCObject {
     @Override
     public int hashCode() {
         int result = Arrays.hashCode(targets);
-        result = 31 * result + hits.hashCode();
+        result = 31 * result + getHitsMap().hashCode();
         return result;
     }
 }
@@ -28,13 +28,6 @@
  */
 package com.milaboratory.mixcr.cli;
 
-import cc.redberry.pipe.CUtils;
-import cc.redberry.pipe.OutputPort;
-import cc.redberry.pipe.blocks.ParallelProcessor;
-import cc.redberry.pipe.util.Chunk;
-import cc.redberry.pipe.util.CountLimitingOutputPort;
-import cc.redberry.pipe.util.Indexer;
-import cc.redberry.pipe.util.OrderedOutputPort;
 import com.beust.jcommander.DynamicParameter;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
@@ -52,41 +45,102 @@ import com.milaboratory.mitools.cli.Action;
 import com.milaboratory.mitools.cli.ActionHelper;
 import com.milaboratory.mixcr.basictypes.VDJCAlignmentsWriter;
 import com.milaboratory.mixcr.reference.*;
+import com.milaboratory.mixcr.util.MemoryBudget;
+import com.milaboratory.mixcr.util.MiXCRPipeline;
+import com.milaboratory.mixcr.util.MultiLaneSequenceReader;
+import com.milaboratory.mixcr.util.ParallelFastqReader;
+import com.milaboratory.mixcr.util.PipelineMetrics;
+import com.milaboratory.mixcr.util.WildcardsReplacingReader;
 import com.milaboratory.mixcr.vdjaligners.VDJCAligner;
 import com.milaboratory.mixcr.vdjaligners.VDJCAlignerParameters;
-import com.milaboratory.mixcr.vdjaligners.VDJCAlignmentResult;
 import com.milaboratory.mixcr.vdjaligners.VDJCParametersPresets;
-import com.milaboratory.util.CanReportProgress;
 import com.milaboratory.util.SmartProgressReporter;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 
-import static cc.redberry.pipe.CUtils.chunked;
-import static cc.redberry.pipe.CUtils.unchunked;
-
 public class ActionAlign implements Action {
     private final AlignParameters actionParameters = new AlignParameters();
 
     @Override
     public void go(ActionHelper helper) throws Exception {
+        VDJCAlignerParameters alignerParameters = getAlignerParameters(actionParameters);
+        if (alignerParameters == null)
+            return;
+
+        List<Allele> alleles = getAlleles(actionParameters, alignerParameters);
+        if (alleles == null)
+            return;
+
+        VDJCAligner aligner = createAligner(actionParameters, alignerParameters, alleles,
+                actionParameters.isInputPaired());
+
+        AlignerReport report = actionParameters.report == null ? null : new AlignerReport();
+
+        try (PipelineMetrics metrics = new PipelineMetrics("align");
+             MemoryBudget budget = Util.createMemoryBudget(actionParameters.memory)) {
+            MiXCRPipeline pipeline = new MiXCRPipeline(aligner);
+            pipeline.setThreads(actionParameters.threads);
+            pipeline.setReadsLimit(actionParameters.limit);
+            pipeline.setMetrics(metrics);
+            pipeline.setMemoryBudget(budget);
+            pipeline.setAlignerReport(report);
+            pipeline.setAllowDifferentVJLoci(actionParameters.allowDifferentVJLoci);
+            pipeline.setSaveReadDescription(actionParameters.saveReadDescription);
+            pipeline.setSaveOriginalReads(actionParameters.saveOriginalReads);
+            try (SequenceReaderCloseable<? extends SequenceRead> reader = actionParameters.createReader();
+                 VDJCAlignmentsWriter writer = actionParameters.getOutputName().equals(".") ? null : new VDJCAlignmentsWriter(actionParameters.getOutputName())) {
+                pipeline.setAlignmentsWriter(writer);
+                SmartProgressReporter.startProgressReport(pipeline);
+                pipeline.align(reader);
+                if (reader instanceof ParallelFastqReader) {
+                    ParallelFastqReader pReader = (ParallelFastqReader) reader;
+                    metrics.stage("Reading").addBytes(pReader.getBytesRead());
+                    if (report != null)
+                        report.setInputStatistics(pReader.getBytesRead(), pReader.getNumberOfReads(), pReader.getElapsedNanos());
+                }
+            }
+            if (!actionParameters.getOutputName().equals("."))
+                metrics.stage("Writing").addBytes(new File(actionParameters.getOutputName()).length());
+
+            if (report != null) {
+                report.setMetrics(metrics);
+                report.setMemoryBudget(budget);
+                Util.writeReport(actionParameters.getInputForReport(), actionParameters.getOutputName(),
+                        helper.getCommandLineArguments(), actionParameters.report, report);
+            }
+        }
+    }
+
+    /**
+     * Returns aligner parameters with applied overrides, or null (printing the error) if overrides are illegal.
+     */
+    static VDJCAlignerParameters getAlignerParameters(AbstractAlignParameters actionParameters) {
         VDJCAlignerParameters alignerParameters = actionParameters.getAlignerParameters();
 
         if (!actionParameters.overrides.isEmpty()) {
             alignerParameters = JsonOverrider.override(alignerParameters, VDJCAlignerParameters.class, actionParameters.overrides);
             if (alignerParameters == null) {
                 System.err.println("Failed to override some parameter.");
-                return;
+                return null;
             }
         }
+        return alignerParameters;
+    }
 
-        VDJCAligner aligner = VDJCAligner.createAligner(alignerParameters,
-                actionParameters.isInputPaired(), !actionParameters.noMerge);
-
+    /**
+     * Returns alleles to align with, or null (printing the error) if library, species or alleles are not found.
+     */
+    static List<Allele> getAlleles(AbstractAlignParameters actionParameters, VDJCAlignerParameters alignerParameters) {
         LociLibrary ll = LociLibraryManager.getDefault().getLibrary(actionParameters.ll);
         if (ll == null) {
             System.err.println("Segment library (" + actionParameters.ll + ") not found.");
-            return;
+            return null;
         }
 
         // Checking species
@@ -97,15 +151,16 @@ public class ActionAlign implements Action {
 
         if (speciesId == -1) {
             System.err.println("Can't find species with id: " + actionParameters.species);
-            return;
+            return null;
         }
 
         boolean warnings = false;
 
+        List<Allele> alleles = new ArrayList<>();
         for (Locus locus : actionParameters.getLoci()) {
             LocusContainer lc = ll.getLocus(speciesId, locus);
             if (lc == null) {
-                if (params().printWarnings()) {
+                if (actionParameters.printWarnings()) {
                     System.err.println("WARNING: No records for " + locus);
                     warnings = true;
                 }
@@ -115,7 +170,7 @@ public class ActionAlign implements Action {
                 if (actionParameters.isFunctionalOnly() && !allele.isFunctional())
                     continue;
                 if (!alignerParameters.containsRequiredFeature(allele)) {
-                    if (params().printWarnings()) {
+                    if (actionParameters.printWarnings()) {
                         System.err.println("WARNING: Allele " + allele.getName() +
                                 " doesn't contain full " + GeneFeature.encode(alignerParameters
                                 .getFeatureToAlign(allele.getGeneType())) + " (excluded)");
@@ -123,74 +178,139 @@ public class ActionAlign implements Action {
                     }
                     continue;
                 }
-                aligner.addAllele(allele);
+                alleles.add(allele);
             }
         }
 
         if (warnings)
             System.err.println("To turn off warnings use '-nw' option.");
 
-        if(aligner.getVAllelesToAlign().isEmpty()){
+        if (!containsGeneType(alleles, GeneType.Variable)) {
             System.err.println("No V alleles to align. Aborting execution. See warnings for more info " +
                     "(turn warnings by adding -w option).");
-            return;
+            return null;
         }
 
-        if(aligner.getVAllelesToAlign().isEmpty()){
+        if (!containsGeneType(alleles, GeneType.Joining)) {
             System.err.println("No J alleles to align. Aborting execution. See warnings for more info " +
                     "(turn warnings by adding -w option).");
-            return;
+            return null;
         }
 
-        AlignerReport report = actionParameters.report == null ? null : new AlignerReport();
-        if (report != null) {
-            aligner.setEventsListener(report);
-            report.setAllowDifferentVJLoci(actionParameters.allowDifferentVJLoci);
+        return alleles;
+    }
+
+    private static boolean containsGeneType(List<Allele> alleles, GeneType geneType) {
+        for (Allele allele : alleles)
+            if (allele.getGeneType() == geneType)
+                return true;
+        return false;
+    }
+
+    /**
+     * Creates aligner. Aligners created for the same parameters and alleles share k-mer indexes, so this method is
+     * cheap after the first call.
+     */
+    static VDJCAligner createAligner(AbstractAlignParameters actionParameters, VDJCAlignerParameters alignerParameters,
+                                     List<Allele> alleles, boolean paired) {
+        VDJCAligner aligner = VDJCAligner.createAligner(alignerParameters, paired, !actionParameters.noMerge);
+        for (Allele allele : alleles)
+            aligner.addAllele(allele);
+        return aligner;
+    }
+
+    /**
+     * Creates reader for single-end input (one element in {@code inputs}) or paired-end input (two elements). Each
+     * input may list several lanes separated by ',' and contain glob patterns; lanes are read concurrently, R1 and R2
+     * lanes are paired in sorted order. Single-lane fastq input is parsed with {@code inputThreads} threads if this
+     * number is greater than one. Wildcards in reads are replaced depending only on read ids (see {@link
+     * WildcardsReplacingReader}), so the reads are the same for any number of lanes and threads.
+     */
+    static SequenceReaderCloseable<? extends SequenceRead> createReader(List<String> inputs, int inputThreads)
+            throws IOException {
+        List<String> r1 = expandLanes(inputs.get(0));
+        List<String> r2 = inputs.size() == 2 ? expandLanes(inputs.get(1)) : null;
+        if (r2 != null && r1.size() != r2.size())
+            throw new ParameterException("Different number of R1 and R2 lanes: " + r1.size() + " and " + r2.size());
+        if (r1.size() == 1) {
+            if (inputThreads > 1 && !isFasta(r1.get(0)))
+                return new ParallelFastqReader(r1.get(0), r2 == null ? null : r2.get(0), inputThreads);
+            return new WildcardsReplacingReader(createLaneReader(r1.get(0), r2 == null ? null : r2.get(0)));
         }
 
-        try (SequenceReaderCloseable<? extends SequenceRead> reader = actionParameters.createReader();
-             VDJCAlignmentsWriter writer = actionParameters.getOutputName().equals(".") ? null : new VDJCAlignmentsWriter(actionParameters.getOutputName())) {
-            if (writer != null) writer.header(aligner);
-            OutputPort<? extends SequenceRead> sReads = reader;
-            CanReportProgress progress = (CanReportProgress) reader;
-            if (actionParameters.limit != 0) {
-                sReads = new CountLimitingOutputPort<>(sReads, actionParameters.limit);
-                progress = SmartProgressReporter.extractProgress((CountLimitingOutputPort<?>) sReads);
+        List<SequenceReaderCloseable<? extends SequenceRead>> lanes = new ArrayList<>();
+        try {
+            for (int i = 0; i < r1.size(); i++)
+                lanes.add(createLaneReader(r1.get(i), r2 == null ? null : r2.get(i)));
+        } catch (IOException | RuntimeException e) {
+            for (SequenceReaderCloseable<? extends SequenceRead> lane : lanes)
+                lane.close();
+            throw e;
+        }
+        return new WildcardsReplacingReader(new MultiLaneSequenceReader(lanes, 256, 16));
+    }
+
+    private static SequenceReaderCloseable<? extends SequenceRead> createLaneReader(String r1, String r2)
+            throws IOException {
+        if (r2 != null)
+            return new PairedFastqReader(r1, r2, false);
+        else {
+            if (isFasta(r1))
+                return new FastaSequenceReaderWrapper(
+                        new FastaReader<>(r1, NucleotideSequence.ALPHABET),
+                        false
+                );
+            else
+                return new SingleFastqReader(r1, false);
+        }
+    }
+
+    private static boolean isFasta(String fileName) {
+        String[] s = fileName.split("\\.");
+        return s[s.length - 1].equals("fasta");
+    }
+
+    /**
+     * Expands comma-separated list of files and glob patterns (sorted matches).
+     */
+    static List<String> expandLanes(String input) throws IOException {
+        List<String> files = new ArrayList<>();
+        for (String pattern : input.split(",")) {
+            if (pattern.isEmpty())
+                continue;
+            if (!isGlob(pattern)) {
+                files.add(pattern);
+                continue;
             }
-            SmartProgressReporter.startProgressReport("Alignment", progress);
-            OutputPort<Chunk<? extends SequenceRead>> mainInputReads = CUtils.buffered((OutputPort) chunked(sReads, 64), 16);
-            OutputPort<VDJCAlignmentResult> alignments = unchunked(new ParallelProcessor(mainInputReads, chunked(aligner), actionParameters.threads));
-            for (VDJCAlignmentResult result : CUtils.it(
-                    new OrderedOutputPort<>(alignments,
-                            new Indexer<VDJCAlignmentResult>() {
-                                @Override
-                                public long getIndex(VDJCAlignmentResult o) {
-                                    return o.read.getId();
-                                }
-                            }))) {
-                if (result.alignment == null)
-                    continue;
-                if (!result.alignment.hasSameVJLoci(1)) {
-                    if (report != null)
-                        report.onAlignmentWithDifferentVJLoci();
-                    if (!actionParameters.allowDifferentVJLoci)
-                        continue;
-                }
-                if (writer != null) {
-                    if (actionParameters.saveReadDescription || actionParameters.saveOriginalReads)
-                        result.alignment.setDescriptions(extractDescription(result.read));
-                    if (actionParameters.saveOriginalReads)
-                        result.alignment.setOriginalSequences(extractNSeqs(result.read));
-                    writer.write(result.alignment);
-                }
+            Path path = Paths.get(pattern);
+            Path dir = path.getParent() == null ? Paths.get(".") : path.getParent();
+            if (isGlob(dir.toString()))
+                throw new ParameterException("Glob patterns are supported only in file names: " + pattern);
+            List<String> matched = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, path.getFileName().toString())) {
+                for (Path file : stream)
+                    matched.add(path.getParent() == null ? file.getFileName().toString() : file.toString());
             }
-            if (writer != null)
-                writer.setNumberOfProcessedReads(reader.getNumberOfReads());
+            if (matched.isEmpty())
+                throw new ParameterException("No files match " + pattern);
+            Collections.sort(matched);
+            files.addAll(matched);
         }
+        if (files.isEmpty())
+            throw new ParameterException("No input files in " + input);
+        return files;
+    }
 
-        if (report != null)
-            Util.writeReport(actionParameters.getInputForReport(), actionParameters.getOutputName(),
-                    helper.getCommandLineArguments(), actionParameters.report, report);
+    private static boolean isGlob(String pattern) {
+        for (int i = 0; i < pattern.length(); i++)
+            switch (pattern.charAt(i)) {
+                case '*':
+                case '?':
+                case '[':
+                case '{':
+                    return true;
+            }
+        return false;
     }
 
     public static String[] extractDescription(SequenceRead r) {
@@ -217,12 +337,10 @@ public class ActionAlign implements Action {
         return actionParameters;
     }
 
-    @Parameters(commandDescription = "Builds alignments with V,D,J and C genes for input sequencing reads.",
-            optionPrefixes = "-")
-    public static class AlignParameters extends ActionParametersWithOutput {
-        @Parameter(description = "input_file1 [input_file2] output_file.vdjca", variableArity = true)
-        public List<String> parameters = new ArrayList<>();
-
+    /**
+     * Alignment options common for {@code align} and {@code alignBatch}.
+     */
+    public static abstract class AbstractAlignParameters extends ActionParametersWithOutput {
         @DynamicParameter(names = "-O", description = "Overrides base values of parameters.")
         public Map<String, String> overrides = new HashMap<>();
 
@@ -258,6 +376,11 @@ public class ActionAlign implements Action {
                 names = {"-t", "--threads"}, validateWith = PositiveInteger.class)
         public int threads = Runtime.getRuntime().availableProcessors();
 
+        @Parameter(description = "Threads used to decompress and parse fastq input (1 - single-threaded reader). " +
+                "By default is selected based on the number of processing threads.",
+                names = {"--input-threads"}, validateWith = PositiveInteger.class)
+        public Integer inputThreads = null;
+
         @Parameter(description = "Maximal number of reads to process",
                 names = {"-n", "--limit"}, validateWith = PositiveInteger.class)
         public long limit = 0;
@@ -302,15 +425,10 @@ public class ActionAlign implements Action {
             return functionalOnly != null && functionalOnly;
         }
 
-        public String getInputForReport() {
-            StringBuilder builder = new StringBuilder();
-            for (int i = 0; ; ++i) {
-                builder.append(parameters.get(i));
-                if (i == parameters.size() - 2)
-                    break;
-                builder.append(',');
-            }
-            return builder.toString();
+        public int getInputThreads() {
+            if (inputThreads != null)
+                return inputThreads;
+            return Math.max(1, Math.min(8, threads / 4));
         }
 
         public boolean printWarnings() {
@@ -325,6 +443,30 @@ public class ActionAlign implements Action {
         public Set<Locus> getLoci() {
             return Util.parseLoci(loci);
         }
+    }
+
+    @Parameters(commandDescription = "Builds alignments with V,D,J and C genes for input sequencing reads.",
+            optionPrefixes = "-")
+    public static class AlignParameters extends AbstractAlignParameters {
+        @Parameter(description = "input_file1 [input_file2] output_file.vdjca (several lanes may be specified as " +
+                "comma-separated lists of files or quoted glob patterns, e.g. 's_L*_R1.fastq.gz')", variableArity = true)
+        public List<String> parameters = new ArrayList<>();
+
+        @Parameter(description = "Memory budget for caches and buffers (e.g. 4G); 3/4 of maximal heap size by " +
+                "default.",
+                names = {"--memory"})
+        public String memory = null;
+
+        public String getInputForReport() {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; ; ++i) {
+                builder.append(parameters.get(i));
+                if (i == parameters.size() - 2)
+                    break;
+                builder.append(',');
+            }
+            return builder.toString();
+        }
 
         public boolean isInputPaired() {
             return parameters.size() == 3;
@@ -335,18 +477,7 @@ public class ActionAlign implements Action {
         }
 
         public SequenceReaderCloseable<? extends SequenceRead> createReader() throws IOException {
-            if (isInputPaired())
-                return new PairedFastqReader(parameters.get(0), parameters.get(1), true);
-            else {
-                String[] s = parameters.get(0).split("\\.");
-                if (s[s.length - 1].equals("fasta"))
-                    return new FastaSequenceReaderWrapper(
-                            new FastaReader<>(parameters.get(0), NucleotideSequence.ALPHABET),
-                            true
-                    );
-                else
-                    return new SingleFastqReader(parameters.get(0), true);
-            }
+            return ActionAlign.createReader(parameters.subList(0, parameters.size() - 1), getInputThreads());
         }
 
         @Override
@@ -360,6 +491,7 @@ public class ActionAlign implements Action {
                 throw new ParameterException("Too many input files.");
             if (parameters.size() < 2)
                 throw new ParameterException("No output file.");
+            Util.validateMemory(memory);
             super.validate();
         }
     }
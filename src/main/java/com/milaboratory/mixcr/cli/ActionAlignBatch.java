@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.cli;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.beust.jcommander.validators.PositiveInteger;
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.io.sequence.SequenceReaderCloseable;
+import com.milaboratory.mitools.cli.Action;
+import com.milaboratory.mitools.cli.ActionHelper;
+import com.milaboratory.mixcr.basictypes.VDJCAlignmentsWriter;
+import com.milaboratory.mixcr.reference.Allele;
+import com.milaboratory.mixcr.util.MiXCRPipeline;
+import com.milaboratory.mixcr.util.Pipeline;
+import com.milaboratory.mixcr.vdjaligners.VDJCAligner;
+import com.milaboratory.mixcr.vdjaligners.VDJCAlignerParameters;
+import com.milaboratory.util.CanReportProgress;
+import com.milaboratory.util.SmartProgressReporter;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Aligns several samples listed in a manifest file. Up to {@code samplesInFlight} samples are read simultaneously,
+ * and chunks of reads of all of them are aligned by one shared pool of {@code -t} threads, so the processors stay
+ * busy when some sample is small or its reader is slow; the next sample is started as soon as one of them is
+ * finished. Each sample has its own ordered output file and report.
+ */
+public class ActionAlignBatch implements Action {
+    private final AlignBatchParameters actionParameters = new AlignBatchParameters();
+
+    @Override
+    public void go(final ActionHelper helper) throws Exception {
+        VDJCAlignerParameters alignerParameters = ActionAlign.getAlignerParameters(actionParameters);
+        if (alignerParameters == null)
+            return;
+
+        List<Allele> alleles = ActionAlign.getAlleles(actionParameters, alignerParameters);
+        if (alleles == null)
+            return;
+
+        List<Sample> samples = readManifest(actionParameters.getManifest());
+        for (Sample sample : samples) {
+            sample.aligner = ActionAlign.createAligner(actionParameters, alignerParameters, alleles, sample.isPaired());
+            if (actionParameters.report != null)
+                sample.report = new AlignerReport();
+        }
+
+        BatchProgress progress = new BatchProgress(samples);
+        SmartProgressReporter.startProgressReport("Alignment", progress);
+        final Pipeline.WorkerPool workers = new Pipeline.WorkerPool("Alignment", actionParameters.threads);
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(actionParameters.samplesInFlight, samples.size()));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (final Sample sample : samples)
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        align(sample, workers, helper);
+                        return null;
+                    }
+                }));
+            for (Future<?> future : futures)
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception)
+                        throw (Exception) cause;
+                    throw new RuntimeException(cause);
+                }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            workers.close();
+        }
+    }
+
+    /**
+     * Aligns reads of the sample with shared worker threads, writing alignments in the order of reads.
+     */
+    private void align(Sample sample, Pipeline.WorkerPool workers, ActionHelper helper) throws IOException {
+        MiXCRPipeline pipeline = new MiXCRPipeline(sample.aligner);
+        pipeline.setWorkerPool(workers);
+        pipeline.setReadsLimit(actionParameters.limit);
+        pipeline.setAlignerReport(sample.report);
+        pipeline.setAllowDifferentVJLoci(actionParameters.allowDifferentVJLoci);
+        pipeline.setSaveReadDescription(actionParameters.saveReadDescription);
+        pipeline.setSaveOriginalReads(actionParameters.saveOriginalReads);
+        sample.progress = pipeline;
+        try (SequenceReaderCloseable<? extends SequenceRead> reader = ActionAlign.createReader(
+                sample.isPaired() ? Arrays.asList(sample.r1, sample.r2) : Arrays.asList(sample.r1),
+                actionParameters.getSampleInputThreads());
+             VDJCAlignmentsWriter writer = new VDJCAlignmentsWriter(sample.output)) {
+            pipeline.setAlignmentsWriter(writer);
+            pipeline.align(reader);
+        } finally {
+            sample.finished = true;
+        }
+        if (sample.report != null)
+            Util.writeReport(sample.getInputForReport(), sample.output,
+                    helper.getCommandLineArguments(), actionParameters.report, sample.report);
+    }
+
+    static List<Sample> readManifest(String fileName) throws IOException {
+        List<Sample> samples = new ArrayList<>();
+        Set<String> outputs = new HashSet<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                ++lineNumber;
+                if (line.trim().isEmpty() || line.startsWith("#"))
+                    continue;
+                String[] fields = line.split("\t");
+                if (fields.length != 4)
+                    throw new ParameterException("Wrong manifest line " + lineNumber + " (expected: " +
+                            "sample, R1, R2 or '-', output separated by tabs): " + line);
+                if (!outputs.add(fields[3]))
+                    throw new ParameterException("Duplicate output file in manifest: " + fields[3]);
+                samples.add(new Sample(fields[0], fields[1], fields[2].equals("-") ? null : fields[2], fields[3]));
+            }
+        }
+        if (samples.isEmpty())
+            throw new ParameterException("No samples in manifest " + fileName);
+        return samples;
+    }
+
+    static final class Sample {
+        final String name, r1, r2, output;
+        VDJCAligner aligner;
+        AlignerReport report;
+        volatile CanReportProgress progress;
+        volatile boolean finished;
+
+        Sample(String name, String r1, String r2, String output) {
+            this.name = name;
+            this.r1 = r1;
+            this.r2 = r2;
+            this.output = output;
+        }
+
+        boolean isPaired() {
+            return r2 != null;
+        }
+
+        String getInputForReport() {
+            return r2 == null ? r1 : r1 + "," + r2;
+        }
+    }
+
+    /**
+     * Overall progress: fraction of processed samples, with running samples counted by progress of their readers.
+     */
+    static final class BatchProgress implements CanReportProgress {
+        final List<Sample> samples;
+
+        BatchProgress(List<Sample> samples) {
+            this.samples = samples;
+        }
+
+        @Override
+        public double getProgress() {
+            double progress = 0;
+            for (Sample sample : samples) {
+                CanReportProgress p = sample.progress;
+                if (sample.finished)
+                    progress += 1;
+                else if (p != null && !Double.isNaN(p.getProgress()))
+                    progress += p.getProgress();
+            }
+            return progress / samples.size();
+        }
+
+        @Override
+        public boolean isFinished() {
+            for (Sample sample : samples)
+                if (!sample.finished)
+                    return false;
+            return true;
+        }
+    }
+
+    @Override
+    public String command() {
+        return "alignBatch";
+    }
+
+    @Override
+    public AlignBatchParameters params() {
+        return actionParameters;
+    }
+
+    @Parameters(commandDescription = "Builds alignments for several samples listed in a manifest file, " +
+            "aligning reads of several samples at once with a shared pool of processing threads.",
+            optionPrefixes = "-")
+    public static final class AlignBatchParameters extends ActionAlign.AbstractAlignParameters {
+        @Parameter(description = "manifest.tsv (tab-separated lines: sample, R1, R2 or '-', output.vdjca; R1 and R2 " +
+                "may list several lanes separated by ',')")
+        public List<String> parameters = new ArrayList<>();
+
+        @Parameter(description = "Maximal number of samples read simultaneously (their reads are aligned by " +
+                "the shared pool of processing threads).",
+                names = {"--samples-in-flight"}, validateWith = PositiveInteger.class)
+        public int samplesInFlight = 2;
+
+        public String getManifest() {
+            return parameters.get(0);
+        }
+
+        /**
+         * Input threads of each sample: if not specified explicitly, default number is split between samples in
+         * flight.
+         */
+        public int getSampleInputThreads() {
+            if (inputThreads != null)
+                return inputThreads;
+            return Math.max(1, getInputThreads() / samplesInFlight);
+        }
+
+        @Override
+        protected List<String> getOutputFiles() {
+            try {
+                List<String> outputs = new ArrayList<>();
+                for (Sample sample : readManifest(getManifest()))
+                    outputs.add(sample.output);
+                return outputs;
+            } catch (IOException e) {
+                throw new ParameterException("Can't read manifest: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void validate() {
+            if (parameters.size() != 1)
+                throw new ParameterException("Wrong number of parameters.");
+            super.validate();
+        }
+    }
+}
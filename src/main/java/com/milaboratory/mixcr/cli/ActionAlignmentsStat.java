@@ -28,29 +28,31 @@
  */
 package com.milaboratory.mixcr.cli;
 
-import cc.redberry.pipe.CUtils;
 import cc.redberry.pipe.VoidProcessor;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
 import com.beust.jcommander.Parameters;
+import com.beust.jcommander.validators.PositiveInteger;
 import com.milaboratory.mitools.cli.Action;
 import com.milaboratory.mitools.cli.ActionHelper;
 import com.milaboratory.mitools.cli.ActionParameters;
 import com.milaboratory.mitools.cli.HiddenAction;
 import com.milaboratory.mixcr.basictypes.VDJCAlignments;
 import com.milaboratory.mixcr.basictypes.VDJCAlignmentsReader;
-import com.milaboratory.mixcr.info.AlignmentInfoCollector;
-import com.milaboratory.mixcr.info.GeneFeatureCoverageCollector;
-import com.milaboratory.mixcr.info.ReferencePointCoverageCollector;
+import com.milaboratory.mixcr.basictypes.VDJCAlignmentsSection;
+import com.milaboratory.mixcr.info.*;
 import com.milaboratory.mixcr.reference.GeneFeature;
 import com.milaboratory.mixcr.reference.LociLibraryManager;
 import com.milaboratory.mixcr.reference.ReferencePoint;
+import com.milaboratory.mixcr.util.Pipeline;
+import com.milaboratory.mixcr.util.PipelineMetrics;
 import com.milaboratory.util.SmartProgressReporter;
 
 import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 
 import static com.milaboratory.mixcr.reference.GeneFeature.*;
@@ -63,8 +65,8 @@ public class ActionAlignmentsStat implements Action {
     @Override
     public void go(ActionHelper helper) throws Exception {
 
-        long[] geneFeatureCounters = new long[targetFeatures.length];
-        AlignmentInfoCollector[] collectors = new AlignmentInfoCollector[targetFeatures.length + targetReferencePoints.length];
+        AlignmentInfoCollector[] collectors = new AlignmentInfoCollector[targetFeatures.length + targetReferencePoints.length
+                + (actionParameters.isCDR3Lengths() ? 1 : 0)];
 
         int i = 0;
 
@@ -74,15 +76,27 @@ public class ActionAlignmentsStat implements Action {
         for (ReferencePoint targetReferencePoint : targetReferencePoints)
             collectors[i++] = new ReferencePointCoverageCollector(targetReferencePoint, 40, 40);
 
-        final Collector collector = new Collector(collectors);
+        if (actionParameters.isCDR3Lengths())
+            collectors[i++] = new GeneFeatureLengthCollector(CDR3, 150);
+
+        final AlignmentInfoCollectorSet collector = new AlignmentInfoCollectorSet(collectors);
 
         try (VDJCAlignmentsReader reader = new VDJCAlignmentsReader(actionParameters.getInputFileName(),
                 LociLibraryManager.getDefault());
              PrintStream output = actionParameters.getOutputFileName().equals("-") ? System.out :
                      new PrintStream(new BufferedOutputStream(new FileOutputStream(actionParameters.getOutputFileName()), 32768))
         ) {
+            reader.setProjection(EnumSet.of(VDJCAlignmentsSection.Hits));
             SmartProgressReporter.startProgressReport("Analysis", reader);
-            CUtils.processAllInParallel(reader, collector, Math.min(4, Runtime.getRuntime().availableProcessors()));
+            try (PipelineMetrics metrics = new PipelineMetrics("alignmentsStat");
+                 Pipeline pipeline = new Pipeline(metrics)) {
+                pipeline.forEach("Analysis", reader, new VoidProcessor<VDJCAlignments>() {
+                    @Override
+                    public void process(VDJCAlignments alignments) {
+                        collector.process(alignments);
+                    }
+                }, actionParameters.threads);
+            }
             collector.end();
 
             if (output == System.out)
@@ -119,6 +133,18 @@ public class ActionAlignmentsStat implements Action {
         @Parameter(description = "input_file.vdjca [output.txt]", variableArity = true)
         public List<String> parameters = new ArrayList<>();
 
+        @Parameter(description = "Processing threads",
+                names = {"-t", "--threads"}, validateWith = PositiveInteger.class)
+        public int threads = Runtime.getRuntime().availableProcessors();
+
+        @Parameter(description = "Add CDR3 length histogram to the output.",
+                names = {"--cdr3-lengths"})
+        public Boolean cdr3Lengths = null;
+
+        public boolean isCDR3Lengths() {
+            return cdr3Lengths != null && cdr3Lengths;
+        }
+
         public String getInputFileName() {
             return parameters.get(0);
         }
@@ -134,28 +160,4 @@ public class ActionAlignmentsStat implements Action {
             super.validate();
         }
     }
-
-    private static class Collector implements VoidProcessor<VDJCAlignments> {
-        final AlignmentInfoCollector[] collectors;
-
-        public Collector(AlignmentInfoCollector... collectors) {
-            this.collectors = collectors;
-        }
-
-        @Override
-        public void process(VDJCAlignments input) {
-            for (AlignmentInfoCollector collector : collectors)
-                collector.put(input);
-        }
-
-        public void end() {
-            for (AlignmentInfoCollector collector : collectors)
-                collector.end();
-        }
-
-        public void write(PrintStream writer) {
-            for (AlignmentInfoCollector collector : collectors)
-                collector.writeResult(writer);
-        }
-    }
 }
@@ -40,12 +40,16 @@ import com.beust.jcommander.validators.PositiveInteger;
 import com.milaboratory.mitools.cli.Action;
 import com.milaboratory.mitools.cli.ActionHelper;
 import com.milaboratory.mixcr.assembler.*;
-import com.milaboratory.mixcr.basictypes.CloneSetIO;
 import com.milaboratory.mixcr.basictypes.VDJCAlignmentsReader;
 import com.milaboratory.mixcr.reference.Allele;
 import com.milaboratory.mixcr.reference.GeneFeature;
 import com.milaboratory.mixcr.reference.GeneType;
 import com.milaboratory.mixcr.reference.LociLibraryManager;
+import com.milaboratory.mixcr.util.MemoryBudget;
+import com.milaboratory.mixcr.util.MiXCRPipeline;
+import com.milaboratory.mixcr.util.ParseUtil;
+import com.milaboratory.mixcr.util.PipelineMetrics;
+import com.milaboratory.mixcr.util.TempFileManager;
 import com.milaboratory.mixcr.vdjaligners.VDJCAlignerParameters;
 import com.milaboratory.primitivio.PipeWriter;
 import com.milaboratory.util.SmartProgressReporter;
@@ -63,6 +67,10 @@ public class ActionAssemble implements Action {
     public static final String MAPDB_SORTED_BY_CLONE = "sortedByClone";
     public static final String MAPDB_SORTED_BY_ALIGNMENT = "sortedByAlignment";
     public static final int MAPDB_BUFFER = 50000;
+    /**
+     * Estimated heap size of a record in MapDB sorting buffer
+     */
+    public static final int MAPDB_RECORD_BYTES = 64;
 
     private final AssembleParameters actionParameters = new AssembleParameters();
 
@@ -99,69 +107,85 @@ public class ActionAssemble implements Action {
             assemblerParameters.getCloneFactoryParameters().setFeatureToAlign(geneType, intersection);
         }
 
-        try (CloneAssembler assembler = new CloneAssembler(assemblerParameters, false, alleles)) {
-
+        try (TempFileManager tempFileManager = actionParameters.createTempFileManager();
+             PipelineMetrics metrics = new PipelineMetrics("assemble");
+             MemoryBudget budget = Util.createMemoryBudget(actionParameters.memory)) {
             CloneAssemblerReport report = actionParameters.report == null ? null : new CloneAssemblerReport();
-            if (report != null)
-                assembler.setListener(report);
-
-            CloneAssemblerRunner assemblerRunner = new CloneAssemblerRunner(
-                    alignmentsProvider,
-                    assembler, actionParameters.threads);
-            SmartProgressReporter.startProgressReport(assemblerRunner);
-            assemblerRunner.run();
-            try (CloneSetIO.CloneSetWriter writer = new CloneSetIO.CloneSetWriter(assemblerRunner.getCloneSet(), actionParameters.getOutputFileName())) {
-                SmartProgressReporter.startProgressReport(writer);
-                writer.write();
-            }
-
-            if (report != null) {
-                report.setTotalReads(alignmentsProvider.getTotalNumberOfReads());
-                Util.writeReport(actionParameters.getInputFileName(), actionParameters.getOutputFileName(),
-                        helper.getCommandLineArguments(), actionParameters.report, report);
-            }
 
-            if (actionParameters.events != null)
-                try (PipeWriter<ReadToCloneMapping> writer = new PipeWriter<>(actionParameters.events)) {
-                    CUtils.drain(assembler.getAssembledReadsPort(), writer);
+            MiXCRPipeline pipeline = new MiXCRPipeline();
+            pipeline.setThreads(actionParameters.threads);
+            pipeline.setMetrics(metrics);
+            pipeline.setMemoryBudget(budget);
+            pipeline.setTempFileManager(tempFileManager);
+            pipeline.setAssemblerReport(report);
+            pipeline.setLogAssemblerEvents(actionParameters.events != null
+                    || actionParameters.readsToClonesMapping != null);
+            pipeline.setClonesOutput(new File(actionParameters.getOutputFileName()));
+            SmartProgressReporter.startProgressReport(pipeline);
+            try (MiXCRPipeline.AssemblyResult result = pipeline.assemble(alignmentsProvider, alleles,
+                    assemblerParameters)) {
+                metrics.stage("Reading").addBytes(new File(actionParameters.getInputFileName()).length());
+
+                if (report != null) {
+                    report.setMetrics(metrics);
+                    report.setMemoryBudget(budget);
+                    report.setTotalReads(result.getTotalReads());
+                    Util.writeReport(actionParameters.getInputFileName(), actionParameters.getOutputFileName(),
+                            helper.getCommandLineArguments(), actionParameters.report, report);
                 }
 
-            if (actionParameters.readsToClonesMapping != null) {
-                File dbFile = new File(actionParameters.readsToClonesMapping);
-                if (dbFile.exists()) {
-                    dbFile.delete();
-                    dbFile = new File(actionParameters.readsToClonesMapping);
-                }
+                writeEvents(result, budget);
+            }
+        }
+    }
 
-                DB db = DBMaker.newFileDB(dbFile)
-                        .transactionDisable()
-                        .make();
-
-                //byClones
-                db.createTreeSet(MAPDB_SORTED_BY_CLONE)
-                        .pumpSource(Pump.sort(
-                                source(assembler.getAssembledReadsPort()),
-                                true, MAPDB_BUFFER,
-                                Collections.reverseOrder(CLONE_COMPARATOR),
-                                IO.MAPDB_SERIALIZER))
-                        .serializer(new IO.ReadToCloneMappingBtreeSerializer(CLONE_COMPARATOR))
-                        .comparator(CLONE_COMPARATOR)
-                        .make();
-
-                //byAlignments
-                db.createTreeSet(MAPDB_SORTED_BY_ALIGNMENT)
-                        .pumpSource(Pump.sort(
-                                source(assembler.getAssembledReadsPort()),
-                                true, MAPDB_BUFFER,
-                                Collections.reverseOrder(ALIGNMENTS_COMPARATOR),
-                                IO.MAPDB_SERIALIZER))
-                        .serializer(new IO.ReadToCloneMappingBtreeSerializer(ALIGNMENTS_COMPARATOR))
-                        .comparator(ALIGNMENTS_COMPARATOR)
-                        .make();
-
-                db.commit();
-                db.close();
+    private void writeEvents(MiXCRPipeline.AssemblyResult result, MemoryBudget budget) throws Exception {
+        if (actionParameters.events != null)
+            try (PipeWriter<ReadToCloneMapping> writer = new PipeWriter<>(actionParameters.events)) {
+                CUtils.drain(result.getAssembledReadsPort(), writer);
             }
+
+        if (actionParameters.readsToClonesMapping != null) {
+            File dbFile = new File(actionParameters.readsToClonesMapping);
+            if (dbFile.exists()) {
+                dbFile.delete();
+                dbFile = new File(actionParameters.readsToClonesMapping);
+            }
+
+            DB db = DBMaker.newFileDB(dbFile)
+                    .transactionDisable()
+                    .make();
+
+            // Records beyond the buffer are spilled to disk by MapDB
+            MemoryBudget.Consumer sortBuffer = budget.register("Sorting buffer",
+                    (long) MAPDB_BUFFER * MAPDB_RECORD_BYTES, 1L << 30, 2.0, null, null);
+            int bufferSize = (int) Math.min(Integer.MAX_VALUE, sortBuffer.getLimit() / MAPDB_RECORD_BYTES);
+
+            //byClones
+            db.createTreeSet(MAPDB_SORTED_BY_CLONE)
+                    .pumpSource(Pump.sort(
+                            source(result.getAssembledReadsPort()),
+                            true, bufferSize,
+                            Collections.reverseOrder(CLONE_COMPARATOR),
+                            IO.MAPDB_SERIALIZER))
+                    .serializer(new IO.ReadToCloneMappingBtreeSerializer(CLONE_COMPARATOR))
+                    .comparator(CLONE_COMPARATOR)
+                    .make();
+
+            //byAlignments
+            db.createTreeSet(MAPDB_SORTED_BY_ALIGNMENT)
+                    .pumpSource(Pump.sort(
+                            source(result.getAssembledReadsPort()),
+                            true, bufferSize,
+                            Collections.reverseOrder(ALIGNMENTS_COMPARATOR),
+                            IO.MAPDB_SERIALIZER))
+                    .serializer(new IO.ReadToCloneMappingBtreeSerializer(ALIGNMENTS_COMPARATOR))
+                    .comparator(ALIGNMENTS_COMPARATOR)
+                    .make();
+
+            db.commit();
+            db.close();
+            sortBuffer.unregister();
         }
     }
 
@@ -211,6 +235,29 @@ public class ActionAssemble implements Action {
                 names = {"-i", "--index"}, hidden = true)
         public String readsToClonesMapping;
 
+        @Parameter(description = "Directories for temporary files (comma separated or repeated option); system " +
+                "temp directory is used by default.",
+                names = {"--temp-dir"})
+        public List<String> tempDirectories = new ArrayList<>();
+
+        @Parameter(description = "Placement of temporary files if several directories are specified: roundRobin " +
+                "or freeSpace (directory with the largest free space).",
+                names = {"--temp-placement"})
+        public String tempPlacement = "roundRobin";
+
+        @Parameter(description = "Compress temporary files.",
+                names = {"--compress-temp"})
+        public boolean compressTemp = false;
+
+        @Parameter(description = "Maximal total size of temporary files (e.g. 20G); assembly fails if exceeded.",
+                names = {"--temp-quota"})
+        public String tempQuota = null;
+
+        @Parameter(description = "Memory budget for caches and buffers (e.g. 4G); 3/4 of maximal heap size by " +
+                "default.",
+                names = {"--memory"})
+        public String memory = null;
+
         @DynamicParameter(names = "-O", description = "Overrides base values of parameters.")
         private Map<String, String> overrides = new HashMap<>();
 
@@ -222,6 +269,27 @@ public class ActionAssemble implements Action {
             return parameters.get(1);
         }
 
+        public TempFileManager createTempFileManager() {
+            List<File> directories = new ArrayList<>();
+            for (String directory : tempDirectories)
+                directories.add(new File(directory));
+            if (directories.isEmpty())
+                directories.add(new File(System.getProperty("java.io.tmpdir")));
+            return new TempFileManager("mixcr_assemble", directories, getTempPlacement(), compressTemp,
+                    tempQuota == null ? Long.MAX_VALUE : ParseUtil.parseSize(tempQuota));
+        }
+
+        private TempFileManager.Placement getTempPlacement() {
+            switch (tempPlacement) {
+                case "roundRobin":
+                    return TempFileManager.Placement.RoundRobin;
+                case "freeSpace":
+                    return TempFileManager.Placement.FreeSpace;
+                default:
+                    throw new ParameterException("Unknown temp files placement: " + tempPlacement);
+            }
+        }
+
         public CloneAssemblerParameters getCloneAssemblerParameters() {
             return CloneAssemblerParametersPresets.getByName(assemblerParametersName);
         }
@@ -242,6 +310,15 @@ public class ActionAssemble implements Action {
             if (readsToClonesMapping != null)
                 if (new File(readsToClonesMapping).exists() && !isForceOverwrite())
                     throw new ParameterException("File " + readsToClonesMapping + " already exists. Use -f option to overwrite it.");
+            getTempPlacement();
+            Util.validateMemory(memory);
+            if (tempQuota != null)
+                try {
+                    if (ParseUtil.parseSize(tempQuota) <= 0)
+                        throw new ParameterException("Temp quota must be positive.");
+                } catch (IllegalArgumentException e) {
+                    throw new ParameterException(e.getMessage());
+                }
             super.validate();
         }
     }
@@ -0,0 +1,443 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.cli;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.beust.jcommander.validators.PositiveInteger;
+import com.milaboratory.mitools.cli.Action;
+import com.milaboratory.mitools.cli.ActionHelper;
+import com.milaboratory.mitools.cli.ActionParameters;
+import com.milaboratory.mixcr.reference.LociLibraryManager;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.Permission;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-running process executing MiXCR commands submitted through a spool directory. Reference libraries and built
+ * aligners are kept in memory between jobs, so jobs don't pay JVM startup, library loading and aligner initialization
+ * costs.
+ *
+ * <p>Protocol (all files are in the spool directory):</p>
+ * <ul>
+ * <li>job is submitted by atomic creation (e.g. write to a temporary file and rename) of {@code <id>.job} file with
+ * command line arguments, one per line; relative paths are resolved against working directory of the daemon</li>
+ * <li>when job is started the file is renamed to {@code <id>.running}</li>
+ * <li>standard output and error streams of the job are written to {@code <id>.out} and {@code <id>.err}</li>
+ * <li>after the job is finished {@code <id>.exit} file with exit code is created and {@code <id>.running} is
+ * deleted</li>
+ * <li>daemon stops, after all running jobs are finished, when {@code shutdown} file is created</li>
+ * </ul>
+ */
+public class ActionDaemon implements Action {
+    static final String JOB_EXTENSION = ".job", RUNNING_EXTENSION = ".running", OUT_EXTENSION = ".out",
+            ERR_EXTENSION = ".err", EXIT_EXTENSION = ".exit", SHUTDOWN_FILE = "shutdown";
+    /**
+     * Commands with -t / --threads option; other commands are executed in a single processing thread.
+     */
+    static final Set<String> THREADED_COMMANDS = new HashSet<>(Arrays.asList(
+            "align", "alignBatch", "assemble", "alignmentsStat", "filterAlignments"));
+    final DaemonParameters parameters = new DaemonParameters();
+
+    @Override
+    public void go(ActionHelper helper) throws Exception {
+        final Path spool = Paths.get(parameters.getSpoolDirectory()).toAbsolutePath();
+        Files.createDirectories(spool);
+
+        // Warming up: loading reference libraries
+        LociLibraryManager.getDefault();
+
+        final PrintStream out = System.out, err = System.err;
+        System.setOut(new PrintStream(new JobOutputStream(out, false), true));
+        System.setErr(new PrintStream(new JobOutputStream(err, true), true));
+        SecurityManager securityManager = System.getSecurityManager();
+        System.setSecurityManager(new JobSecurityManager(securityManager));
+
+        final Semaphore threads = new Semaphore(parameters.threads, true);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        err.println("MiXCR daemon is listening on " + spool);
+        try {
+            while (!Files.exists(spool.resolve(SHUTDOWN_FILE))) {
+                boolean submitted = false;
+                for (Path jobFile : listJobs(spool)) {
+                    String fileName = jobFile.getFileName().toString();
+                    final String id = fileName.substring(0, fileName.length() - JOB_EXTENSION.length());
+                    final Path running = spool.resolve(id + RUNNING_EXTENSION);
+                    try {
+                        // Claiming the job; fails if it was already taken by another daemon
+                        Files.move(jobFile, running, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (IOException e) {
+                        continue;
+                    }
+                    submitted = true;
+                    String[] jobArgs;
+                    try {
+                        jobArgs = readArgs(running);
+                    } catch (IOException e) {
+                        // Only this job fails
+                        e.printStackTrace(err);
+                        try {
+                            writeExitCode(spool, id, 1);
+                            Files.deleteIfExists(running);
+                        } catch (IOException ex) {
+                            ex.printStackTrace(err);
+                        }
+                        continue;
+                    }
+                    final int permits = jobPermits(jobArgs);
+                    // Job uses exactly the number of threads reserved for it
+                    final String[] args = withThreads(jobArgs, permits);
+                    threads.acquire(permits);
+                    executor.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                int exitCode = runJob(spool, id, args);
+                                writeExitCode(spool, id, exitCode);
+                                Files.deleteIfExists(running);
+                            } catch (IOException e) {
+                                e.printStackTrace(err);
+                            } finally {
+                                threads.release(permits);
+                            }
+                        }
+                    });
+                }
+                if (!submitted)
+                    Thread.sleep(parameters.pollInterval);
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            System.setSecurityManager(securityManager);
+            System.setOut(out);
+            System.setErr(err);
+        }
+    }
+
+    private static List<Path> listJobs(Path spool) throws IOException {
+        List<Path> jobs = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(spool, "*" + JOB_EXTENSION)) {
+            for (Path path : stream)
+                jobs.add(path);
+        }
+        // Jobs are started in the order of submission
+        final Map<Path, Long> times = new HashMap<>();
+        for (Path job : jobs)
+            times.put(job, job.toFile().lastModified());
+        Collections.sort(jobs, new Comparator<Path>() {
+            @Override
+            public int compare(Path a, Path b) {
+                return Long.compare(times.get(a), times.get(b));
+            }
+        });
+        return jobs;
+    }
+
+    private static String[] readArgs(Path jobFile) throws IOException {
+        List<String> args = new ArrayList<>();
+        for (String line : Files.readAllLines(jobFile, StandardCharsets.UTF_8))
+            if (!line.isEmpty())
+                args.add(line);
+        return args.toArray(new String[args.size()]);
+    }
+
+    /**
+     * Returns number of threads from the total budget reserved for the job: one for commands without -t option,
+     * requested number (but not more than the total budget) or the default number of job threads for others.
+     */
+    int jobPermits(String[] args) {
+        if (!isThreaded(args))
+            return 1;
+        int requested = requestedThreads(args);
+        return Math.min(parameters.threads, requested == -1 ? parameters.getJobThreads() : requested);
+    }
+
+    static boolean isThreaded(String[] args) {
+        return args.length > 0 && THREADED_COMMANDS.contains(args[0]);
+    }
+
+    /**
+     * Returns value of -t / --threads option of the job, or -1 if the option is absent or malformed (or the command
+     * has no such option).
+     */
+    static int requestedThreads(String[] args) {
+        int i = threadsOption(args);
+        if (i == -1)
+            return -1;
+        try {
+            return Math.max(1, Integer.parseInt(args[i + 1]));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns arguments of the job with -t / --threads option set to the given number (replaced or added after the
+     * command name), so that the job doesn't use more threads than were reserved for it. Arguments of commands without
+     * threads option are returned as is.
+     */
+    static String[] withThreads(String[] args, int threads) {
+        if (!isThreaded(args))
+            return args;
+        int i = threadsOption(args);
+        if (i != -1) {
+            String[] result = args.clone();
+            result[i + 1] = Integer.toString(threads);
+            return result;
+        }
+        String[] result = new String[args.length + 2];
+        result[0] = args[0];
+        result[1] = "-t";
+        result[2] = Integer.toString(threads);
+        System.arraycopy(args, 1, result, 3, args.length - 1);
+        return result;
+    }
+
+    /**
+     * Returns position of -t / --threads option (followed by its value) or -1.
+     */
+    private static int threadsOption(String[] args) {
+        if (!isThreaded(args))
+            return -1;
+        for (int i = 1; i < args.length - 1; i++)
+            if (args[i].equals("-t") || args[i].equals("--threads"))
+                return i;
+        return -1;
+    }
+
+    /**
+     * Executes a command with output streams redirected to the job files.
+     *
+     * @return exit code
+     */
+    static int runJob(Path spool, String id, final String[] args) throws IOException {
+        return runJob(spool, id, new Job() {
+            @Override
+            public void run() throws Exception {
+                // Actions store parsed parameters, so new instances are created for each job
+                Main.createMain(System.getProperty("mixcr.command", "mixcr"), Main.createActions()).main(args);
+            }
+        });
+    }
+
+    /**
+     * Executes a job in a new thread of a separate thread group. Output of all threads of the group (i.e. threads
+     * created while the job is running) is written to the job files until the job is finished; after that it goes to
+     * the daemon streams.
+     *
+     * @return exit code
+     */
+    static int runJob(Path spool, String id, final Job job) throws IOException {
+        try (final PrintStream out = new PrintStream(new BufferedOutputStream(
+                Files.newOutputStream(spool.resolve(id + OUT_EXTENSION))), true);
+             final PrintStream err = new PrintStream(new BufferedOutputStream(
+                     Files.newOutputStream(spool.resolve(id + ERR_EXTENSION))), true)) {
+            ThreadGroup group = new ThreadGroup("job-" + id);
+            group.setDaemon(true);
+            final int[] exitCode = {0};
+            Thread thread = new Thread(group, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        job.run();
+                    } catch (JobExitException e) {
+                        exitCode[0] = e.status;
+                    } catch (Throwable e) {
+                        e.printStackTrace(err);
+                        exitCode[0] = 1;
+                    }
+                }
+            }, "job-" + id);
+            JobOutputStream.jobStreams.put(group, new PrintStream[]{out, err});
+            try {
+                thread.start();
+                thread.join();
+            } catch (InterruptedException e) {
+                thread.interrupt();
+                Thread.currentThread().interrupt();
+                return 1;
+            } finally {
+                JobOutputStream.jobStreams.remove(group);
+            }
+            return exitCode[0];
+        }
+    }
+
+    interface Job {
+        void run() throws Exception;
+    }
+
+    private static void writeExitCode(Path spool, String id, int exitCode) throws IOException {
+        Path tmp = spool.resolve(id + EXIT_EXTENSION + ".tmp");
+        Files.write(tmp, (exitCode + "\n").getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, spool.resolve(id + EXIT_EXTENSION), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Routes output to the streams of the running job which thread group contains current thread.
+     */
+    static final class JobOutputStream extends OutputStream {
+        static final ConcurrentHashMap<ThreadGroup, PrintStream[]> jobStreams = new ConcurrentHashMap<>();
+        final PrintStream daemonStream;
+        final boolean err;
+
+        JobOutputStream(PrintStream daemonStream, boolean err) {
+            this.daemonStream = daemonStream;
+            this.err = err;
+        }
+
+        static PrintStream[] currentJobStreams() {
+            for (ThreadGroup group = Thread.currentThread().getThreadGroup(); group != null;
+                 group = group.getParent()) {
+                PrintStream[] streams = jobStreams.get(group);
+                if (streams != null)
+                    return streams;
+            }
+            return null;
+        }
+
+        private PrintStream stream() {
+            PrintStream[] streams = currentJobStreams();
+            return streams == null ? daemonStream : streams[err ? 1 : 0];
+        }
+
+        @Override
+        public void write(int b) {
+            stream().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            stream().write(b, off, len);
+        }
+
+        @Override
+        public void flush() {
+            stream().flush();
+        }
+    }
+
+    /**
+     * Converts System.exit(...) called by a job into exception.
+     */
+    static final class JobSecurityManager extends SecurityManager {
+        final SecurityManager delegate;
+
+        JobSecurityManager(SecurityManager delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void checkExit(int status) {
+            if (JobOutputStream.currentJobStreams() != null)
+                throw new JobExitException(status);
+            if (delegate != null)
+                delegate.checkExit(status);
+        }
+
+        @Override
+        public void checkPermission(Permission perm) {
+            if (delegate != null)
+                delegate.checkPermission(perm);
+        }
+
+        @Override
+        public void checkPermission(Permission perm, Object context) {
+            if (delegate != null)
+                delegate.checkPermission(perm, context);
+        }
+    }
+
+    static final class JobExitException extends SecurityException {
+        final int status;
+
+        JobExitException(int status) {
+            super("Exit with status " + status);
+            this.status = status;
+        }
+    }
+
+    @Override
+    public String command() {
+        return "daemon";
+    }
+
+    @Override
+    public ActionParameters params() {
+        return parameters;
+    }
+
+    @Parameters(commandDescription = "Runs MiXCR commands submitted through spool directory, keeping reference " +
+            "libraries and aligners loaded between them. To submit a job create <id>.job file with command line " +
+            "arguments (one per line); output is written to <id>.out / <id>.err, exit code to <id>.exit. Create " +
+            "'shutdown' file to stop the daemon.")
+    public static final class DaemonParameters extends ActionParameters {
+        @Parameter(description = "spool_directory")
+        public List<String> parameters = new ArrayList<>();
+
+        @Parameter(description = "Total number of threads used by concurrently running jobs.",
+                names = {"-t", "--threads"}, validateWith = PositiveInteger.class)
+        public int threads = Runtime.getRuntime().availableProcessors();
+
+        @Parameter(description = "Number of threads reserved for multi-threaded jobs without -t option (default: " +
+                "half of the total number of threads). Jobs are run with -t set to the number of reserved threads.",
+                names = {"--job-threads"}, validateWith = PositiveInteger.class)
+        public Integer jobThreads = null;
+
+        @Parameter(description = "Spool directory polling interval in milliseconds.",
+                names = {"--poll-interval"}, validateWith = PositiveInteger.class)
+        public int pollInterval = 200;
+
+        public int getJobThreads() {
+            return jobThreads == null ? Math.max(1, threads / 2) : jobThreads;
+        }
+
+        public String getSpoolDirectory() {
+            return parameters.get(0);
+        }
+
+        @Override
+        public void validate() {
+            if (parameters.size() != 1)
+                throw new ParameterException("Wrong number of parameters.");
+            super.validate();
+        }
+    }
+}
@@ -31,6 +31,16 @@ package com.milaboratory.mixcr.cli;
 import com.milaboratory.mitools.cli.Action;
 import com.milaboratory.mitools.cli.ActionHelper;
 import com.milaboratory.mitools.cli.ActionParametersParser;
+import com.milaboratory.mixcr.export.ColumnarWriter;
+import com.milaboratory.mixcr.export.ExportWriter;
+import com.milaboratory.mixcr.export.FieldExtractor;
+import com.milaboratory.mixcr.export.InfoWriter;
+import com.milaboratory.mixcr.export.MultiWriter;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 public abstract class ActionExport implements Action, ActionParametersParser {
     public final ActionExportParameters parameters;
@@ -57,6 +67,32 @@ public abstract class ActionExport implements Action, ActionParametersParser {
 
     protected abstract void go0() throws Exception;
 
+    /**
+     * Creates writer for all requested outputs. If additional outputs were requested, all of them are filled from the
+     * same stream of objects, each by its own thread.
+     */
+    protected <T> ExportWriter<T> createWriter() throws FileNotFoundException {
+        ExportWriter<T> main = createWriter(parameters.getOutputFile(), parameters.exporters);
+        if (parameters.additionalExporters.isEmpty())
+            return main;
+        List<ExportWriter<T>> writers = new ArrayList<>();
+        writers.add(main);
+        for (Map.Entry<String, ArrayList<FieldExtractor>> e : parameters.additionalExporters.entrySet())
+            writers.add(this.<T>createWriter(e.getKey(), e.getValue()));
+        return new MultiWriter<>(writers);
+    }
+
+    private <T> ExportWriter<T> createWriter(String file, List<FieldExtractor> exporters) throws FileNotFoundException {
+        if (parameters.binary) {
+            ColumnarWriter<T> writer = new ColumnarWriter<>(file);
+            writer.attachInfoProviders((List) exporters);
+            return writer;
+        }
+        InfoWriter<T> writer = new InfoWriter<>(file);
+        writer.attachInfoProviders((List) exporters);
+        return writer;
+    }
+
     @Override
     public ActionExportParameters params() {
         return parameters;
@@ -28,29 +28,40 @@
  */
 package com.milaboratory.mixcr.cli;
 
+import cc.redberry.pipe.OutputPort;
+import cc.redberry.primitives.Filter;
+import com.beust.jcommander.Parameter;
 import com.milaboratory.mixcr.basictypes.VDJCAlignments;
 import com.milaboratory.mixcr.basictypes.VDJCAlignmentsReader;
-import com.milaboratory.mixcr.export.InfoWriter;
+import com.milaboratory.mixcr.cli.afiltering.AFilter;
+import com.milaboratory.mixcr.export.ExportWriter;
 import com.milaboratory.mixcr.reference.LociLibraryManager;
+import com.milaboratory.mixcr.util.Pipeline;
+import com.milaboratory.mixcr.util.PipelineMetrics;
 import com.milaboratory.util.SmartProgressReporter;
 
-import java.util.List;
-
 public class ActionExportAlignments extends ActionExport {
     public ActionExportAlignments() {
-        super(new ActionExportParameters(), VDJCAlignments.class);
+        super(new AlignmentsExportParameters(), VDJCAlignments.class);
     }
 
     @Override
     public void go0() throws Exception {
+        AlignmentsExportParameters parameters = (AlignmentsExportParameters) this.parameters;
+        Filter<VDJCAlignments> filter = parameters.filter == null ? null : AFilter.build(parameters.filter);
         try (VDJCAlignmentsReader reader = new VDJCAlignmentsReader(parameters.getInputFile(), LociLibraryManager.getDefault());
-             InfoWriter<VDJCAlignments> writer = new InfoWriter<>(parameters.getOutputFile())) {
+             ExportWriter<VDJCAlignments> writer = createWriter();
+             PipelineMetrics metrics = new PipelineMetrics("exportAlignments");
+             Pipeline pipeline = new Pipeline(metrics)) {
             if (!parameters.printToStdout())
                 SmartProgressReporter.startProgressReport("Exporting alignments", reader);
-            writer.attachInfoProviders((List) parameters.exporters);
+            // Decoding of alignments is performed concurrently with formatting
+            OutputPort<VDJCAlignments> input = pipeline.buffer("Reading", reader, Pipeline.DEFAULT_CAPACITY, null);
             VDJCAlignments alignments;
             long count = 0;
-            while ((alignments = reader.take()) != null && count < parameters.limit) {
+            while ((alignments = input.take()) != null && count < parameters.limit) {
+                if (filter != null && !filter.accept(alignments))
+                    continue;
                 writer.put(alignments);
                 ++count;
             }
@@ -61,4 +72,11 @@ public class ActionExportAlignments extends ActionExport {
     public String command() {
         return "exportAlignments";
     }
+
+    public static class AlignmentsExportParameters extends ActionExportParameters {
+        @Parameter(description = "Export only alignments matching filter expression " +
+                "(e.g. \"contains(CDR3) && startsWith(gene(V), 'TRBV12')\")",
+                names = {"--filter"})
+        public String filter = null;
+    }
 }
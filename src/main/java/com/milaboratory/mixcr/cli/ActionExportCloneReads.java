@@ -23,10 +23,14 @@ import org.mapdb.DB;
 import org.mapdb.DBMaker;
 
 import java.io.File;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NavigableSet;
 
+import static com.milaboratory.mixcr.basictypes.VDJCAlignmentsSection.Descriptions;
+import static com.milaboratory.mixcr.basictypes.VDJCAlignmentsSection.OriginalSequences;
+
 /**
  * @author Dmitry Bolotin
  * @author Stanislav Poslavsky
@@ -70,6 +74,7 @@ public final class ActionExportCloneReads implements Action {
 
         try (VDJCAlignmentsReader reader = new VDJCAlignmentsReader(parameters.getVDJCAFile(),
                 LociLibraryManager.getDefault())) {
+            reader.setProjection(EnumSet.of(Descriptions, OriginalSequences));
 
             Iterator<ReadToCloneMapping> mappingIterator = byAlignments.iterator();
             Iterator<VDJCAlignments> vdjcaIterator = new CUtils.OPIterator<>(reader);
@@ -111,6 +116,7 @@ public final class ActionExportCloneReads implements Action {
             return;//todo create empty file!!!!!!!!!!!!!!!!!!!!
         try (VDJCAlignmentsReader reader = new VDJCAlignmentsReader(parameters.getVDJCAFile(),
                 LociLibraryManager.getDefault())) {
+            reader.setProjection(EnumSet.of(Descriptions, OriginalSequences));
 
             Iterator<ReadToCloneMapping> mappingIterator = selected.iterator();
             Iterator<VDJCAlignments> vdjcaIterator = new CUtils.OPIterator<>(reader);
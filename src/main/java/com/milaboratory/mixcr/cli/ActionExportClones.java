@@ -37,14 +37,13 @@ import com.milaboratory.mixcr.basictypes.Clone;
 import com.milaboratory.mixcr.basictypes.CloneSet;
 import com.milaboratory.mixcr.basictypes.CloneSetIO;
 import com.milaboratory.mixcr.basictypes.IOUtil;
-import com.milaboratory.mixcr.export.InfoWriter;
+import com.milaboratory.mixcr.export.ExportWriter;
 import com.milaboratory.mixcr.reference.GeneFeature;
 import com.milaboratory.mixcr.reference.LociLibraryManager;
 import com.milaboratory.util.CanReportProgressAndStage;
 import com.milaboratory.util.SmartProgressReporter;
 
 import java.io.InputStream;
-import java.util.List;
 
 public class ActionExportClones extends ActionExport {
     public ActionExportClones() {
@@ -55,11 +54,10 @@ public class ActionExportClones extends ActionExport {
     public void go0() throws Exception {
         CloneExportParameters parameters = (CloneExportParameters) this.parameters;
         try (InputStream inputStream = IOUtil.createIS(parameters.getInputFile());
-             InfoWriter<Clone> writer = new InfoWriter<>(parameters.getOutputFile())) {
+             ExportWriter<Clone> writer = createWriter()) {
             CloneSet set = CloneSetIO.read(inputStream, LociLibraryManager.getDefault());
             if (parameters.filterOutOfFrames || parameters.filterStops)
                 set = CloneSet.transform(set, new CFilter(parameters.filterOutOfFrames, parameters.filterStops));
-            writer.attachInfoProviders((List) parameters.exporters);
             ExportClones exportClones = new ExportClones(set, writer, parameters.limit);
             if (!parameters.printToStdout())
                 SmartProgressReporter.startProgressReport(exportClones);
@@ -98,13 +96,13 @@ public class ActionExportClones extends ActionExport {
     @Parameters(commandDescription = "Export clones to tab-delimited text file", optionPrefixes = "-")
     public static final class ExportClones implements CanReportProgressAndStage {
         final CloneSet clones;
-        final InfoWriter<Clone> writer;
+        final ExportWriter<Clone> writer;
         final long size;
         volatile long current = 0;
         final static String stage = "Exporting clones";
         final long limit;
 
-        private ExportClones(CloneSet clones, InfoWriter<Clone> writer, long limit) {
+        private ExportClones(CloneSet clones, ExportWriter<Clone> writer, long limit) {
             this.clones = clones;
             this.writer = writer;
             this.size = clones.size();
@@ -47,11 +47,25 @@ public class ActionExportParameters extends ActionParametersWithOutput {
             names = {"-n", "--limit"}, validateWith = PositiveInteger.class)
     public long limit = Long.MAX_VALUE;
 
+    @Parameter(description = "Write columnar binary file (readable with ColumnarReader) instead of tab-delimited text",
+            names = {"-b", "--binary"})
+    public Boolean binary = false;
+
+    @Parameter(description = "Additional output filled in the same pass over input file, specified as " +
+            "output_file=fields (e.g. \"cdr3.txt=-nFeature CDR3 -count\") or output_file=preset " +
+            "(e.g. \"min.txt=min\"). Can be specified several times.",
+            names = {"--also"})
+    public List<String> additionalOutputs = new ArrayList<>();
+
     public ArrayList<FieldExtractor> exporters;
 
+    public LinkedHashMap<String, ArrayList<FieldExtractor>> additionalExporters = new LinkedHashMap<>();
+
     @Override
     protected List<String> getOutputFiles() {
-        return files.subList(1, 2);
+        List<String> outputFiles = new ArrayList<>(files.subList(1, 2));
+        outputFiles.addAll(additionalExporters.keySet());
+        return outputFiles;
     }
 
     public String getOutputFile() {
@@ -99,6 +113,21 @@ public class ActionExportParameters extends ActionParametersWithOutput {
             if (parameters.exporters.isEmpty())
                 parameters.exporters.addAll(getPresetParameters(outputMode, clazz, parameters.preset));
 
+            for (String spec : parameters.additionalOutputs) {
+                int i = spec.indexOf('=');
+                if (i <= 0 || i == spec.length() - 1)
+                    throw new ParameterException("Wrong additional output specification: " + spec);
+                String file = spec.substring(0, i), fields = spec.substring(i + 1).trim();
+                if (file.equals(".") || file.equals(parameters.getOutputFile())
+                        || parameters.additionalExporters.containsKey(file))
+                    throw new ParameterException("Wrong additional output file: " + file);
+                if (!fields.startsWith("-") && !presets.get(clazz).containsKey(fields))
+                    throw new ParameterException("Unknown preset: " + fields);
+                parameters.additionalExporters.put(file, fields.startsWith("-") ?
+                        parseFields(outputMode, clazz, Arrays.asList(fields.split(" +"))) :
+                        getPresetParameters(outputMode, clazz, fields));
+            }
+
             parameters.validate();
         }
     }
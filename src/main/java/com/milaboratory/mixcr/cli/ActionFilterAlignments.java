@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.cli;
+
+import cc.redberry.pipe.CUtils;
+import cc.redberry.pipe.OutputPort;
+import cc.redberry.pipe.Processor;
+import cc.redberry.primitives.Filter;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.beust.jcommander.validators.PositiveInteger;
+import com.milaboratory.mitools.cli.Action;
+import com.milaboratory.mitools.cli.ActionHelper;
+import com.milaboratory.mixcr.basictypes.RawVDJCAlignments;
+import com.milaboratory.mixcr.basictypes.VDJCAlignments;
+import com.milaboratory.mixcr.basictypes.VDJCAlignmentsFooter;
+import com.milaboratory.mixcr.basictypes.VDJCAlignmentsReader;
+import com.milaboratory.mixcr.basictypes.VDJCAlignmentsSection;
+import com.milaboratory.mixcr.basictypes.VDJCAlignmentsWriter;
+import com.milaboratory.mixcr.cli.afiltering.AFilter;
+import com.milaboratory.mixcr.reference.LociLibraryManager;
+import com.milaboratory.mixcr.util.Pipeline;
+import com.milaboratory.mixcr.util.PipelineMetrics;
+import com.milaboratory.util.CanReportProgress;
+import com.milaboratory.util.SmartProgressReporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ActionFilterAlignments implements Action {
+    final FilterParameters parameters = new FilterParameters();
+
+    @Override
+    public void go(ActionHelper helper) throws Exception {
+        final AFilter filter = AFilter.build(parameters.filter);
+        File inputFile = new File(parameters.getInputFileName());
+        long[] counts;
+        try (final VDJCAlignmentsReader reader = new VDJCAlignmentsReader(inputFile, LociLibraryManager.getDefault());
+             final VDJCAlignmentsWriter writer = new VDJCAlignmentsWriter(parameters.getOutputFileName())) {
+            // Original reads are copied as raw bytes and never decoded, descriptions are re-encoded in context of the
+            // output file (see VDJCAlignmentsWriter.writeRaw); has no effect for files in older formats, where records
+            // are fully decoded and re-encoded
+            reader.setProjection(PROJECTION);
+            writer.header(reader.getParameters(), reader.getUsedAlleles());
+
+            VDJCAlignmentsFooter footer = reader.isRawRecordsSupported() ? VDJCAlignmentsFooter.read(inputFile) : null;
+            if (footer != null && parameters.threads > 1 && footer.getNumberOfBlocks() > 1) {
+                counts = filterBlocks(inputFile, footer, filter, writer);
+                writer.setNumberOfProcessedReads(footer.getNumberOfProcessedReads());
+            } else {
+                SmartProgressReporter.startProgressReport("Filtering", reader);
+                if (reader.isRawRecordsSupported())
+                    counts = filter(new OutputPort<RawVDJCAlignments>() {
+                        @Override
+                        public RawVDJCAlignments take() {
+                            return reader.takeRaw();
+                        }
+                    }, new Filter<RawVDJCAlignments>() {
+                        @Override
+                        public boolean accept(RawVDJCAlignments object) {
+                            return filter.accept(object.getAlignments());
+                        }
+                    }, new Writer<RawVDJCAlignments>() {
+                        @Override
+                        public void write(RawVDJCAlignments record) {
+                            writer.writeRaw(record, 0);
+                        }
+                    });
+                else
+                    counts = filter(reader, filter, new Writer<VDJCAlignments>() {
+                        @Override
+                        public void write(VDJCAlignments record) {
+                            writer.write(record);
+                        }
+                    });
+                writer.setNumberOfProcessedReads(reader.getNumberOfReads());
+            }
+        }
+        System.out.println("Filtered: " + counts[1] + " / " + counts[0] + " = " +
+                (counts[0] == 0 ? 0.0 : 100.0 * counts[1] / counts[0]) + "%");
+    }
+
+    static final EnumSet<VDJCAlignmentsSection> PROJECTION = EnumSet.of(VDJCAlignmentsSection.Hits);
+
+    /**
+     * Evaluates filter in parallel, writing accepted records in original order.
+     *
+     * @return {total, accepted}
+     */
+    private <T> long[] filter(OutputPort<T> input, final Filter<T> filter, Writer<T> writer) {
+        long total = 0, accepted = 0;
+        try (PipelineMetrics metrics = new PipelineMetrics("filterAlignments");
+             Pipeline pipeline = new Pipeline(metrics)) {
+            OutputPort<Result<T>> results = pipeline.map("Filtering", input, new Processor<T, Result<T>>() {
+                @Override
+                public Result<T> process(T input) {
+                    return new Result<>(input, filter.accept(input));
+                }
+            }, parameters.threads, true);
+            for (Result<T> result : CUtils.it(results)) {
+                ++total;
+                if (result.accepted) {
+                    writer.write(result.record);
+                    ++accepted;
+                }
+            }
+        }
+        return new long[]{total, accepted};
+    }
+
+    /**
+     * Splits uncompressed input file by its block index: each block is read, decoded and filtered by its own worker
+     * with a separate reader, accepted records are written in original order.
+     *
+     * @return {total, accepted}
+     */
+    private long[] filterBlocks(final File inputFile, final VDJCAlignmentsFooter footer, final AFilter filter,
+                                VDJCAlignmentsWriter writer) {
+        final int numberOfBlocks = footer.getNumberOfBlocks(), blockSize = footer.getBlockSize();
+        final AtomicInteger processedBlocks = new AtomicInteger();
+        SmartProgressReporter.startProgressReport("Filtering", new CanReportProgress() {
+            @Override
+            public double getProgress() {
+                return 1.0 * processedBlocks.get() / numberOfBlocks;
+            }
+
+            @Override
+            public boolean isFinished() {
+                return processedBlocks.get() == numberOfBlocks;
+            }
+        });
+        long total = 0, accepted = 0;
+        try (PipelineMetrics metrics = new PipelineMetrics("filterAlignments");
+             Pipeline pipeline = new Pipeline(metrics)) {
+            OutputPort<BlockResult> results = pipeline.map("Filtering blocks",
+                    CUtils.asOutputPort(blockIndices(numberOfBlocks)),
+                    new Processor<Integer, BlockResult>() {
+                        @Override
+                        public BlockResult process(Integer block) {
+                            List<RawVDJCAlignments> acceptedRecords = new ArrayList<>();
+                            int read = 0;
+                            try (VDJCAlignmentsReader reader = VDJCAlignmentsReader.openBlock(inputFile,
+                                    LociLibraryManager.getDefault(), footer, block)) {
+                                reader.setProjection(PROJECTION);
+                                RawVDJCAlignments record;
+                                for (; read < blockSize && (record = reader.takeRaw()) != null; ++read)
+                                    if (filter.accept(record.getAlignments()))
+                                        acceptedRecords.add(record);
+                            } catch (IOException e) {
+                                throw new RuntimeException(e);
+                            }
+                            processedBlocks.incrementAndGet();
+                            return new BlockResult(acceptedRecords, read);
+                        }
+                    }, parameters.threads, true,
+                    Pipeline.QueueCapacity.ofItems(2 * parameters.threads), null, Pipeline.ChunkSizing.fixed(1));
+            for (BlockResult block : CUtils.it(results)) {
+                for (RawVDJCAlignments record : block.accepted)
+                    writer.writeRaw(record, 0);
+                total += block.total;
+                accepted += block.accepted.size();
+            }
+        }
+        return new long[]{total, accepted};
+    }
+
+    private static List<Integer> blockIndices(int numberOfBlocks) {
+        List<Integer> indices = new ArrayList<>(numberOfBlocks);
+        for (int i = 0; i < numberOfBlocks; ++i)
+            indices.add(i);
+        return indices;
+    }
+
+    private interface Writer<T> {
+        void write(T record);
+    }
+
+    private static final class Result<T> {
+        final T record;
+        final boolean accepted;
+
+        Result(T record, boolean accepted) {
+            this.record = record;
+            this.accepted = accepted;
+        }
+    }
+
+    private static final class BlockResult {
+        final List<RawVDJCAlignments> accepted;
+        final int total;
+
+        BlockResult(List<RawVDJCAlignments> accepted, int total) {
+            this.accepted = accepted;
+            this.total = total;
+        }
+    }
+
+    @Override
+    public String command() {
+        return "filterAlignments";
+    }
+
+    @Override
+    public FilterParameters params() {
+        return parameters;
+    }
+
+    @Parameters(commandDescription = "Filter alignments. Accepted records of files in current format are copied " +
+            "without re-encoding.",
+            optionPrefixes = "-")
+    public static final class FilterParameters extends ActionParametersWithOutput {
+        @Parameter(description = "input_file.vdjca output_file.vdjca")
+        public List<String> parameters = new ArrayList<>();
+
+        @Parameter(description = "Filter expression, e.g. \"locus(V) == 'TRB' && contains(CDR3)\" " +
+                "(see documentation for the list of functions)",
+                names = {"-e", "--filter"}, required = true)
+        public String filter;
+
+        @Parameter(description = "Processing threads",
+                names = {"-t", "--threads"}, validateWith = PositiveInteger.class)
+        public int threads = Runtime.getRuntime().availableProcessors();
+
+        public String getInputFileName() {
+            return parameters.get(0);
+        }
+
+        public String getOutputFileName() {
+            return parameters.get(1);
+        }
+
+        @Override
+        protected List<String> getOutputFiles() {
+            return parameters.subList(1, 2);
+        }
+
+        @Override
+        public void validate() {
+            if (help)
+                return;
+            if (parameters.size() != 2)
+                throw new ParameterException("Input/output file is not specified.");
+            super.validate();
+        }
+    }
+}
@@ -36,17 +36,19 @@ import com.milaboratory.mitools.cli.Action;
 import com.milaboratory.mitools.cli.ActionHelper;
 import com.milaboratory.mitools.cli.ActionParameters;
 import com.milaboratory.mitools.cli.HiddenAction;
-import com.milaboratory.mixcr.basictypes.VDJCAlignments;
-import com.milaboratory.mixcr.basictypes.VDJCAlignmentsReader;
+import com.milaboratory.mixcr.basictypes.*;
 import com.milaboratory.mixcr.reference.LociLibraryManager;
+import com.milaboratory.mixcr.reference.Locus;
 import com.milaboratory.mixcr.util.PrintStreamTableAdapter;
 import com.milaboratory.util.SmartProgressReporter;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.*;
 
 @HiddenAction
 public class ActionInfo implements Action {
@@ -56,32 +58,47 @@ public class ActionInfo implements Action {
 
     @Override
     public void go(ActionHelper helper) throws Exception {
-        if (!parameters.isTableView())
-            throw new RuntimeException("Only table output is supported. Use -t option.");
-        switch (parameters.getType()) {
-            case Alignments:
-                processAlignments();
-                break;
-            case Cloneset:
-                processClones();
-                break;
+        // Files of each type (e.g. found in a results directory) are printed in a separate section
+        boolean first = true;
+        for (Map.Entry<FilesType, List<String>> entry : parameters.getInputFilesByType().entrySet()) {
+            if (!first)
+                stream.println();
+            first = false;
+            switch (entry.getKey()) {
+                case Alignments:
+                    processAlignments(entry.getValue());
+                    break;
+                case Cloneset:
+                    processClones(entry.getValue());
+                    break;
+            }
         }
     }
 
-    public void processAlignments() throws IOException {
+    public void processAlignments(List<String> files) throws Exception {
         if (parameters.isTableView())
             printAlignmentsTableHeader();
-        for (String inputFile : parameters.input) {
-            if (parameters.isTableView())
-                processAlignmentsFile(inputFile);
-        }
+        processFiles(files, ALIGNMENTS_LABELS, new FileProcessor() {
+            @Override
+            public Object[] process(String fileName) throws IOException {
+                return processAlignmentsFile(fileName);
+            }
+        });
     }
 
-    public void processAlignmentsFile(String name) throws IOException {
+    public Object[] processAlignmentsFile(String name) throws IOException {
+        // Reading summary from the file footer (only for uncompressed files written by current version)
+        VDJCAlignmentsFooter footer = VDJCAlignmentsFooter.read(new File(name));
+        if (footer != null)
+            return new Object[]{name, footer.getNumberOfProcessedReads(), footer.getNumberOfRecords(),
+                    formatHash(footer.getParametersHash()), formatLocusCounts(footer.getLocusCounts())};
+
         long size = Files.size(Paths.get(name));
 
         try (VDJCAlignmentsReader reader = new VDJCAlignmentsReader(name,
                 LociLibraryManager.getDefault())) {
+            // Only number of records is required
+            reader.setProjection(EnumSet.noneOf(VDJCAlignmentsSection.class));
             long numberOfAlignedReads = 0;
             if (size > 30000000)
                 SmartProgressReporter.startProgressReport("Processing " + name, reader, System.err);
@@ -90,16 +107,110 @@ public class ActionInfo implements Action {
             for (VDJCAlignments alignments : CUtils.it(reader)) {
                 numberOfAlignedReads++;
             }
-            tableAdapter.row(name, reader.getNumberOfReads(), numberOfAlignedReads);
+            // Locus counts are not available without decoding hits
+            return new Object[]{name, reader.getNumberOfReads(), numberOfAlignedReads,
+                    formatHash(VDJCAlignmentsWriter.parametersHash(reader.getParameters())), formatLocusCounts(null)};
         }
     }
 
     public void printAlignmentsTableHeader() {
-        tableAdapter.row("FileName", "NumberOfReads", "NumberOfAlignedReads");
+        tableAdapter.row("FileName", "NumberOfReads", "NumberOfAlignedReads", "ParametersHash", "LocusCounts");
+    }
+
+    static final String[] ALIGNMENTS_LABELS = {"File", "Number of reads", "Number of aligned reads",
+            "Parameters hash", "Records per locus"};
+
+    public void processClones(List<String> files) throws Exception {
+        if (parameters.isTableView())
+            printClonesTableHeader();
+        processFiles(files, CLONES_LABELS, new FileProcessor() {
+            @Override
+            public Object[] process(String fileName) throws IOException {
+                return processClonesFile(fileName);
+            }
+        });
+    }
+
+    public Object[] processClonesFile(String name) throws IOException {
+        CloneSetFooter footer = CloneSetFooter.read(new File(name));
+        if (footer == null) {
+            System.err.println("Processing " + name + "...");
+            footer = new CloneSetFooter(CloneSetIO.read(name, LociLibraryManager.getDefault()));
+        }
+        return new Object[]{name, footer.getNumberOfClones(), footer.getTotalCount(), footer.getTopCloneFraction(),
+                formatHash(footer.getParametersHash()), formatLocusCounts(footer.getLocusCounts())};
+    }
+
+    public void printClonesTableHeader() {
+        tableAdapter.row("FileName", "NumberOfClones", "TotalCount", "TopCloneFraction", "ParametersHash",
+                "LocusCounts");
+    }
+
+    static final String[] CLONES_LABELS = {"File", "Number of clones", "Total count", "Top clone fraction",
+            "Parameters hash", "Clones per locus"};
+
+    static String formatHash(int hash) {
+        return String.format("%08x", hash);
+    }
+
+    /**
+     * Formats counts as {@code locus:count} pairs separated by commas, or "NA" if counts are unknown.
+     */
+    static String formatLocusCounts(Map<Locus, Long> counts) {
+        if (counts == null)
+            return "NA";
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Locus, Long> entry : counts.entrySet()) {
+            if (sb.length() != 0)
+                sb.append(',');
+            sb.append(entry.getKey()).append(':').append(entry.getValue());
+        }
+        return sb.toString();
     }
 
-    public void processClones() {
-        throw new RuntimeException("CLNS files not supported yet.");
+    /**
+     * Prints values of a single file either as a table row or as a list of labeled values.
+     */
+    private void print(String[] labels, Object[] values) {
+        if (parameters.isTableView()) {
+            tableAdapter.row(values);
+            return;
+        }
+        for (int i = 0; i < labels.length; ++i)
+            stream.println((i == 0 ? "" : "  ") + labels[i] + ": " + values[i]);
+    }
+
+    /**
+     * Processes input files in parallel and prints results in the order of input files.
+     */
+    private void processFiles(List<String> files, String[] labels, final FileProcessor processor) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(files.size(), Runtime.getRuntime().availableProcessors())));
+        try {
+            List<Future<Object[]>> rows = new ArrayList<>(files.size());
+            for (final String file : files)
+                rows.add(executor.submit(new Callable<Object[]>() {
+                    @Override
+                    public Object[] call() throws Exception {
+                        return processor.process(file);
+                    }
+                }));
+            for (Future<Object[]> row : rows)
+                try {
+                    print(labels, row.get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception)
+                        throw (Exception) cause;
+                    throw e;
+                }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private interface FileProcessor {
+        Object[] process(String fileName) throws IOException;
     }
 
     @Override
@@ -115,10 +226,10 @@ public class ActionInfo implements Action {
     @Parameters(commandDescription = "Outputs information about mixcr binary file.",
             optionPrefixes = "-")
     public static final class InfoParameters extends ActionParameters {
-        @Parameter(description = "binary_file{.vdjca|.clns}[.gz]...")
+        @Parameter(description = "binary_file{.vdjca|.clns}[.gz]|directory...")
         public List<String> input;
 
-        @Parameter(description = "Output information as table.",
+        @Parameter(description = "Output information as table (one tab-delimited row per file).",
                 names = {"-t", "--table"})
         public Boolean tableView = null;
 
@@ -126,19 +237,55 @@ public class ActionInfo implements Action {
             return tableView != null && tableView;
         }
 
-        public FilesType getType() {
-            if (input.isEmpty())
-                throw new ParameterException("No files specified.");
+        private List<String> inputFiles;
 
-            return FilesType.getType(input.get(0));
+        /**
+         * Returns input files, directories are replaced with .vdjca and .clns files found in them recursively.
+         */
+        public List<String> getInputFiles() {
+            if (inputFiles == null) {
+                List<String> files = new ArrayList<>();
+                for (String fileName : input)
+                    addFiles(new File(fileName), files, true);
+                inputFiles = files;
+            }
+            return inputFiles;
+        }
+
+        private static void addFiles(File file, List<String> files, boolean explicit) {
+            if (file.isDirectory()) {
+                File[] children = file.listFiles();
+                if (children == null)
+                    return;
+                Arrays.sort(children);
+                for (File child : children)
+                    addFiles(child, files, false);
+            } else if (explicit || FilesType.getTypeSafe(file.getPath()) != null)
+                files.add(file.getPath());
+        }
+
+        /**
+         * Returns input files grouped by type, in the order of {@link FilesType} values.
+         */
+        public Map<FilesType, List<String>> getInputFilesByType() {
+            Map<FilesType, List<String>> result = new EnumMap<>(FilesType.class);
+            for (String fileName : getInputFiles()) {
+                FilesType type = FilesType.getType(fileName);
+                List<String> files = result.get(type);
+                if (files == null)
+                    result.put(type, files = new ArrayList<>());
+                files.add(fileName);
+            }
+            return result;
         }
 
         @Override
         public void validate() {
-            FilesType type = getType();
-            for (String fileName : input)
-                if (FilesType.getType(fileName) != type)
-                    throw new ParameterException("Mixed file types: " + fileName);
+            if (input == null || getInputFiles().isEmpty())
+                throw new ParameterException("No files specified.");
+            // Files found in directories are of known types, explicitly listed ones are checked here
+            for (String fileName : getInputFiles())
+                FilesType.getType(fileName);
         }
     }
 
@@ -159,10 +306,17 @@ public class ActionInfo implements Action {
         }
 
         public static FilesType getType(String fileName) {
+            FilesType type = getTypeSafe(fileName);
+            if (type == null)
+                throw new ParameterException("Unknown file type: " + fileName);
+            return type;
+        }
+
+        public static FilesType getTypeSafe(String fileName) {
             for (FilesType filesType : values())
                 if (filesType.isOfType(fileName))
                     return filesType;
-            throw new ParameterException("Unknown file type: " + fileName);
+            return null;
         }
     }
 
@@ -35,16 +35,18 @@ import com.beust.jcommander.Parameters;
 import com.milaboratory.mitools.cli.Action;
 import com.milaboratory.mitools.cli.ActionHelper;
 import com.milaboratory.mitools.cli.ActionParameters;
-import com.milaboratory.mixcr.basictypes.VDJCAlignments;
-import com.milaboratory.mixcr.basictypes.VDJCAlignmentsReader;
-import com.milaboratory.mixcr.basictypes.VDJCAlignmentsWriter;
+import com.milaboratory.mixcr.basictypes.*;
+import com.milaboratory.mixcr.reference.Allele;
 import com.milaboratory.mixcr.reference.AlleleResolver;
 import com.milaboratory.mixcr.reference.LociLibraryManager;
 import com.milaboratory.util.CanReportProgress;
 import com.milaboratory.util.SmartProgressReporter;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -53,6 +55,8 @@ public class ActionMergeAlignments implements Action {
 
     @Override
     public void go(ActionHelper helper) throws Exception {
+        if (mergeRaw())
+            return;
         try (MultiReader reader = new MultiReader(parameters.getInputFileNames());
              VDJCAlignmentsWriter writer = new VDJCAlignmentsWriter(parameters.getOutputFileName())) {
             reader.initNextReader();
@@ -64,6 +68,126 @@ public class ActionMergeAlignments implements Action {
         }
     }
 
+    /**
+     * Fast path for inputs written with identical parameters and alleles (e.g. lanes of the same sample): records are
+     * copied in serialized form with only read ids shifted, inputs are read concurrently.
+     *
+     * @return false if inputs are not compatible, so records must be re-encoded
+     */
+    private boolean mergeRaw() throws Exception {
+        List<String> files = parameters.getInputFileNames();
+        final List<VDJCAlignmentsReader> readers = new ArrayList<>();
+        List<RawReader> rawReaders = new ArrayList<>();
+        try {
+            for (String file : files) {
+                VDJCAlignmentsReader reader = new VDJCAlignmentsReader(file, LociLibraryManager.getDefault());
+                readers.add(reader);
+                reader.setProjection(EnumSet.noneOf(VDJCAlignmentsSection.class));
+                if (!reader.isRawRecordsSupported() || !isCompatible(readers.get(0), reader))
+                    return false;
+            }
+
+            try (VDJCAlignmentsWriter writer = new VDJCAlignmentsWriter(parameters.getOutputFileName())) {
+                writer.header(readers.get(0).getParameters(), readers.get(0).getUsedAlleles());
+                SmartProgressReporter.startProgressReport("Merging", new CanReportProgress() {
+                    @Override
+                    public double getProgress() {
+                        double progress = 0;
+                        for (VDJCAlignmentsReader reader : readers)
+                            progress += reader.getProgress();
+                        return progress / readers.size();
+                    }
+
+                    @Override
+                    public boolean isFinished() {
+                        for (VDJCAlignmentsReader reader : readers)
+                            if (!reader.isFinished())
+                                return false;
+                        return true;
+                    }
+                });
+
+                for (VDJCAlignmentsReader reader : readers) {
+                    RawReader rawReader = new RawReader(reader);
+                    rawReaders.add(rawReader);
+                    rawReader.start();
+                }
+
+                long readIdOffset = 0;
+                for (RawReader rawReader : rawReaders) {
+                    RawVDJCAlignments[] chunk;
+                    while ((chunk = rawReader.queue.take()) != RawReader.END)
+                        for (RawVDJCAlignments record : chunk)
+                            writer.writeRaw(record, readIdOffset);
+                    if (rawReader.error != null)
+                        throw new RuntimeException(rawReader.error);
+                    readIdOffset += rawReader.reader.getNumberOfReads();
+                    VDJCAlignmentsFooter footer = rawReader.reader.getFooter();
+                    writer.addLocusCounts(footer == null ? null : footer.getLocusCounts());
+                }
+                writer.setNumberOfProcessedReads(readIdOffset);
+            }
+            return true;
+        } finally {
+            for (RawReader rawReader : rawReaders)
+                rawReader.interrupt();
+            for (VDJCAlignmentsReader reader : readers)
+                reader.close();
+        }
+    }
+
+    private static boolean isCompatible(VDJCAlignmentsReader first, VDJCAlignmentsReader reader) {
+        if (!first.getParameters().equals(reader.getParameters()))
+            return false;
+        List<Allele> a1 = first.getUsedAlleles(), a2 = reader.getUsedAlleles();
+        if (a1.size() != a2.size())
+            return false;
+        for (int i = 0; i < a1.size(); i++)
+            if (!a1.get(i).getId().equals(a2.get(i).getId()))
+                return false;
+        return true;
+    }
+
+    /**
+     * Reads serialized records of a single input ahead of the writer.
+     */
+    private static final class RawReader extends Thread {
+        static final RawVDJCAlignments[] END = new RawVDJCAlignments[0];
+        static final int CHUNK_SIZE = 1024;
+        final VDJCAlignmentsReader reader;
+        final ArrayBlockingQueue<RawVDJCAlignments[]> queue = new ArrayBlockingQueue<>(16);
+        volatile Throwable error;
+
+        RawReader(VDJCAlignmentsReader reader) {
+            this.reader = reader;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                try {
+                    List<RawVDJCAlignments> chunk = new ArrayList<>(CHUNK_SIZE);
+                    RawVDJCAlignments record;
+                    while ((record = reader.takeRaw()) != null) {
+                        chunk.add(record);
+                        if (chunk.size() == CHUNK_SIZE) {
+                            queue.put(chunk.toArray(new RawVDJCAlignments[CHUNK_SIZE]));
+                            chunk.clear();
+                        }
+                    }
+                    if (!chunk.isEmpty())
+                        queue.put(chunk.toArray(new RawVDJCAlignments[chunk.size()]));
+                } catch (RuntimeException | Error e) {
+                    error = e;
+                }
+                queue.put(END);
+            } catch (InterruptedException e) {
+                // merge was aborted
+            }
+        }
+    }
+
     @Override
     public String command() {
         return "mergeAlignments";
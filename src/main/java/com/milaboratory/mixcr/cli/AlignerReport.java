@@ -30,6 +30,8 @@ package com.milaboratory.mixcr.cli;
 
 import com.milaboratory.core.io.sequence.SequenceRead;
 import com.milaboratory.mixcr.basictypes.VDJCAlignments;
+import com.milaboratory.mixcr.util.MemoryBudget;
+import com.milaboratory.mixcr.util.PipelineMetrics;
 import com.milaboratory.mixcr.vdjaligners.VDJCAlignerEventListener;
 import com.milaboratory.mixcr.vdjaligners.VDJCAlignmentFailCause;
 
@@ -43,6 +45,9 @@ public final class AlignerReport implements VDJCAlignerEventListener, ReportWrit
     private final AtomicLong alignedOverlap = new AtomicLong(0);
     private final AtomicLong nonAlignedOverlap = new AtomicLong(0);
     private volatile boolean allowDifferentVJLoci = false;
+    private volatile long inputBytes = -1, inputReads, inputNanos;
+    private volatile PipelineMetrics metrics;
+    private volatile MemoryBudget memoryBudget;
 
     public long getFails(VDJCAlignmentFailCause cause) {
         return fails.get(cause.ordinal());
@@ -76,6 +81,29 @@ public final class AlignerReport implements VDJCAlignerEventListener, ReportWrit
         this.allowDifferentVJLoci = allowDifferentVJLoci;
     }
 
+    /**
+     * Sets statistics of input reading (bytes read from input files, number of reads and time spent), if available.
+     */
+    public void setInputStatistics(long bytes, long reads, long nanos) {
+        this.inputBytes = bytes;
+        this.inputReads = reads;
+        this.inputNanos = nanos;
+    }
+
+    /**
+     * Sets metrics of alignment stages to be written to the report.
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets memory budget which breakdown is written to the report.
+     */
+    public void setMemoryBudget(MemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
     @Override
     public void onFailedAlignment(SequenceRead read, VDJCAlignmentFailCause cause) {
         fails.incrementAndGet(cause.ordinal());
@@ -115,6 +143,15 @@ public final class AlignerReport implements VDJCAlignerEventListener, ReportWrit
         helper.writePercentField("Overlapped, percent", alignedOverlap.get() + nonAlignedOverlap.get(), total);
         helper.writePercentField("Overlapped and aligned, percent", alignedOverlap.get(), total);
         helper.writePercentField("Overlapped and not aligned, percent", nonAlignedOverlap.get(), total);
+        if (inputBytes != -1 && inputNanos > 0) {
+            double seconds = inputNanos / 1E9;
+            helper.writeField("Input throughput, MB/s", String.format("%.2f", inputBytes / seconds / (1 << 20)));
+            helper.writeField("Input throughput, reads/s", String.format("%.0f", inputReads / seconds));
+        }
+        if (metrics != null)
+            helper.writeMetrics(metrics);
+        if (memoryBudget != null)
+            helper.writeMemoryBudget(memoryBudget);
     }
 
     public long getTotal() {
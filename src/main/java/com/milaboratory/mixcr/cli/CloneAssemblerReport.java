@@ -31,6 +31,8 @@ package com.milaboratory.mixcr.cli;
 import com.milaboratory.mixcr.assembler.CloneAccumulator;
 import com.milaboratory.mixcr.assembler.CloneAssemblerListener;
 import com.milaboratory.mixcr.basictypes.VDJCAlignments;
+import com.milaboratory.mixcr.util.MemoryBudget;
+import com.milaboratory.mixcr.util.PipelineMetrics;
 
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -46,6 +48,22 @@ public final class CloneAssemblerReport implements CloneAssemblerListener, Repor
     final AtomicLong deferredAlignmentsMapped = new AtomicLong();
     final AtomicInteger clonesClustered = new AtomicInteger();
     final AtomicLong readsClustered = new AtomicLong();
+    volatile PipelineMetrics metrics;
+    volatile MemoryBudget memoryBudget;
+
+    /**
+     * Sets metrics of assembling stages to be written to the report.
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets memory budget which breakdown is written to the report.
+     */
+    public void setMemoryBudget(MemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
 
     public long getTotalReads() {
         return totalReads;
@@ -167,5 +185,9 @@ public final class CloneAssemblerReport implements CloneAssemblerListener, Repor
                         droppedAsLowQuality.get(), totalReads)
                 .writePercentField("Percent of reads dropped due to failed mapping",
                         deferredAlignmentsDropped.get(), totalReads);
+        if (metrics != null)
+            helper.writeMetrics(metrics);
+        if (memoryBudget != null)
+            helper.writeMemoryBudget(memoryBudget);
     }
 }
@@ -28,27 +28,49 @@
  */
 package com.milaboratory.mixcr.cli;
 
+import com.milaboratory.mitools.cli.Action;
 import com.milaboratory.mitools.cli.JCommanderBasedMain;
 import com.milaboratory.mixcr.util.VersionInfoProvider;
 
+import java.util.Arrays;
+
 public class Main {
     public static void main(String... args) throws Exception {
         // Getting command string if executed from script
         String command = System.getProperty("mixcr.command", "java -jar mixcr.jar");
 
         // Setting up main helper
-        JCommanderBasedMain main = new JCommanderBasedMain(command,
+        Action[] actions = createActions();
+        actions = Arrays.copyOf(actions, actions.length + 1);
+        actions[actions.length - 1] = new ActionDaemon();
+        JCommanderBasedMain main = createMain(command, actions);
+
+        // Executing main method
+        main.main(args);
+    }
+
+    /**
+     * Creates new instances of all actions that can be executed by daemon (see {@link ActionDaemon}).
+     */
+    static Action[] createActions() {
+        return new Action[]{
                 new ActionAlign(),
+                new ActionAlignBatch(),
                 new ActionExportAlignments(),
                 new ActionAssemble(),
                 new ActionExportClones(),
                 new ActionPrettyAlignments(),
                 new ActionAlignmentsStat(),
                 new ActionMergeAlignments(),
+                new ActionFilterAlignments(),
                 new ActionInfo(),
                 new ActionExportCloneReads(),
                 new VersionInfoAction(),
-                new ActionImportSegments());
+                new ActionImportSegments()};
+    }
+
+    static JCommanderBasedMain createMain(String command, Action... actions) {
+        JCommanderBasedMain main = new JCommanderBasedMain(command, actions);
 
         // Adding version info callback
         main.setVersionInfoCallback(new Runnable() {
@@ -60,7 +82,6 @@ public class Main {
             }
         });
 
-        // Executing main method
-        main.main(args);
+        return main;
     }
 }
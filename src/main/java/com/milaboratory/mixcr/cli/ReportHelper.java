@@ -28,6 +28,11 @@
  */
 package com.milaboratory.mixcr.cli;
 
+import com.milaboratory.mixcr.util.MemoryBudget;
+import com.milaboratory.mixcr.util.PipelineMetrics;
+import com.milaboratory.mixcr.util.QueueMetrics;
+import com.milaboratory.mixcr.util.StageMetrics;
+
 import java.io.FileNotFoundException;
 import java.io.OutputStream;
 import java.io.PrintStream;
@@ -62,6 +67,28 @@ public final class ReportHelper {
         return this;
     }
 
+    /**
+     * Writes per-stage metrics, one line of space-separated key=value pairs per stage.
+     */
+    public ReportHelper writeMetrics(PipelineMetrics metrics) {
+        for (StageMetrics stage : metrics.getStages())
+            writeField("Stage metrics, " + stage.getName(), stage.toMachineReadableString());
+        for (QueueMetrics queue : metrics.getQueues())
+            writeField("Queue metrics, " + queue.getName(), queue.toMachineReadableString());
+        return this;
+    }
+
+    /**
+     * Writes memory budget breakdown, one line of space-separated key=value pairs per consumer.
+     */
+    public ReportHelper writeMemoryBudget(MemoryBudget budget) {
+        writeField("Memory budget", "total=" + budget.getTotal() + (budget.getPeakOvercommit() == 0 ? "" :
+                " overcommit=" + budget.getPeakOvercommit()));
+        for (MemoryBudget.Consumer consumer : budget.getConsumers())
+            writeField("Memory budget, " + consumer.getName(), consumer.toMachineReadableString());
+        return this;
+    }
+
     public ReportHelper end() {
         printStream.println("======================================");
         return this;
@@ -28,7 +28,10 @@
  */
 package com.milaboratory.mixcr.cli;
 
+import com.beust.jcommander.ParameterException;
 import com.milaboratory.mixcr.reference.Locus;
+import com.milaboratory.mixcr.util.MemoryBudget;
+import com.milaboratory.mixcr.util.ParseUtil;
 import gnu.trove.map.hash.TIntObjectHashMap;
 
 import java.io.File;
@@ -76,6 +79,30 @@ public final class Util {
         return;
     }
 
+    /**
+     * Creates memory budget from the value of --memory option (null for default budget).
+     */
+    public static MemoryBudget createMemoryBudget(String memory) {
+        long total = memory == null ? MemoryBudget.defaultTotal() : ParseUtil.parseSize(memory);
+        if (total > Runtime.getRuntime().maxMemory())
+            System.err.println("WARNING: memory budget (" + memory + ") exceeds maximal heap size; increase -Xmx.");
+        return new MemoryBudget(total);
+    }
+
+    /**
+     * Checks value of --memory option.
+     */
+    public static void validateMemory(String memory) {
+        if (memory == null)
+            return;
+        try {
+            if (ParseUtil.parseSize(memory) <= 0)
+                throw new ParameterException("Memory budget must be positive.");
+        } catch (IllegalArgumentException e) {
+            throw new ParameterException(e.getMessage());
+        }
+    }
+
     public static void writeReport(String input, String output,
                                    String commandLineArguments,
                                    String reportFileName,
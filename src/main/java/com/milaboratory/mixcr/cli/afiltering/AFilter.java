@@ -30,83 +30,77 @@ package com.milaboratory.mixcr.cli.afiltering;
 
 import cc.redberry.primitives.Filter;
 import com.milaboratory.mixcr.basictypes.VDJCAlignments;
-import com.milaboratory.mixcr.reference.GeneFeature;
-import com.milaboratory.mixcr.reference.GeneType;
 
-import javax.script.Invocable;
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
-import javax.script.ScriptException;
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.util.Map;
+import java.util.List;
 
 /**
+ * Alignments filter compiled from a simple expression language. Expression is parsed and type-checked once into a
+ * tree of Java objects. Per-record evaluation state is kept in a context reused by each thread between records, so a
+ * single instance is thread-safe and may be shared by all processing threads.
+ *
+ * <p>Syntax: optional assignments {@code name = expression;} followed by a boolean expression. Supported are
+ * {@code || && !}, comparisons {@code < <= > >= == !=} (numbers; {@code ==} and {@code !=} also for strings and
+ * booleans), arithmetic {@code + - * /}, parentheses, number and string literals, {@code true} and {@code false}.
+ * Gene features are referenced by name ({@code CDR3}) or as string literal ({@code "{CDR3Begin:CDR3End}"}), gene types
+ * by letter ({@code V, D, J, C}).</p>
+ *
+ * <p>Functions:</p>
+ * <ul>
+ * <li>{@code length(feature)}, {@code minQuality(feature)} - feature length and minimal quality (0 if absent)</li>
+ * <li>{@code contains(feature)} - whether feature can be extracted</li>
+ * <li>{@code nt(feature)}, {@code aa(feature)} - nucleotide / amino acid sequence of feature ("" if absent)</li>
+ * <li>{@code gene(type)}, {@code allele(type)}, {@code locus(type)} - gene / allele name and locus (e.g. "TRB") of
+ * the best hit ("" if no hits)</li>
+ * <li>{@code score(type)}, {@code hitsCount(type)} - score of the best hit, number of hits</li>
+ * <li>{@code numberOfTargets()}, {@code targetMeanQuality(target)}</li>
+ * <li>{@code targetAlignedTop(target[, type])}, {@code targetAlignedAny(target[, type])} - whether target is covered
+ * by the top / any hit (of given gene type)</li>
+ * <li>{@code contains(string, substring)}, {@code startsWith(string, prefix)}</li>
+ * </ul>
+ *
+ * <p>Example: {@code l = length(CDR3); startsWith(gene(V), "TRBV12") && l > 30 && score(J) >= 100}</p>
+ *
  * Created by dbolotin on 05/09/14.
  */
 public class AFilter implements Filter<VDJCAlignments> {
-    final ScriptEngine engine;
-    final Invocable invocable;
+    final Expr[] assignments;
+    final Expr filter;
+    final ThreadLocal<Expr.Context> contexts = new ThreadLocal<Expr.Context>() {
+        @Override
+        protected Expr.Context initialValue() {
+            return new Expr.Context(assignments.length);
+        }
+    };
 
-    public AFilter(ScriptEngine engine, Invocable invocable) {
-        this.engine = engine;
-        this.invocable = invocable;
+    AFilter(List<Expr> assignments, Expr filter) {
+        this.assignments = assignments.toArray(new Expr[assignments.size()]);
+        this.filter = filter;
     }
 
     @Override
     public boolean accept(VDJCAlignments alignments) {
-        engine.put("a", alignments);
+        Expr.Context context = contexts.get();
+        context.alignments = alignments;
         try {
-            Object value = invocable.invokeFunction("evaluate_filter");
-            return (Boolean) value;
-        } catch (ScriptException | NoSuchMethodException e) {
-            throw new RuntimeException(e);
+            for (int i = 0; i < assignments.length; ++i)
+                context.variables[i] = assignments[i].value(context);
+            return filter.bool(context);
+        } finally {
+            // Not retaining last record
+            context.alignments = null;
         }
     }
 
+    /**
+     * Compiles filter expression.
+     *
+     * @param filterCode filter expression
+     * @return compiled filter
+     * @throws IllegalArgumentException if expression contains errors
+     */
     public static AFilter build(String filterCode) {
-        try {
-            ScriptEngineManager manager = new ScriptEngineManager();
-            ScriptEngine engine = manager.getEngineByName("JavaScript");
-            Reader reader = null;
-            String script = null;
-            try {
-                reader = new BufferedReader(new InputStreamReader(
-                        AFilter.class.getClassLoader().getResourceAsStream("js/filter_init.js")));
-
-                char[] buffer = new char[1024];
-                int size;
-                StringBuilder sb = new StringBuilder();
-                while ((size = reader.read(buffer)) >= 0)
-                    sb.append(buffer, 0, size);
-                script = sb.toString();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            } finally {
-                try {
-                    if (reader != null)
-                        reader.close();
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            }
-            int filterBegin = filterCode.lastIndexOf(';') + 1;
-            script = script.replace("/*CODE*/", filterCode.substring(0, filterBegin));
-            script = script.replace("/*FILTER*/", filterCode.substring(filterBegin));
-            engine.eval(script);
-
-            for (Map.Entry<GeneFeature, String> entry : GeneFeature.getNameByFeature().entrySet())
-                engine.put(entry.getValue(), entry.getKey());
-
-            for (GeneType geneType : GeneType.values())
-                engine.put(new String(new char[]{geneType.getLetter()}), geneType);
-
-            Invocable inv = (Invocable) engine;
-            return new AFilter(engine, inv);
-        } catch (ScriptException e) {
-            throw new IllegalArgumentException(e);
-        }
+        AFilterParser parser = new AFilterParser(filterCode);
+        Expr filter = parser.parse();
+        return new AFilter(parser.assignments, filter);
     }
 }
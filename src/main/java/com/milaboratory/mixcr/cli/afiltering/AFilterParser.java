@@ -0,0 +1,410 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.cli.afiltering;
+
+import com.milaboratory.mixcr.reference.GeneFeature;
+import com.milaboratory.mixcr.reference.GeneType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Recursive descent parser of filter expressions (see {@link AFilter} for the syntax).
+ */
+final class AFilterParser {
+    private static final String[] OPERATORS = {"||", "&&", "==", "!=", "<=", ">=", "<", ">", "!",
+            "+", "-", "*", "/", "(", ")", ",", ";", "="};
+
+    final String code;
+    final List<Token> tokens = new ArrayList<>();
+    final HashMap<String, Expr.Variable> variables = new HashMap<>();
+    final List<Expr> assignments = new ArrayList<>();
+    int pointer = 0;
+
+    AFilterParser(String code) {
+        this.code = code;
+        tokenize();
+    }
+
+    /**
+     * Parses the whole program: optional list of assignments ({@code name = expression;}) followed by boolean
+     * expression.
+     */
+    Expr parse() {
+        while (peek().kind == Kind.Identifier && (peek().text.equals("var") ||
+                (peek(1).kind == Kind.Operator && peek(1).text.equals("=")))) {
+            if (peek().text.equals("var"))
+                next();
+            Token name = expect(Kind.Identifier, null);
+            expect(Kind.Operator, "=");
+            Expr value = parseExpression();
+            expect(Kind.Operator, ";");
+            Expr.Variable variable = new Expr.Variable(value.type, variables.size());
+            if (variables.put(name.text, variable) != null)
+                throw error(name, "variable " + name.text + " is already defined");
+            assignments.add(value);
+        }
+        Expr result = parseExpression();
+        if (peek().kind == Kind.Operator && peek().text.equals(";"))
+            next();
+        if (peek().kind != Kind.End)
+            throw error(peek(), "unexpected " + peek().text);
+        return check(result, Expr.Type.Boolean, tokens.get(0));
+    }
+
+    private Expr parseExpression() {
+        Expr left = parseAnd();
+        while (accept("||"))
+            left = new Expr.Or(check(left, Expr.Type.Boolean, previous()), check(parseAnd(), Expr.Type.Boolean, previous()));
+        return left;
+    }
+
+    private Expr parseAnd() {
+        Expr left = parseComparison();
+        while (accept("&&"))
+            left = new Expr.And(check(left, Expr.Type.Boolean, previous()), check(parseComparison(), Expr.Type.Boolean, previous()));
+        return left;
+    }
+
+    private Expr parseComparison() {
+        Expr left = parseSum();
+        Token op = peek();
+        if (op.kind != Kind.Operator)
+            return left;
+        switch (op.text) {
+            case "<":
+            case "<=":
+            case ">":
+            case ">=":
+                next();
+                return new Expr.NumberComparison(op.text, check(left, Expr.Type.Number, op),
+                        check(parseSum(), Expr.Type.Number, op));
+            case "==":
+            case "!=":
+                next();
+                Expr right = parseSum();
+                if (left.type != right.type)
+                    throw error(op, "can't compare " + left.type + " with " + right.type);
+                if (left.type == Expr.Type.Number)
+                    return new Expr.NumberComparison(op.text, left, right);
+                return new Expr.Equals(op.text.equals("!="), left, right);
+            default:
+                return left;
+        }
+    }
+
+    private Expr parseSum() {
+        Expr left = parseProduct();
+        while (peek().kind == Kind.Operator && (peek().text.equals("+") || peek().text.equals("-"))) {
+            Token op = next();
+            left = new Expr.Arithmetic(op.text.charAt(0), check(left, Expr.Type.Number, op),
+                    check(parseProduct(), Expr.Type.Number, op));
+        }
+        return left;
+    }
+
+    private Expr parseProduct() {
+        Expr left = parseUnary();
+        while (peek().kind == Kind.Operator && (peek().text.equals("*") || peek().text.equals("/"))) {
+            Token op = next();
+            left = new Expr.Arithmetic(op.text.charAt(0), check(left, Expr.Type.Number, op),
+                    check(parseUnary(), Expr.Type.Number, op));
+        }
+        return left;
+    }
+
+    private Expr parseUnary() {
+        if (accept("!"))
+            return new Expr.Not(check(parseUnary(), Expr.Type.Boolean, previous()));
+        if (accept("-"))
+            return new Expr.Negate(check(parseUnary(), Expr.Type.Number, previous()));
+        return parsePrimary();
+    }
+
+    private Expr parsePrimary() {
+        Token token = next();
+        switch (token.kind) {
+            case Number:
+                try {
+                    return new Expr.NumberConstant(Double.parseDouble(token.text));
+                } catch (NumberFormatException e) {
+                    throw error(token, "malformed number " + token.text);
+                }
+            case String:
+                return new Expr.StringConstant(token.text);
+            case Operator:
+                if (token.text.equals("(")) {
+                    Expr expr = parseExpression();
+                    expect(Kind.Operator, ")");
+                    return expr;
+                }
+                throw error(token, "unexpected " + token.text);
+            case Identifier:
+                if (accept("("))
+                    return parseFunction(token);
+                if (token.text.equals("true") || token.text.equals("false"))
+                    return new Expr.BooleanConstant(token.text.equals("true"));
+                Expr.Variable variable = variables.get(token.text);
+                if (variable == null)
+                    throw error(token, "unknown variable " + token.text);
+                return variable;
+            default:
+                throw error(token, "unexpected end of expression");
+        }
+    }
+
+    private Expr parseFunction(Token name) {
+        List<Token> argTokens = new ArrayList<>();
+        List<Expr> args = new ArrayList<>();
+        if (!accept(")")) {
+            do {
+                argTokens.add(peek());
+                // gene types and gene features are compile time constants, represented by tokens
+                if (isConstantArgument(peek(), peek(1)))
+                    args.add(null);
+                else
+                    args.add(parseExpression());
+                if (args.get(args.size() - 1) == null)
+                    next();
+            } while (accept(","));
+            expect(Kind.Operator, ")");
+        }
+
+        switch (name.text) {
+            case "length":
+                checkArity(name, args, 1);
+                return new Expr.FeatureLength(feature(argTokens.get(0)));
+            case "minQuality":
+                checkArity(name, args, 1);
+                return new Expr.FeatureMinQuality(feature(argTokens.get(0)));
+            case "nt":
+                checkArity(name, args, 1);
+                return new Expr.FeatureSequence(feature(argTokens.get(0)), false);
+            case "aa":
+                checkArity(name, args, 1);
+                return new Expr.FeatureSequence(feature(argTokens.get(0)), true);
+            case "contains":
+                if (args.size() == 1)
+                    return new Expr.ContainsFeature(feature(argTokens.get(0)));
+                checkArity(name, args, 2);
+                return new Expr.StringTest(false, stringArg(argTokens, args, 0), stringArg(argTokens, args, 1));
+            case "startsWith":
+                checkArity(name, args, 2);
+                return new Expr.StringTest(true, stringArg(argTokens, args, 0), stringArg(argTokens, args, 1));
+            case "numberOfTargets":
+                checkArity(name, args, 0);
+                return new Expr.NumberOfTargets();
+            case "targetMeanQuality":
+                checkArity(name, args, 1);
+                return new Expr.TargetMeanQuality(numberArg(argTokens, args, 0));
+            case "targetAlignedTop":
+            case "targetAlignedAny":
+                if (args.size() != 1)
+                    checkArity(name, args, 2);
+                GeneType[] geneTypes = args.size() == 1 ?
+                        new GeneType[]{GeneType.Variable, GeneType.Diversity, GeneType.Joining, GeneType.Constant} :
+                        new GeneType[]{geneType(argTokens.get(1))};
+                return new Expr.TargetAligned(numberArg(argTokens, args, 0), geneTypes,
+                        name.text.equals("targetAlignedTop"));
+            case "score":
+                checkArity(name, args, 1);
+                return new Expr.BestHitScore(geneType(argTokens.get(0)));
+            case "hitsCount":
+                checkArity(name, args, 1);
+                return new Expr.HitsCount(geneType(argTokens.get(0)));
+            case "gene":
+                checkArity(name, args, 1);
+                return new Expr.BestHitName(geneType(argTokens.get(0)), false);
+            case "allele":
+                checkArity(name, args, 1);
+                return new Expr.BestHitName(geneType(argTokens.get(0)), true);
+            case "locus":
+                checkArity(name, args, 1);
+                return new Expr.BestHitLocus(geneType(argTokens.get(0)));
+            default:
+                throw error(name, "unknown function " + name.text);
+        }
+    }
+
+    private boolean isConstantArgument(Token token, Token following) {
+        if (token.kind != Kind.Identifier || variables.containsKey(token.text)
+                || following.kind != Kind.Operator || !(following.text.equals(",") || following.text.equals(")")))
+            return false;
+        return geneTypeOrNull(token) != null || GeneFeature.getFeatureByName(token.text) != null;
+    }
+
+    private GeneType geneTypeOrNull(Token token) {
+        return token.kind == Kind.Identifier && token.text.length() == 1 && "VDJC".indexOf(token.text.charAt(0)) >= 0 ?
+                GeneType.fromChar(token.text.charAt(0)) : null;
+    }
+
+    private GeneType geneType(Token token) {
+        GeneType geneType = geneTypeOrNull(token);
+        if (geneType == null)
+            throw error(token, "gene type (V, D, J or C) expected");
+        return geneType;
+    }
+
+    private GeneFeature feature(Token token) {
+        GeneFeature feature = null;
+        if (token.kind == Kind.Identifier)
+            feature = GeneFeature.getFeatureByName(token.text);
+        else if (token.kind == Kind.String)
+            try {
+                feature = GeneFeature.parse(token.text);
+            } catch (RuntimeException e) {
+                throw error(token, "can't parse gene feature " + token.text);
+            }
+        if (feature == null)
+            throw error(token, "gene feature expected");
+        return feature;
+    }
+
+    private Expr numberArg(List<Token> tokens, List<Expr> args, int i) {
+        if (args.get(i) == null)
+            throw error(tokens.get(i), "number expected");
+        return check(args.get(i), Expr.Type.Number, tokens.get(i));
+    }
+
+    private Expr stringArg(List<Token> tokens, List<Expr> args, int i) {
+        if (args.get(i) == null)
+            throw error(tokens.get(i), "string expected");
+        return check(args.get(i), Expr.Type.String, tokens.get(i));
+    }
+
+    private void checkArity(Token name, List<Expr> args, int arity) {
+        if (args.size() != arity)
+            throw error(name, name.text + " expects " + arity + " argument(s)");
+    }
+
+    private Expr check(Expr expr, Expr.Type type, Token token) {
+        if (expr.type != type)
+            throw error(token, type + " expression expected, but was " + expr.type);
+        return expr;
+    }
+
+    /* Tokens */
+
+    private enum Kind {
+        Number, String, Identifier, Operator, End
+    }
+
+    private static final class Token {
+        final Kind kind;
+        final String text;
+        final int position;
+
+        Token(Kind kind, String text, int position) {
+            this.kind = kind;
+            this.text = text;
+            this.position = position;
+        }
+    }
+
+    private Token peek() {
+        return peek(0);
+    }
+
+    private Token peek(int offset) {
+        return tokens.get(Math.min(pointer + offset, tokens.size() - 1));
+    }
+
+    private Token next() {
+        Token token = peek();
+        if (token.kind != Kind.End)
+            ++pointer;
+        return token;
+    }
+
+    private Token previous() {
+        return tokens.get(pointer - 1);
+    }
+
+    private boolean accept(String operator) {
+        if (peek().kind == Kind.Operator && peek().text.equals(operator)) {
+            next();
+            return true;
+        }
+        return false;
+    }
+
+    private Token expect(Kind kind, String text) {
+        Token token = next();
+        if (token.kind != kind || (text != null && !text.equals(token.text)))
+            throw error(token, (text == null ? kind.toString().toLowerCase() : text) + " expected");
+        return token;
+    }
+
+    private IllegalArgumentException error(Token token, String message) {
+        return new IllegalArgumentException("Error in filter expression at position " + token.position +
+                ": " + message + "\n" + code);
+    }
+
+    private void tokenize() {
+        int i = 0;
+        outer:
+        while (i < code.length()) {
+            char c = code.charAt(i);
+            if (Character.isWhitespace(c)) {
+                ++i;
+                continue;
+            }
+            int begin = i;
+            if (Character.isDigit(c) || (c == '.' && i + 1 < code.length() && Character.isDigit(code.charAt(i + 1)))) {
+                while (i < code.length() && (Character.isDigit(code.charAt(i)) || code.charAt(i) == '.'))
+                    ++i;
+                tokens.add(new Token(Kind.Number, code.substring(begin, i), begin));
+                continue;
+            }
+            if (Character.isJavaIdentifierStart(c)) {
+                while (i < code.length() && Character.isJavaIdentifierPart(code.charAt(i)))
+                    ++i;
+                tokens.add(new Token(Kind.Identifier, code.substring(begin, i), begin));
+                continue;
+            }
+            if (c == '"' || c == '\'') {
+                int end = code.indexOf(c, i + 1);
+                if (end == -1)
+                    throw new IllegalArgumentException("Unterminated string at position " + begin + "\n" + code);
+                tokens.add(new Token(Kind.String, code.substring(i + 1, end), begin));
+                i = end + 1;
+                continue;
+            }
+            for (String op : OPERATORS)
+                if (code.startsWith(op, i)) {
+                    tokens.add(new Token(Kind.Operator, op, begin));
+                    i += op.length();
+                    continue outer;
+                }
+            throw new IllegalArgumentException("Unexpected character '" + c + "' at position " + begin + "\n" + code);
+        }
+        tokens.add(new Token(Kind.End, "end of expression", code.length()));
+    }
+}
@@ -0,0 +1,487 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.cli.afiltering;
+
+import com.milaboratory.core.sequence.AminoAcidSequence;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.mixcr.basictypes.VDJCAlignments;
+import com.milaboratory.mixcr.basictypes.VDJCHit;
+import com.milaboratory.mixcr.reference.GeneFeature;
+import com.milaboratory.mixcr.reference.GeneType;
+
+import static com.milaboratory.core.sequence.TranslationParameters.FromCenter;
+
+/**
+ * Node of compiled filter expression. Nodes are immutable, all per-record state is kept in {@link Context} (one per
+ * thread, reused between records), so a single compiled tree can be evaluated from several threads simultaneously.
+ */
+abstract class Expr {
+    enum Type {
+        Boolean, Number, String
+    }
+
+    final Type type;
+
+    Expr(Type type) {
+        this.type = type;
+    }
+
+    boolean bool(Context c) {
+        throw new IllegalStateException();
+    }
+
+    double number(Context c) {
+        throw new IllegalStateException();
+    }
+
+    String string(Context c) {
+        throw new IllegalStateException();
+    }
+
+    Object value(Context c) {
+        switch (type) {
+            case Boolean:
+                return bool(c);
+            case Number:
+                return number(c);
+            default:
+                return string(c);
+        }
+    }
+
+    static final class Context {
+        VDJCAlignments alignments;
+        final Object[] variables;
+
+        Context(int numberOfVariables) {
+            this.variables = numberOfVariables == 0 ? null : new Object[numberOfVariables];
+        }
+    }
+
+    /* Constants and variables */
+
+    static final class BooleanConstant extends Expr {
+        final boolean value;
+
+        BooleanConstant(boolean value) {
+            super(Type.Boolean);
+            this.value = value;
+        }
+
+        @Override
+        boolean bool(Context c) {
+            return value;
+        }
+    }
+
+    static final class NumberConstant extends Expr {
+        final double value;
+
+        NumberConstant(double value) {
+            super(Type.Number);
+            this.value = value;
+        }
+
+        @Override
+        double number(Context c) {
+            return value;
+        }
+    }
+
+    static final class StringConstant extends Expr {
+        final String value;
+
+        StringConstant(String value) {
+            super(Type.String);
+            this.value = value;
+        }
+
+        @Override
+        String string(Context c) {
+            return value;
+        }
+    }
+
+    static final class Variable extends Expr {
+        final int slot;
+
+        Variable(Type type, int slot) {
+            super(type);
+            this.slot = slot;
+        }
+
+        @Override
+        boolean bool(Context c) {
+            return (Boolean) c.variables[slot];
+        }
+
+        @Override
+        double number(Context c) {
+            return (Double) c.variables[slot];
+        }
+
+        @Override
+        String string(Context c) {
+            return (String) c.variables[slot];
+        }
+    }
+
+    /* Operators */
+
+    static final class And extends Expr {
+        final Expr left, right;
+
+        And(Expr left, Expr right) {
+            super(Type.Boolean);
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean bool(Context c) {
+            return left.bool(c) && right.bool(c);
+        }
+    }
+
+    static final class Or extends Expr {
+        final Expr left, right;
+
+        Or(Expr left, Expr right) {
+            super(Type.Boolean);
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean bool(Context c) {
+            return left.bool(c) || right.bool(c);
+        }
+    }
+
+    static final class Not extends Expr {
+        final Expr arg;
+
+        Not(Expr arg) {
+            super(Type.Boolean);
+            this.arg = arg;
+        }
+
+        @Override
+        boolean bool(Context c) {
+            return !arg.bool(c);
+        }
+    }
+
+    static final class Negate extends Expr {
+        final Expr arg;
+
+        Negate(Expr arg) {
+            super(Type.Number);
+            this.arg = arg;
+        }
+
+        @Override
+        double number(Context c) {
+            return -arg.number(c);
+        }
+    }
+
+    static final class Arithmetic extends Expr {
+        final char op;
+        final Expr left, right;
+
+        Arithmetic(char op, Expr left, Expr right) {
+            super(Type.Number);
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        double number(Context c) {
+            double l = left.number(c), r = right.number(c);
+            switch (op) {
+                case '+':
+                    return l + r;
+                case '-':
+                    return l - r;
+                case '*':
+                    return l * r;
+                default:
+                    return l / r;
+            }
+        }
+    }
+
+    static final class NumberComparison extends Expr {
+        final String op;
+        final Expr left, right;
+
+        NumberComparison(String op, Expr left, Expr right) {
+            super(Type.Boolean);
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean bool(Context c) {
+            double l = left.number(c), r = right.number(c);
+            switch (op) {
+                case "<":
+                    return l < r;
+                case "<=":
+                    return l <= r;
+                case ">":
+                    return l > r;
+                case ">=":
+                    return l >= r;
+                case "==":
+                    return l == r;
+                default:
+                    return l != r;
+            }
+        }
+    }
+
+    static final class Equals extends Expr {
+        final boolean negate;
+        final Expr left, right;
+
+        Equals(boolean negate, Expr left, Expr right) {
+            super(Type.Boolean);
+            this.negate = negate;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean bool(Context c) {
+            return negate != left.value(c).equals(right.value(c));
+        }
+    }
+
+    /* Functions */
+
+    static final class FeatureLength extends Expr {
+        final GeneFeature feature;
+
+        FeatureLength(GeneFeature feature) {
+            super(Type.Number);
+            this.feature = feature;
+        }
+
+        @Override
+        double number(Context c) {
+            NSequenceWithQuality seq = c.alignments.getFeature(feature);
+            return seq == null ? 0 : seq.size();
+        }
+    }
+
+    static final class FeatureMinQuality extends Expr {
+        final GeneFeature feature;
+
+        FeatureMinQuality(GeneFeature feature) {
+            super(Type.Number);
+            this.feature = feature;
+        }
+
+        @Override
+        double number(Context c) {
+            NSequenceWithQuality seq = c.alignments.getFeature(feature);
+            return seq == null || seq.size() == 0 ? 0 : seq.getQuality().minValue();
+        }
+    }
+
+    static final class ContainsFeature extends Expr {
+        final GeneFeature feature;
+
+        ContainsFeature(GeneFeature feature) {
+            super(Type.Boolean);
+            this.feature = feature;
+        }
+
+        @Override
+        boolean bool(Context c) {
+            return c.alignments.getFeature(feature) != null;
+        }
+    }
+
+    static final class FeatureSequence extends Expr {
+        final GeneFeature feature;
+        final boolean aminoAcid;
+
+        FeatureSequence(GeneFeature feature, boolean aminoAcid) {
+            super(Type.String);
+            this.feature = feature;
+            this.aminoAcid = aminoAcid;
+        }
+
+        @Override
+        String string(Context c) {
+            NSequenceWithQuality seq = c.alignments.getFeature(feature);
+            if (seq == null)
+                return "";
+            return aminoAcid ?
+                    AminoAcidSequence.translate(seq.getSequence(), FromCenter).toString() :
+                    seq.getSequence().toString();
+        }
+    }
+
+    static final class NumberOfTargets extends Expr {
+        NumberOfTargets() {
+            super(Type.Number);
+        }
+
+        @Override
+        double number(Context c) {
+            return c.alignments.numberOfTargets();
+        }
+    }
+
+    static final class TargetMeanQuality extends Expr {
+        final Expr target;
+
+        TargetMeanQuality(Expr target) {
+            super(Type.Number);
+            this.target = target;
+        }
+
+        @Override
+        double number(Context c) {
+            return c.alignments.getTarget((int) target.number(c)).getQuality().meanValue();
+        }
+    }
+
+    static final class TargetAligned extends Expr {
+        final Expr target;
+        final GeneType[] geneTypes;
+        final boolean onlyTop;
+
+        TargetAligned(Expr target, GeneType[] geneTypes, boolean onlyTop) {
+            super(Type.Boolean);
+            this.target = target;
+            this.geneTypes = geneTypes;
+            this.onlyTop = onlyTop;
+        }
+
+        @Override
+        boolean bool(Context c) {
+            int targetIndex = (int) target.number(c);
+            for (GeneType geneType : geneTypes) {
+                VDJCHit[] hits = c.alignments.getHits(geneType);
+                for (int i = 0; i < (onlyTop ? Math.min(1, hits.length) : hits.length); ++i)
+                    if (hits[i].getAlignment(targetIndex) != null)
+                        return true;
+            }
+            return false;
+        }
+    }
+
+    static final class BestHitScore extends Expr {
+        final GeneType geneType;
+
+        BestHitScore(GeneType geneType) {
+            super(Type.Number);
+            this.geneType = geneType;
+        }
+
+        @Override
+        double number(Context c) {
+            VDJCHit hit = c.alignments.getBestHit(geneType);
+            return hit == null ? 0 : hit.getScore();
+        }
+    }
+
+    static final class HitsCount extends Expr {
+        final GeneType geneType;
+
+        HitsCount(GeneType geneType) {
+            super(Type.Number);
+            this.geneType = geneType;
+        }
+
+        @Override
+        double number(Context c) {
+            return c.alignments.getHits(geneType).length;
+        }
+    }
+
+    static final class BestHitName extends Expr {
+        final GeneType geneType;
+        final boolean allele;
+
+        BestHitName(GeneType geneType, boolean allele) {
+            super(Type.String);
+            this.geneType = geneType;
+            this.allele = allele;
+        }
+
+        @Override
+        String string(Context c) {
+            VDJCHit hit = c.alignments.getBestHit(geneType);
+            if (hit == null)
+                return "";
+            return allele ? hit.getAllele().getName() : hit.getAllele().getGene().getName();
+        }
+    }
+
+    static final class BestHitLocus extends Expr {
+        final GeneType geneType;
+
+        BestHitLocus(GeneType geneType) {
+            super(Type.String);
+            this.geneType = geneType;
+        }
+
+        @Override
+        String string(Context c) {
+            VDJCHit hit = c.alignments.getBestHit(geneType);
+            return hit == null ? "" : hit.getAllele().getLocus().getId();
+        }
+    }
+
+    static final class StringTest extends Expr {
+        final boolean prefix;
+        final Expr string, substring;
+
+        StringTest(boolean prefix, Expr string, Expr substring) {
+            super(Type.Boolean);
+            this.prefix = prefix;
+            this.string = string;
+            this.substring = substring;
+        }
+
+        @Override
+        boolean bool(Context c) {
+            String s = string.string(c), sub = substring.string(c);
+            return prefix ? s.startsWith(sub) : s.contains(sub);
+        }
+    }
+}
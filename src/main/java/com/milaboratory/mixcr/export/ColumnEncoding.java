@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.export;
+
+/**
+ * Encoding of a single column chunk in columnar binary export file (see {@link ColumnarWriter}). Encoding is
+ * selected for each chunk separately, based on actual values, and is only chosen if every value of the chunk is
+ * restored byte-for-byte; so the same column may have different encodings in different chunks, but string values
+ * and typed accessors of {@link ColumnarReader.Chunk} do not depend on it.
+ */
+public enum ColumnEncoding {
+    /**
+     * Length-prefixed UTF-8 strings.
+     */
+    Raw,
+    /**
+     * Dictionary of distinct values followed by per-row indices (1, 2 or 4 bytes wide depending on dictionary size).
+     * Used for low-cardinality columns like gene names.
+     */
+    Dictionary,
+    /**
+     * Fixed-width 8-byte integers (counts, ids, lengths).
+     */
+    Long,
+    /**
+     * Fixed-width 8-byte floating point values (fractions, scores).
+     */
+    Double,
+    /**
+     * Per-row lengths followed by 2-bit packed nucleotides.
+     */
+    Nucleotide,
+    /**
+     * Per-row lengths followed by 5-bit packed amino acids.
+     */
+    AminoAcid
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.export;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Low level encoding routines of columnar binary export format.
+ *
+ * <p>File layout: magic bytes, number of columns (int), column headers (UTF), then a sequence of chunks terminated by
+ * zero. Each chunk is: number of rows (int, positive), then for each column: encoding ordinal (byte, see {@link
+ * ColumnEncoding}) followed by encoded values.</p>
+ */
+final class ColumnarFormat {
+    static final String MAGIC = "MiXCR.COLS.V01";
+    static final int MAGIC_LENGTH = 14;
+
+    static final String NUCLEOTIDES = "ACGT";
+    static final String AMINO_ACIDS = "ACDEFGHIKLMNPQRSTVWY*_X";
+    private static final byte[] NUCLEOTIDE_CODES = codes(NUCLEOTIDES), AMINO_ACID_CODES = codes(AMINO_ACIDS);
+
+    private ColumnarFormat() {
+    }
+
+    private static byte[] codes(String alphabet) {
+        byte[] codes = new byte[128];
+        Arrays.fill(codes, (byte) -1);
+        for (int i = 0; i < alphabet.length(); ++i)
+            codes[alphabet.charAt(i)] = (byte) i;
+        return codes;
+    }
+
+    /* Encoding */
+
+    /**
+     * Selects the most compact encoding all values of the chunk survive exactly (byte-for-byte) with. Each candidate
+     * encoding is checked against every value, so e.g. a chunk mixing integer and decimal values falls back to a
+     * string encoding instead of being rewritten as doubles.
+     */
+    static ColumnEncoding selectEncoding(String[] values, int size) {
+        boolean isLong = true, isDouble = true, isNucleotide = true, isAminoAcid = true;
+        for (int i = 0; i < size; ++i) {
+            String value = values[i];
+            if (isLong && !isLong(value))
+                isLong = false;
+            if (isDouble && !isDouble(value))
+                isDouble = false;
+            if (isNucleotide && !matches(value, NUCLEOTIDE_CODES))
+                isNucleotide = false;
+            if (isAminoAcid && !matches(value, AMINO_ACID_CODES))
+                isAminoAcid = false;
+            if (!isLong && !isDouble && !isNucleotide && !isAminoAcid)
+                break;
+        }
+        if (isLong)
+            return ColumnEncoding.Long;
+        if (isDouble)
+            return ColumnEncoding.Double;
+        if (distinctCount(values, size, size / 4) <= size / 4)
+            return ColumnEncoding.Dictionary;
+        if (isNucleotide)
+            return ColumnEncoding.Nucleotide;
+        if (isAminoAcid)
+            return ColumnEncoding.AminoAcid;
+        return ColumnEncoding.Raw;
+    }
+
+    static void writeColumn(DataOutput output, String[] values, int size) throws IOException {
+        ColumnEncoding encoding = selectEncoding(values, size);
+        output.writeByte(encoding.ordinal());
+        switch (encoding) {
+            case Long:
+                for (int i = 0; i < size; ++i)
+                    output.writeLong(Long.parseLong(values[i]));
+                break;
+            case Double:
+                for (int i = 0; i < size; ++i)
+                    output.writeDouble(Double.parseDouble(values[i]));
+                break;
+            case Dictionary:
+                writeDictionary(output, values, size);
+                break;
+            case Nucleotide:
+                writePacked(output, values, size, NUCLEOTIDE_CODES, 2);
+                break;
+            case AminoAcid:
+                writePacked(output, values, size, AMINO_ACID_CODES, 5);
+                break;
+            default:
+                for (int i = 0; i < size; ++i)
+                    writeString(output, values[i]);
+        }
+    }
+
+    private static void writeDictionary(DataOutput output, String[] values, int size) throws IOException {
+        HashMap<String, Integer> indices = new HashMap<>();
+        ArrayList<String> dictionary = new ArrayList<>();
+        int[] rows = new int[size];
+        for (int i = 0; i < size; ++i) {
+            Integer index = indices.get(values[i]);
+            if (index == null) {
+                indices.put(values[i], index = dictionary.size());
+                dictionary.add(values[i]);
+            }
+            rows[i] = index;
+        }
+        output.writeInt(dictionary.size());
+        for (String value : dictionary)
+            writeString(output, value);
+        int width = indexWidth(dictionary.size());
+        for (int row : rows)
+            switch (width) {
+                case 1:
+                    output.writeByte(row);
+                    break;
+                case 2:
+                    output.writeShort(row);
+                    break;
+                default:
+                    output.writeInt(row);
+            }
+    }
+
+    private static void writePacked(DataOutput output, String[] values, int size,
+                                    byte[] codes, int bits) throws IOException {
+        for (int i = 0; i < size; ++i)
+            output.writeInt(values[i].length());
+        long buffer = 0;
+        int filled = 0;
+        for (int i = 0; i < size; ++i) {
+            String value = values[i];
+            for (int j = 0; j < value.length(); ++j) {
+                buffer = (buffer << bits) | codes[value.charAt(j)];
+                filled += bits;
+                if (filled >= 8) {
+                    filled -= 8;
+                    output.writeByte((int) (buffer >>> filled));
+                }
+            }
+        }
+        if (filled > 0)
+            output.writeByte((int) (buffer << (8 - filled)));
+    }
+
+    private static void writeString(DataOutput output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /* Decoding */
+
+    /**
+     * Returns decoded column: {@code long[]} for {@link ColumnEncoding#Long}, {@code double[]} for {@link
+     * ColumnEncoding#Double} and {@code String[]} for all other encodings.
+     */
+    static Object readColumn(DataInput input, ColumnEncoding encoding, int size) throws IOException {
+        switch (encoding) {
+            case Long:
+                long[] longs = new long[size];
+                for (int i = 0; i < size; ++i)
+                    longs[i] = input.readLong();
+                return longs;
+            case Double:
+                double[] doubles = new double[size];
+                for (int i = 0; i < size; ++i)
+                    doubles[i] = input.readDouble();
+                return doubles;
+            case Dictionary:
+                return readDictionary(input, size);
+            case Nucleotide:
+                return readPacked(input, size, NUCLEOTIDES, 2);
+            case AminoAcid:
+                return readPacked(input, size, AMINO_ACIDS, 5);
+            default:
+                String[] strings = new String[size];
+                for (int i = 0; i < size; ++i)
+                    strings[i] = readString(input);
+                return strings;
+        }
+    }
+
+    private static String[] readDictionary(DataInput input, int size) throws IOException {
+        String[] dictionary = new String[input.readInt()];
+        for (int i = 0; i < dictionary.length; ++i)
+            dictionary[i] = readString(input);
+        int width = indexWidth(dictionary.length);
+        String[] values = new String[size];
+        for (int i = 0; i < size; ++i)
+            switch (width) {
+                case 1:
+                    values[i] = dictionary[input.readUnsignedByte()];
+                    break;
+                case 2:
+                    values[i] = dictionary[input.readUnsignedShort()];
+                    break;
+                default:
+                    values[i] = dictionary[input.readInt()];
+            }
+        return values;
+    }
+
+    private static String[] readPacked(DataInput input, int size, String alphabet, int bits) throws IOException {
+        int[] lengths = new int[size];
+        for (int i = 0; i < size; ++i)
+            lengths[i] = input.readInt();
+        int mask = (1 << bits) - 1;
+        long buffer = 0;
+        int filled = 0;
+        String[] values = new String[size];
+        for (int i = 0; i < size; ++i) {
+            char[] chars = new char[lengths[i]];
+            for (int j = 0; j < chars.length; ++j) {
+                if (filled < bits) {
+                    buffer = (buffer << 8) | input.readUnsignedByte();
+                    filled += 8;
+                }
+                filled -= bits;
+                chars[j] = alphabet.charAt((int) (buffer >>> filled) & mask);
+            }
+            values[i] = new String(chars);
+        }
+        return values;
+    }
+
+    private static String readString(DataInput input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /* Utils */
+
+    private static int indexWidth(int dictionarySize) {
+        return dictionarySize <= 0x100 ? 1 : dictionarySize <= 0x10000 ? 2 : 4;
+    }
+
+    private static int distinctCount(String[] values, int size, int limit) {
+        HashMap<String, Boolean> distinct = new HashMap<>();
+        for (int i = 0; i < size; ++i)
+            if (distinct.put(values[i], Boolean.TRUE) == null && distinct.size() > limit)
+                break;
+        return distinct.size();
+    }
+
+    private static boolean matches(String value, byte[] codes) {
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            if (c >= codes.length || codes[c] == -1)
+                return false;
+        }
+        return true;
+    }
+
+    // Values must survive round-trip exactly, so only canonical representations are accepted
+
+    private static boolean isLong(String value) {
+        if (value.isEmpty() || value.length() > 19)
+            return false;
+        try {
+            return Long.toString(Long.parseLong(value)).equals(value);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static boolean isDouble(String value) {
+        if (value.isEmpty())
+            return false;
+        char c = value.charAt(0);
+        if (c != '-' && (c < '0' || c > '9'))
+            return false;
+        try {
+            return Double.toString(Double.parseDouble(value)).equals(value);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
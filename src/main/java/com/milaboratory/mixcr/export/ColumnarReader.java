@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.export;
+
+import cc.redberry.pipe.OutputPort;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reader of columnar binary files produced by {@link ColumnarWriter}. Data can be consumed either chunk by chunk with
+ * typed column access ({@link #readChunk()}) or row by row as arrays of string values ({@link #take()}).
+ */
+public final class ColumnarReader implements OutputPort<String[]>, AutoCloseable {
+    final DataInputStream input;
+    final String[] columnNames;
+    Chunk currentChunk;
+    int currentRow;
+    boolean finished;
+
+    public ColumnarReader(String file) throws IOException {
+        this(new BufferedInputStream(new FileInputStream(file), 65536));
+    }
+
+    public ColumnarReader(InputStream inputStream) throws IOException {
+        this.input = new DataInputStream(inputStream);
+        byte[] magic = new byte[ColumnarFormat.MAGIC_LENGTH];
+        input.readFully(magic);
+        if (!ColumnarFormat.MAGIC.equals(new String(magic, StandardCharsets.US_ASCII)))
+            throw new IOException("Unsupported file format; columnar export file expected.");
+        columnNames = new String[input.readInt()];
+        for (int i = 0; i < columnNames.length; ++i)
+            columnNames[i] = input.readUTF();
+    }
+
+    /**
+     * Returns column headers (as returned by {@link FieldExtractor#getHeader()} at export time).
+     */
+    public String[] getColumnNames() {
+        return columnNames.clone();
+    }
+
+    public int getNumberOfColumns() {
+        return columnNames.length;
+    }
+
+    /**
+     * Reads next chunk of rows. Must not be mixed with {@link #take()}.
+     *
+     * @return next chunk or null if end of file reached
+     */
+    public synchronized Chunk readChunk() {
+        if (finished)
+            return null;
+        try {
+            int size = input.readInt();
+            if (size == 0) {
+                finished = true;
+                return null;
+            }
+            ColumnEncoding[] encodings = new ColumnEncoding[columnNames.length];
+            Object[] columns = new Object[columnNames.length];
+            for (int i = 0; i < columnNames.length; ++i) {
+                encodings[i] = ColumnEncoding.values()[input.readByte()];
+                columns[i] = ColumnarFormat.readColumn(input, encodings[i], size);
+            }
+            return new Chunk(size, encodings, columns);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns next row as array of string values, exactly as they would appear in tab-delimited export.
+     */
+    @Override
+    public synchronized String[] take() {
+        if (currentChunk == null || currentRow == currentChunk.size()) {
+            currentChunk = readChunk();
+            currentRow = 0;
+            if (currentChunk == null)
+                return null;
+        }
+        String[] row = new String[columnNames.length];
+        for (int i = 0; i < row.length; ++i)
+            row[i] = currentChunk.getString(i, currentRow);
+        ++currentRow;
+        return row;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    /**
+     * Block of rows with column-wise access to decoded values.
+     */
+    public static final class Chunk {
+        final int size;
+        final ColumnEncoding[] encodings;
+        final Object[] columns;
+
+        Chunk(int size, ColumnEncoding[] encodings, Object[] columns) {
+            this.size = size;
+            this.encodings = encodings;
+            this.columns = columns;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public ColumnEncoding getEncoding(int column) {
+            return encodings[column];
+        }
+
+        public String getString(int column, int row) {
+            switch (encodings[column]) {
+                case Long:
+                    return Long.toString(((long[]) columns[column])[row]);
+                case Double:
+                    return Double.toString(((double[]) columns[column])[row]);
+                default:
+                    return ((String[]) columns[column])[row];
+            }
+        }
+
+        public long getLong(int column, int row) {
+            if (encodings[column] == ColumnEncoding.Long)
+                return ((long[]) columns[column])[row];
+            return Long.parseLong(getString(column, row));
+        }
+
+        public double getDouble(int column, int row) {
+            switch (encodings[column]) {
+                case Long:
+                    return ((long[]) columns[column])[row];
+                case Double:
+                    return ((double[]) columns[column])[row];
+                default:
+                    return Double.parseDouble(getString(column, row));
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.export;
+
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the same fields as {@link InfoWriter} into self-describing columnar binary file. Rows are grouped into
+ * chunks and each column of a chunk is encoded with the most compact lossless {@link ColumnEncoding} (fixed-width
+ * numbers, dictionary-encoded gene names, bit-packed nucleotide and amino acid sequences). Use {@link ColumnarReader}
+ * to read the result.
+ */
+public final class ColumnarWriter<T> implements ExportWriter<T> {
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    final ArrayList<FieldExtractor<? super T>> fieldExtractors = new ArrayList<>();
+    final DataOutputStream output;
+    final int chunkSize;
+    String[][] columns;
+    int rows;
+
+    public ColumnarWriter(String file) throws FileNotFoundException {
+        this(".".equals(file) ? new CloseShieldOutputStream(System.out) :
+                new BufferedOutputStream(new FileOutputStream(new File(file)), 65536));
+    }
+
+    public ColumnarWriter(OutputStream outputStream) {
+        this(outputStream, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ColumnarWriter(OutputStream outputStream, int chunkSize) {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException();
+        this.output = new DataOutputStream(outputStream);
+        this.chunkSize = chunkSize;
+    }
+
+    public void attachInfoProvider(FieldExtractor<? super T> provider) {
+        fieldExtractors.add(provider);
+    }
+
+    public void attachInfoProviders(List<FieldExtractor<? super T>> providers) {
+        fieldExtractors.addAll(providers);
+    }
+
+    private void ensureInitialized() {
+        if (columns == null) {
+            try {
+                output.write(ColumnarFormat.MAGIC.getBytes(StandardCharsets.US_ASCII));
+                output.writeInt(fieldExtractors.size());
+                for (FieldExtractor<? super T> fe : fieldExtractors)
+                    output.writeUTF(fe.getHeader());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            columns = new String[fieldExtractors.size()][chunkSize];
+        }
+    }
+
+    @Override
+    public void put(T t) {
+        ensureInitialized();
+        for (int i = 0; i < columns.length; ++i)
+            columns[i][rows] = fieldExtractors.get(i).extractValue(t);
+        if (++rows == chunkSize)
+            flushChunk();
+    }
+
+    private void flushChunk() {
+        if (rows == 0)
+            return;
+        try {
+            output.writeInt(rows);
+            for (String[] column : columns)
+                ColumnarFormat.writeColumn(output, column, rows);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        rows = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        ensureInitialized();
+        flushChunk();
+        output.writeInt(0);
+        output.close();
+        for (FieldExtractor<? super T> fe : fieldExtractors)
+            if (fe instanceof Closeable)
+                ((Closeable) fe).close();
+    }
+}
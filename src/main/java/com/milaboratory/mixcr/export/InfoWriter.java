@@ -28,14 +28,13 @@
  */
 package com.milaboratory.mixcr.export;
 
-import cc.redberry.pipe.InputPort;
 import org.apache.commons.io.output.CloseShieldOutputStream;
 
 import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
 
-public final class InfoWriter<T> implements InputPort<T>, AutoCloseable {
+public final class InfoWriter<T> implements ExportWriter<T> {
     final ArrayList<FieldExtractor<? super T>> fieldExtractors = new ArrayList<>();
     final OutputStream outputStream;
     boolean initialized;
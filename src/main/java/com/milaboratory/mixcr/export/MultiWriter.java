@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.export;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Fans exported objects out to several writers, so that several outputs are produced from a single decoding pass.
+ * Each writer is fed from its own thread through a bounded queue of object batches, so the slowest writer limits the
+ * pass, not the sum of all writers. Exported objects are shared between threads and must be safe for concurrent
+ * read access (this is the case for {@link com.milaboratory.mixcr.basictypes.Clone} and {@link
+ * com.milaboratory.mixcr.basictypes.VDJCAlignments}). Exported fields are configured on each of the writers before
+ * they are passed to this class.
+ */
+public final class MultiWriter<T> implements ExportWriter<T> {
+    private static final int BATCH_SIZE = 256;
+    private static final int QUEUE_CAPACITY = 16;
+    private static final Object[] END = new Object[0];
+
+    final List<Worker<T>> workers = new ArrayList<>();
+    Object[] batch = new Object[BATCH_SIZE];
+    int batchSize;
+
+    public MultiWriter(List<? extends ExportWriter<T>> writers) {
+        for (int i = 0; i < writers.size(); ++i) {
+            Worker<T> worker = new Worker<>(writers.get(i), i);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    @Override
+    public void put(T t) {
+        batch[batchSize++] = t;
+        if (batchSize == BATCH_SIZE) {
+            dispatch(batch);
+            batch = new Object[BATCH_SIZE];
+            batchSize = 0;
+        }
+    }
+
+    private void dispatch(Object[] batch) {
+        for (Worker<T> worker : workers) {
+            if (worker.error != null)
+                throw new RuntimeException(worker.error);
+            try {
+                worker.queue.put(batch);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        Throwable error = null;
+        try {
+            if (batchSize != 0)
+                dispatch(Arrays.copyOf(batch, batchSize));
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        for (Worker<T> worker : workers) {
+            worker.queue.put(END);
+            worker.join();
+            if (error == null)
+                error = worker.error;
+            try {
+                worker.writer.close();
+            } catch (Exception e) {
+                if (error == null)
+                    error = e;
+            }
+        }
+        if (error instanceof Exception)
+            throw (Exception) error;
+        if (error != null)
+            throw new RuntimeException(error);
+    }
+
+    private static final class Worker<T> extends Thread {
+        final ArrayBlockingQueue<Object[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        final ExportWriter<T> writer;
+        volatile Throwable error;
+
+        Worker(ExportWriter<T> writer, int index) {
+            super("export-writer-" + index);
+            this.writer = writer;
+            setDaemon(true);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+            try {
+                Object[] batch;
+                while ((batch = queue.take()) != END) {
+                    // after an error batches are drained without processing, to never block the producer
+                    if (error != null)
+                        continue;
+                    try {
+                        for (Object o : batch)
+                            writer.put((T) o);
+                    } catch (Throwable e) {
+                        error = e;
+                    }
+                }
+            } catch (InterruptedException e) {
+                error = e;
+            }
+        }
+    }
+}
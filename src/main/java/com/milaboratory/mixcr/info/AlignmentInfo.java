@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.info;
+
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.mixcr.basictypes.VDJCAlignments;
+import com.milaboratory.mixcr.basictypes.VDJCHit;
+import com.milaboratory.mixcr.reference.GeneFeature;
+import com.milaboratory.mixcr.reference.GeneType;
+
+import java.util.Arrays;
+
+/**
+ * Alignment being processed by {@link AlignmentInfoCollector}s. Gene features are extracted from the alignment only
+ * once, regardless of the number of collectors requesting them.
+ *
+ * <p>Not thread-safe; a single instance is reused by a thread for all alignments it processes.</p>
+ */
+public final class AlignmentInfo {
+    private static final Object ABSENT = new Object();
+    private VDJCAlignments alignments;
+    // Indexed by GeneFeature.getId()
+    private Object[] features = new Object[32];
+    private int[] resolved = new int[8];
+    private int resolvedCount = 0;
+
+    /**
+     * Sets alignment to be processed, clearing all data extracted from the previous one.
+     */
+    public void set(VDJCAlignments alignments) {
+        for (int i = 0; i < resolvedCount; i++)
+            features[resolved[i]] = null;
+        resolvedCount = 0;
+        this.alignments = alignments;
+    }
+
+    public VDJCAlignments getAlignments() {
+        return alignments;
+    }
+
+    public int numberOfTargets() {
+        return alignments.numberOfTargets();
+    }
+
+    public VDJCHit getBestHit(GeneType geneType) {
+        return alignments.getBestHit(geneType);
+    }
+
+    /**
+     * Returns gene feature extracted from the alignment (see {@link VDJCAlignments#getFeature(GeneFeature)}).
+     */
+    public NSequenceWithQuality getFeature(GeneFeature feature) {
+        int id = feature.getId();
+        if (id >= features.length)
+            features = Arrays.copyOf(features, Math.max(id + 1, features.length * 2));
+        Object value = features[id];
+        if (value == null) {
+            NSequenceWithQuality sequence = alignments.getFeature(feature);
+            features[id] = value = sequence == null ? ABSENT : sequence;
+            if (resolvedCount == resolved.length)
+                resolved = Arrays.copyOf(resolved, resolvedCount * 2);
+            resolved[resolvedCount++] = id;
+        }
+        return value == ABSENT ? null : (NSequenceWithQuality) value;
+    }
+}
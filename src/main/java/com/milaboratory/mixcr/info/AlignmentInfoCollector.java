@@ -28,18 +28,29 @@
  */
 package com.milaboratory.mixcr.info;
 
-import com.milaboratory.mixcr.basictypes.VDJCAlignments;
-
 import java.io.PrintStream;
-import java.io.PrintWriter;
 
 /**
  * Created by dbolotin on 04/08/15.
+ *
+ * <p>Collectors are not thread-safe: for parallel processing each thread uses its own shard (see {@link
+ * #createShard()}), all shards are merged into the original collector before {@link #end()} (see {@link
+ * AlignmentInfoCollectorSet}).</p>
  */
 public interface AlignmentInfoCollector {
     void writeResult(PrintStream writer);
 
-    void put(VDJCAlignments alignments);
+    void put(AlignmentInfo alignment);
+
+    /**
+     * Creates empty collector with the same settings as this one.
+     */
+    AlignmentInfoCollector createShard();
+
+    /**
+     * Adds data accumulated by a collector created with {@link #createShard()}.
+     */
+    void merge(AlignmentInfoCollector shard);
 
     void end();
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.info;
+
+import cc.redberry.pipe.VoidProcessor;
+import com.milaboratory.mixcr.basictypes.VDJCAlignments;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Group of collectors fed from several threads. Each thread puts alignments into its own shards of the collectors,
+ * so no state is shared between threads during processing; shards are merged in {@link #end()}.
+ */
+public final class AlignmentInfoCollectorSet implements VoidProcessor<VDJCAlignments> {
+    final AlignmentInfoCollector[] collectors;
+    final List<Shard> shards = new ArrayList<>();
+    final ThreadLocal<Shard> shard = new ThreadLocal<Shard>() {
+        @Override
+        protected Shard initialValue() {
+            Shard shard = new Shard(collectors);
+            synchronized (shards) {
+                shards.add(shard);
+            }
+            return shard;
+        }
+    };
+
+    public AlignmentInfoCollectorSet(AlignmentInfoCollector... collectors) {
+        this.collectors = collectors;
+    }
+
+    @Override
+    public void process(VDJCAlignments input) {
+        shard.get().put(input);
+    }
+
+    /**
+     * Merges data collected by all threads. Must be called after all alignments are processed.
+     */
+    public void end() {
+        synchronized (shards) {
+            for (Shard s : shards)
+                for (int i = 0; i < collectors.length; i++)
+                    collectors[i].merge(s.collectors[i]);
+            shards.clear();
+        }
+        for (AlignmentInfoCollector collector : collectors)
+            collector.end();
+    }
+
+    public void write(PrintStream writer) {
+        for (AlignmentInfoCollector collector : collectors)
+            collector.writeResult(writer);
+    }
+
+    private static final class Shard {
+        final AlignmentInfo info = new AlignmentInfo();
+        final AlignmentInfoCollector[] collectors;
+
+        Shard(AlignmentInfoCollector[] prototypes) {
+            this.collectors = new AlignmentInfoCollector[prototypes.length];
+            for (int i = 0; i < prototypes.length; i++)
+                collectors[i] = prototypes[i].createShard();
+        }
+
+        void put(VDJCAlignments alignments) {
+            info.set(alignments);
+            for (AlignmentInfoCollector collector : collectors)
+                collector.put(info);
+        }
+    }
+}
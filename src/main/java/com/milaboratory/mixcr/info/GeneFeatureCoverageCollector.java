@@ -28,20 +28,16 @@
  */
 package com.milaboratory.mixcr.info;
 
-import com.milaboratory.mixcr.basictypes.VDJCAlignments;
 import com.milaboratory.mixcr.cli.Util;
 import com.milaboratory.mixcr.reference.GeneFeature;
 
 import java.io.PrintStream;
-import java.io.PrintWriter;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by dbolotin on 04/08/15.
  */
 public class GeneFeatureCoverageCollector implements AlignmentInfoCollector {
-    final AtomicLong total = new AtomicLong(),
-            covered = new AtomicLong();
+    long total, covered;
     final GeneFeature feature;
 
     public GeneFeatureCoverageCollector(GeneFeature feature) {
@@ -50,15 +46,27 @@ public class GeneFeatureCoverageCollector implements AlignmentInfoCollector {
 
     @Override
     public void writeResult(PrintStream writer) {
-        writer.println("" + GeneFeature.encode(feature) + "\t" + covered.get() +
-                "\t" + Util.PERCENT_FORMAT.format(100.0 * covered.get() / total.get()) + "%");
+        writer.println("" + GeneFeature.encode(feature) + "\t" + covered +
+                "\t" + Util.PERCENT_FORMAT.format(100.0 * covered / total) + "%");
     }
 
     @Override
-    public void put(VDJCAlignments alignments) {
-        total.incrementAndGet();
-        if (alignments.getFeature(feature) != null)
-            covered.incrementAndGet();
+    public void put(AlignmentInfo alignment) {
+        ++total;
+        if (alignment.getFeature(feature) != null)
+            ++covered;
+    }
+
+    @Override
+    public GeneFeatureCoverageCollector createShard() {
+        return new GeneFeatureCoverageCollector(feature);
+    }
+
+    @Override
+    public void merge(AlignmentInfoCollector shard) {
+        GeneFeatureCoverageCollector s = (GeneFeatureCoverageCollector) shard;
+        total += s.total;
+        covered += s.covered;
     }
 
     @Override
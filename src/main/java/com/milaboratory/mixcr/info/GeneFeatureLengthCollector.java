@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.info;
+
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.mixcr.cli.Util;
+import com.milaboratory.mixcr.reference.GeneFeature;
+
+import java.io.PrintStream;
+
+/**
+ * Histogram of lengths of gene feature (in nucleotides) among alignments covering it.
+ */
+public class GeneFeatureLengthCollector implements AlignmentInfoCollector {
+    final GeneFeature feature;
+    final long[] hist;
+    long total;
+
+    /**
+     * @param feature   gene feature
+     * @param maxLength lengths greater or equal to this value are counted in the last bin
+     */
+    public GeneFeatureLengthCollector(GeneFeature feature, int maxLength) {
+        this.feature = feature;
+        this.hist = new long[maxLength + 1];
+    }
+
+    @Override
+    public void writeResult(PrintStream writer) {
+        writer.println();
+        writer.println("Length of " + GeneFeature.encode(feature) + ":");
+        for (int i = 0; i < hist.length; ++i)
+            if (hist[i] != 0)
+                writer.println((i == hist.length - 1 ? ">=" : "") + i + "\t" + hist[i] + "\t" +
+                        Util.PERCENT_FORMAT.format(100.0 * hist[i] / total) + "%");
+    }
+
+    @Override
+    public void put(AlignmentInfo alignment) {
+        NSequenceWithQuality sequence = alignment.getFeature(feature);
+        if (sequence == null)
+            return;
+        ++total;
+        ++hist[Math.min(hist.length - 1, sequence.size())];
+    }
+
+    @Override
+    public GeneFeatureLengthCollector createShard() {
+        return new GeneFeatureLengthCollector(feature, hist.length - 1);
+    }
+
+    @Override
+    public void merge(AlignmentInfoCollector shard) {
+        GeneFeatureLengthCollector s = (GeneFeatureLengthCollector) shard;
+        total += s.total;
+        for (int i = 0; i < hist.length; ++i)
+            hist[i] += s.hist[i];
+    }
+
+    @Override
+    public void end() {
+    }
+}
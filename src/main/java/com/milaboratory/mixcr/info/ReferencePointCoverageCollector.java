@@ -29,22 +29,19 @@
 package com.milaboratory.mixcr.info;
 
 import com.milaboratory.core.Range;
-import com.milaboratory.mixcr.basictypes.VDJCAlignments;
 import com.milaboratory.mixcr.basictypes.VDJCHit;
 import com.milaboratory.mixcr.cli.Util;
 import com.milaboratory.mixcr.reference.ReferencePoint;
 
 import java.io.PrintStream;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Created by dbolotin on 04/08/15.
  */
 public class ReferencePointCoverageCollector implements AlignmentInfoCollector {
     final ReferencePoint refPoint;
-    final AtomicLong totalCount = new AtomicLong();
-    final AtomicLongArray leftHist, rightHist;
+    long totalCount;
+    final long[] leftHist, rightHist;
 
     public ReferencePointCoverageCollector(ReferencePoint refPoint, int leftThreshold, int rightThreshold) {
         if (refPoint.isAttachedToAlignmentBound())
@@ -52,25 +49,27 @@ public class ReferencePointCoverageCollector implements AlignmentInfoCollector {
 
         this.refPoint = refPoint;
 
-        this.leftHist = new AtomicLongArray(leftThreshold);
-        this.rightHist = new AtomicLongArray(rightThreshold);
+        this.leftHist = new long[leftThreshold];
+        this.rightHist = new long[rightThreshold];
     }
 
     @Override
     public void writeResult(PrintStream writer) {
         writer.println();
         writer.println("Coverage of " + refPoint + ":");
-        for (int i = leftHist.length() - 1; i > 0; --i)
-            writer.println("-" + i + "\t" + leftHist.get(i) + "\t" + Util.PERCENT_FORMAT.format(100.0 * leftHist.get(i) / totalCount.get()) + "%");
-        for (int i = 0; i < rightHist.length(); ++i)
-            writer.println(i + "\t" + rightHist.get(i) + "\t" + Util.PERCENT_FORMAT.format(100.0 * rightHist.get(i) / totalCount.get()) + "%");
+        for (int i = leftHist.length - 1; i > 0; --i)
+            writer.println("-" + i + "\t" + leftHist[i] + "\t" + Util.PERCENT_FORMAT.format(100.0 * leftHist[i] / totalCount) + "%");
+        for (int i = 0; i < rightHist.length; ++i)
+            writer.println(i + "\t" + rightHist[i] + "\t" + Util.PERCENT_FORMAT.format(100.0 * rightHist[i] / totalCount) + "%");
     }
 
     @Override
-    public void put(VDJCAlignments alignments) {
-        totalCount.incrementAndGet();
+    public void put(AlignmentInfo alignments) {
+        ++totalCount;
 
         VDJCHit hit = alignments.getBestHit(refPoint.getGeneType());
+        if (hit == null)
+            return;
 
         int left = -1, right = -1;
         for (int i = 0; i < alignments.numberOfTargets(); ++i) {
@@ -85,10 +84,25 @@ public class ReferencePointCoverageCollector implements AlignmentInfoCollector {
         if (left == -1)
             return;
 
-        left = Math.min(leftHist.length() - 1, left);
-        leftHist.incrementAndGet(left);
-        right = Math.min(rightHist.length() - 1, right);
-        rightHist.incrementAndGet(right);
+        left = Math.min(leftHist.length - 1, left);
+        ++leftHist[left];
+        right = Math.min(rightHist.length - 1, right);
+        ++rightHist[right];
+    }
+
+    @Override
+    public ReferencePointCoverageCollector createShard() {
+        return new ReferencePointCoverageCollector(refPoint, leftHist.length, rightHist.length);
+    }
+
+    @Override
+    public void merge(AlignmentInfoCollector shard) {
+        ReferencePointCoverageCollector s = (ReferencePointCoverageCollector) shard;
+        totalCount += s.totalCount;
+        for (int i = 0; i < leftHist.length; ++i)
+            leftHist[i] += s.leftHist[i];
+        for (int i = 0; i < rightHist.length; ++i)
+            rightHist[i] += s.rightHist[i];
     }
 
     @Override
@@ -97,9 +111,9 @@ public class ReferencePointCoverageCollector implements AlignmentInfoCollector {
         endHist(rightHist);
     }
 
-    private static void endHist(AtomicLongArray hist) {
+    private static void endHist(long[] hist) {
         long cumulative = 0;
-        for (int i = hist.length() - 1; i >= 0; --i)
-            hist.set(i, cumulative += hist.get(i));
+        for (int i = hist.length - 1; i >= 0; --i)
+            hist[i] = cumulative += hist[i];
     }
 }
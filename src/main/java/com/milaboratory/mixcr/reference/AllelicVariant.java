@@ -37,7 +37,8 @@ public class AllelicVariant extends Allele {
     final ReferenceAllele referenceAllele;
     final Mutations<NucleotideSequence> mutations;
     final ReferencePoints referencePoints;
-    final NucleotideSequence sequence;
+    // Calculated on first access, so reference sequences are not decoded until required
+    private volatile NucleotideSequence sequence;
 
     public AllelicVariant(String name, boolean isFunctional,
                           GeneFeature referenceGeneFeature, ReferenceAllele referenceAllele,
@@ -45,7 +46,6 @@ public class AllelicVariant extends Allele {
         super(referenceAllele.getGene(), name, isFunctional);
         this.referenceGeneFeature = referenceGeneFeature;
         this.referenceAllele = referenceAllele;
-        this.sequence = mutations.mutate(referenceAllele.getFeature(referenceGeneFeature));
         this.mutations = mutations;
         this.referencePoints =
                 referenceAllele.getPartitioning().getRelativeReferencePoints(referenceGeneFeature)
@@ -64,6 +64,9 @@ public class AllelicVariant extends Allele {
 
     @Override
     protected NucleotideSequence getSequence(Range range) {
+        NucleotideSequence sequence = this.sequence;
+        if (sequence == null)
+            this.sequence = sequence = mutations.mutate(referenceAllele.getFeature(referenceGeneFeature));
         return sequence.getRange(range);
     }
 
@@ -45,6 +45,8 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.milaboratory.mixcr.reference.ReferencePoint.*;
 
@@ -256,6 +258,8 @@ public final class GeneFeature implements Iterable<GeneFeature.ReferenceRange>,
 
     //regions are sorted in natural ordering using indexes
     final ReferenceRange[] regions;
+    //dense id + 1 (zero means not yet assigned), see getId()
+    private transient int id;
 
     public GeneFeature(final GeneFeature... features) {
         if (features.length == 0)
@@ -324,6 +328,34 @@ public final class GeneFeature implements Iterable<GeneFeature.ReferenceRange>,
         return regions.length != 1;
     }
 
+    /**
+     * Returns dense non-negative identifier of this feature. Identifiers are assigned in order of first request and
+     * are the same for all equal features within a JVM, so they can be used as indices in small lookup tables. Values
+     * are not stable between runs and must not be serialized.
+     *
+     * @return dense identifier of this feature
+     */
+    public int getId() {
+        int id = this.id;
+        if (id == 0)
+            // Races are benign: the same value is assigned by all threads
+            this.id = id = intern(this) + 1;
+        return id - 1;
+    }
+
+    private static final ConcurrentHashMap<GeneFeature, Integer> ids = new ConcurrentHashMap<>();
+    private static final AtomicInteger idCounter = new AtomicInteger();
+
+    private static int intern(GeneFeature feature) {
+        Integer id = ids.get(feature);
+        if (id != null)
+            return id;
+        // Counter may skip values if several threads intern the same feature concurrently, this is harmless
+        id = idCounter.getAndIncrement();
+        Integer previous = ids.putIfAbsent(feature, id);
+        return previous == null ? id : previous;
+    }
+
     @Override
     public String toString() {
         return Arrays.toString(regions);
@@ -33,26 +33,72 @@ import com.milaboratory.mixcr.cli.Util;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 
 public final class LociLibraryManager implements AlleleResolver {
+    /**
+     * Set this system property to "false" to disable use of precompiled snapshot of the built-in library
+     */
+    public static final String SNAPSHOT_PROPERTY = "mixcr.reference.snapshot";
+    /**
+     * System property with directory for precompiled snapshots of the built-in library (default ~/.mixcr/cache)
+     */
+    public static final String CACHE_DIR_PROPERTY = "mixcr.reference.cache";
     private static volatile LociLibraryManager defualt;
 
     private final HashMap<AlleleId, Allele> allAlleles = new HashMap<>();
     private final HashMap<String, LociLibrary> libraries = new HashMap<>();
+    // Libraries that are loaded on first request
+    private final LinkedHashMap<String, File> pending = new LinkedHashMap<>();
 
-    public void register(String name, LociLibrary library) {
+    public synchronized void register(String name, LociLibrary library) {
         for (Allele allele : library.getAllAlleles())
             allAlleles.put(allele.getId(), allele);
         libraries.put(name, library);
     }
 
-    public Allele getAllele(AlleleId id) {
-        return allAlleles.get(id);
+    /**
+     * Registers library that will be read from file on first access.
+     *
+     * @param name library name
+     * @param file .ll file
+     */
+    public synchronized void registerLazy(String name, File file) {
+        pending.put(name, file);
     }
 
-    public LociLibrary getLibrary(String name) {
-        return libraries.get(name);
+    public synchronized Allele getAllele(AlleleId id) {
+        Allele allele = allAlleles.get(id);
+        if (allele == null && !pending.isEmpty()) {
+            // Allele may belong to one of not yet loaded libraries
+            for (String name : new ArrayList<>(pending.keySet()))
+                load(name);
+            allele = allAlleles.get(id);
+        }
+        return allele;
+    }
+
+    public synchronized LociLibrary getLibrary(String name) {
+        LociLibrary library = libraries.get(name);
+        if (library == null && pending.containsKey(name))
+            library = load(name);
+        return library;
+    }
+
+    private LociLibrary load(String name) {
+        File file = pending.remove(name);
+        try {
+            LociLibrary library = LociLibraryReader.read(file, false);
+            register(name, library);
+            return library;
+        } catch (IOException e) {
+            throw new RuntimeException("Can't read " + file, e);
+        }
     }
 
     public static LociLibraryManager getDefault() {
@@ -60,28 +106,46 @@ public final class LociLibraryManager implements AlleleResolver {
             synchronized (LociLibraryManager.class) {
                 if (defualt == null) {
                     try {
-                        defualt = new LociLibraryManager();
-                        try (InputStream sample = LociLibraryManager.class.getClassLoader()
-                                .getResourceAsStream("reference/mi.ll")) {
-                            defualt.register("mi", LociLibraryReader.read(sample, true));
-                        }
+                        LociLibraryManager manager = new LociLibraryManager();
+                        manager.register("mi", readBuiltIn("mi"));
                         File settings = Util.getLocalSettingsDir().toFile();
                         if (settings.exists())
                             for (File file : settings.listFiles()) {
                                 if (file.isFile() && file.getName().endsWith(".ll")) {
-                                    defualt.register(file.getName().substring(0, file.getName().length() - 3),
-                                            LociLibraryReader.read(file, false));
+                                    manager.registerLazy(file.getName().substring(0, file.getName().length() - 3),
+                                            file);
                                 }
                             }
+                        defualt = manager;
                     } catch (IOException e) {
-                        throw new RuntimeException();
+                        throw new RuntimeException(e);
                     }
                 }
             }
         return defualt;
     }
 
-    static {
+    /**
+     * Reads library from class path, using precompiled snapshot from the cache directory (see {@link
+     * LociLibrarySnapshot} and {@link #getCacheDir()}).
+     */
+    private static LociLibrary readBuiltIn(String name) throws IOException {
+        URL source = LociLibraryManager.class.getClassLoader().getResource("reference/" + name + ".ll");
+        if (source == null)
+            throw new IOException("Built-in library " + name + " not found.");
+        if ("false".equals(System.getProperty(SNAPSHOT_PROPERTY)))
+            try (InputStream stream = source.openStream()) {
+                return LociLibraryReader.read(stream, true);
+            }
+        return LociLibrarySnapshot.load(source, getCacheDir().resolve(name + ".llsnap"), true);
+    }
 
+    /**
+     * Returns directory for reference library snapshots: value of {@link #CACHE_DIR_PROPERTY} system property or
+     * "cache" subdirectory of local settings directory.
+     */
+    public static Path getCacheDir() {
+        String dir = System.getProperty(CACHE_DIR_PROPERTY);
+        return dir == null ? Util.getLocalSettingsDir().resolve("cache") : Paths.get(dir);
     }
 }
@@ -0,0 +1,437 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.reference;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.mutations.Mutations;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.SequencesUtils;
+import com.milaboratory.util.Bit2Array;
+
+import java.io.*;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Precompiled form of {@link LociLibrary}. Snapshot contains already parsed and merged sequence parts (stored
+ * uncompressed) and allele tables with final reference points, so no decompression, sequence merging or reference
+ * points correction is performed on load. Snapshot file is memory-mapped, and sequence parts are decoded only on first
+ * access.
+ *
+ * <p>Snapshot is bound to the source library file by its length and modification time, and to the FR4 correction option. </p>
+ */
+public final class LociLibrarySnapshot {
+    static final String MAGIC = "MiXCR.LLSN.V02";
+    static final byte[] MAGIC_BYTES = MAGIC.getBytes(StandardCharsets.US_ASCII);
+
+    private LociLibrarySnapshot() {
+    }
+
+    /**
+     * Returns library from snapshot file, creating or replacing the snapshot if it is absent or outdated. Falls back to
+     * parsing the source if snapshot can't be written. Source content is read only if snapshot has to be (re)created.
+     *
+     * @param source            url of the source .ll file (file or jar entry)
+     * @param snapshot          snapshot file
+     * @param withFR4Correction FR4 correction option (see {@link LociLibraryReader#read(InputStream, boolean)})
+     * @return library
+     */
+    public static LociLibrary load(URL source, Path snapshot, boolean withFR4Correction) throws IOException {
+        long[] key = sourceKey(source);
+
+        if (key != null && Files.isRegularFile(snapshot))
+            try {
+                LociLibrary library = read(snapshot.toFile(), key[0], key[1], withFR4Correction);
+                if (library != null)
+                    return library;
+            } catch (IOException | RuntimeException e) {
+                // Corrupted snapshot, will be replaced
+            }
+
+        LociLibrary library;
+        try (InputStream stream = source.openStream()) {
+            library = LociLibraryReader.read(stream, withFR4Correction);
+        }
+        if (key == null)
+            return library;
+
+        try {
+            Files.createDirectories(snapshot.getParent());
+            // Several processes may create snapshot simultaneously
+            Path tmp = Files.createTempFile(snapshot.getParent(), snapshot.getFileName().toString(), ".tmp");
+            try {
+                try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+                    write(library, os, key[0], key[1], withFR4Correction);
+                }
+                Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            // Snapshot is an optimization only
+        }
+        return library;
+    }
+
+    /**
+     * Returns length and modification time of the source without reading its content, or null if they are unknown.
+     */
+    static long[] sourceKey(URL source) throws IOException {
+        long length, modified;
+        if ("file".equals(source.getProtocol())) {
+            File file;
+            try {
+                file = new File(source.toURI());
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                return null;
+            }
+            length = file.length();
+            modified = file.lastModified();
+        } else {
+            URLConnection connection = source.openConnection();
+            if (connection instanceof JarURLConnection) {
+                connection.setUseCaches(false);
+                JarURLConnection jarConnection = (JarURLConnection) connection;
+                try (JarFile jar = jarConnection.getJarFile()) {
+                    JarEntry entry = jar.getJarEntry(jarConnection.getEntryName());
+                    if (entry == null)
+                        return null;
+                    length = entry.getSize();
+                    modified = entry.getTime();
+                }
+            } else
+                return null;
+        }
+        if (length <= 0 || modified <= 0)
+            return null;
+        return new long[]{length, modified};
+    }
+
+    /**
+     * Writes snapshot of the library.
+     */
+    static void write(LociLibrary library, OutputStream outputStream,
+                      long sourceLength, long sourceModified, boolean withFR4Correction) throws IOException {
+        DataOutputStream output = new DataOutputStream(outputStream);
+        output.write(MAGIC_BYTES);
+        output.writeLong(sourceLength);
+        output.writeLong(sourceModified);
+        output.writeBoolean(withFR4Correction);
+
+        writeProperties(output, library.properties);
+
+        output.writeInt(library.knownSpecies.size());
+        for (Map.Entry<String, Integer> e : library.knownSpecies.entrySet()) {
+            output.writeUTF(e.getKey());
+            output.writeInt(e.getValue());
+        }
+
+        // Sequence parts
+        Map<String, Set<Range>> parts = new LinkedHashMap<>();
+        for (LocusContainer container : library.getLoci())
+            for (GeneType geneType : GeneType.values())
+                for (Allele allele : container.getAlleles(geneType)) {
+                    if (!(allele instanceof ReferenceAllele))
+                        continue;
+                    ReferenceAllele ra = (ReferenceAllele) allele;
+                    Set<Range> ranges = parts.get(ra.accession);
+                    if (ranges == null)
+                        parts.put(ra.accession, ranges = new LinkedHashSet<>());
+                    addParts(library.base, ra.accession, ra.referencePoints, ranges);
+                }
+        int count = 0;
+        for (Set<Range> ranges : parts.values())
+            count += ranges.size();
+        output.writeInt(count);
+        for (Map.Entry<String, Set<Range>> e : parts.entrySet())
+            for (Range range : e.getValue()) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                SequencesUtils.convertNSequenceToBit2Array(library.base.get(e.getKey(), range))
+                        .writeTo(new DataOutputStream(bos));
+                output.writeUTF(e.getKey());
+                output.writeInt(range.getFrom());
+                output.writeInt(range.length());
+                output.writeInt(bos.size());
+                bos.writeTo(output);
+            }
+
+        // Alleles
+        output.writeInt(library.getLoci().size());
+        for (LocusContainer container : library.getLoci()) {
+            output.writeUTF(container.getLocus().getId());
+            output.writeInt(container.getSpeciesAndLocus().taxonId);
+            output.writeLong(container.getUUID().getLeastSignificantBits());
+            output.writeLong(container.getUUID().getMostSignificantBits());
+            writeProperties(output, container.properties);
+
+            int numberOfAlleles = 0;
+            for (GeneType geneType : GeneType.values())
+                numberOfAlleles += container.getAlleles(geneType).size();
+            output.writeInt(numberOfAlleles);
+
+            // Order of alleles of each gene type is preserved, so indices of genes and alleles are the same as in
+            // the source library
+            for (GeneType geneType : GeneType.values())
+                for (Allele allele : container.getAlleles(geneType)) {
+                    output.writeByte(geneType.id());
+                    output.writeUTF(allele.getName());
+                    output.writeBoolean(allele.isFunctional());
+                    if (allele instanceof ReferenceAllele) {
+                        ReferenceAllele ra = (ReferenceAllele) allele;
+                        output.writeBoolean(true);
+                        output.writeUTF(ra.accession);
+                        for (int point : ra.referencePoints.points)
+                            output.writeInt(point);
+                    } else {
+                        AllelicVariant av = (AllelicVariant) allele;
+                        output.writeBoolean(false);
+                        output.writeUTF(av.referenceAllele.getName());
+                        LociLibraryIOUtils.writeReferenceGeneFeature(output, av.referenceGeneFeature);
+                        int[] mutations = av.mutations.getRAWMutations();
+                        output.writeInt(mutations.length);
+                        for (int mutation : mutations)
+                            output.writeInt(mutation);
+                    }
+                }
+        }
+        output.flush();
+    }
+
+    private static void addParts(SequenceBase base, String accession, ReferencePoints points, Set<Range> ranges) {
+        Range full = base.getAvailableRange(accession, range(points.getFirstAvailablePosition(),
+                points.getLastAvailablePosition()));
+        if (full != null) {
+            ranges.add(full);
+            return;
+        }
+        // Sequence of the allele is fragmented, storing parts available for
+        // regions between adjacent reference points
+        int previous = -1;
+        for (int point : points.points) {
+            if (point < 0)
+                continue;
+            if (previous >= 0) {
+                Range part = base.getAvailableRange(accession, range(previous, point));
+                if (part != null)
+                    ranges.add(part);
+            }
+            previous = point;
+        }
+    }
+
+    private static Range range(int a, int b) {
+        return new Range(Math.min(a, b), Math.max(a, b));
+    }
+
+    private static void writeProperties(DataOutput output, Map<String, String> properties) throws IOException {
+        output.writeInt(properties.size());
+        for (Map.Entry<String, String> e : properties.entrySet()) {
+            output.writeUTF(e.getKey());
+            output.writeUTF(e.getValue());
+        }
+    }
+
+    private static void readProperties(DataInput input, Map<String, String> properties) throws IOException {
+        int size = input.readInt();
+        for (int i = 0; i < size; i++)
+            properties.put(input.readUTF(), input.readUTF());
+    }
+
+    /**
+     * Reads snapshot.
+     *
+     * @return library or null if snapshot was created for another source or FR4 correction option
+     */
+    static LociLibrary read(File file, long sourceLength, long sourceModified, boolean withFR4Correction) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return read(buffer, sourceLength, sourceModified, withFR4Correction);
+    }
+
+    static LociLibrary read(final ByteBuffer buffer, long sourceLength, long sourceModified, boolean withFR4Correction)
+            throws IOException {
+        DataInputStream input = new DataInputStream(new ByteBufferInputStream(buffer));
+
+        byte[] magic = new byte[MAGIC_BYTES.length];
+        input.readFully(magic);
+        if (!Arrays.equals(MAGIC_BYTES, magic))
+            throw new IOException("Wrong magic bytes.");
+        if (input.readLong() != sourceLength || input.readLong() != sourceModified
+                || input.readBoolean() != withFR4Correction)
+            return null;
+
+        LociLibrary library = new LociLibrary();
+        readProperties(input, library.properties);
+
+        int size = input.readInt();
+        for (int i = 0; i < size; i++) {
+            String name = input.readUTF();
+            library.knownSpecies.put(name, input.readInt());
+        }
+
+        // Sequence parts are decoded on first access
+        size = input.readInt();
+        for (int i = 0; i < size; i++) {
+            String accession = input.readUTF();
+            int from = input.readInt();
+            int length = input.readInt();
+            int dataSize = input.readInt();
+            final int position = buffer.position();
+            buffer.position(position + dataSize);
+            library.base.putLazy(accession, from, length, new SequenceBase.SequenceSource() {
+                @Override
+                public NucleotideSequence load() {
+                    ByteBuffer data = buffer.duplicate();
+                    data.position(position);
+                    try {
+                        return SequencesUtils.convertBit2ArrayToNSequence(
+                                Bit2Array.readFrom(new DataInputStream(new ByteBufferInputStream(data))));
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+
+        int numberOfLoci = input.readInt();
+        for (int l = 0; l < numberOfLoci; l++) {
+            String locusId = input.readUTF();
+            Locus locus = Locus.fromId(locusId);
+            if (locus == null)
+                throw new IOException("Unknown locus: " + locusId);
+            int taxonId = input.readInt();
+            long lsb = input.readLong();
+            long msb = input.readLong();
+
+            EnumMap<GeneType, List<Gene>> genes = new EnumMap<>(GeneType.class);
+            EnumMap<GeneType, List<Allele>> alleles = new EnumMap<>(GeneType.class);
+            for (GeneType gt : GeneType.values()) {
+                genes.put(gt, new ArrayList<Gene>());
+                alleles.put(gt, new ArrayList<Allele>());
+            }
+            Map<String, Gene> nameToGenes = new HashMap<>();
+            Map<String, Allele> nameToAlleles = new HashMap<>();
+            List<Gene> allGenes = new ArrayList<>();
+            LocusContainer container = new LocusContainer(new UUID(msb, lsb), new SpeciesAndLocus(taxonId, locus),
+                    genes, alleles, Collections.unmodifiableMap(nameToGenes),
+                    Collections.unmodifiableMap(nameToAlleles), Collections.unmodifiableList(allGenes));
+            container.setLibrary(library);
+            readProperties(input, container.properties);
+
+            int numberOfAlleles = input.readInt();
+            for (int a = 0; a < numberOfAlleles; a++) {
+                GeneType type = GeneType.get(input.readByte());
+                if (type == null)
+                    throw new IOException("Unknown gene type.");
+                String alleleName = input.readUTF();
+                boolean isFunctional = input.readBoolean();
+
+                String geneName = alleleName.substring(0, alleleName.lastIndexOf('*'));
+                Gene gene = nameToGenes.get(geneName);
+                if (gene == null) {
+                    List<Gene> gs = genes.get(type);
+                    gs.add(gene = new Gene(gs.size(), geneName, GeneGroup.get(locus, type), container));
+                    nameToGenes.put(geneName, gene);
+                    allGenes.add(gene);
+                }
+
+                Allele allele;
+                if (input.readBoolean()) {
+                    String accession = input.readUTF();
+                    int[] points = new int[BasicReferencePoint.TOTAL_NUMBER_OF_REFERENCE_POINTS];
+                    for (int i = 0; i < points.length; i++)
+                        points[i] = input.readInt();
+                    allele = new ReferenceAllele(gene, alleleName, isFunctional, accession,
+                            new ReferencePoints(points));
+                } else {
+                    Allele parent = nameToAlleles.get(input.readUTF());
+                    if (!(parent instanceof ReferenceAllele))
+                        throw new IOException("No parent allele.");
+                    GeneFeature referenceGeneFeature = LociLibraryIOUtils.readReferenceGeneFeature(input);
+                    int[] mutations = new int[input.readInt()];
+                    for (int i = 0; i < mutations.length; i++)
+                        mutations[i] = input.readInt();
+                    allele = new AllelicVariant(alleleName, isFunctional, referenceGeneFeature,
+                            (ReferenceAllele) parent, new Mutations<>(NucleotideSequence.ALPHABET, mutations));
+                }
+
+                gene.alleles.add(allele);
+                alleles.get(type).add(allele);
+                nameToAlleles.put(alleleName, allele);
+            }
+
+            for (Map.Entry<GeneType, List<Allele>> e : alleles.entrySet())
+                e.setValue(Collections.unmodifiableList(
+                        Arrays.asList(e.getValue().toArray(new Allele[e.getValue().size()]))));
+            for (Map.Entry<GeneType, List<Gene>> e : genes.entrySet())
+                e.setValue(Collections.unmodifiableList(
+                        Arrays.asList(e.getValue().toArray(new Gene[e.getValue().size()]))));
+
+            library.registerContainer(container);
+        }
+
+        return library;
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!buffer.hasRemaining())
+                return -1;
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+    }
+}
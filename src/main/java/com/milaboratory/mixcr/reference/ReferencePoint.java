@@ -212,6 +212,12 @@ public final class ReferencePoint implements Comparable<ReferencePoint>, java.io
             FR1Begin, CDR1Begin, FR2Begin, CDR2Begin, FR3Begin, CDR3Begin, VEndTrimmed, DBeginTrimmed, DEndTrimmed,
             JBeginTrimmed, FR4Begin, FR4End, CBegin, CExon1End};
 
+    /**
+     * Number of distinct basic points (including alignment-attached ones); upper bound (exclusive) for {@link
+     * #getBasicPointIndex()}.
+     */
+    public static final int TOTAL_NUMBER_OF_BASIC_POINTS = BasicReferencePoint.values().length;
+
     static final long serialVersionUID = 1L;
     final BasicReferencePoint basicPoint;
     final int offset;
@@ -293,6 +299,16 @@ public final class ReferencePoint implements Comparable<ReferencePoint>, java.io
         return basicPoint.index;
     }
 
+    /**
+     * Returns dense index of underlying basic point (the same for points differing only in offset), in range {@code
+     * [0, TOTAL_NUMBER_OF_BASIC_POINTS)}. Suitable for array-based lookup tables.
+     *
+     * @return dense index of underlying basic point
+     */
+    public int getBasicPointIndex() {
+        return basicPoint.orderingIndex;
+    }
+
     public GeneType getGeneType() {
         return basicPoint.geneType;
     }
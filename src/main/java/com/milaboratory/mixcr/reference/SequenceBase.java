@@ -51,6 +51,22 @@ public final class SequenceBase {
             container.put(from, sequence);
     }
 
+    /**
+     * Adds sequence part that will be decoded on first access.
+     *
+     * @param accession accession number of original sequence
+     * @param from      position of first nucleotide of the part in the original sequence
+     * @param length    length of the part
+     * @param source    source of the part sequence
+     */
+    void putLazy(String accession, int from, int length, SequenceSource source) {
+        SequenceContainer container = library.get(accession);
+        if (container == null)
+            library.put(accession, new SequenceContainer(from, length, source));
+        else
+            container.put(from, source.load());
+    }
+
     public NucleotideSequence get(String accession, Range range) {
         SequenceContainer c = library.get(accession);
         if (c == null)
@@ -69,9 +85,17 @@ public final class SequenceBase {
         return library.isEmpty();
     }
 
+    /**
+     * Lazily decoded sequence part.
+     */
+    interface SequenceSource {
+        NucleotideSequence load();
+    }
+
     private static final class SequenceContainer {
         private Range singleRange;
-        private NucleotideSequence singleSequence;
+        private volatile NucleotideSequence singleSequence;
+        private SequenceSource singleSource;
         private RangeMap<NucleotideSequence> map;
 
         SequenceContainer(int begin, NucleotideSequence seq) {
@@ -79,9 +103,27 @@ public final class SequenceBase {
             singleSequence = seq;
         }
 
+        SequenceContainer(int begin, int length, SequenceSource source) {
+            singleRange = new Range(begin, begin + length);
+            singleSource = source;
+        }
+
+        private NucleotideSequence singleSequence() {
+            NucleotideSequence seq = singleSequence;
+            if (seq == null)
+                synchronized (this) {
+                    if ((seq = singleSequence) == null) {
+                        singleSequence = seq = singleSource.load();
+                        singleSource = null;
+                    }
+                }
+            return seq;
+        }
+
         void put(int begin, NucleotideSequence sequence) {
             Range r = new Range(begin, begin + sequence.size());
             if (singleRange != null) {
+                NucleotideSequence current = singleSequence();
                 if (singleRange.intersectsWith(r)) {
                     // Checking
                     Range intersection = singleRange.intersection(r);
@@ -100,15 +142,15 @@ public final class SequenceBase {
                     }
 
                     if (begin < singleRange.getLower())
-                        singleSequence = sequence.getRange(0, singleRange.getLower() - begin).concatenate(singleSequence);
+                        singleSequence = sequence.getRange(0, singleRange.getLower() - begin).concatenate(current);
                     else
-                        singleSequence = singleSequence.getRange(0, begin - singleRange.getLower()).concatenate(sequence);
+                        singleSequence = current.getRange(0, begin - singleRange.getLower()).concatenate(sequence);
                     singleRange = singleRange.tryMerge(r);
 
                     return;
                 }
                 map = new RangeMap<>();
-                map.put(singleRange, singleSequence);
+                map.put(singleRange, current);
                 singleRange = null;
                 singleSequence = null;
             }
@@ -149,7 +191,7 @@ public final class SequenceBase {
         NucleotideSequence get(Range range) {
             if (singleRange != null)
                 if (singleRange.contains(range))
-                    return singleSequence.getRange(range.move(-singleRange.getLower()));
+                    return singleSequence().getRange(range.move(-singleRange.getLower()));
                 else return null;
             Entry<Range, NucleotideSequence> entry = map.getEntryThatContains(range);
             if (entry == null)
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads data written by {@link BlockCompressedOutputStream}.
+ */
+final class BlockCompressedInputStream extends InputStream {
+    private final InputStream in;
+    private final Inflater inflater = new Inflater(true);
+    private byte[] block = new byte[0], compressed = new byte[0];
+    private int position = 0, length = 0;
+    private boolean closed = false;
+
+    BlockCompressedInputStream(InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == length && !nextBlock())
+            return -1;
+        return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (position == length && !nextBlock())
+            return -1;
+        int l = Math.min(len, length - position);
+        System.arraycopy(block, position, b, off, l);
+        position += l;
+        return l;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return length - position;
+    }
+
+    private boolean nextBlock() throws IOException {
+        int rawLength = readInt(true);
+        if (rawLength == -1)
+            return false;
+        int compressedLength = readInt(false);
+        if (rawLength <= 0 || compressedLength < 0)
+            throw new IOException("Malformed block.");
+        if (block.length < rawLength)
+            block = new byte[rawLength];
+        if (compressedLength == 0)
+            readFully(block, rawLength);
+        else {
+            if (compressed.length < compressedLength)
+                compressed = new byte[compressedLength];
+            readFully(compressed, compressedLength);
+            inflater.reset();
+            inflater.setInput(compressed, 0, compressedLength);
+            try {
+                if (inflater.inflate(block, 0, rawLength) != rawLength)
+                    throw new IOException("Malformed block.");
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            }
+        }
+        position = 0;
+        length = rawLength;
+        return true;
+    }
+
+    private int readInt(boolean eofAllowed) throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; ++i) {
+            int b = in.read();
+            if (b == -1) {
+                if (i == 0 && eofAllowed)
+                    return -1;
+                throw new EOFException();
+            }
+            value = (value << 8) | b;
+        }
+        return value;
+    }
+
+    private void readFully(byte[] buffer, int len) throws IOException {
+        int off = 0;
+        while (off < len) {
+            int r = in.read(buffer, off, len - off);
+            if (r == -1)
+                throw new EOFException();
+            off += r;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        inflater.end();
+        in.close();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * Output stream compressing data in independent blocks with the fastest level of Deflate. Each block is stored as
+ * {@code <raw length: int> <compressed length: int> <data>}; compressed length is 0 for blocks stored uncompressed
+ * (if compression doesn't reduce their size). See {@link BlockCompressedInputStream}.
+ */
+final class BlockCompressedOutputStream extends OutputStream {
+    static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+    private final OutputStream out;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    private final byte[] block, compressed;
+    private int position = 0;
+    private boolean closed = false;
+
+    BlockCompressedOutputStream(OutputStream out) {
+        this(out, DEFAULT_BLOCK_SIZE);
+    }
+
+    BlockCompressedOutputStream(OutputStream out, int blockSize) {
+        this.out = out;
+        this.block = new byte[blockSize];
+        // Compressed data larger than the block itself is never written
+        this.compressed = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (position == block.length)
+            flushBlock();
+        block[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (position == block.length)
+                flushBlock();
+            int l = Math.min(len, block.length - position);
+            System.arraycopy(b, off, block, position, l);
+            position += l;
+            off += l;
+            len -= l;
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        if (position == 0)
+            return;
+        deflater.reset();
+        deflater.setInput(block, 0, position);
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished() && compressedLength < compressed.length)
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        writeInt(position);
+        if (deflater.finished() && compressedLength < position) {
+            writeInt(compressedLength);
+            out.write(compressed, 0, compressedLength);
+        } else {
+            writeInt(0);
+            out.write(block, 0, position);
+        }
+        position = 0;
+    }
+
+    private void writeInt(int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    /**
+     * Writes current block; compression ratio is slightly worse if called frequently.
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBlock();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            flushBlock();
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Blocking queue bounded both by number of items and by their total weight (in bytes). A single element may carry
+ * several items (e.g. chunk of reads), so both values are obtained through {@link Pipeline.Weigher}s. An element that
+ * alone exceeds the limits is still accepted if the queue is empty, so oversized elements never deadlock the pipeline.
+ *
+ * <p>Queue is closed by producer side when no more elements will be put, and aborted by any side in case of failure;
+ * after abort both {@link #put(Object)} and {@link #take()} throw.</p>
+ */
+final class BoundedQueue<T> {
+    private final ArrayDeque<T> queue = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition(), notEmpty = lock.newCondition();
+    private final Pipeline.Weigher<? super T> counter, weigher;
+    private final long capacity, capacityBytes;
+    private final QueueMetrics metrics;
+    private long items = 0, bytes = 0;
+    private boolean closed = false;
+    private Throwable failure = null;
+
+    /**
+     * @param counter  number of items in element, or null if each element is a single item
+     * @param weigher  weight of element in bytes, or null if queue is bounded by count only
+     * @param capacity maximal number of items
+     * @param capacityBytes maximal total weight of elements
+     * @param metrics  metrics to update
+     */
+    BoundedQueue(Pipeline.Weigher<? super T> counter, Pipeline.Weigher<? super T> weigher,
+                 long capacity, long capacityBytes, QueueMetrics metrics) {
+        if (capacity <= 0 || capacityBytes <= 0)
+            throw new IllegalArgumentException();
+        this.counter = counter;
+        this.weigher = weigher;
+        this.capacity = capacity;
+        this.capacityBytes = weigher == null ? Long.MAX_VALUE : capacityBytes;
+        this.metrics = metrics;
+        metrics.capacity = capacity;
+        metrics.capacityBytes = this.capacityBytes;
+    }
+
+    private long count(T element) {
+        return counter == null ? 1 : counter.weight(element);
+    }
+
+    private long weight(T element) {
+        return weigher == null ? 0 : weigher.weight(element);
+    }
+
+    public void put(T element) throws InterruptedException {
+        long count = count(element), weight = weight(element);
+        lock.lockInterruptibly();
+        try {
+            if (!queue.isEmpty() && failure == null &&
+                    (items + count > capacity || bytes + weight > capacityBytes)) {
+                long start = System.nanoTime();
+                do {
+                    notFull.await();
+                } while (!queue.isEmpty() && failure == null &&
+                        (items + count > capacity || bytes + weight > capacityBytes));
+                metrics.producerStallNanos += System.nanoTime() - start;
+            }
+            checkFailure();
+            if (closed)
+                throw new IllegalStateException("Queue is closed.");
+            queue.add(element);
+            items += count;
+            bytes += weight;
+            metrics.depth = items;
+            metrics.depthBytes = bytes;
+            metrics.depthSum += items * count;
+            metrics.items += count;
+            if (items > metrics.maxDepth)
+                metrics.maxDepth = items;
+            if (metrics.firstPut == Long.MAX_VALUE)
+                metrics.firstPut = System.nanoTime();
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns next element or null if queue is closed and all elements were taken.
+     */
+    public T take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            if (queue.isEmpty() && !closed && failure == null) {
+                long start = System.nanoTime();
+                do {
+                    notEmpty.await();
+                } while (queue.isEmpty() && !closed && failure == null);
+                metrics.consumerStallNanos += System.nanoTime() - start;
+            }
+            checkFailure();
+            T element = queue.poll();
+            if (element == null)
+                return null;
+            items -= count(element);
+            bytes -= weight(element);
+            metrics.depth = items;
+            metrics.depthBytes = bytes;
+            metrics.lastTake = System.nanoTime();
+            notFull.signalAll();
+            return element;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Signals that no more elements will be put.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Discards all elements and makes all current and further operations to throw exception with given cause.
+     */
+    public void abort(Throwable cause) {
+        lock.lock();
+        try {
+            if (failure == null)
+                failure = cause;
+            queue.clear();
+            items = bytes = 0;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null)
+            throw new RuntimeException("Pipeline failed.", failure);
+    }
+}
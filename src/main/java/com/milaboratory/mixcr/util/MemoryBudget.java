@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Memory budget of a job, shared between memory consumers (caches, buffers, queues). Each elastic consumer declares
+ * minimal and maximal size and weight, and gets a limit: minimal sizes are guaranteed, the rest of the budget (left
+ * after memory used by fixed consumers, like assembled clones, that can't be limited) is split proportionally to
+ * weights. Consumers that use at least 90% of their limit are considered to be under pressure and get double weight.
+ * Limits are recalculated every second (and on registration), consumers are notified if their limit changes
+ * significantly and are expected to shrink caches or spill data to disk to fit the new limit. If minimal sizes together
+ * with memory used by fixed consumers exceed the budget, limits are still not set below minimums: the budget is
+ * over-committed, which is reported once to stderr and recorded for the report (see {@link #getPeakOvercommit()}).
+ *
+ * <p>All sizes are estimations in bytes of heap occupied by the consumer.</p>
+ */
+public final class MemoryBudget implements AutoCloseable {
+    static final long REBALANCE_INTERVAL = 1000;
+    static final double PRESSURE_THRESHOLD = 0.9, CHANGE_THRESHOLD = 0.1;
+
+    private final long total;
+    private final List<Consumer> consumers = new CopyOnWriteArrayList<>();
+    // Including unregistered, for the report
+    private final List<Consumer> allConsumers = new CopyOnWriteArrayList<>();
+    private final Timer timer = new Timer("MemoryBudget", true);
+    private volatile long peakOvercommit;
+
+    /**
+     * @param total total budget in bytes
+     */
+    public MemoryBudget(long total) {
+        if (total <= 0)
+            throw new IllegalArgumentException();
+        this.total = total;
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                rebalance();
+            }
+        }, REBALANCE_INTERVAL, REBALANCE_INTERVAL);
+    }
+
+    /**
+     * Returns default budget: 3/4 of maximal heap size (the rest is left for data structures not covered by the
+     * budget).
+     */
+    public static long defaultTotal() {
+        long max = Runtime.getRuntime().maxMemory();
+        return max == Long.MAX_VALUE ? 1L << 30 : max / 4 * 3;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Total memory used by all consumers (as of the last rebalance).
+     */
+    public long getUsed() {
+        long used = 0;
+        for (Consumer consumer : consumers)
+            used += consumer.used;
+        return used;
+    }
+
+    /**
+     * Maximal amount of memory by which minimal sizes of elastic consumers together with memory used by fixed
+     * consumers exceeded the total budget (0 if budget was never over-committed).
+     */
+    public long getPeakOvercommit() {
+        return peakOvercommit;
+    }
+
+    /**
+     * Returns all consumers ever registered in this budget.
+     */
+    public List<Consumer> getConsumers() {
+        for (Consumer consumer : consumers)
+            consumer.updateUsed();
+        return new ArrayList<>(allConsumers);
+    }
+
+    /**
+     * Registers elastic consumer.
+     *
+     * @param name     name for the report
+     * @param min      minimal limit
+     * @param max      maximal limit
+     * @param weight   relative share of free memory
+     * @param probe    current memory usage (may be null if unknown)
+     * @param listener limit change listener (may be null if limit is requested only once, via {@link
+     *                 Consumer#getLimit()})
+     */
+    public Consumer register(String name, long min, long max, double weight, Probe probe, Listener listener) {
+        if (min < 0 || max < min || weight <= 0)
+            throw new IllegalArgumentException();
+        Consumer consumer = new Consumer(name, false, min, max, weight, probe, listener);
+        consumers.add(consumer);
+        allConsumers.add(consumer);
+        rebalance();
+        return consumer;
+    }
+
+    /**
+     * Registers consumer which memory usage can't be controlled, but reduces budget available for others.
+     */
+    public Consumer registerFixed(String name, Probe probe) {
+        Consumer consumer = new Consumer(name, true, 0, Long.MAX_VALUE, 0, probe, null);
+        consumers.add(consumer);
+        allConsumers.add(consumer);
+        rebalance();
+        return consumer;
+    }
+
+    /**
+     * Recalculates limits of all consumers.
+     */
+    public synchronized void rebalance() {
+        long available = total;
+        for (Consumer consumer : consumers) {
+            consumer.updateUsed();
+            if (consumer.fixed)
+                available -= consumer.used;
+        }
+
+        List<Consumer> elastic = new ArrayList<>();
+        for (Consumer consumer : consumers)
+            if (!consumer.fixed) {
+                elastic.add(consumer);
+                consumer.newLimit = consumer.min;
+                available -= consumer.min;
+            }
+
+        if (available < 0 && -available > peakOvercommit) {
+            if (peakOvercommit == 0)
+                System.err.println("WARNING: memory budget (" + total + " bytes) is over-committed by " + (-available) +
+                        " bytes: minimal sizes of caches and buffers together with memory used by assembled clones " +
+                        "exceed it; increase --memory (and -Xmx) or reduce number of threads.");
+            peakOvercommit = -available;
+        }
+
+        // Water-filling: free memory is split proportionally to weights; consumers that reached their maximum
+        // return the excess to others
+        List<Consumer> growing = new ArrayList<>(elastic);
+        while (available > 0 && !growing.isEmpty()) {
+            double weights = 0;
+            for (Consumer consumer : growing)
+                weights += consumer.effectiveWeight();
+            long distributed = 0;
+            List<Consumer> next = new ArrayList<>();
+            for (Consumer consumer : growing) {
+                long share = (long) (available * consumer.effectiveWeight() / weights);
+                long add = Math.min(share, consumer.max - consumer.newLimit);
+                consumer.newLimit += add;
+                distributed += add;
+                if (consumer.newLimit < consumer.max)
+                    next.add(consumer);
+            }
+            available -= distributed;
+            if (next.size() == growing.size())
+                break;
+            growing = next;
+        }
+
+        for (Consumer consumer : elastic)
+            consumer.applyLimit();
+    }
+
+    /**
+     * Stops rebalancing.
+     */
+    @Override
+    public void close() {
+        timer.cancel();
+    }
+
+    /**
+     * Returns estimated memory usage of a consumer.
+     */
+    public interface Probe {
+        long getUsedBytes();
+    }
+
+    public interface Listener {
+        void onLimitChanged(long limit);
+    }
+
+    public final class Consumer {
+        final String name;
+        final boolean fixed;
+        final long min, max;
+        final double weight;
+        final Probe probe;
+        final Listener listener;
+        volatile long limit = -1, used, peak;
+        long newLimit;
+
+        Consumer(String name, boolean fixed, long min, long max, double weight, Probe probe, Listener listener) {
+            this.name = name;
+            this.fixed = fixed;
+            this.min = min;
+            this.max = max;
+            this.weight = weight;
+            this.probe = probe;
+            this.listener = listener;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isFixed() {
+            return fixed;
+        }
+
+        /**
+         * Current limit, or -1 for fixed consumers.
+         */
+        public long getLimit() {
+            return limit;
+        }
+
+        public long getUsed() {
+            return used;
+        }
+
+        public long getPeak() {
+            return peak;
+        }
+
+        /**
+         * Removes consumer from the budget; its memory is given to other consumers on the next rebalance.
+         */
+        public void unregister() {
+            updateUsed();
+            consumers.remove(this);
+        }
+
+        void updateUsed() {
+            if (probe == null)
+                return;
+            used = probe.getUsedBytes();
+            if (used > peak)
+                peak = used;
+        }
+
+        double effectiveWeight() {
+            return probe != null && limit > 0 && used >= PRESSURE_THRESHOLD * limit ? 2 * weight : weight;
+        }
+
+        void applyLimit() {
+            if (limit != -1 && Math.abs(newLimit - limit) <= CHANGE_THRESHOLD * limit)
+                return;
+            limit = newLimit;
+            if (listener != null)
+                listener.onLimitChanged(newLimit);
+        }
+
+        /**
+         * Returns consumer state as a list of key=value pairs.
+         */
+        public String toMachineReadableString() {
+            String usage = probe == null ? "" : "used=" + used + " peak=" + peak;
+            return fixed ? usage : ("limit=" + limit + " " + usage).trim();
+        }
+    }
+}
@@ -0,0 +1,670 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import cc.redberry.pipe.InputPort;
+import cc.redberry.pipe.OutputPort;
+import cc.redberry.pipe.OutputPortCloseable;
+import cc.redberry.pipe.util.CountLimitingOutputPort;
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.io.sequence.SequenceReader;
+import com.milaboratory.mixcr.assembler.AlignmentsProvider;
+import com.milaboratory.mixcr.assembler.CloneAssembler;
+import com.milaboratory.mixcr.assembler.CloneAssemblerParameters;
+import com.milaboratory.mixcr.assembler.CloneAssemblerRunner;
+import com.milaboratory.mixcr.assembler.ReadToCloneMapping;
+import com.milaboratory.mixcr.basictypes.CloneSet;
+import com.milaboratory.mixcr.basictypes.CloneSetIO;
+import com.milaboratory.mixcr.basictypes.VDJCAlignments;
+import com.milaboratory.mixcr.basictypes.VDJCAlignmentsReader;
+import com.milaboratory.mixcr.basictypes.VDJCAlignmentsWriter;
+import com.milaboratory.mixcr.cli.ActionAlign;
+import com.milaboratory.mixcr.cli.AlignerReport;
+import com.milaboratory.mixcr.cli.CloneAssemblerReport;
+import com.milaboratory.mixcr.reference.Allele;
+import com.milaboratory.mixcr.reference.LociLibraryManager;
+import com.milaboratory.mixcr.vdjaligners.VDJCAligner;
+import com.milaboratory.mixcr.vdjaligners.VDJCAlignmentResult;
+import com.milaboratory.util.CanReportProgress;
+import com.milaboratory.util.CanReportProgressAndStage;
+import com.milaboratory.util.SmartProgressReporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CancellationException;
+
+/**
+ * In-process streaming API for MiXCR analysis. Reads are streamed through the aligner into optional alignment sinks
+ * ({@link #setAlignmentsWriter(VDJCAlignmentsWriter)}, {@link #setAlignmentsSink(InputPort)}) and, for {@link
+ * #alignAndAssemble(SequenceReader, CloneAssemblerParameters)}, directly into the clone assembler, so no stage keeps
+ * all alignments in memory: stages are connected by bounded queues of {@link Pipeline}.
+ *
+ * <p>Mapping of low quality reads needs the second pass over alignments; in streaming mode alignments are spilled to
+ * a temporary file of {@link #setTempFileManager(TempFileManager) temp file manager} during the first pass and read
+ * back for mapping.</p>
+ *
+ * <p>Analysis can be interrupted from any thread with {@link #cancel()}: running operation throws {@link
+ * CancellationException}. Progress can be polled (this object implements {@link CanReportProgressAndStage}) or pushed
+ * to a {@link ProgressListener}.</p>
+ *
+ * <p>Instance is configured with setters and runs one operation at a time.</p>
+ */
+public final class MiXCRPipeline implements CanReportProgressAndStage {
+    /**
+     * Approximate in-memory size of a read, used to bound alignment input queue by bytes.
+     */
+    public static final Pipeline.Weigher<SequenceRead> READ_WEIGHER = new Pipeline.Weigher<SequenceRead>() {
+        @Override
+        public long weight(SequenceRead read) {
+            long weight = 0;
+            for (int i = 0; i < read.numberOfReads(); i++) {
+                String description = read.getRead(i).getDescription();
+                weight += 2 * read.getRead(i).getData().size() + (description == null ? 0 : 2 * description.length());
+            }
+            return weight;
+        }
+    };
+
+    /**
+     * Capacity of alignment input queue: 4096 reads, but not more than 64Mb (matters for long reads).
+     */
+    public static final Pipeline.QueueCapacity READS_CAPACITY = new Pipeline.QueueCapacity(4096, 64 << 20);
+
+    /**
+     * Limits of alignment input queue size if memory budget is set.
+     */
+    public static final long MIN_INPUT_BUFFER = 16L << 20, MAX_INPUT_BUFFER = 512L << 20;
+
+    private VDJCAligner aligner;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Pipeline.WorkerPool workerPool;
+    private long readsLimit = 0;
+    private PipelineMetrics metrics;
+    private MemoryBudget memoryBudget;
+    private TempFileManager tempFileManager = TempFileManager.getDefault();
+    private AlignerReport alignerReport;
+    private CloneAssemblerReport assemblerReport;
+    private boolean allowDifferentVJLoci = false;
+    private boolean saveReadDescription = false;
+    private boolean saveOriginalReads = false;
+    private boolean logAssemblerEvents = false;
+    private VDJCAlignmentsWriter alignmentsWriter;
+    private InputPort<VDJCAlignments> alignmentsSink;
+    private File clonesOutput;
+    private ProgressListener progressListener;
+    private long progressInterval = 1000;
+
+    private volatile boolean cancelled = false;
+    private volatile boolean finished = false;
+    private volatile String stage = "Initialization";
+    private volatile CanReportProgress progress;
+
+    public MiXCRPipeline() {
+    }
+
+    /**
+     * @param aligner aligner with added alleles, required for alignment operations
+     */
+    public MiXCRPipeline(VDJCAligner aligner) {
+        this.aligner = aligner;
+    }
+
+    public void setAligner(VDJCAligner aligner) {
+        this.aligner = aligner;
+    }
+
+    public void setThreads(int threads) {
+        if (threads <= 0)
+            throw new IllegalArgumentException("Number of threads must be positive.");
+        this.threads = threads;
+    }
+
+    /**
+     * Makes alignment use threads of a pool shared with other pipelines instead of its own {@link
+     * #setThreads(int) threads}.
+     */
+    public void setWorkerPool(Pipeline.WorkerPool workerPool) {
+        this.workerPool = workerPool;
+    }
+
+    /**
+     * Limits number of reads taken from the input (0 for no limit).
+     */
+    public void setReadsLimit(long readsLimit) {
+        this.readsLimit = readsLimit;
+    }
+
+    /**
+     * Sets metrics to collect stage and queue statistics to; private metrics (not exposed via JMX) are used by
+     * default.
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets memory budget for caches and buffers of aligner and assembler. Without budget default sizes are used.
+     */
+    public void setMemoryBudget(MemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Sets manager of temporary files of assembler (and alignments spilled for mapping in streaming mode).
+     */
+    public void setTempFileManager(TempFileManager tempFileManager) {
+        this.tempFileManager = tempFileManager;
+    }
+
+    /**
+     * Sets report to collect alignment statistics to; it is set as events listener of the aligner.
+     */
+    public void setAlignerReport(AlignerReport alignerReport) {
+        this.alignerReport = alignerReport;
+    }
+
+    /**
+     * Sets report to collect assembling statistics to.
+     */
+    public void setAssemblerReport(CloneAssemblerReport assemblerReport) {
+        this.assemblerReport = assemblerReport;
+    }
+
+    /**
+     * Keep alignments with hits from different loci for V and J.
+     */
+    public void setAllowDifferentVJLoci(boolean allowDifferentVJLoci) {
+        this.allowDifferentVJLoci = allowDifferentVJLoci;
+    }
+
+    public void setSaveReadDescription(boolean saveReadDescription) {
+        this.saveReadDescription = saveReadDescription;
+    }
+
+    /**
+     * Save original reads (and their descriptions) in alignments.
+     */
+    public void setSaveOriginalReads(boolean saveOriginalReads) {
+        this.saveOriginalReads = saveOriginalReads;
+    }
+
+    /**
+     * Keep assembler events after assembly, to be retrieved with {@link AssemblyResult#getAssembledReadsPort()}.
+     */
+    public void setLogAssemblerEvents(boolean logAssemblerEvents) {
+        this.logAssemblerEvents = logAssemblerEvents;
+    }
+
+    /**
+     * Sets writer for alignments. Pipeline writes header and number of processed reads, the caller closes writer.
+     */
+    public void setAlignmentsWriter(VDJCAlignmentsWriter alignmentsWriter) {
+        this.alignmentsWriter = alignmentsWriter;
+    }
+
+    /**
+     * Sets sink to put each alignment to (in input order, single thread).
+     */
+    public void setAlignmentsSink(InputPort<VDJCAlignments> alignmentsSink) {
+        this.alignmentsSink = alignmentsSink;
+    }
+
+    /**
+     * Sets file to write assembled clones to.
+     */
+    public void setClonesOutput(File clonesOutput) {
+        this.clonesOutput = clonesOutput;
+    }
+
+    /**
+     * Sets listener to be notified about progress every {@code intervalMillis} while operation is running.
+     */
+    public void setProgressListener(ProgressListener progressListener, long intervalMillis) {
+        if (intervalMillis <= 0)
+            throw new IllegalArgumentException("Interval must be positive.");
+        this.progressListener = progressListener;
+        this.progressInterval = intervalMillis;
+    }
+
+    /**
+     * Interrupts running operation (and makes all subsequent operations fail).
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public String getStage() {
+        CanReportProgress progress = this.progress;
+        if (progress instanceof CanReportProgressAndStage)
+            return ((CanReportProgressAndStage) progress).getStage();
+        return stage;
+    }
+
+    @Override
+    public double getProgress() {
+        CanReportProgress progress = this.progress;
+        return progress == null ? Double.NaN : progress.getProgress();
+    }
+
+    @Override
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Aligns reads, passing alignments to the sinks.
+     *
+     * @return number of processed reads
+     */
+    public long align(SequenceReader<? extends SequenceRead> reader) {
+        checkAligner();
+        Timer timer = start();
+        try (Pipeline pipeline = new Pipeline(metrics());
+             AlignmentsPort alignments = new AlignmentsPort(pipeline, reader, null)) {
+            while (alignments.take() != null) ;
+            return reader.getNumberOfReads();
+        } finally {
+            finish(timer);
+        }
+    }
+
+    /**
+     * Assembles clones from alignments. Returned result must be closed to release assembler resources.
+     */
+    public AssemblyResult assemble(AlignmentsProvider alignmentsProvider, List<Allele> alleles,
+                                   CloneAssemblerParameters parameters) {
+        Timer timer = start();
+        try {
+            return assemble0(alignmentsProvider, alleles, parameters);
+        } finally {
+            finish(timer);
+        }
+    }
+
+    /**
+     * Aligns reads and assembles clones in one pass, passing alignments to the sinks on the way. Returned result
+     * must be closed to release assembler resources.
+     */
+    public AssemblyResult alignAndAssemble(final SequenceReader<? extends SequenceRead> reader,
+                                           CloneAssemblerParameters parameters) throws IOException {
+        checkAligner();
+        Timer timer = start();
+        final SpillFile spill = parameters.isMappingEnabled() ? tempFileManager.createSpillFile() : null;
+        AlignmentsPort port = null;
+        try (Pipeline pipeline = new Pipeline(metrics())) {
+            final AlignmentsPort alignments = port = new AlignmentsPort(pipeline, reader,
+                    spill == null ? null : new VDJCAlignmentsWriter(spill.openOutput()));
+            AlignmentsProvider provider = new AlignmentsProvider() {
+                boolean streamed = false;
+
+                @Override
+                public synchronized OutputPortCloseable<VDJCAlignments> create() {
+                    if (!streamed) {
+                        streamed = true;
+                        return alignments;
+                    }
+                    if (spill == null)
+                        throw new IllegalStateException("Alignments were not saved for the second pass.");
+                    try {
+                        return new VDJCAlignmentsReader(spill.openInput(), LociLibraryManager.getDefault());
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+
+                @Override
+                public long getTotalNumberOfReads() {
+                    return reader.getNumberOfReads();
+                }
+            };
+            return assemble0(provider, aligner.getUsedAlleles(), parameters);
+        } finally {
+            if (port != null)
+                port.close();
+            if (spill != null)
+                spill.delete();
+            finish(timer);
+        }
+    }
+
+    private AssemblyResult assemble0(final AlignmentsProvider alignmentsProvider, List<Allele> alleles,
+                                     CloneAssemblerParameters parameters) {
+        checkCancelled();
+        PipelineMetrics metrics = metrics();
+        CloneAssembler assembler = new CloneAssembler(parameters, logAssemblerEvents, alleles, tempFileManager);
+        boolean success = false;
+        try {
+            if (memoryBudget != null)
+                assembler.setMemoryBudget(memoryBudget);
+            if (assemblerReport != null)
+                assembler.setListener(assemblerReport);
+            CloneAssemblerRunner runner = new CloneAssemblerRunner(new AlignmentsProvider() {
+                @Override
+                public OutputPortCloseable<VDJCAlignments> create() {
+                    return new CancellablePort(alignmentsProvider.create());
+                }
+
+                @Override
+                public long getTotalNumberOfReads() {
+                    return alignmentsProvider.getTotalNumberOfReads();
+                }
+            }, assembler, threads);
+            runner.setMetrics(metrics);
+            progress = runner;
+            runner.run();
+            checkCancelled();
+            CloneSet cloneSet = runner.getCloneSet();
+            if (clonesOutput != null) {
+                StageMetrics.Timer timer = metrics.stage("Writing").start();
+                try (CloneSetIO.CloneSetWriter writer = new CloneSetIO.CloneSetWriter(cloneSet, clonesOutput)) {
+                    progress = writer;
+                    writer.write();
+                }
+                timer.stop(cloneSet.size(), clonesOutput.length());
+            }
+            success = true;
+            return new AssemblyResult(assembler, cloneSet, alignmentsProvider.getTotalNumberOfReads());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            if (!success)
+                assembler.close();
+        }
+    }
+
+    private PipelineMetrics metrics() {
+        if (metrics == null)
+            metrics = new PipelineMetrics("pipeline", false);
+        return metrics;
+    }
+
+    private void checkAligner() {
+        if (aligner == null)
+            throw new IllegalStateException("Aligner is not set.");
+    }
+
+    private void checkCancelled() {
+        if (cancelled)
+            throw new CancellationException("Analysis cancelled.");
+    }
+
+    private Timer start() {
+        checkCancelled();
+        finished = false;
+        stage = "Initialization";
+        progress = null;
+        if (progressListener == null)
+            return null;
+        final ProgressListener listener = progressListener;
+        Timer timer = new Timer("MiXCRPipelineProgress", true);
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                listener.onProgress(getStage(), getProgress());
+            }
+        }, progressInterval, progressInterval);
+        return timer;
+    }
+
+    private void finish(Timer timer) {
+        if (timer != null)
+            timer.cancel();
+        progress = null;
+        stage = "Finished";
+        finished = true;
+        if (progressListener != null)
+            progressListener.onProgress(stage, 1.0);
+    }
+
+    /**
+     * Aligned reads in input order. Alignments are filtered (see {@link #setAllowDifferentVJLoci(boolean)}),
+     * indexed, and passed to the sinks as they are taken; spill writer (if any) is closed at the end of the stream.
+     */
+    private final class AlignmentsPort implements OutputPortCloseable<VDJCAlignments>, CanReportProgress {
+        final SequenceReader<? extends SequenceRead> reader;
+        final OutputPort<VDJCAlignmentResult> results;
+        final CanReportProgress readerProgress;
+        final StageMetrics writing;
+        final MemoryBudget.Consumer inputBuffer;
+        VDJCAlignmentsWriter spillWriter;
+        long index = 0;
+        boolean end = false;
+
+        @SuppressWarnings("unchecked")
+        AlignmentsPort(Pipeline pipeline, SequenceReader<? extends SequenceRead> reader,
+                       VDJCAlignmentsWriter spillWriter) {
+            this.reader = reader;
+            this.spillWriter = spillWriter;
+            PipelineMetrics metrics = metrics();
+            this.writing = metrics.stage("Writing");
+
+            if (alignerReport != null) {
+                aligner.setEventsListener(alignerReport);
+                alignerReport.setAllowDifferentVJLoci(allowDifferentVJLoci);
+            }
+            aligner.setMetrics(metrics);
+            long inputBytes = READS_CAPACITY.bytes;
+            if (memoryBudget != null) {
+                aligner.setMemoryBudget(memoryBudget);
+                final QueueMetrics inputQueue = metrics.queue("Alignment input");
+                inputBuffer = memoryBudget.register("Alignment input queue", MIN_INPUT_BUFFER, MAX_INPUT_BUFFER, 1.0,
+                        new MemoryBudget.Probe() {
+                            @Override
+                            public long getUsedBytes() {
+                                return inputQueue.getDepthBytes();
+                            }
+                        }, null);
+                inputBytes = inputBuffer.getLimit();
+            } else
+                inputBuffer = null;
+
+            if (alignmentsWriter != null)
+                alignmentsWriter.header(aligner);
+            if (spillWriter != null)
+                spillWriter.header(aligner);
+
+            OutputPort<? extends SequenceRead> reads = reader;
+            CanReportProgress readerProgress = reader instanceof CanReportProgress ? (CanReportProgress) reader : null;
+            if (readsLimit != 0) {
+                reads = new CountLimitingOutputPort<>(reads, readsLimit);
+                readerProgress = SmartProgressReporter.extractProgress((CountLimitingOutputPort<?>) reads);
+            }
+            this.readerProgress = readerProgress;
+            stage = "Alignment";
+            progress = this;
+            OutputPort timedReads = metrics.stage("Reading").timed(reads);
+            Pipeline.QueueCapacity capacity = new Pipeline.QueueCapacity(READS_CAPACITY.items, inputBytes);
+            this.results = workerPool == null
+                    ? pipeline.map("Alignment", timedReads, aligner, threads, true, capacity, READ_WEIGHER,
+                    Pipeline.DEFAULT_CHUNK_SIZING)
+                    : pipeline.map("Alignment", timedReads, aligner, workerPool, true, capacity, READ_WEIGHER,
+                    Pipeline.DEFAULT_CHUNK_SIZING);
+        }
+
+        @Override
+        public VDJCAlignments take() {
+            if (end)
+                return null;
+            VDJCAlignmentResult result;
+            while ((result = results.take()) != null) {
+                checkCancelled();
+                VDJCAlignments alignments = result.alignment;
+                if (alignments == null)
+                    continue;
+                if (!alignments.hasSameVJLoci(1)) {
+                    if (alignerReport != null)
+                        alignerReport.onAlignmentWithDifferentVJLoci();
+                    if (!allowDifferentVJLoci)
+                        continue;
+                }
+                if (saveReadDescription || saveOriginalReads)
+                    alignments.setDescriptions(ActionAlign.extractDescription(result.read));
+                if (saveOriginalReads)
+                    alignments.setOriginalSequences(ActionAlign.extractNSeqs(result.read));
+                alignments.setAlignmentsIndex(index++);
+
+                StageMetrics.Timer timer = writing.start();
+                if (alignmentsWriter != null)
+                    alignmentsWriter.write(alignments);
+                if (spillWriter != null)
+                    spillWriter.write(alignments);
+                if (alignmentsSink != null)
+                    alignmentsSink.put(alignments);
+                timer.stop(1, 0);
+                return alignments;
+            }
+            checkCancelled();
+            end();
+            return null;
+        }
+
+        private void end() {
+            end = true;
+            if (alignmentsWriter != null)
+                alignmentsWriter.setNumberOfProcessedReads(reader.getNumberOfReads());
+            if (spillWriter != null) {
+                spillWriter.setNumberOfProcessedReads(reader.getNumberOfReads());
+                spillWriter.close();
+                spillWriter = null;
+            }
+            if (inputBuffer != null)
+                inputBuffer.unregister();
+            aligner.close();
+        }
+
+        @Override
+        public double getProgress() {
+            return readerProgress == null ? Double.NaN : readerProgress.getProgress();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return end;
+        }
+
+        @Override
+        public void close() {
+            // Reader is owned by the caller, pipeline is closed by the operation
+            if (!end) {
+                if (inputBuffer != null)
+                    inputBuffer.unregister();
+                aligner.close();
+            }
+            end = true;
+            if (spillWriter != null) {
+                spillWriter.close();
+                spillWriter = null;
+            }
+        }
+    }
+
+    /**
+     * Checks for cancellation on each alignment taken by the assembler.
+     */
+    private final class CancellablePort implements OutputPortCloseable<VDJCAlignments>, CanReportProgress {
+        final OutputPortCloseable<VDJCAlignments> inner;
+
+        CancellablePort(OutputPortCloseable<VDJCAlignments> inner) {
+            this.inner = inner;
+        }
+
+        @Override
+        public VDJCAlignments take() {
+            checkCancelled();
+            return inner.take();
+        }
+
+        @Override
+        public double getProgress() {
+            return inner instanceof CanReportProgress ? ((CanReportProgress) inner).getProgress() : Double.NaN;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return inner instanceof CanReportProgress && ((CanReportProgress) inner).isFinished();
+        }
+
+        @Override
+        public void close() {
+            inner.close();
+        }
+    }
+
+    /**
+     * Result of clone assembly. Holds the assembler (with its temporary files) until closed.
+     */
+    public static final class AssemblyResult implements AutoCloseable {
+        final CloneAssembler assembler;
+        final CloneSet cloneSet;
+        final long totalReads;
+
+        AssemblyResult(CloneAssembler assembler, CloneSet cloneSet, long totalReads) {
+            this.assembler = assembler;
+            this.cloneSet = cloneSet;
+            this.totalReads = totalReads;
+        }
+
+        public CloneSet getCloneSet() {
+            return cloneSet;
+        }
+
+        public long getTotalReads() {
+            return totalReads;
+        }
+
+        /**
+         * Returns assembler events (read to clone mapping); requires {@link #setLogAssemblerEvents(boolean)} or
+         * enabled mapping.
+         */
+        public OutputPortCloseable<ReadToCloneMapping> getAssembledReadsPort() {
+            return assembler.getAssembledReadsPort();
+        }
+
+        @Override
+        public void close() {
+            assembler.close();
+        }
+    }
+
+    public interface ProgressListener {
+        /**
+         * @param stage    current stage
+         * @param progress progress of the stage from 0 to 1, or NaN if unknown
+         */
+        void onProgress(String stage, double progress);
+    }
+}
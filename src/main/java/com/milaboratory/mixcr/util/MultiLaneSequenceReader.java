@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import com.milaboratory.core.io.sequence.PairedRead;
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.io.sequence.SequenceReaderCloseable;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.SingleReadImpl;
+import com.milaboratory.util.CanReportProgress;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Reads several lanes of the same sample simultaneously, each lane is parsed (and decompressed) by its own thread.
+ * Chunks of reads are taken from lanes in round-robin order, so the output is deterministic, and reads are
+ * renumbered to get globally unique sequential ids.
+ */
+public final class MultiLaneSequenceReader implements SequenceReaderCloseable<SequenceRead>, CanReportProgress {
+    private static final SequenceRead[] END = new SequenceRead[0];
+    private final List<Lane> lanes = new ArrayList<>();
+    private final ArrayList<Lane> active;
+    private int current = 0;
+    private SequenceRead[] chunk = END;
+    private int position = 0;
+    private volatile long numberOfReads = 0;
+    // Failure of one of the lanes, rethrown by all subsequent calls of take()
+    private RuntimeException failure;
+
+    /**
+     * @param readers        lane readers
+     * @param chunkSize      number of reads passed from lane thread at once
+     * @param bufferedChunks number of chunks each lane thread reads ahead
+     */
+    public MultiLaneSequenceReader(List<? extends SequenceReaderCloseable<? extends SequenceRead>> readers,
+                                   int chunkSize, int bufferedChunks) {
+        for (int i = 0; i < readers.size(); i++)
+            lanes.add(new Lane(readers.get(i), chunkSize, bufferedChunks, "lane-reader-" + i));
+        active = new ArrayList<>(lanes);
+        for (Lane lane : lanes)
+            lane.start();
+    }
+
+    /**
+     * Returns next read. If reading of some lane failed, throws exception wrapping the cause, and the same exception
+     * on all subsequent calls.
+     */
+    @Override
+    public synchronized SequenceRead take() {
+        if (failure != null)
+            throw failure;
+        while (position == chunk.length) {
+            if (active.isEmpty())
+                return null;
+            if (current >= active.size())
+                current = 0;
+            Lane lane = active.get(current);
+            SequenceRead[] next;
+            try {
+                next = lane.queue.take();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            if (next == END) {
+                active.remove(current);
+                if (lane.error != null)
+                    throw failure = new RuntimeException("Error reading " + lane.getName(), lane.error);
+                continue;
+            }
+            ++current;
+            chunk = next;
+            position = 0;
+        }
+        return withId(chunk[position++], numberOfReads++);
+    }
+
+    @Override
+    public long getNumberOfReads() {
+        return numberOfReads;
+    }
+
+    @Override
+    public double getProgress() {
+        double progress = 0;
+        for (Lane lane : lanes)
+            if (lane.finished)
+                progress += 1.0;
+            else if (lane.reader instanceof CanReportProgress)
+                progress += ((CanReportProgress) lane.reader).getProgress();
+        return progress / lanes.size();
+    }
+
+    @Override
+    public boolean isFinished() {
+        for (Lane lane : lanes)
+            if (!lane.finished)
+                return false;
+        return true;
+    }
+
+    @Override
+    public void close() {
+        for (Lane lane : lanes)
+            lane.interrupt();
+        for (Lane lane : lanes) {
+            try {
+                lane.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            lane.reader.close();
+        }
+    }
+
+    static SequenceRead withId(SequenceRead read, long id) {
+        if (read.getId() == id)
+            return read;
+        if (read instanceof SingleRead)
+            return setId((SingleRead) read, id);
+        if (read instanceof PairedRead)
+            return new PairedRead(setId(read.getRead(0), id), setId(read.getRead(1), id));
+        throw new IllegalArgumentException("Unsupported read type: " + read.getClass());
+    }
+
+    static SingleRead setId(SingleRead read, long id) {
+        return new SingleReadImpl(id, read.getData(), read.getDescription());
+    }
+
+    private static final class Lane extends Thread {
+        final SequenceReaderCloseable<? extends SequenceRead> reader;
+        final ArrayBlockingQueue<SequenceRead[]> queue;
+        final int chunkSize;
+        volatile boolean finished = false;
+        volatile Throwable error;
+
+        Lane(SequenceReaderCloseable<? extends SequenceRead> reader, int chunkSize, int bufferedChunks, String name) {
+            super(name);
+            setDaemon(true);
+            this.reader = reader;
+            this.chunkSize = chunkSize;
+            this.queue = new ArrayBlockingQueue<>(bufferedChunks + 1);
+        }
+
+        @Override
+        public void run() {
+            try {
+                try {
+                    SequenceRead read = null;
+                    do {
+                        SequenceRead[] chunk = new SequenceRead[chunkSize];
+                        int size = 0;
+                        while (size < chunkSize && (read = reader.take()) != null)
+                            chunk[size++] = read;
+                        if (size != 0)
+                            queue.put(size == chunkSize ? chunk : Arrays.copyOf(chunk, size));
+                    } while (read != null);
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Throwable e) {
+                    error = e;
+                }
+                finished = true;
+                queue.put(END);
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,487 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import cc.redberry.pipe.CUtils;
+import com.milaboratory.core.io.sequence.PairedRead;
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.io.sequence.SequenceReaderCloseable;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.fastq.SingleFastqReader;
+import com.milaboratory.util.CanReportProgress;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Staged fastq reader. For each input file a dedicated thread reads raw bytes and cuts decompressed text into blocks
+ * of whole records (by counting lines); blocks are parsed by a thread pool. BGZF-compressed files (blocked gzip, as
+ * produced by bgzip) are also inflated by the pool, other gzip files are inflated by the reading thread. Blocks of R1
+ * and R2 files contain the same number of records, so paired reads are assembled without any additional
+ * synchronization. Read ids are sequential, as for a usual reader, and wildcards are replaced depending only on read
+ * ids (see {@link WildcardsReplacingReader}), so the output doesn't depend on the number of threads.
+ */
+public final class ParallelFastqReader implements SequenceReaderCloseable<SequenceRead>, CanReportProgress {
+    public static final int DEFAULT_RECORDS_PER_BLOCK = 1024;
+    private static final int BGZF_BLOCKS_IN_FLIGHT = 16;
+    private static final SequenceRead[] EMPTY = new SequenceRead[0];
+    private static final Future<SingleRead[]> END = new FutureTask<SingleRead[]>(new Callable<SingleRead[]>() {
+        @Override
+        public SingleRead[] call() throws Exception {
+            return null;
+        }
+    });
+
+    private final ExecutorService executor;
+    private final FileStream[] streams;
+    private final long startTime = System.nanoTime();
+    private SequenceRead[] current = EMPTY;
+    private int position = 0;
+    private volatile long numberOfReads = 0, endTime = -1;
+
+    /**
+     * @param r1      R1 (or single-end) file name
+     * @param r2      R2 file name, or null for single-end input
+     * @param threads number of threads used to inflate and parse blocks
+     */
+    public ParallelFastqReader(String r1, String r2, int threads) throws IOException {
+        this(r1, r2, threads, DEFAULT_RECORDS_PER_BLOCK);
+    }
+
+    public ParallelFastqReader(String r1, String r2, int threads, int recordsPerBlock) throws IOException {
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            int counter = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "fastq-parser-" + counter++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        int queueSize = 2 * threads + 2;
+        this.streams = new FileStream[r2 == null ? 1 : 2];
+        try {
+            streams[0] = new FileStream(r1, 0, recordsPerBlock, queueSize);
+            if (r2 != null)
+                streams[1] = new FileStream(r2, 1, recordsPerBlock, queueSize);
+        } catch (IOException | RuntimeException e) {
+            if (streams[0] != null)
+                streams[0].counter.close();
+            executor.shutdownNow();
+            throw e;
+        }
+        for (FileStream stream : streams)
+            stream.start();
+    }
+
+    @Override
+    public synchronized SequenceRead take() {
+        while (position == current.length) {
+            if (endTime != -1)
+                return null;
+            SingleRead[] r1 = streams[0].next();
+            if (streams.length == 1) {
+                if (r1 == null) {
+                    endTime = System.nanoTime();
+                    return null;
+                }
+                current = r1;
+            } else {
+                SingleRead[] r2 = streams[1].next();
+                if (r1 == null || r2 == null) {
+                    if (r1 != r2)
+                        throw new RuntimeException("Different number of reads in R1 and R2 files.");
+                    endTime = System.nanoTime();
+                    return null;
+                }
+                if (r1.length != r2.length)
+                    throw new RuntimeException("Different number of reads in R1 and R2 files.");
+                PairedRead[] reads = new PairedRead[r1.length];
+                for (int i = 0; i < r1.length; i++)
+                    reads[i] = new PairedRead(r1[i], r2[i]);
+                current = reads;
+            }
+            position = 0;
+        }
+        ++numberOfReads;
+        return current[position++];
+    }
+
+    @Override
+    public long getNumberOfReads() {
+        return numberOfReads;
+    }
+
+    /**
+     * Returns number of bytes (compressed, if input is compressed) read from input files so far.
+     */
+    public long getBytesRead() {
+        long bytes = 0;
+        for (FileStream stream : streams)
+            bytes += stream.counter.count;
+        return bytes;
+    }
+
+    /**
+     * Returns time passed from the creation of the reader till the end of input (or till now, if input is not read
+     * completely).
+     */
+    public long getElapsedNanos() {
+        long end = endTime;
+        return (end == -1 ? System.nanoTime() : end) - startTime;
+    }
+
+    @Override
+    public double getProgress() {
+        long size = 0, read = 0;
+        for (FileStream stream : streams) {
+            size += stream.size;
+            read += stream.counter.count;
+        }
+        return size == 0 ? 1.0 : 1.0 * read / size;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return endTime != -1;
+    }
+
+    @Override
+    public void close() {
+        for (FileStream stream : streams)
+            stream.interrupt();
+        for (FileStream stream : streams)
+            try {
+                stream.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        executor.shutdownNow();
+    }
+
+    private static boolean isBgzf(byte[] header) {
+        return (header[0] & 0xFF) == 31 && (header[1] & 0xFF) == 139 && (header[3] & 4) != 0
+                && header[12] == 'B' && header[13] == 'C';
+    }
+
+    private static boolean isGzip(byte[] header) {
+        return (header[0] & 0xFF) == 31 && (header[1] & 0xFF) == 139;
+    }
+
+    private final class FileStream extends Thread {
+        final String fileName;
+        final int mate;
+        final long size;
+        final CountingInputStream counter;
+        final int linesPerBlock, recordsPerBlock;
+        final ArrayBlockingQueue<Future<SingleRead[]>> blocks;
+        volatile Throwable error;
+
+        FileStream(String fileName, int mate, int recordsPerBlock, int queueSize) throws IOException {
+            super("fastq-reader");
+            setDaemon(true);
+            this.fileName = fileName;
+            this.mate = mate;
+            this.size = new File(fileName).length();
+            this.counter = new CountingInputStream(new FileInputStream(fileName));
+            this.recordsPerBlock = recordsPerBlock;
+            this.linesPerBlock = 4 * recordsPerBlock;
+            this.blocks = new ArrayBlockingQueue<>(queueSize);
+        }
+
+        SingleRead[] next() {
+            try {
+                Future<SingleRead[]> block = blocks.take();
+                if (block == END) {
+                    blocks.put(END);
+                    if (error != null)
+                        throw new RuntimeException("Error reading " + fileName, error);
+                    return null;
+                }
+                return block.get();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Error parsing " + fileName, e.getCause());
+            }
+        }
+
+        InputStream openDecompressed() throws IOException {
+            BufferedInputStream in = new BufferedInputStream(counter, 1 << 16);
+            byte[] header = new byte[14];
+            in.mark(header.length);
+            int read = 0, r;
+            while (read < header.length && (r = in.read(header, read, header.length - read)) > 0)
+                read += r;
+            in.reset();
+            if (read == header.length && isBgzf(header))
+                return new BgzfInputStream(in, executor, BGZF_BLOCKS_IN_FLIGHT);
+            if (read >= 2 && isGzip(header))
+                return new GZIPInputStream(in, 1 << 16);
+            return in;
+        }
+
+        @Override
+        public void run() {
+            try (InputStream in = openDecompressed()) {
+                byte[] buffer = new byte[1 << 16];
+                byte[] block = new byte[1 << 18];
+                int blockSize = 0, lines = 0, r;
+                long blockIndex = 0;
+                while ((r = in.read(buffer)) >= 0) {
+                    int from = 0;
+                    for (int i = 0; i < r; ++i)
+                        if (buffer[i] == '\n' && ++lines == linesPerBlock) {
+                            block = append(block, blockSize, buffer, from, i + 1 - from);
+                            blockSize += i + 1 - from;
+                            submit(block, blockSize, blockIndex++);
+                            block = new byte[block.length];
+                            blockSize = 0;
+                            lines = 0;
+                            from = i + 1;
+                        }
+                    block = append(block, blockSize, buffer, from, r - from);
+                    blockSize += r - from;
+                }
+                if (blockSize > 0)
+                    submit(block, blockSize, blockIndex);
+            } catch (InterruptedException | InterruptedIOException e) {
+                return;
+            } catch (Throwable e) {
+                error = e;
+            }
+            try {
+                blocks.put(END);
+            } catch (InterruptedException ignored) {
+            }
+        }
+
+        void submit(byte[] block, int size, long blockIndex) throws InterruptedException {
+            blocks.put(executor.submit(new ParseBlock(block, size, blockIndex * recordsPerBlock, mate)));
+        }
+    }
+
+    private static byte[] append(byte[] block, int blockSize, byte[] data, int from, int length) {
+        if (blockSize + length > block.length)
+            block = Arrays.copyOf(block, Math.max(2 * block.length, blockSize + length));
+        System.arraycopy(data, from, block, blockSize, length);
+        return block;
+    }
+
+    private static final class ParseBlock implements Callable<SingleRead[]> {
+        final byte[] data;
+        final int size;
+        final long firstId;
+        final int mate;
+
+        ParseBlock(byte[] data, int size, long firstId, int mate) {
+            this.data = data;
+            this.size = size;
+            this.firstId = firstId;
+            this.mate = mate;
+        }
+
+        @Override
+        public SingleRead[] call() throws Exception {
+            List<SingleRead> reads = new ArrayList<>();
+            try (SingleFastqReader reader = new SingleFastqReader(new ByteArrayInputStream(data, 0, size), false)) {
+                for (SingleRead read : CUtils.it(reader))
+                    reads.add(WildcardsReplacingReader.replaceWildcards(
+                            MultiLaneSequenceReader.setId(read, firstId + reads.size()), mate));
+            }
+            return reads.toArray(new SingleRead[reads.size()]);
+        }
+    }
+
+    /**
+     * Reads BGZF blocks sequentially and inflates them in the thread pool, keeping several blocks in flight.
+     */
+    private static final class BgzfInputStream extends InputStream {
+        final DataInputStream raw;
+        final ExecutorService executor;
+        final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+        final int depth;
+        byte[] current = new byte[0];
+        int position = 0;
+        boolean eof = false;
+
+        BgzfInputStream(InputStream raw, ExecutorService executor, int depth) {
+            this.raw = new DataInputStream(raw);
+            this.executor = executor;
+            this.depth = depth;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill())
+                return -1;
+            return current[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (!fill())
+                return -1;
+            int n = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        private boolean fill() throws IOException {
+            while (position == current.length) {
+                while (!eof && pending.size() < depth) {
+                    byte[] block = readBlock();
+                    if (block == null)
+                        eof = true;
+                    else
+                        pending.add(executor.submit(new InflateBlock(block)));
+                }
+                Future<byte[]> next = pending.poll();
+                if (next == null)
+                    return false;
+                try {
+                    current = next.get();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                } catch (ExecutionException e) {
+                    throw new IOException(e.getCause());
+                }
+                position = 0;
+            }
+            return true;
+        }
+
+        /**
+         * Returns compressed data of the next block followed by CRC32 and ISIZE fields, or null at the end of file.
+         */
+        private byte[] readBlock() throws IOException {
+            int first = raw.read();
+            if (first == -1)
+                return null;
+            byte[] header = new byte[12];
+            header[0] = (byte) first;
+            raw.readFully(header, 1, 11);
+            if ((header[0] & 0xFF) != 31 || (header[1] & 0xFF) != 139 || (header[3] & 4) == 0)
+                throw new IOException("Malformed BGZF block.");
+            int xlen = (header[10] & 0xFF) | (header[11] & 0xFF) << 8;
+            byte[] extra = new byte[xlen];
+            raw.readFully(extra);
+            int blockSize = -1;
+            for (int i = 0; i + 4 <= xlen; i += 4 + ((extra[i + 2] & 0xFF) | (extra[i + 3] & 0xFF) << 8))
+                if (extra[i] == 'B' && extra[i + 1] == 'C')
+                    blockSize = ((extra[i + 4] & 0xFF) | (extra[i + 5] & 0xFF) << 8) + 1;
+            if (blockSize == -1)
+                throw new IOException("Malformed BGZF block.");
+            byte[] data = new byte[blockSize - 12 - xlen];
+            raw.readFully(data);
+            return data;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (Future<byte[]> future : pending)
+                future.cancel(false);
+            raw.close();
+        }
+    }
+
+    private static final class InflateBlock implements Callable<byte[]> {
+        final byte[] data;
+
+        InflateBlock(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public byte[] call() throws DataFormatException {
+            int l = data.length;
+            int size = (data[l - 4] & 0xFF) | (data[l - 3] & 0xFF) << 8 | (data[l - 2] & 0xFF) << 16 |
+                    (data[l - 1] & 0xFF) << 24;
+            byte[] result = new byte[size];
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(data, 0, l - 8);
+                int inflated = 0;
+                while (inflated < size && !inflater.finished()) {
+                    int r = inflater.inflate(result, inflated, size - inflated);
+                    if (r == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                        break;
+                    inflated += r;
+                }
+                if (inflated != size)
+                    throw new DataFormatException("Wrong size of inflated BGZF block.");
+            } finally {
+                inflater.end();
+            }
+            return result;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int r = in.read();
+            if (r != -1)
+                ++count;
+            return r;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int r = in.read(b, off, len);
+            if (r > 0)
+                count += r;
+            return r;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long r = in.skip(n);
+            count += r;
+            return r;
+        }
+    }
+}
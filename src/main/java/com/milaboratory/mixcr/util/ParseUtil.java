@@ -35,6 +35,43 @@ public final class ParseUtil {
     private ParseUtil() {
     }
 
+    /**
+     * Parses size in bytes with optional binary unit suffix, e.g. "4096", "512k", "1.5G" or "10GB".
+     *
+     * @throws IllegalArgumentException if value can't be parsed
+     */
+    public static long parseSize(String value) {
+        String v = value.trim().toUpperCase();
+        if (v.endsWith("B"))
+            v = v.substring(0, v.length() - 1);
+        int shift = 0;
+        if (!v.isEmpty())
+            switch (v.charAt(v.length() - 1)) {
+                case 'K':
+                    shift = 10;
+                    break;
+                case 'M':
+                    shift = 20;
+                    break;
+                case 'G':
+                    shift = 30;
+                    break;
+                case 'T':
+                    shift = 40;
+                    break;
+            }
+        if (shift != 0)
+            v = v.substring(0, v.length() - 1);
+        try {
+            double size = Double.parseDouble(v.trim());
+            if (size < 0 || Double.isInfinite(size))
+                throw new IllegalArgumentException("Illegal size: " + value);
+            return (long) (size * (1L << shift));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Illegal size: " + value);
+        }
+    }
+
     public static String[] splitWithBrackets(String string, char splitChar, String brackets) {
         return splitWithBrackets(string, splitChar, new BracketsInfo(brackets));
     }
@@ -0,0 +1,618 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import cc.redberry.pipe.OutputPort;
+import cc.redberry.pipe.Processor;
+import cc.redberry.pipe.VoidProcessor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runtime for multi-stage processing: stages are connected by {@link BoundedQueue}s (bounded by number of records
+ * and, optionally, by their size in bytes), parallel stages process records in chunks, whose size is adjusted to the
+ * observed processing time, and every stage and queue reports its statistics to {@link PipelineMetrics}.
+ *
+ * <p>Typical usage:</p>
+ * <pre>
+ * try (Pipeline pipeline = new Pipeline(metrics)) {
+ *     OutputPort&lt;Result&gt; results = pipeline.map("Processing", input, processor, threads, true);
+ *     for (Result r : CUtils.it(results))
+ *         ...
+ * }
+ * </pre>
+ * For stage named {@code X} metrics contain stage {@code X} and queues {@code X input} and {@code X output}. Failure
+ * of any stage aborts all queues, so exception is rethrown (wrapped) to the thread consuming the results.
+ *
+ * <p>Parallel stages of several pipelines may share processing threads of a {@link WorkerPool}.</p>
+ */
+public final class Pipeline implements AutoCloseable {
+    /**
+     * Default capacity of queues between stages.
+     */
+    public static final QueueCapacity DEFAULT_CAPACITY = QueueCapacity.ofItems(4096);
+    /**
+     * Default chunk sizing: chunks of 16 to 4096 records, each taking about 5 ms to process.
+     */
+    public static final ChunkSizing DEFAULT_CHUNK_SIZING = new ChunkSizing(16, 4096, 5000000L);
+
+    private final PipelineMetrics metrics;
+    private final List<Thread> threads = new CopyOnWriteArrayList<>();
+    private final List<BoundedQueue<?>> queues = new CopyOnWriteArrayList<>();
+    private volatile Throwable failure = null;
+    private volatile boolean closed = false;
+
+    public Pipeline(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Reads source in a separate thread, so that reading is performed concurrently with consumption of returned port.
+     *
+     * @param name     queue name
+     * @param source   source
+     * @param capacity capacity of the buffer
+     * @param weigher  size of records in bytes (may be null if capacity is defined by number of records only)
+     */
+    public <T> OutputPort<T> buffer(String name, final OutputPort<T> source, QueueCapacity capacity,
+                                    Weigher<? super T> weigher) {
+        final BoundedQueue<T> queue = newQueue(name, null, weigher, capacity);
+        start(name, 0, new Task() {
+            @Override
+            public void run() throws Exception {
+                T t;
+                while ((t = source.take()) != null)
+                    queue.put(t);
+                queue.close();
+            }
+        });
+        return new OutputPort<T>() {
+            @Override
+            public T take() {
+                try {
+                    return queue.take();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Same as {@link #map(String, OutputPort, Processor, int, boolean, QueueCapacity, Weigher, ChunkSizing)} with
+     * default capacity and chunk sizing.
+     */
+    public <I, O> OutputPort<O> map(String name, OutputPort<I> input, Processor<? super I, ? extends O> processor,
+                                    int parallelism, boolean ordered) {
+        return map(name, input, processor, parallelism, ordered, DEFAULT_CAPACITY, null, DEFAULT_CHUNK_SIZING);
+    }
+
+    /**
+     * Processes records from input with given processor in several threads. Null results are dropped.
+     *
+     * @param name        stage name
+     * @param input       input records (read from a separate thread)
+     * @param processor   processor, must be thread-safe
+     * @param parallelism number of processing threads
+     * @param ordered     if true results are returned in the order of input records
+     * @param capacity    capacity of input and output queues
+     * @param weigher     size of input records in bytes (may be null if capacity is defined by number of records only)
+     * @param sizing      chunk sizing
+     */
+    public <I, O> OutputPort<O> map(String name, OutputPort<I> input, Processor<? super I, ? extends O> processor,
+                                    int parallelism, boolean ordered, QueueCapacity capacity,
+                                    Weigher<? super I> weigher, ChunkSizing sizing) {
+        final BoundedQueue<Batch<I>> in = newQueue(name + " input", Batch.COUNTER, Batch.WEIGHER, capacity);
+        final BoundedQueue<Batch<O>> out = newQueue(name + " output", Batch.COUNTER, null, capacity);
+        final ChunkSizer sizer = new ChunkSizer(sizing, capacity, parallelism, metrics.queue(name + " input"));
+        startWorkers(name, in, out, processor, parallelism, sizer);
+        start(name + " input", 0, new Feeder<>(input, in, weigher, sizer));
+        return new BatchPort<>(out, ordered, null);
+    }
+
+    /**
+     * Same as {@link #map(String, OutputPort, Processor, int, boolean, QueueCapacity, Weigher, ChunkSizing)}, but
+     * records are processed by threads of a shared pool instead of threads of the stage. Chunks of all stages using the
+     * pool are processed in the order they were read, so several pipelines (e.g. processing different samples) share
+     * the processing threads without exceeding the pool size.
+     *
+     * @param pool shared processing threads
+     */
+    public <I, O> OutputPort<O> map(String name, OutputPort<I> input, final Processor<? super I, ? extends O> processor,
+                                    final WorkerPool pool, boolean ordered, QueueCapacity capacity,
+                                    Weigher<? super I> weigher, ChunkSizing sizing) {
+        final BoundedQueue<Batch<I>> in = newQueue(name + " input", Batch.COUNTER, Batch.WEIGHER, capacity);
+        // Output is bounded by the number of chunks in flight, so shared threads never wait for a slow consumer
+        final BoundedQueue<Batch<O>> out = newQueue(name + " output", Batch.COUNTER, null,
+                QueueCapacity.ofItems(Long.MAX_VALUE));
+        final ChunkSizer sizer = new ChunkSizer(sizing, capacity, pool.size, metrics.queue(name + " input"));
+        final StageMetrics stage = metrics.stage(name);
+        // Two chunks per thread, as for stages with own threads (see ChunkSizer); released when chunk is taken by
+        // the consumer
+        final Semaphore inFlight = new Semaphore(2 * pool.size);
+        // Feeder and chunks submitted to the pool; the last one to finish closes output
+        final AtomicLong pending = new AtomicLong(1);
+        // Each task is submitted after its chunk is put to the input queue, so take() never waits
+        final Runnable task = pooled(new Task() {
+            @Override
+            public void run() throws Exception {
+                Batch<I> batch = in.take();
+                if (batch != null)
+                    out.put(new Batch<>(batch.index, process(batch, processor, stage, sizer, true), 0));
+                if (pending.decrementAndGet() == 0)
+                    out.close();
+            }
+        });
+        final Feeder<I> feeder = new Feeder<>(input, in, weigher, sizer, new ChunkListener() {
+            @Override
+            public void onChunk() throws InterruptedException {
+                inFlight.acquire();
+                pending.incrementAndGet();
+                pool.submit(task);
+            }
+        });
+        start(name + " input", 0, new Task() {
+            @Override
+            public void run() throws Exception {
+                feeder.run();
+                if (pending.decrementAndGet() == 0)
+                    out.close();
+            }
+        });
+        return new BatchPort<>(out, ordered, inFlight);
+    }
+
+    /**
+     * Same as {@link #forEach(String, OutputPort, VoidProcessor, int, QueueCapacity, Weigher, ChunkSizing)} with
+     * default capacity and chunk sizing.
+     */
+    public <I> void forEach(String name, OutputPort<I> input, VoidProcessor<? super I> processor,
+                            int parallelism) throws InterruptedException {
+        forEach(name, input, processor, parallelism, DEFAULT_CAPACITY, null, DEFAULT_CHUNK_SIZING);
+    }
+
+    /**
+     * Processes all records from input with given processor in several threads, input is read in the calling thread.
+     * Method returns when all records are processed.
+     *
+     * @param name        stage name
+     * @param input       input records
+     * @param processor   processor, must be thread-safe
+     * @param parallelism number of processing threads
+     * @param capacity    capacity of input queue
+     * @param weigher     size of input records in bytes (may be null if capacity is defined by number of records only)
+     * @param sizing      chunk sizing
+     */
+    public <I> void forEach(String name, OutputPort<I> input, final VoidProcessor<? super I> processor,
+                            int parallelism, QueueCapacity capacity, Weigher<? super I> weigher,
+                            ChunkSizing sizing) throws InterruptedException {
+        BoundedQueue<Batch<I>> in = newQueue(name + " input", Batch.COUNTER, Batch.WEIGHER, capacity);
+        ChunkSizer sizer = new ChunkSizer(sizing, capacity, parallelism, metrics.queue(name + " input"));
+        CountDownLatch finished = startWorkers(name, in, null, new Processor<I, Object>() {
+            @Override
+            public Object process(I input) {
+                processor.process(input);
+                return null;
+            }
+        }, parallelism, sizer);
+        try {
+            new Feeder<>(input, in, weigher, sizer).run();
+        } catch (InterruptedException | RuntimeException | Error e) {
+            fail(e);
+            throw e;
+        }
+        finished.await();
+        if (failure != null)
+            throw new RuntimeException("Pipeline failed.", failure);
+    }
+
+    /**
+     * Aborts all stages (if still running).
+     */
+    @Override
+    public void close() {
+        closed = true;
+        CancellationException cancelled = new CancellationException("Pipeline closed.");
+        for (BoundedQueue<?> queue : queues)
+            queue.abort(cancelled);
+        for (Thread thread : threads)
+            thread.interrupt();
+    }
+
+    private <T> BoundedQueue<T> newQueue(String name, Weigher<? super T> counter, Weigher<? super T> weigher,
+                                         QueueCapacity capacity) {
+        BoundedQueue<T> queue = new BoundedQueue<>(counter, weigher, capacity.items, capacity.bytes,
+                metrics.queue(name));
+        queues.add(queue);
+        return queue;
+    }
+
+    private <I, O> CountDownLatch startWorkers(String name, final BoundedQueue<Batch<I>> in,
+                                               final BoundedQueue<Batch<O>> out,
+                                               final Processor<? super I, ? extends O> processor,
+                                               int parallelism, final ChunkSizer sizer) {
+        final StageMetrics stage = metrics.stage(name);
+        final AtomicInteger running = new AtomicInteger(parallelism);
+        final CountDownLatch finished = new CountDownLatch(parallelism);
+        for (int i = 0; i < parallelism; ++i)
+            start(name, i, new Task() {
+                @Override
+                public void run() throws Exception {
+                    try {
+                        Batch<I> batch;
+                        while ((batch = in.take()) != null) {
+                            List<O> results = process(batch, processor, stage, sizer, out != null);
+                            if (out != null)
+                                out.put(new Batch<>(batch.index, results, 0));
+                        }
+                        if (running.decrementAndGet() == 0 && out != null)
+                            out.close();
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            });
+        return finished;
+    }
+
+    private static <I, O> List<O> process(Batch<I> batch, Processor<? super I, ? extends O> processor,
+                                          StageMetrics stage, ChunkSizer sizer, boolean collect) {
+        long start = System.nanoTime();
+        StageMetrics.Timer timer = stage.start();
+        List<O> results = collect ? new ArrayList<O>(batch.items.size()) : null;
+        for (I item : batch.items) {
+            O result = processor.process(item);
+            if (results != null && result != null)
+                results.add(result);
+        }
+        timer.stop(batch.items.size(), batch.bytes);
+        sizer.update(batch.items.size(), System.nanoTime() - start);
+        return results;
+    }
+
+    /**
+     * Wraps task, so that its failure fails this pipeline.
+     */
+    private Runnable pooled(final Task task) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    if (!closed)
+                        fail(e);
+                }
+            }
+        };
+    }
+
+    private void start(String name, int index, final Task task) {
+        Thread thread = new Thread(pooled(task), metrics.getPipeline() + ": " + name + " #" + index);
+        thread.setDaemon(true);
+        threads.add(thread);
+        thread.start();
+    }
+
+    private void fail(Throwable e) {
+        if (failure == null)
+            failure = e;
+        for (BoundedQueue<?> queue : queues)
+            queue.abort(e);
+    }
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    private interface ChunkListener {
+        void onChunk() throws InterruptedException;
+    }
+
+    /**
+     * Fixed set of processing threads shared by parallel stages of several pipelines (see {@link #map(String,
+     * OutputPort, Processor, WorkerPool, boolean, QueueCapacity, Weigher, ChunkSizing)}). Chunks are processed in the
+     * order they were submitted, whatever pipeline they belong to.
+     */
+    public static final class WorkerPool implements AutoCloseable {
+        final int size;
+        final LinkedBlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+        final List<Thread> threads = new ArrayList<>();
+        volatile boolean closed = false;
+
+        /**
+         * @param name name of threads
+         * @param size number of threads
+         */
+        public WorkerPool(String name, int size) {
+            if (size <= 0)
+                throw new IllegalArgumentException();
+            this.size = size;
+            for (int i = 0; i < size; ++i) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        while (!closed)
+                            try {
+                                tasks.take().run();
+                            } catch (InterruptedException e) {
+                                // Checking closed
+                            }
+                    }
+                }, name + " #" + i);
+                thread.setDaemon(true);
+                threads.add(thread);
+                thread.start();
+            }
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        void submit(Runnable task) {
+            if (closed)
+                throw new IllegalStateException("Worker pool is closed.");
+            tasks.add(task);
+        }
+
+        /**
+         * Stops the threads; chunks that were not processed yet are dropped.
+         */
+        @Override
+        public void close() {
+            closed = true;
+            for (Thread thread : threads)
+                thread.interrupt();
+        }
+    }
+
+    /**
+     * Size of record in bytes (or any other units used in {@link QueueCapacity}).
+     */
+    public interface Weigher<T> {
+        long weight(T object);
+    }
+
+    /**
+     * Capacity of a queue.
+     */
+    public static final class QueueCapacity {
+        public final long items, bytes;
+
+        /**
+         * @param items maximal number of records
+         * @param bytes maximal total size of records, as reported by {@link Weigher}
+         */
+        public QueueCapacity(long items, long bytes) {
+            if (items <= 0 || bytes <= 0)
+                throw new IllegalArgumentException();
+            this.items = items;
+            this.bytes = bytes;
+        }
+
+        public static QueueCapacity ofItems(long items) {
+            return new QueueCapacity(items, Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Chunk sizing strategy: chunk size is chosen so that processing of a chunk takes about {@code targetNanos}, but
+     * stays within {@code [minSize, maxSize]}. Fixed chunk size can be set by {@code minSize == maxSize}.
+     */
+    public static final class ChunkSizing {
+        final int minSize, maxSize;
+        final long targetNanos;
+
+        public ChunkSizing(int minSize, int maxSize, long targetNanos) {
+            if (minSize <= 0 || maxSize < minSize || targetNanos <= 0)
+                throw new IllegalArgumentException();
+            this.minSize = minSize;
+            this.maxSize = maxSize;
+            this.targetNanos = targetNanos;
+        }
+
+        public static ChunkSizing fixed(int size) {
+            return new ChunkSizing(size, size, 1);
+        }
+    }
+
+    private static final class ChunkSizer {
+        final int minSize, maxSize;
+        final long targetNanos;
+        final QueueMetrics metrics;
+        // Exponential moving average of processing time per record
+        volatile double nanosPerItem = Double.NaN;
+
+        ChunkSizer(ChunkSizing sizing, QueueCapacity capacity, int parallelism, QueueMetrics metrics) {
+            this.minSize = sizing.minSize;
+            // Queue should hold at least two chunks per processing thread
+            this.maxSize = (int) Math.max(minSize, Math.min(sizing.maxSize, capacity.items / (2 * parallelism)));
+            this.targetNanos = sizing.targetNanos;
+            this.metrics = metrics;
+            metrics.chunkSize = minSize;
+        }
+
+        int size() {
+            double nanosPerItem = this.nanosPerItem;
+            int size = Double.isNaN(nanosPerItem) ? minSize :
+                    (int) Math.max(minSize, Math.min(maxSize, targetNanos / Math.max(nanosPerItem, 1.0)));
+            metrics.chunkSize = size;
+            return size;
+        }
+
+        void update(int items, long nanos) {
+            if (minSize == maxSize || items == 0)
+                return;
+            double value = 1.0 * nanos / items, current = nanosPerItem;
+            // Races between workers only lose some of the measurements
+            nanosPerItem = Double.isNaN(current) ? value : 0.8 * current + 0.2 * value;
+        }
+    }
+
+    private static final class Batch<T> {
+        static final Weigher<Batch<?>> COUNTER = new Weigher<Batch<?>>() {
+            @Override
+            public long weight(Batch<?> batch) {
+                return batch.items.size();
+            }
+        }, WEIGHER = new Weigher<Batch<?>>() {
+            @Override
+            public long weight(Batch<?> batch) {
+                return batch.bytes;
+            }
+        };
+
+        final long index;
+        final List<T> items;
+        final long bytes;
+
+        Batch(long index, List<T> items, long bytes) {
+            this.index = index;
+            this.items = items;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final class Feeder<I> implements Task {
+        final OutputPort<I> input;
+        final BoundedQueue<Batch<I>> queue;
+        final Weigher<? super I> weigher;
+        final ChunkSizer sizer;
+        // Called after each chunk is put to the queue (may be null)
+        final ChunkListener onChunk;
+
+        Feeder(OutputPort<I> input, BoundedQueue<Batch<I>> queue, Weigher<? super I> weigher, ChunkSizer sizer) {
+            this(input, queue, weigher, sizer, null);
+        }
+
+        Feeder(OutputPort<I> input, BoundedQueue<Batch<I>> queue, Weigher<? super I> weigher, ChunkSizer sizer,
+               ChunkListener onChunk) {
+            this.input = input;
+            this.queue = queue;
+            this.weigher = weigher;
+            this.sizer = sizer;
+            this.onChunk = onChunk;
+        }
+
+        @Override
+        public void run() throws InterruptedException {
+            long index = 0;
+            boolean exhausted = false;
+            while (!exhausted) {
+                int size = sizer.size();
+                List<I> items = new ArrayList<>(size);
+                long bytes = 0;
+                while (items.size() < size) {
+                    I item = input.take();
+                    if (item == null) {
+                        exhausted = true;
+                        break;
+                    }
+                    items.add(item);
+                    if (weigher != null)
+                        bytes += weigher.weight(item);
+                }
+                if (!items.isEmpty()) {
+                    queue.put(new Batch<>(index++, items, bytes));
+                    if (onChunk != null)
+                        onChunk.onChunk();
+                }
+            }
+            queue.close();
+        }
+    }
+
+    private static final class BatchPort<O> implements OutputPort<O> {
+        final BoundedQueue<Batch<O>> queue;
+        final boolean ordered;
+        // Released for each batch taken (may be null)
+        final Semaphore inFlight;
+        final HashMap<Long, Batch<O>> pending = new HashMap<>();
+        long next = 0;
+        Iterator<O> current = null;
+
+        BatchPort(BoundedQueue<Batch<O>> queue, boolean ordered, Semaphore inFlight) {
+            this.queue = queue;
+            this.ordered = ordered;
+            this.inFlight = inFlight;
+        }
+
+        @Override
+        public synchronized O take() {
+            try {
+                while (current == null || !current.hasNext()) {
+                    Batch<O> batch = nextBatch();
+                    if (batch == null)
+                        return null;
+                    if (inFlight != null)
+                        inFlight.release();
+                    current = batch.items.iterator();
+                }
+                return current.next();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private Batch<O> nextBatch() throws InterruptedException {
+            if (!ordered)
+                return queue.take();
+            Batch<O> batch = pending.remove(next);
+            while (batch == null) {
+                Batch<O> b = queue.take();
+                if (b == null) {
+                    if (!pending.isEmpty())
+                        throw new IllegalStateException("Missing chunk " + next + ".");
+                    return null;
+                }
+                if (b.index == next)
+                    batch = b;
+                else
+                    pending.put(b.index, b);
+            }
+            ++next;
+            return batch;
+        }
+    }
+}
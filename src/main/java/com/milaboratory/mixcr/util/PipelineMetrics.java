@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Set of named {@link StageMetrics} and {@link QueueMetrics} of a single pipeline run (e.g. one align or assemble
+ * execution). Each stage is exposed as MBean {@code com.milaboratory.mixcr:type=Stage,pipeline=<pipeline>,run=<n>,
+ * name=<stage>} (and each queue as {@code type=Queue}) until {@link #close()} is called, so long runs can be monitored
+ * with any JMX client.
+ */
+public final class PipelineMetrics implements AutoCloseable {
+    public static final String JMX_DOMAIN = "com.milaboratory.mixcr";
+    private static final AtomicInteger runCounter = new AtomicInteger();
+
+    private final String pipeline;
+    private final int run = runCounter.incrementAndGet();
+    private final LinkedHashMap<String, StageMetrics> stages = new LinkedHashMap<>();
+    private final LinkedHashMap<String, QueueMetrics> queues = new LinkedHashMap<>();
+    private final List<ObjectName> registered = new ArrayList<>();
+    private boolean closed;
+
+    public PipelineMetrics(String pipeline) {
+        this(pipeline, true);
+    }
+
+    /**
+     * @param pipeline pipeline name
+     * @param jmx      whether to expose metrics via JMX
+     */
+    public PipelineMetrics(String pipeline, boolean jmx) {
+        this.pipeline = pipeline;
+        this.closed = !jmx;
+    }
+
+    public String getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Returns stage with given name, creating (and registering in JMX) it on the first request.
+     */
+    public synchronized StageMetrics stage(String name) {
+        StageMetrics stage = stages.get(name);
+        if (stage == null) {
+            stages.put(name, stage = new StageMetrics(name));
+            if (!closed)
+                register("Stage", name, stage);
+        }
+        return stage;
+    }
+
+    /**
+     * Returns queue with given name, creating (and registering in JMX) it on the first request.
+     */
+    public synchronized QueueMetrics queue(String name) {
+        QueueMetrics queue = queues.get(name);
+        if (queue == null) {
+            queues.put(name, queue = new QueueMetrics(name));
+            if (!closed)
+                register("Queue", name, queue);
+        }
+        return queue;
+    }
+
+    public synchronized List<StageMetrics> getStages() {
+        return new ArrayList<>(stages.values());
+    }
+
+    public synchronized List<QueueMetrics> getQueues() {
+        return new ArrayList<>(queues.values());
+    }
+
+    private void register(String type, String beanName, Object bean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":type=" + type + ",pipeline=" + ObjectName.quote(pipeline) +
+                    ",run=" + run + ",name=" + ObjectName.quote(beanName));
+            server.registerMBean(bean, name);
+            registered.add(name);
+        } catch (Exception e) {
+            // Monitoring is optional
+        }
+    }
+
+    /**
+     * Unregisters MBeans; metrics are still accessible through this object.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered)
+            try {
+                server.unregisterMBean(name);
+            } catch (Exception ignored) {
+            }
+        registered.clear();
+    }
+}
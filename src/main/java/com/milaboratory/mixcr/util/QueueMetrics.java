@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+/**
+ * Statistics of a queue connecting two pipeline stages. Depth and capacity are measured in items (records, not
+ * chunks). Stall times tell which side of the queue is the bottleneck: high producer stall means that downstream stage
+ * is not able to keep up, high consumer stall means that downstream stage is starving.
+ *
+ * <p>All values except {@link #getChunkSize()} are updated by {@link BoundedQueue} under its lock.</p>
+ */
+public final class QueueMetrics implements QueueMetricsMBean {
+    private final String name;
+    volatile long capacity, capacityBytes, depth, depthBytes, maxDepth, items, depthSum,
+            producerStallNanos, consumerStallNanos, firstPut = Long.MAX_VALUE, lastTake = Long.MIN_VALUE;
+    volatile long chunkSize;
+
+    public QueueMetrics(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Maximal total weight of queued items, or {@link Long#MAX_VALUE} if queue is bounded by count only.
+     */
+    @Override
+    public long getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    @Override
+    public long getDepth() {
+        return depth;
+    }
+
+    @Override
+    public long getDepthBytes() {
+        return depthBytes;
+    }
+
+    @Override
+    public long getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Average depth observed by producers.
+     */
+    @Override
+    public double getAverageDepth() {
+        long items = this.items;
+        return items == 0 ? 0 : 1.0 * depthSum / items;
+    }
+
+    /**
+     * Total number of items passed through the queue.
+     */
+    @Override
+    public long getItems() {
+        return items;
+    }
+
+    /**
+     * Current chunk size for chunked queues, 0 otherwise.
+     */
+    @Override
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    @Override
+    public long getProducerStallMillis() {
+        return producerStallNanos / 1000000;
+    }
+
+    @Override
+    public long getConsumerStallMillis() {
+        return consumerStallNanos / 1000000;
+    }
+
+    @Override
+    public double getItemsPerSecond() {
+        long elapsed = lastTake - firstPut;
+        if (elapsed <= 0)
+            return Double.NaN;
+        return items * 1E9 / elapsed;
+    }
+
+    /**
+     * Returns queue metrics as a list of key=value pairs.
+     */
+    public String toMachineReadableString() {
+        return "items=" + getItems() +
+                " capacity=" + getCapacity() +
+                (capacityBytes == Long.MAX_VALUE ? "" : " capacity_bytes=" + capacityBytes) +
+                " max_depth=" + getMaxDepth() +
+                " avg_depth=" + String.format("%.1f", getAverageDepth()) +
+                (chunkSize == 0 ? "" : " chunk_size=" + chunkSize) +
+                " producer_stall_ms=" + getProducerStallMillis() +
+                " consumer_stall_ms=" + getConsumerStallMillis() +
+                " items_per_s=" + String.format("%.1f", getItemsPerSecond());
+    }
+}
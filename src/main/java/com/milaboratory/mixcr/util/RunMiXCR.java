@@ -1,12 +1,9 @@
 package com.milaboratory.mixcr.util;
 
 import cc.redberry.pipe.CUtils;
+import cc.redberry.pipe.InputPort;
 import cc.redberry.pipe.OutputPort;
 import cc.redberry.pipe.OutputPortCloseable;
-import cc.redberry.pipe.blocks.ParallelProcessor;
-import cc.redberry.pipe.util.Chunk;
-import cc.redberry.pipe.util.Indexer;
-import cc.redberry.pipe.util.OrderedOutputPort;
 import com.milaboratory.core.io.sequence.SequenceRead;
 import com.milaboratory.core.io.sequence.SequenceReaderCloseable;
 import com.milaboratory.core.io.sequence.fasta.FastaReader;
@@ -17,15 +14,12 @@ import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.mixcr.assembler.*;
 import com.milaboratory.mixcr.basictypes.CloneSet;
 import com.milaboratory.mixcr.basictypes.VDJCAlignments;
-import com.milaboratory.mixcr.cli.ActionAlign;
 import com.milaboratory.mixcr.cli.AlignerReport;
 import com.milaboratory.mixcr.cli.CloneAssemblerReport;
 import com.milaboratory.mixcr.reference.*;
 import com.milaboratory.mixcr.vdjaligners.VDJCAligner;
 import com.milaboratory.mixcr.vdjaligners.VDJCAlignerParameters;
-import com.milaboratory.mixcr.vdjaligners.VDJCAlignmentResult;
 import com.milaboratory.mixcr.vdjaligners.VDJCParametersPresets;
-import com.milaboratory.util.CanReportProgress;
 import com.milaboratory.util.SmartProgressReporter;
 
 import java.io.IOException;
@@ -34,42 +28,38 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
 
-import static cc.redberry.pipe.CUtils.chunked;
-import static cc.redberry.pipe.CUtils.unchunked;
-
 /**
  * @author Dmitry Bolotin
  * @author Stanislav Poslavsky
  */
 public final class RunMiXCR {
 
+    /**
+     * Assembles clones from alignments kept in memory by {@link #align(RunMiXCRAnalysis)}.
+     */
     public static AssembleResult assemble(final AlignResult align) {
         RunMiXCRAnalysis parameters = align.parameters;
-        try (CloneAssembler assembler = new CloneAssembler(parameters.cloneAssemblerParameters,
-                false, align.usedAlleles)) {
-
-            CloneAssemblerReport report = new CloneAssemblerReport();
-            assembler.setListener(report);
 
-            CloneAssemblerRunner assemblerRunner = new CloneAssemblerRunner(new AlignmentsProvider() {
-                @Override
-                public OutputPortCloseable<VDJCAlignments> create() {
-                    return opCloseable(CUtils.asOutputPort(align.alignments));
-                }
+        CloneAssemblerReport report = new CloneAssemblerReport();
+        MiXCRPipeline pipeline = new MiXCRPipeline();
+        pipeline.setThreads(parameters.threads);
+        pipeline.setAssemblerReport(report);
 
-                @Override
-                public long getTotalNumberOfReads() {
-                    return align.alignments.size();
-                }
-            }, assembler, parameters.threads);
+        //start progress reporting
+        SmartProgressReporter.startProgressReport(pipeline);
 
-            //start progress reporting
-            SmartProgressReporter.startProgressReport(assemblerRunner);
-
-            assemblerRunner.run();
+        try (MiXCRPipeline.AssemblyResult result = pipeline.assemble(new AlignmentsProvider() {
+            @Override
+            public OutputPortCloseable<VDJCAlignments> create() {
+                return opCloseable(CUtils.asOutputPort(align.alignments));
+            }
 
-            CloneSet cloneSet = assemblerRunner.getCloneSet();
-            return new AssembleResult(cloneSet, report);
+            @Override
+            public long getTotalNumberOfReads() {
+                return align.alignments.size();
+            }
+        }, align.usedAlleles, parameters.cloneAssemblerParameters)) {
+            return new AssembleResult(result.getCloneSet(), report);
         }
     }
 
@@ -77,7 +67,54 @@ public final class RunMiXCR {
         return align(new RunMiXCRAnalysis(files));
     }
 
+    /**
+     * Aligns reads keeping all alignments in memory (for small inputs and tests; see {@link #run(RunMiXCRAnalysis)}
+     * and {@link MiXCRPipeline} for streaming analysis).
+     */
     public static AlignResult align(RunMiXCRAnalysis parameters) throws Exception {
+        VDJCAligner aligner = createAligner(parameters);
+
+        AlignerReport report = new AlignerReport();
+        final List<VDJCAlignments> als = new ArrayList<>();
+        MiXCRPipeline pipeline = createPipeline(parameters, aligner, report);
+        pipeline.setAlignmentsSink(new InputPort<VDJCAlignments>() {
+            @Override
+            public void put(VDJCAlignments alignments) {
+                als.add(alignments);
+            }
+        });
+
+        try (SequenceReaderCloseable<? extends SequenceRead> reader = parameters.createReader()) {
+            //start progress reporting
+            SmartProgressReporter.startProgressReport(pipeline);
+
+            long totalNumberOfReads = pipeline.align(reader);
+            return new AlignResult(parameters, totalNumberOfReads, report, als, aligner.getUsedAlleles(), aligner);
+        }
+    }
+
+    /**
+     * Aligns reads and assembles clones streaming alignments directly to the assembler.
+     */
+    public static AssembleResult run(RunMiXCRAnalysis parameters) throws Exception {
+        VDJCAligner aligner = createAligner(parameters);
+
+        CloneAssemblerReport report = new CloneAssemblerReport();
+        MiXCRPipeline pipeline = createPipeline(parameters, aligner, new AlignerReport());
+        pipeline.setAssemblerReport(report);
+
+        try (SequenceReaderCloseable<? extends SequenceRead> reader = parameters.createReader()) {
+            //start progress reporting
+            SmartProgressReporter.startProgressReport(pipeline);
+
+            try (MiXCRPipeline.AssemblyResult result = pipeline.alignAndAssemble(reader,
+                    parameters.cloneAssemblerParameters)) {
+                return new AssembleResult(result.getCloneSet(), report);
+            }
+        }
+    }
+
+    private static VDJCAligner createAligner(RunMiXCRAnalysis parameters) {
         VDJCAlignerParameters alignerParameters = parameters.alignerParameters;
 
         VDJCAligner aligner = VDJCAligner.createAligner(alignerParameters,
@@ -85,42 +122,23 @@ public final class RunMiXCR {
 
         LociLibrary ll = LociLibraryManager.getDefault().getLibrary("mi");
 
-        List<Allele> alleles = new ArrayList<>();
         for (Locus locus : parameters.loci)
             for (Allele allele : ll.getLocus(parameters.taxonId, locus).getAllAlleles())
                 if (alignerParameters.containsRequiredFeature(allele) &&
-                        (allele.isFunctional() || !parameters.isFunctionalOnly)) {
-                    alleles.add(allele);
+                        (allele.isFunctional() || !parameters.isFunctionalOnly))
                     aligner.addAllele(allele);
-                }
-
-        AlignerReport report = new AlignerReport();
-        aligner.setEventsListener(report);
-
-        try (SequenceReaderCloseable<? extends SequenceRead> reader = parameters.createReader()) {
+        return aligner;
+    }
 
-            //start progress reporting
-            SmartProgressReporter.startProgressReport("align", (CanReportProgress) reader);
-
-            OutputPort<Chunk<SequenceRead>> mainInputReads = CUtils.buffered((OutputPort) chunked(reader, 64), 16);
-            OutputPort<VDJCAlignmentResult> alignments = unchunked(new ParallelProcessor(mainInputReads, chunked(aligner), parameters.threads));
-            List<VDJCAlignments> als = new ArrayList<>();
-            int ind = 0;
-            for (VDJCAlignmentResult t : CUtils.it(new OrderedOutputPort<>(alignments, new Indexer<VDJCAlignmentResult>() {
-                @Override
-                public long getIndex(VDJCAlignmentResult r) {
-                    return r.read.getId();
-                }
-            }))) {
-                if (t.alignment != null) {
-                    t.alignment.setAlignmentsIndex(ind++);
-                    t.alignment.setDescriptions(ActionAlign.extractDescription(t.read));
-                    t.alignment.setOriginalSequences(ActionAlign.extractNSeqs(t.read));
-                    als.add(t.alignment);
-                }
-            }
-            return new AlignResult(parameters, reader.getNumberOfReads(), report, als, alleles, aligner);
-        }
+    private static MiXCRPipeline createPipeline(RunMiXCRAnalysis parameters, VDJCAligner aligner,
+                                                AlignerReport report) {
+        MiXCRPipeline pipeline = new MiXCRPipeline(aligner);
+        pipeline.setThreads(parameters.threads);
+        pipeline.setAlignerReport(report);
+        // Alignments with different V and J loci were not filtered here
+        pipeline.setAllowDifferentVJLoci(true);
+        pipeline.setSaveOriginalReads(true);
+        return pipeline;
     }
 
     public static final class AssembleResult {
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import java.io.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Temporary file created by {@link TempFileManager}. Streams returned by {@link #openOutput()} and {@link
+ * #openInput()} are buffered and, if enabled for the manager, compressed; bytes written to disk are accounted against
+ * manager's quota until the file is deleted.
+ */
+public final class SpillFile implements AutoCloseable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final TempFileManager manager;
+    private final File file;
+    private final boolean compressed;
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLong accounted = new AtomicLong();
+    private volatile boolean deleted = false;
+
+    SpillFile(TempFileManager manager, File file, boolean compressed) {
+        this.manager = manager;
+        this.file = file;
+        this.compressed = compressed;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Size of the file on disk.
+     */
+    public long getSize() {
+        return size.get();
+    }
+
+    /**
+     * Opens stream to (over)write the file.
+     */
+    public OutputStream openOutput() throws IOException {
+        if (deleted)
+            throw new IllegalStateException("File is deleted.");
+        // Overwritten content is not accounted any more
+        manager.release(null, accounted.getAndSet(0));
+        size.set(0);
+        OutputStream os = new BufferedOutputStream(new AccountingOutputStream(new FileOutputStream(file)), BUFFER_SIZE);
+        return compressed ? new BlockCompressedOutputStream(os) : os;
+    }
+
+    /**
+     * Opens stream to read the file; several streams may be opened simultaneously.
+     */
+    public InputStream openInput() throws IOException {
+        if (deleted)
+            throw new IllegalStateException("File is deleted.");
+        InputStream is = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        return compressed ? new BlockCompressedInputStream(is) : is;
+    }
+
+    /**
+     * Deletes the file and releases its quota.
+     */
+    public void delete() {
+        if (deleted)
+            return;
+        deleted = true;
+        file.delete();
+        manager.release(file, accounted.getAndSet(0));
+    }
+
+    @Override
+    public void close() {
+        delete();
+    }
+
+    private final class AccountingOutputStream extends FilterOutputStream {
+        AccountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            account(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            account(len);
+            out.write(b, off, len);
+        }
+
+        private void account(long bytes) throws IOException {
+            manager.allocate(bytes);
+            accounted.addAndGet(bytes);
+            size.addAndGet(bytes);
+        }
+    }
+}
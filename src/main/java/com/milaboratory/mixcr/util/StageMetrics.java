@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import cc.redberry.pipe.OutputPort;
+import cc.redberry.pipe.Processor;
+import cc.redberry.pipe.VoidProcessor;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accumulates timings of a single processing stage. Wall time is measured for each invocation; CPU time and allocated
+ * bytes are measured for every {@link #SAMPLING}-th invocation on each thread (reading thread counters is much more
+ * expensive than {@link System#nanoTime()}) and extrapolated to all invocations.
+ *
+ * <p>Usage:</p>
+ * <pre>
+ * StageMetrics.Timer timer = stage.start();
+ * ...
+ * timer.stop(items, bytes);
+ * </pre>
+ * Timers are thread-local and not reentrant: nested measurements must use different stages.
+ */
+public final class StageMetrics implements StageMetricsMBean {
+    public static final int SAMPLING = 16;
+    private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private static final boolean cpuTimeSupported = threadMXBean.isCurrentThreadCpuTimeSupported();
+    private static final boolean allocationSupported = isAllocationSupported();
+
+    private final String name;
+    private final AtomicLong addedBytes = new AtomicLong();
+    // Each thread accumulates values in its own timer, values are summed on request
+    private final CopyOnWriteArrayList<Timer> allTimers = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Timer> timers = new ThreadLocal<Timer>() {
+        @Override
+        protected Timer initialValue() {
+            Timer timer = new Timer();
+            allTimers.add(timer);
+            return timer;
+        }
+    };
+
+    public StageMetrics(String name) {
+        this.name = name;
+    }
+
+    public Timer start() {
+        Timer timer = timers.get();
+        timer.start();
+        return timer;
+    }
+
+    /**
+     * Wraps output port to measure time spent in {@link OutputPort#take()}; each taken object is counted as an item.
+     */
+    public <T> OutputPort<T> timed(final OutputPort<T> port) {
+        return new OutputPort<T>() {
+            @Override
+            public T take() {
+                Timer timer = start();
+                T t = port.take();
+                timer.stop(t == null ? 0 : 1, 0);
+                return t;
+            }
+        };
+    }
+
+    /**
+     * Wraps processor to measure time of each invocation.
+     */
+    public <I, O> Processor<I, O> timed(final Processor<I, O> processor) {
+        return new Processor<I, O>() {
+            @Override
+            public O process(I input) {
+                Timer timer = start();
+                O o = processor.process(input);
+                timer.stop(1, 0);
+                return o;
+            }
+        };
+    }
+
+    /**
+     * Wraps processor to measure time of each invocation.
+     */
+    public <T> VoidProcessor<T> timed(final VoidProcessor<T> processor) {
+        return new VoidProcessor<T>() {
+            @Override
+            public void process(T input) {
+                Timer timer = start();
+                processor.process(input);
+                timer.stop(1, 0);
+            }
+        };
+    }
+
+    /**
+     * Adds bytes processed by the stage that are not known at the time of {@link Timer#stop(long, long)} calls (e.g.
+     * size of compressed input).
+     */
+    public void addBytes(long bytes) {
+        addedBytes.addAndGet(bytes);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getInvocations() {
+        long sum = 0;
+        for (Timer timer : allTimers)
+            sum += timer.invocations;
+        return sum;
+    }
+
+    @Override
+    public long getItems() {
+        long sum = 0;
+        for (Timer timer : allTimers)
+            sum += timer.items;
+        return sum;
+    }
+
+    @Override
+    public long getBytes() {
+        long sum = addedBytes.get();
+        for (Timer timer : allTimers)
+            sum += timer.bytes;
+        return sum;
+    }
+
+    /**
+     * Sum of wall times of all invocations (over all threads).
+     */
+    @Override
+    public long getWallTimeMillis() {
+        long sum = 0;
+        for (Timer timer : allTimers)
+            sum += timer.wallNanos;
+        return sum / 1000000;
+    }
+
+    /**
+     * Estimated CPU time of all invocations, or -1 if not supported by JVM.
+     */
+    @Override
+    public long getCpuTimeMillis() {
+        if (!cpuTimeSupported)
+            return -1;
+        long sum = 0;
+        for (Timer timer : allTimers)
+            sum += timer.sampledCpuNanos;
+        return extrapolate(sum) / 1000000;
+    }
+
+    /**
+     * Estimated number of bytes allocated in all invocations, or -1 if not supported by JVM.
+     */
+    @Override
+    public long getAllocatedBytes() {
+        if (!allocationSupported)
+            return -1;
+        long sum = 0;
+        for (Timer timer : allTimers)
+            sum += timer.sampledAllocatedBytes;
+        return extrapolate(sum);
+    }
+
+    /**
+     * Items per second of elapsed time (from the first start to the last stop).
+     */
+    @Override
+    public double getItemsPerSecond() {
+        return perSecond(getItems());
+    }
+
+    /**
+     * Bytes per second of elapsed time (from the first start to the last stop).
+     */
+    @Override
+    public double getBytesPerSecond() {
+        return perSecond(getBytes());
+    }
+
+    /**
+     * Time from the first start to the last stop.
+     */
+    public long getElapsedMillis() {
+        return elapsedNanos() / 1000000;
+    }
+
+    private long elapsedNanos() {
+        long first = Long.MAX_VALUE, last = Long.MIN_VALUE;
+        for (Timer timer : allTimers)
+            if (timer.invocations != 0) {
+                first = Math.min(first, timer.firstStart);
+                last = Math.max(last, timer.lastStop);
+            }
+        return last < first ? 0 : last - first;
+    }
+
+    private double perSecond(long value) {
+        long elapsed = elapsedNanos();
+        if (elapsed == 0)
+            return Double.NaN;
+        return value * 1E9 / elapsed;
+    }
+
+    private long extrapolate(long sampledValue) {
+        long sampled = 0, invocations = 0;
+        for (Timer timer : allTimers) {
+            sampled += timer.sampled;
+            invocations += timer.invocations;
+        }
+        if (sampled == 0)
+            return 0;
+        return (long) (1.0 * sampledValue * invocations / sampled);
+    }
+
+    /**
+     * Returns stage metrics as a list of key=value pairs.
+     */
+    public String toMachineReadableString() {
+        return "invocations=" + getInvocations() +
+                " items=" + getItems() +
+                " bytes=" + getBytes() +
+                " elapsed_ms=" + getElapsedMillis() +
+                " wall_ms=" + getWallTimeMillis() +
+                " cpu_ms=" + getCpuTimeMillis() +
+                " allocated_bytes=" + getAllocatedBytes() +
+                " items_per_s=" + String.format("%.1f", getItemsPerSecond()) +
+                " bytes_per_s=" + String.format("%.1f", getBytesPerSecond());
+    }
+
+    private static boolean isAllocationSupported() {
+        try {
+            return threadMXBean instanceof com.sun.management.ThreadMXBean &&
+                    ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported() &&
+                    ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemoryEnabled();
+        } catch (Throwable e) {
+            // Non-HotSpot JVM
+            return false;
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) threadMXBean)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Per-thread accumulator; fields are written only by the owning thread.
+     */
+    public final class Timer {
+        private int counter = 0;
+        private long wall, cpu = -1, allocated = -1;
+        volatile long invocations, items, bytes, wallNanos, sampled, sampledCpuNanos, sampledAllocatedBytes,
+                firstStart = Long.MAX_VALUE, lastStop = Long.MIN_VALUE;
+
+        private Timer() {
+        }
+
+        void start() {
+            if ((counter++ & (SAMPLING - 1)) == 0) {
+                cpu = cpuTimeSupported ? threadMXBean.getCurrentThreadCpuTime() : -1;
+                allocated = allocationSupported ? allocatedBytes() : -1;
+            } else
+                cpu = allocated = -1;
+            wall = System.nanoTime();
+            if (firstStart == Long.MAX_VALUE)
+                firstStart = wall;
+        }
+
+        public void stop(long items, long bytes) {
+            long now = System.nanoTime();
+            wallNanos += now - wall;
+            lastStop = now;
+            if (items != 0)
+                this.items += items;
+            if (bytes != 0)
+                this.bytes += bytes;
+            if (cpu != -1 || allocated != -1) {
+                if (cpu != -1)
+                    sampledCpuNanos += threadMXBean.getCurrentThreadCpuTime() - cpu;
+                if (allocated != -1)
+                    sampledAllocatedBytes += allocatedBytes() - allocated;
+                ++sampled;
+            }
+            ++invocations;
+        }
+    }
+}
@@ -28,55 +28,208 @@
  */
 package com.milaboratory.mixcr.util;
 
-import com.milaboratory.util.RandomUtil;
-
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Manages temporary (spill) files of a single job. Files are placed in one of configured directories (round-robin or
+ * to the directory with the largest free space), may be transparently compressed, and total size of existing files is
+ * limited by a hard quota. All files are deleted by {@link #close()}; files of managers that were not closed are
+ * deleted on JVM shutdown.
+ *
+ * <p>{@link #getDefault()} returns process-wide manager using {@code java.io.tmpdir} without compression and quota.</p>
+ */
+public final class TempFileManager implements AutoCloseable {
+    private static final AtomicBoolean hookAdded = new AtomicBoolean(false);
+    static final Set<TempFileManager> openManagers =
+            Collections.newSetFromMap(new ConcurrentHashMap<TempFileManager, Boolean>());
+    private static volatile TempFileManager defaultManager;
+
+    private final String name;
+    private final List<File> directories;
+    private final Placement placement;
+    private final boolean compress;
+    private final long quota;
+    private final AtomicInteger nextDirectory = new AtomicInteger();
+    private final AtomicLong usedBytes = new AtomicLong(), peakBytes = new AtomicLong();
+    final Set<File> files = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+    private volatile boolean closed = false;
 
-public class TempFileManager {
-    private static final AtomicBoolean initialized = new AtomicBoolean(false);
-    static final ConcurrentHashMap<String, File> createdFiles = new ConcurrentHashMap<>();
-    //static final String tmpdir = getTmpDir();
-    //private static String getTmpDir() {
-    //    String tmpdir = AccessController.doPrivileged(new GetPropertyAction("java.io.tmpdir"));
-    //    if (!tmpdir.endsWith(File.separator))
-    //        tmpdir = tmpdir + File.separator;
-    //    return tmpdir;
-    //}
+    /**
+     * @param name        job name (used in file names and error messages)
+     * @param directories directories to place files to (created if absent)
+     * @param placement   placement policy
+     * @param compress    whether to compress spill files
+     * @param quota       maximal total size of spill files in bytes
+     */
+    public TempFileManager(String name, List<File> directories, Placement placement, boolean compress, long quota) {
+        if (directories.isEmpty())
+            throw new IllegalArgumentException("No temp directories.");
+        if (quota <= 0)
+            throw new IllegalArgumentException("Quota must be positive.");
+        for (File directory : directories)
+            if (!(directory.isDirectory() || directory.mkdirs()) || !directory.canWrite())
+                throw new IllegalArgumentException("Temp directory is not writable: " + directory);
+        this.name = name;
+        this.directories = new ArrayList<>(directories);
+        this.placement = placement;
+        this.compress = compress;
+        this.quota = quota;
+        if (hookAdded.compareAndSet(false, true))
+            // Adding delete files shutdown hook on the very first creation of a manager
+            Runtime.getRuntime().addShutdownHook(new Thread(new RemoveAction(), "DeleteTempFiles"));
+        openManagers.add(this);
+    }
 
+    public static TempFileManager getDefault() {
+        if (defaultManager == null)
+            synchronized (TempFileManager.class) {
+                if (defaultManager == null)
+                    defaultManager = new TempFileManager("mixcr",
+                            Collections.singletonList(new File(System.getProperty("java.io.tmpdir"))),
+                            Placement.RoundRobin, false, Long.MAX_VALUE);
+            }
+        return defaultManager;
+    }
+
+    /**
+     * Creates empty temp file in the default temp directory; file is deleted on JVM shutdown.
+     */
     public static File getTempFile() {
         try {
-            if (initialized.compareAndSet(false, true))
-                // Adding delete files shutdown hook on the very firs execution of getTempFile()
-                Runtime.getRuntime().addShutdownHook(new Thread(new RemoveAction(), "DeleteTempFiles"));
-
-            File file;
-            String name;
-
-            do {
-                name = "mixcr_" + RandomUtil.getThreadLocalRandomData().nextHexString(40);
-                file = File.createTempFile(name, null);
-            } while (createdFiles.putIfAbsent(name, file) != null);
-            if (file.length() != 0)
-                throw new RuntimeException();
-            return file;
+            return getDefault().createTempFile();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Creates empty file in one of the directories. Size of the file is not accounted, use {@link
+     * #createSpillFile()} for files written by MiXCR itself.
+     */
+    public File createTempFile() throws IOException {
+        if (closed)
+            throw new IllegalStateException("Temp file manager is closed.");
+        File file = File.createTempFile(name + "_", ".tmp", chooseDirectory());
+        files.add(file);
+        return file;
+    }
+
+    /**
+     * Creates new spill file.
+     */
+    public SpillFile createSpillFile() throws IOException {
+        return new SpillFile(this, createTempFile(), compress);
+    }
+
+    private File chooseDirectory() {
+        if (directories.size() == 1)
+            return directories.get(0);
+        switch (placement) {
+            case FreeSpace:
+                File best = null;
+                long bestSpace = -1;
+                for (File directory : directories) {
+                    long space = directory.getUsableSpace();
+                    if (space > bestSpace) {
+                        best = directory;
+                        bestSpace = space;
+                    }
+                }
+                return best;
+            default:
+                return directories.get((nextDirectory.getAndIncrement() & Integer.MAX_VALUE) % directories.size());
+        }
+    }
+
+    void allocate(long bytes) throws QuotaExceededException {
+        long used = usedBytes.addAndGet(bytes);
+        if (used > quota) {
+            usedBytes.addAndGet(-bytes);
+            throw new QuotaExceededException("Temporary files of " + name + " exceeded quota of " + quota +
+                    " bytes (directories: " + directories + "); increase the quota or use other directories.");
+        }
+        long peak;
+        while ((peak = peakBytes.get()) < used && !peakBytes.compareAndSet(peak, used)) ;
+    }
+
+    /**
+     * Releases quota and, if file is not null, removes it from the list of files to delete.
+     */
+    void release(File file, long bytes) {
+        usedBytes.addAndGet(-bytes);
+        if (file != null)
+            files.remove(file);
+    }
+
+    public boolean isCompressionEnabled() {
+        return compress;
+    }
+
+    public long getQuota() {
+        return quota;
+    }
+
+    /**
+     * Total size of existing spill files.
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    /**
+     * Maximal total size of spill files existing at the same time.
+     */
+    public long getPeakBytes() {
+        return peakBytes.get();
+    }
+
+    /**
+     * Deletes all files created by this manager.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        openManagers.remove(this);
+        deleteAll();
+    }
+
+    void deleteAll() {
+        for (File file : files)
+            if (file.exists())
+                try {
+                    file.delete();
+                } catch (RuntimeException e) {
+                }
+        files.clear();
+    }
+
+    public enum Placement {
+        RoundRobin, FreeSpace
+    }
+
+    /**
+     * Thrown if total size of spill files exceeds the quota.
+     */
+    public static final class QuotaExceededException extends IOException {
+        public QuotaExceededException(String message) {
+            super(message);
+        }
+    }
+
     private static final class RemoveAction implements Runnable {
         @Override
         public void run() {
-            for (File file : createdFiles.values()) {
-                if (file.exists())
-                    try {
-                        file.delete();
-                    } catch (RuntimeException e) {
-                    }
-            }
+            for (TempFileManager manager : openManagers)
+                manager.deleteAll();
         }
     }
 }
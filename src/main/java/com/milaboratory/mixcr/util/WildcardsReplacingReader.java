@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import com.milaboratory.core.io.sequence.PairedRead;
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.io.sequence.SequenceReaderCloseable;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.SingleReadImpl;
+import com.milaboratory.core.mutations.Mutation;
+import com.milaboratory.core.mutations.Mutations;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.Wildcard;
+import com.milaboratory.util.CanReportProgress;
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Replaces wildcards (e.g. N) in reads with pseudo-random nucleotides. Replacement depends only on the read id, the
+ * index of the read in a pair and the position, so reads get the same sequences regardless of the way they were
+ * parsed (serially, by parallel or multi-lane readers, by any number of threads). Input readers must be created with
+ * wildcard replacement turned off.
+ */
+public final class WildcardsReplacingReader implements SequenceReaderCloseable<SequenceRead>, CanReportProgress {
+    private final SequenceReaderCloseable<? extends SequenceRead> reader;
+
+    public WildcardsReplacingReader(SequenceReaderCloseable<? extends SequenceRead> reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public SequenceRead take() {
+        SequenceRead read = reader.take();
+        return read == null ? null : replaceWildcards(read);
+    }
+
+    @Override
+    public long getNumberOfReads() {
+        return reader.getNumberOfReads();
+    }
+
+    @Override
+    public double getProgress() {
+        return reader instanceof CanReportProgress ? ((CanReportProgress) reader).getProgress() : Double.NaN;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return reader instanceof CanReportProgress && ((CanReportProgress) reader).isFinished();
+    }
+
+    @Override
+    public void close() {
+        reader.close();
+    }
+
+    static SequenceRead replaceWildcards(SequenceRead read) {
+        if (read instanceof SingleRead)
+            return replaceWildcards((SingleRead) read, 0);
+        if (read instanceof PairedRead) {
+            SingleRead r1 = read.getRead(0), r2 = read.getRead(1),
+                    n1 = replaceWildcards(r1, 0), n2 = replaceWildcards(r2, 1);
+            return n1 == r1 && n2 == r2 ? read : new PairedRead(n1, n2);
+        }
+        throw new IllegalArgumentException("Unsupported read type: " + read.getClass());
+    }
+
+    /**
+     * Returns read with wildcards replaced, or the same read if it contains no wildcards.
+     *
+     * @param read read
+     * @param mate index of the read in a pair (0 for single-end reads)
+     */
+    static SingleRead replaceWildcards(SingleRead read, int mate) {
+        NucleotideSequence sequence = read.getData().getSequence();
+        if (!sequence.containsWildcards())
+            return read;
+        TIntArrayList substitutions = new TIntArrayList();
+        long seed = read.getId() * 2 + mate;
+        for (int i = 0; i < sequence.size(); i++) {
+            Wildcard wildcard = NucleotideSequence.ALPHABET.codeToWildcard(sequence.codeAt(i));
+            if (!wildcard.isBasic())
+                substitutions.add(Mutation.createSubstitution(i, sequence.codeAt(i),
+                        wildcard.getUniformlyDistributedBasicCode(mix(seed, i))));
+        }
+        sequence = new Mutations<>(NucleotideSequence.ALPHABET, substitutions.toArray()).mutate(sequence);
+        return new SingleReadImpl(read.getId(), new NSequenceWithQuality(sequence, read.getData().getQuality()),
+                read.getDescription());
+    }
+
+    private static long mix(long seed, int position) {
+        long h = seed * 0x9E3779B97F4A7C15L + position;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h & Long.MAX_VALUE;
+    }
+}
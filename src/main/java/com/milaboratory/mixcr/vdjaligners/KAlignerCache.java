@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.vdjaligners;
+
+import com.milaboratory.core.alignment.batch.AlignmentHit;
+import com.milaboratory.core.alignment.batch.BatchAlignerWithBase;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.mixcr.reference.Allele;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide cache of V/J/C aligners with already built k-mer indexes. Aligners are reused by all {@link
+ * VDJCAlignerAbstract} instances with the same alignment parameters and the same set of alleles (compared by
+ * identity), e.g. by sequential or concurrent alignment jobs running in one JVM.
+ *
+ * <p>Cached aligners are never modified after construction and are used concurrently.</p>
+ */
+final class KAlignerCache {
+    /**
+     * Maximal number of cached aligners; least recently used are evicted
+     */
+    static final int MAX_SIZE = 16;
+
+    private static final LinkedHashMap<Key, Entry> cache = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    private KAlignerCache() {
+    }
+
+    static BatchAlignerWithBase<NucleotideSequence, Allele, AlignmentHit<NucleotideSequence, Allele>> get(
+            KGeneAlignmentParameters parameters, List<Allele> alleles) {
+        Key key = new Key(parameters.clone(), alleles.toArray(new Allele[alleles.size()]));
+        Entry entry;
+        synchronized (cache) {
+            entry = cache.get(key);
+            if (entry == null)
+                cache.put(key, entry = new Entry(key));
+        }
+        // Index is built outside of the cache lock, so different aligners can be built concurrently
+        return entry.get();
+    }
+
+    private static final class Entry {
+        final Key key;
+        BatchAlignerWithBase<NucleotideSequence, Allele, AlignmentHit<NucleotideSequence, Allele>> aligner;
+
+        Entry(Key key) {
+            this.key = key;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized BatchAlignerWithBase<NucleotideSequence, Allele, AlignmentHit<NucleotideSequence, Allele>> get() {
+            if (aligner == null) {
+                BatchAlignerWithBase<NucleotideSequence, Allele, AlignmentHit<NucleotideSequence, Allele>> a =
+                        (BatchAlignerWithBase) key.parameters.getParameters().createAligner();
+                for (Allele allele : key.alleles)
+                    a.addReference(allele.getFeature(key.parameters.getGeneFeatureToAlign()), allele);
+                aligner = a;
+            }
+            return aligner;
+        }
+    }
+
+    private static final class Key {
+        final KGeneAlignmentParameters parameters;
+        final Allele[] alleles;
+        final int hash;
+
+        Key(KGeneAlignmentParameters parameters, Allele[] alleles) {
+            this.parameters = parameters;
+            this.alleles = alleles;
+            int h = parameters.hashCode();
+            for (Allele allele : alleles)
+                h = 31 * h + System.identityHashCode(allele);
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key that = (Key) o;
+            if (hash != that.hash || alleles.length != that.alleles.length || !parameters.equals(that.parameters))
+                return false;
+            for (int i = 0; i < alleles.length; i++)
+                if (alleles[i] != that.alleles[i])
+                    return false;
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -54,17 +54,15 @@ public final class SingleDAligner {
     private final List<Allele> alleles;
     private final GeneFeature featureToAlign;
 
-    private final LoadingCache<NucleotideSequence, List<PreVDJCHit>> resultsCache =
-            CacheBuilder.newBuilder()
-                    .maximumSize(5000)
-                    .recordStats()
-                    .build(
-                            new CacheLoader<NucleotideSequence, List<PreVDJCHit>>() {
-                                public List<PreVDJCHit> load(NucleotideSequence key) {
-                                    return _align(key);
-                                }
-                            }
-                    );
+    /**
+     * Default number of cached results
+     */
+    public static final int DEFAULT_CACHE_SIZE = 5000;
+    /**
+     * Estimated heap size of a cached result (key sequence and hits with alignments)
+     */
+    public static final int CACHE_ENTRY_BYTES = 512;
+    private volatile LoadingCache<NucleotideSequence, List<PreVDJCHit>> resultsCache = createCache(DEFAULT_CACHE_SIZE);
 
     public SingleDAligner(DAlignerParameters parameters,
                           List<Allele> alleles) {
@@ -78,6 +76,36 @@ public final class SingleDAligner {
         this.alleles = new ArrayList<>(alleles);
     }
 
+    private LoadingCache<NucleotideSequence, List<PreVDJCHit>> createCache(long size) {
+        return CacheBuilder.newBuilder()
+                .maximumSize(size)
+                .recordStats()
+                .build(
+                        new CacheLoader<NucleotideSequence, List<PreVDJCHit>>() {
+                            public List<PreVDJCHit> load(NucleotideSequence key) {
+                                return _align(key);
+                            }
+                        }
+                );
+    }
+
+    /**
+     * Sets maximal number of cached results. Cached results are copied to the new cache, which evicts extra entries
+     * in arbitrary order if it is smaller.
+     */
+    public synchronized void setCacheSize(long size) {
+        LoadingCache<NucleotideSequence, List<PreVDJCHit>> cache = createCache(Math.max(1, size));
+        cache.putAll(resultsCache.asMap());
+        resultsCache = cache;
+    }
+
+    /**
+     * Current number of cached results.
+     */
+    public long getCacheSize() {
+        return resultsCache.size();
+    }
+
     List<PreVDJCHit> align0(NucleotideSequence sequence, Set<Locus> loci, int from, int to) {
         if (from > to)
             throw new IllegalArgumentException();
@@ -35,6 +35,9 @@ import com.milaboratory.mixcr.basictypes.VDJCHit;
 import com.milaboratory.mixcr.reference.Allele;
 import com.milaboratory.mixcr.reference.GeneType;
 import com.milaboratory.mixcr.reference.Locus;
+import com.milaboratory.mixcr.util.MemoryBudget;
+import com.milaboratory.mixcr.util.PipelineMetrics;
+import com.milaboratory.mixcr.util.StageMetrics;
 
 import java.util.*;
 
@@ -44,6 +47,8 @@ public abstract class VDJCAligner<R extends SequenceRead> implements Processor<R
     protected final EnumMap<GeneType, List<Allele>> allelesToAlign = new EnumMap<>(GeneType.class);
     protected final List<Allele> usedAlleles = new ArrayList<>();
     protected VDJCAlignerEventListener listener = null;
+    protected volatile StageMetrics vStage, jStage, dStage, cStage;
+    protected volatile MemoryBudget memoryBudget;
 
     protected VDJCAligner(VDJCAlignerParameters parameters) {
         this.parameters = parameters.clone();
@@ -55,6 +60,29 @@ public abstract class VDJCAligner<R extends SequenceRead> implements Processor<R
         this.listener = listener;
     }
 
+    /**
+     * Enables collection of timings of V, J, D and C alignment stages.
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.vStage = metrics.stage("V alignment");
+        this.jStage = metrics.stage("J alignment");
+        this.dStage = metrics.stage("D alignment");
+        this.cStage = metrics.stage("C alignment");
+    }
+
+    /**
+     * Makes sizes of aligner caches governed by memory budget.
+     */
+    public void setMemoryBudget(MemoryBudget budget) {
+        this.memoryBudget = budget;
+    }
+
+    /**
+     * Unregisters aligner caches from memory budget. Aligner may still be used, caches keep their last size.
+     */
+    public void close() {
+    }
+
     protected final void onFailedAlignment(SequenceRead read, VDJCAlignmentFailCause cause) {
         if (listener != null)
             listener.onFailedAlignment(read, cause);
@@ -29,16 +29,22 @@
 package com.milaboratory.mixcr.vdjaligners;
 
 import com.milaboratory.core.alignment.batch.AlignmentHit;
+import com.milaboratory.core.alignment.batch.AlignmentResult;
 import com.milaboratory.core.alignment.batch.BatchAlignerWithBase;
 import com.milaboratory.core.io.sequence.SequenceRead;
 import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.mixcr.reference.Allele;
 import com.milaboratory.mixcr.reference.GeneType;
+import com.milaboratory.mixcr.reference.Locus;
+import com.milaboratory.mixcr.util.MemoryBudget;
+import com.milaboratory.mixcr.util.StageMetrics;
 
 import java.util.List;
+import java.util.Set;
 
 public abstract class VDJCAlignerAbstract<R extends SequenceRead> extends VDJCAligner<R> {
     protected volatile SingleDAligner singleDAligner = null;
+    private MemoryBudget.Consumer dCacheConsumer = null;
     protected volatile BatchAlignerWithBase<NucleotideSequence, Allele, AlignmentHit<NucleotideSequence, Allele>> vAligner = null;
     protected volatile BatchAlignerWithBase<NucleotideSequence, Allele, AlignmentHit<NucleotideSequence, Allele>> jAligner = null;
     protected volatile BatchAlignerWithBase<NucleotideSequence, Allele, AlignmentHit<NucleotideSequence, Allele>> cAligner = null;
@@ -47,26 +53,111 @@ public abstract class VDJCAlignerAbstract<R extends SequenceRead> extends VDJCAl
         super(parameters);
     }
 
-    @SuppressWarnings("unchecked")
     private BatchAlignerWithBase<NucleotideSequence, Allele, AlignmentHit<NucleotideSequence, Allele>> createKAligner(GeneType geneType) {
         if (parameters.getVJCGeneAlignerParameters(geneType) != null &&
-                !allelesToAlign.get(geneType).isEmpty()) {
-            BatchAlignerWithBase<NucleotideSequence, Allele, AlignmentHit<NucleotideSequence, Allele>> aligner =
-                    (BatchAlignerWithBase) parameters.getVJCGeneAlignerParameters(geneType).getParameters().createAligner();
-            for (Allele a : allelesToAlign.get(geneType))
-                aligner.addReference(a.getFeature(parameters.getVJCGeneAlignerParameters(geneType).getGeneFeatureToAlign()), a);
-            return aligner;
-        }
+                !allelesToAlign.get(geneType).isEmpty())
+            // Aligners with the same parameters and alleles are shared between aligner instances
+            return KAlignerCache.get(parameters.getVJCGeneAlignerParameters(geneType), allelesToAlign.get(geneType));
         return null;
     }
 
+    protected final AlignmentResult<AlignmentHit<NucleotideSequence, Allele>> alignV(NucleotideSequence sequence) {
+        StageMetrics.Timer timer = vStage == null ? null : vStage.start();
+        AlignmentResult<AlignmentHit<NucleotideSequence, Allele>> result = vAligner.align(sequence);
+        if (timer != null)
+            timer.stop(1, sequence.size());
+        return result;
+    }
+
+    protected final AlignmentResult<AlignmentHit<NucleotideSequence, Allele>> alignV(NucleotideSequence sequence,
+                                                                                    int from, int to) {
+        StageMetrics.Timer timer = vStage == null ? null : vStage.start();
+        AlignmentResult<AlignmentHit<NucleotideSequence, Allele>> result = vAligner.align(sequence, from, to);
+        if (timer != null)
+            timer.stop(1, to - from);
+        return result;
+    }
+
+    protected final AlignmentResult<AlignmentHit<NucleotideSequence, Allele>> alignJ(NucleotideSequence sequence) {
+        StageMetrics.Timer timer = jStage == null ? null : jStage.start();
+        AlignmentResult<AlignmentHit<NucleotideSequence, Allele>> result = jAligner.align(sequence);
+        if (timer != null)
+            timer.stop(1, sequence.size());
+        return result;
+    }
+
+    protected final AlignmentResult<AlignmentHit<NucleotideSequence, Allele>> alignJ(NucleotideSequence sequence,
+                                                                                    int from, int to) {
+        StageMetrics.Timer timer = jStage == null ? null : jStage.start();
+        AlignmentResult<AlignmentHit<NucleotideSequence, Allele>> result = jAligner.align(sequence, from, to);
+        if (timer != null)
+            timer.stop(1, to - from);
+        return result;
+    }
+
+    protected final AlignmentResult<AlignmentHit<NucleotideSequence, Allele>> alignC(NucleotideSequence sequence,
+                                                                                    int from, int to) {
+        StageMetrics.Timer timer = cStage == null ? null : cStage.start();
+        AlignmentResult<AlignmentHit<NucleotideSequence, Allele>> result = cAligner.align(sequence, from, to);
+        if (timer != null)
+            timer.stop(1, to - from);
+        return result;
+    }
+
+    protected final List<PreVDJCHit> alignD(NucleotideSequence sequence, Set<Locus> loci, int from, int to) {
+        StageMetrics.Timer timer = dStage == null ? null : dStage.start();
+        List<PreVDJCHit> result = singleDAligner.align0(sequence, loci, from, to);
+        if (timer != null)
+            timer.stop(1, to - from);
+        return result;
+    }
+
+    @Override
+    public synchronized void setMemoryBudget(MemoryBudget budget) {
+        super.setMemoryBudget(budget);
+        if (initialized)
+            registerDCache();
+    }
+
+    private void registerDCache() {
+        final SingleDAligner dAligner = singleDAligner;
+        if (dCacheConsumer != null) {
+            dCacheConsumer.unregister();
+            dCacheConsumer = null;
+        }
+        if (memoryBudget == null || dAligner == null)
+            return;
+        dCacheConsumer = memoryBudget.register("D alignment cache", 1000L * SingleDAligner.CACHE_ENTRY_BYTES, 256L << 20, 1.0,
+                new MemoryBudget.Probe() {
+                    @Override
+                    public long getUsedBytes() {
+                        return dAligner.getCacheSize() * SingleDAligner.CACHE_ENTRY_BYTES;
+                    }
+                }, new MemoryBudget.Listener() {
+                    @Override
+                    public void onLimitChanged(long limit) {
+                        dAligner.setCacheSize(limit / SingleDAligner.CACHE_ENTRY_BYTES);
+                    }
+                });
+    }
+
+    @Override
+    public synchronized void close() {
+        if (dCacheConsumer != null) {
+            dCacheConsumer.unregister();
+            dCacheConsumer = null;
+        }
+    }
+
     @Override
     protected void init() {
         DAlignerParameters dAlignerParameters = parameters.getDAlignerParameters();
         List<Allele> dAlleles = allelesToAlign.get(GeneType.Diversity);
-        if (dAlignerParameters != null && dAlleles.size() != 0)
+        if (dAlignerParameters != null && dAlleles.size() != 0) {
             singleDAligner = new SingleDAligner(dAlignerParameters,
                     allelesToAlign.get(GeneType.Diversity));
+            registerDCache();
+        }
         vAligner = createKAligner(GeneType.Variable);
         jAligner = createKAligner(GeneType.Joining);
         cAligner = createKAligner(GeneType.Constant);
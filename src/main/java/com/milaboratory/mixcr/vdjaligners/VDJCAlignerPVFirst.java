@@ -125,8 +125,8 @@ public final class VDJCAlignerPVFirst extends VDJCAlignerAbstract<PairedRead> {
 
     PAlignmentHelper createInitialHelper(PairedTarget target) {
         return new PAlignmentHelper(target,
-                vAligner.align(target.targets[0].getSequence()),
-                vAligner.align(target.targets[1].getSequence())
+                alignV(target.targets[0].getSequence()),
+                alignV(target.targets[1].getSequence())
         );
     }
 
@@ -317,7 +317,7 @@ public final class VDJCAlignerPVFirst extends VDJCAlignerAbstract<PairedRead> {
                             to = jAlignment.getSequence2Range().getFrom();
                     if (from >= to)
                         continue;
-                    List<PreVDJCHit> temp = singleDAligner.align0(target.targets[i].getSequence(),
+                    List<PreVDJCHit> temp = alignD(target.targets[i].getSequence(),
                             getPossibleDLoci(vHits, jHits), from, to);
                     preDHits[i] = temp.toArray(new PreVDJCHit[temp.size()]);
                 }
@@ -335,7 +335,7 @@ public final class VDJCAlignerPVFirst extends VDJCAlignerAbstract<PairedRead> {
                     if (jAlignment == null)
                         continue;
                     int from = jAlignment.getSequence2Range().getTo();
-                    List<AlignmentHit<NucleotideSequence, Allele>> temp = cAligner.align(target.targets[i].getSequence(), from,
+                    List<AlignmentHit<NucleotideSequence, Allele>> temp = alignC(target.targets[i].getSequence(), from,
                             target.targets[i].size()).getHits();
                     results[i] = temp.toArray(new AlignmentHit[temp.size()]);
                 }
@@ -362,7 +362,7 @@ public final class VDJCAlignerPVFirst extends VDJCAlignerAbstract<PairedRead> {
                     || vHit.getAlignment().getSequence2Range().getTo() == targetSequence.size())
                 return null;
 
-            return jAligner.align(targetSequence,
+            return alignJ(targetSequence,
                     vHit.getAlignment().getSequence2Range().getTo(),
                     targetSequence.size());
         }
@@ -121,28 +121,28 @@ public final class VDJCAlignerSJFirst extends VDJCAlignerAbstract<SingleRead> {
 
         switch (parameters.getVJAlignmentOrder()) {
             case VThenJ:
-                vResult = vAligner.align(sequence);
+                vResult = alignV(sequence);
 
                 //If there is no results for V return
                 if (!vResult.hasHits())
                     return new KVJResultsForSingle(input, vResult, null, isRC);
 
                 //Searching for J gene
-                jResult = jAligner.align(sequence,
+                jResult = alignJ(sequence,
                         vResult.getBestHit().getAlignment().getSequence2Range().getTo(),
                         sequence.size());
 
                 //Returning result
                 return new KVJResultsForSingle(input, vResult, jResult, isRC);
             case JThenV:
-                jResult = jAligner.align(sequence);
+                jResult = alignJ(sequence);
 
                 //If there is no results for J return
                 if (!jResult.hasHits())
                     return new KVJResultsForSingle(input, null, jResult, isRC);
 
                 //Searching for V gene
-                vResult = vAligner.align(sequence, 0,
+                vResult = alignV(sequence, 0,
                         jResult.getBestHit().getAlignment().getSequence2Range().getFrom());
 
                 //Returning result
@@ -181,7 +181,7 @@ public final class VDJCAlignerSJFirst extends VDJCAlignerAbstract<SingleRead> {
                 //Alignment of D gene
                 int from = vResult.getBestHit().getAlignment().getSequence2Range().getTo(),
                         to = jResult.getBestHit().getAlignment().getSequence2Range().getFrom();
-                List<PreVDJCHit> dResult = singleDAligner.align0(sequence,
+                List<PreVDJCHit> dResult = alignD(sequence,
                         getPossibleDLoci(), from, to);
                 dHits = PreVDJCHit.convert(getDAllelesToAlign(),
                         parameters.getFeatureToAlign(GeneType.Diversity), dResult);
@@ -189,7 +189,7 @@ public final class VDJCAlignerSJFirst extends VDJCAlignerAbstract<SingleRead> {
 
             if (cAligner != null) {
                 int from = jResult.getBestHit().getAlignment().getSequence2Range().getTo();
-                AlignmentResult<AlignmentHit<NucleotideSequence, Allele>> res = cAligner.align(sequence, from, target.size());
+                AlignmentResult<AlignmentHit<NucleotideSequence, Allele>> res = alignC(sequence, from, target.size());
 
                 cHits = createHits(res.getHits(), parameters.getFeatureToAlign(GeneType.Constant));
             }
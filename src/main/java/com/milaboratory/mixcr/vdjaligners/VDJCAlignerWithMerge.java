@@ -34,6 +34,9 @@ import com.milaboratory.mitools.merger.MismatchOnlyPairedReadMerger;
 import com.milaboratory.mitools.merger.PairedReadMergingResult;
 import com.milaboratory.mixcr.basictypes.VDJCAlignments;
 import com.milaboratory.mixcr.reference.Allele;
+import com.milaboratory.mixcr.util.MemoryBudget;
+import com.milaboratory.mixcr.util.PipelineMetrics;
+import com.milaboratory.mixcr.util.StageMetrics;
 
 /**
  * @author Dmitry Bolotin
@@ -43,6 +46,7 @@ public final class VDJCAlignerWithMerge extends VDJCAligner<PairedRead> {
     final VDJCAlignerSJFirst singleAligner;
     final VDJCAlignerPVFirst pairedAligner;
     final MismatchOnlyPairedReadMerger merger;
+    volatile StageMetrics mergeStage;
 
     public VDJCAlignerWithMerge(VDJCAlignerParameters parameters) {
         super(parameters);
@@ -67,13 +71,37 @@ public final class VDJCAlignerWithMerge extends VDJCAligner<PairedRead> {
         super.setEventsListener(listener);
     }
 
+    @Override
+    public void setMetrics(PipelineMetrics metrics) {
+        singleAligner.setMetrics(metrics);
+        pairedAligner.setMetrics(metrics);
+        mergeStage = metrics.stage("Merging");
+        super.setMetrics(metrics);
+    }
+
+    @Override
+    public void setMemoryBudget(MemoryBudget budget) {
+        singleAligner.setMemoryBudget(budget);
+        pairedAligner.setMemoryBudget(budget);
+        super.setMemoryBudget(budget);
+    }
+
+    @Override
+    public void close() {
+        singleAligner.close();
+        pairedAligner.close();
+    }
+
     @Override
     protected void init() {
     }
 
     @Override
     public VDJCAlignmentResult<PairedRead> process(final PairedRead read) {
+        StageMetrics.Timer timer = mergeStage == null ? null : mergeStage.start();
         PairedReadMergingResult merged = merger.process(read);
+        if (timer != null)
+            timer.stop(1, 0);
         if (merged.isSuccessful()) {
             VDJCAlignments alignment = singleAligner.process(
                     new SingleReadImpl(read.getId(), merged.getOverlappedSequence(), "")).alignment;
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.assembler;
+
+import com.milaboratory.mixcr.util.MemoryBudget;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AssemblerEventLoggerTest {
+    @Test
+    public void testBudgetShrink() throws Exception {
+        AssemblerEventLogger logger = new AssemblerEventLogger();
+        try (MemoryBudget budget = new MemoryBudget(100L << 20)) {
+            logger.setMemoryBudget(budget);
+            int disorder = 2 * AssemblerEventLogger.MAX_BUFFER_SIZE;
+            for (int i = 1; i <= disorder; ++i)
+                logger.newEvent(new AssemblerEvent(i, i, 0));
+
+            // Budget shrinks to the minimum, already buffered events must not be reported as missing ones
+            budget.registerFixed("fixed", new MemoryBudget.Probe() {
+                @Override
+                public long getUsedBytes() {
+                    return 100L << 20;
+                }
+            });
+            logger.newEvent(new AssemblerEvent(disorder + 1, disorder + 1, 0));
+            logger.newEvent(new AssemblerEvent(0, 0, 0));
+            logger.end(disorder + 2);
+
+            long count = 0;
+            for (AssemblerEvent event : logger.events())
+                Assert.assertEquals(count++, event.readId);
+            Assert.assertEquals(disorder + 2, count);
+        } finally {
+            logger.close();
+        }
+    }
+}
@@ -39,6 +39,7 @@ import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.core.tree.TreeSearchParameters;
 import com.milaboratory.mixcr.basictypes.Clone;
 import com.milaboratory.mixcr.basictypes.CloneSet;
+import com.milaboratory.mixcr.basictypes.CloneSetFooter;
 import com.milaboratory.mixcr.basictypes.CloneSetIO;
 import com.milaboratory.mixcr.basictypes.VDJCAlignmentsWriter;
 import com.milaboratory.mixcr.reference.*;
@@ -51,6 +52,7 @@ import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
@@ -139,6 +141,17 @@ public class CloneAssemblerRunnerTest {
 
         assertCSEqualis(cloneSet, cloneSetDeserialized);
 
+        File file = File.createTempFile("clones", ".clns");
+        file.deleteOnExit();
+        CloneSetIO.write(cloneSet, file);
+        CloneSetFooter footer = CloneSetFooter.read(file);
+        Assert.assertEquals(cloneSet.size(), footer.getNumberOfClones());
+        Assert.assertEquals(cloneSet.getTotalCount(), footer.getTotalCount());
+        Assert.assertEquals(new CloneSetFooter(cloneSetDeserialized).getParametersHash(), footer.getParametersHash());
+        Assert.assertEquals((cloneSet.size() + footer.getBlockSize() - 1) / footer.getBlockSize(),
+                footer.getNumberOfBlocks());
+        file.delete();
+
         OutputPortCloseable<ReadToCloneMapping> rrr = assemblerRunner.assembler.getAssembledReadsPort();
         ReadToCloneMapping take;
         while ((take = rrr.take()) != null)
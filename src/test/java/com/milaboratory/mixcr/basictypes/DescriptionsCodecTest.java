@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.basictypes;
+
+import com.milaboratory.primitivio.PrimitivI;
+import com.milaboratory.primitivio.PrimitivO;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class DescriptionsCodecTest {
+    @Test
+    public void testIlluminaHeaders() throws Exception {
+        List<String[]> records = illuminaRecords(new Random(42), 10000);
+        int encoded = assertRoundTrip(records, 4096, false);
+        int literal = 0;
+        for (String[] record : records)
+            for (String description : record)
+                literal += 2 + description.length();
+        Assert.assertTrue(encoded * 8 < literal);
+    }
+
+    @Test
+    public void testBlocksAndStandaloneRecords() throws Exception {
+        Random random = new Random(1);
+        List<String[]> records = illuminaRecords(random, 100);
+        records.add(new String[]{"SRR001666.1 071112_SLXA-EAS1_s_7:5:1:817:345 length=36"});
+        records.add(new String[]{null, "read"});
+        records.add(new String[0]);
+        records.add(new String[]{"", ":", "a::b", "007", "99999999999999999999", "1:2"});
+        records.addAll(illuminaRecords(random, 100));
+        for (int blockSize : new int[]{1, 3, 4096}) {
+            assertRoundTrip(records, blockSize, false);
+            assertRoundTrip(records, blockSize, true);
+        }
+    }
+
+    /**
+     * Encodes and decodes records; every fifth record is written without context if {@code standalone} is set.
+     */
+    private static int assertRoundTrip(List<String[]> records, int blockSize, boolean standalone) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PrimitivO output = new PrimitivO(bos);
+        DescriptionsCodec encoder = new DescriptionsCodec(blockSize);
+        for (int i = 0; i < records.size(); i++) {
+            encoder.nextRecord();
+            if (standalone && i % 5 == 0)
+                DescriptionsCodec.encodeStandalone(output, records.get(i));
+            else
+                encoder.encode(output, records.get(i));
+        }
+
+        PrimitivI input = new PrimitivI(new ByteArrayInputStream(bos.toByteArray()));
+        DescriptionsCodec decoder = new DescriptionsCodec(blockSize);
+        for (String[] record : records) {
+            decoder.nextRecord();
+            Assert.assertArrayEquals(record, decoder.decode(input));
+        }
+        return bos.size();
+    }
+
+    private static List<String[]> illuminaRecords(Random random, int count) {
+        List<String[]> records = new ArrayList<>();
+        int tile = 1101, y = 1000;
+        String[] indexes = {"ATCACG", "ATCACG", "ATCACG", "ATCACN"};
+        for (int i = 0; i < count; i++) {
+            if (random.nextInt(1000) == 0) {
+                ++tile;
+                y = 1000;
+            }
+            y += random.nextInt(20);
+            String prefix = "M01234:55:000000000-A1B2C:1:" + tile + ":" + (1000 + random.nextInt(28000)) + ":" + y;
+            String index = indexes[random.nextInt(indexes.length)];
+            records.add(new String[]{prefix + " 1:N:0:" + index, prefix + " 2:N:0:" + index});
+        }
+        return records;
+    }
+}
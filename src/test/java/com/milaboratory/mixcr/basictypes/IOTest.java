@@ -41,10 +41,14 @@ import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class IOTest {
@@ -82,6 +86,7 @@ public class IOTest {
                 for (SingleRead read : CUtils.it(reader)) {
                     VDJCAlignmentResult<SingleRead> result = aligner.process(read);
                     if (result.alignment != null) {
+                        result.alignment.setDescriptions(new String[]{read.getDescription()});
                         writer.write(result.alignment);
                         alignemntsList.add(result.alignment);
                     }
@@ -101,6 +106,161 @@ public class IOTest {
             for (VDJCAlignments alignments : CUtils.it(reader))
                 assertEquals(alignemntsList.get(i++), alignments);
             Assert.assertEquals(numberOfReads, reader.getNumberOfReads());
+
+            VDJCAlignmentsFooter footer = reader.getFooter();
+            assertEquals(alignemntsList.size(), footer.getNumberOfRecords());
+            assertEquals(numberOfReads, footer.getNumberOfProcessedReads());
+            assertEquals(VDJCAlignmentsWriter.parametersHash(parameters), footer.getParametersHash());
+            assertEquals((Long) (long) alignemntsList.size(), footer.getLocusCounts().get(Locus.IGH));
+            assertEquals((alignemntsList.size() + footer.getBlockSize() - 1) / footer.getBlockSize(),
+                    footer.getNumberOfBlocks());
+            assertEquals(header, footer.getBlockOffset(0));
+        }
+
+        try (VDJCAlignmentsReader reader = new VDJCAlignmentsReader(new ByteArrayInputStream(bos.toByteArray()), ll)) {
+            reader.setProjection(EnumSet.of(VDJCAlignmentsSection.Hits));
+            int i = 0;
+            for (VDJCAlignments alignments : CUtils.it(reader)) {
+                VDJCAlignments expected = alignemntsList.get(i++);
+                assertEquals(expected.getReadId(), alignments.getReadId());
+                assertEquals(expected.getFeature(GeneFeature.CDR3), alignments.getFeature(GeneFeature.CDR3));
+                assertEquals(expected, alignments);
+                try {
+                    alignments.getDescriptions();
+                    Assert.fail();
+                } catch (IllegalStateException e) {
+                }
+            }
+            assertEquals(alignemntsList.size(), i);
+            Assert.assertEquals(numberOfReads, reader.getNumberOfReads());
+        }
+
+        // Excluded descriptions are not decoded by take(), so raw records can't be read after it
+        try (VDJCAlignmentsReader reader = new VDJCAlignmentsReader(new ByteArrayInputStream(bos.toByteArray()), ll)) {
+            reader.setProjection(EnumSet.of(VDJCAlignmentsSection.Hits));
+            reader.take();
+            try {
+                reader.takeRaw();
+                Assert.fail();
+            } catch (IllegalStateException e) {
+            }
+        }
+
+        // Records without hits are compared by read id and targets only
+        try (VDJCAlignmentsReader r1 = new VDJCAlignmentsReader(new ByteArrayInputStream(bos.toByteArray()), ll);
+             VDJCAlignmentsReader r2 = new VDJCAlignmentsReader(new ByteArrayInputStream(bos.toByteArray()), ll)) {
+            r1.setProjection(EnumSet.of(VDJCAlignmentsSection.Descriptions));
+            r2.setProjection(EnumSet.noneOf(VDJCAlignmentsSection.class));
+            int i = 0;
+            VDJCAlignments a1, a2, previous = null;
+            while ((a1 = r1.take()) != null) {
+                a2 = r2.take();
+                VDJCAlignments expected = alignemntsList.get(i++);
+                assertEquals(a1, a2);
+                assertEquals(a1.hashCode(), a2.hashCode());
+                assertFalse(expected.equals(a1));
+                assertFalse(a1.equals(expected));
+                if (previous != null)
+                    assertFalse(previous.equals(a1));
+                previous = a1;
+            }
+            assertNull(r2.take());
+            assertEquals(alignemntsList.size(), i);
+        }
+
+        // Raw copy; odd records are written with shifted read ids
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        try (VDJCAlignmentsReader reader = new VDJCAlignmentsReader(new ByteArrayInputStream(bos.toByteArray()), ll);
+             VDJCAlignmentsWriter writer = new VDJCAlignmentsWriter(copy)) {
+            reader.setProjection(EnumSet.of(VDJCAlignmentsSection.Hits));
+            assertTrue(reader.isRawRecordsSupported());
+            writer.header(reader.getParameters(), reader.getUsedAlleles());
+            RawVDJCAlignments raw;
+            int i = 0;
+            while ((raw = reader.takeRaw()) != null)
+                if (i++ % 2 == 0)
+                    writer.writeRaw(raw.getData());
+                else
+                    writer.writeRaw(raw, 1000);
+            writer.setNumberOfProcessedReads(reader.getNumberOfReads());
+        }
+
+        try (VDJCAlignmentsReader reader = new VDJCAlignmentsReader(new ByteArrayInputStream(copy.toByteArray()), ll)) {
+            int i = 0;
+            for (VDJCAlignments alignments : CUtils.it(reader)) {
+                VDJCAlignments expected = alignemntsList.get(i);
+                if (i++ % 2 == 0)
+                    assertEquals(expected, alignments);
+                else {
+                    assertEquals(expected.getReadId() + 1000, alignments.getReadId());
+                    assertEquals(expected.getFeature(GeneFeature.CDR3), alignments.getFeature(GeneFeature.CDR3));
+                }
+                assertEquals(expected.getDescriptions()[0], alignments.getDescriptions()[0]);
+            }
+            assertEquals(alignemntsList.size(), i);
+            Assert.assertEquals(numberOfReads, reader.getNumberOfReads());
+            // Hits of records written with writeRaw(byte[]) are unknown to the writer
+            assertNull(reader.getFooter().getLocusCounts());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testBlockReaders() throws Exception {
+        VDJCAlignerParameters parameters = VDJCParametersPresets.getByName("default");
+        LociLibrary ll = LociLibraryManager.getDefault().getLibrary("mi");
+        VDJCAlignerSJFirst aligner = new VDJCAlignerSJFirst(parameters);
+        for (Allele allele : ll.getLocus(Species.HomoSapiens, Locus.IGH).getAllAlleles())
+            if (parameters.containsRequiredFeature(allele))
+                aligner.addAllele(allele);
+
+        List<VDJCAlignments> alignments = new ArrayList<>();
+        try (SingleFastqReader reader = new SingleFastqReader(IOTest.class.getClassLoader()
+                .getResourceAsStream("sequences/sample_IGH_R1.fastq"), true)) {
+            for (SingleRead read : CUtils.it(reader)) {
+                VDJCAlignmentResult<SingleRead> result = aligner.process(read);
+                if (result.alignment != null) {
+                    result.alignment.setDescriptions(new String[]{read.getDescription()});
+                    alignments.add(result.alignment);
+                }
+            }
+        }
+
+        // More than two blocks of records
+        File file = File.createTempFile("blocks", ".vdjca");
+        file.deleteOnExit();
+        int numberOfRecords = 2 * VDJCAlignmentsFooter.DEFAULT_BLOCK_SIZE + 100;
+        try (VDJCAlignmentsWriter writer = new VDJCAlignmentsWriter(file)) {
+            writer.header(aligner);
+            for (int i = 0; i < numberOfRecords; ++i)
+                writer.write(alignments.get(i % alignments.size()));
+            writer.setNumberOfProcessedReads(numberOfRecords);
+        }
+
+        VDJCAlignmentsFooter footer = VDJCAlignmentsFooter.read(file);
+        assertEquals(3, footer.getNumberOfBlocks());
+        int i = 0;
+        for (int block = 0; block < footer.getNumberOfBlocks(); ++block)
+            try (VDJCAlignmentsReader reader = VDJCAlignmentsReader.openBlock(file, ll, footer, block)) {
+                VDJCAlignments actual;
+                for (int j = 0; j < footer.getBlockSize() && (actual = reader.take()) != null; ++j, ++i) {
+                    VDJCAlignments expected = alignments.get(i % alignments.size());
+                    assertEquals(expected, actual);
+                    assertEquals(i, actual.getAlignmentsIndex());
+                    assertEquals(expected.getDescriptions()[0], actual.getDescriptions()[0]);
+                }
+            }
+        assertEquals(numberOfRecords, i);
+        file.delete();
+    }
+
+    @Test
+    public void testFooterVersions() throws Exception {
+        String v8 = VDJCAlignmentsWriter.MAGIC_V8, current = VDJCAlignmentsWriter.MAGIC;
+        assertFalse(FooterIO.hasFooter(VDJCAlignmentsWriter.MAGIC_V7, v8, current));
+        assertTrue(FooterIO.hasFooter(v8, v8, current));
+        assertTrue(FooterIO.hasFooter(current, v8, current));
+        assertFalse(FooterIO.hasFooter(CloneSetIO.MAGIC, v8, current));
+        assertFalse(FooterIO.hasFooter(CloneSetIO.MAGIC_V3, CloneSetIO.MAGIC_V4, CloneSetIO.MAGIC));
+        assertTrue(FooterIO.hasFooter(CloneSetIO.MAGIC_V4, CloneSetIO.MAGIC_V4, CloneSetIO.MAGIC));
+    }
+}
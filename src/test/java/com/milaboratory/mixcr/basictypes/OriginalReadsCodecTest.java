@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.basictypes;
+
+import com.milaboratory.core.mutations.Mutation;
+import com.milaboratory.core.mutations.Mutations;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.SequenceQuality;
+import com.milaboratory.core.sequence.SequenceQualityBuilder;
+import com.milaboratory.primitivio.PrimitivI;
+import com.milaboratory.primitivio.PrimitivO;
+import com.milaboratory.test.TestUtil;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well1024a;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+public class OriginalReadsCodecTest {
+    @Test
+    public void testPairedReads() throws Exception {
+        RandomGenerator random = new Well1024a();
+        NSequenceWithQuality r1 = random(random, 150), r2 = random(random, 150);
+        // Second target is reverse complement of R2, as in paired-end alignments
+        NSequenceWithQuality[] targets = {r1, r2.getReverseComplement()};
+        NSequenceWithQuality[] reads = {r1, r2};
+        int size = assertRoundTrip(reads, targets);
+        Assert.assertTrue(size < literalSize(reads) / 10);
+    }
+
+    @Test
+    public void testMergedReads() throws Exception {
+        RandomGenerator random = new Well1024a();
+        NSequenceWithQuality merged = random(random, 300);
+        // Qualities of the overlap are changed by merging, R2 has two sequencing errors
+        NSequenceWithQuality r1 = withChanges(merged.getRange(0, 200), new int[0], new int[]{100, 200});
+        NSequenceWithQuality r2 = withChanges(merged.getRange(100, 300), new int[]{10, 150}, new int[0])
+                .getReverseComplement();
+        NSequenceWithQuality[] reads = {r1, r2};
+        int size = assertRoundTrip(reads, merged);
+        Assert.assertTrue(size < literalSize(reads) / 2);
+    }
+
+    @Test
+    public void testReadOutOfTarget() throws Exception {
+        RandomGenerator random = new Well1024a();
+        NSequenceWithQuality sequence = random(random, 300);
+        NSequenceWithQuality target = sequence.getRange(50, 250);
+        // Read starts 30 bases before and ends 30 bases after the target
+        assertRoundTrip(new NSequenceWithQuality[]{sequence.getRange(20, 170), sequence.getRange(130, 280)}, target);
+    }
+
+    @Test
+    public void testUnrelatedReads() throws Exception {
+        RandomGenerator random = new Well1024a();
+        assertRoundTrip(new NSequenceWithQuality[]{random(random, 100), random(random, 5), random(random, 0)},
+                random(random, 100));
+    }
+
+    private static int assertRoundTrip(NSequenceWithQuality[] reads, NSequenceWithQuality... targets) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        OriginalReadsCodec.encode(new PrimitivO(bos), reads, targets);
+        NSequenceWithQuality[] decoded = OriginalReadsCodec.decode(
+                new PrimitivI(new ByteArrayInputStream(bos.toByteArray())), targets);
+        Assert.assertArrayEquals(reads, decoded);
+        return bos.size();
+    }
+
+    private static int literalSize(NSequenceWithQuality[] reads) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new PrimitivO(bos).writeObject(reads);
+        return bos.size();
+    }
+
+    private static NSequenceWithQuality random(RandomGenerator random, int size) {
+        NucleotideSequence sequence = TestUtil.randomSequence(NucleotideSequence.ALPHABET, random, size, size);
+        SequenceQualityBuilder quality = new SequenceQualityBuilder().ensureCapacity(size);
+        for (int i = 0; i < size; i++)
+            quality.append((byte) (2 + random.nextInt(39)));
+        return new NSequenceWithQuality(sequence, quality.createAndDestroy());
+    }
+
+    /**
+     * Substitutes bases at given positions and increases qualities in given range [from, to).
+     */
+    private static NSequenceWithQuality withChanges(NSequenceWithQuality read, int[] substitutions,
+                                                    int[] qualityRange) {
+        NucleotideSequence sequence = read.getSequence();
+        if (substitutions.length > 0) {
+            int[] mutations = new int[substitutions.length];
+            for (int i = 0; i < substitutions.length; i++) {
+                byte from = sequence.codeAt(substitutions[i]);
+                mutations[i] = Mutation.createSubstitution(substitutions[i], from, (from + 1) & 3);
+            }
+            sequence = new Mutations<>(NucleotideSequence.ALPHABET, mutations).mutate(sequence);
+        }
+        SequenceQuality quality = read.getQuality();
+        SequenceQualityBuilder builder = new SequenceQualityBuilder().ensureCapacity(read.size());
+        for (int i = 0; i < read.size(); i++)
+            builder.append(qualityRange.length > 0 && i >= qualityRange[0] && i < qualityRange[1]
+                    ? (byte) Math.min(quality.value(i) + 10, 60) : quality.value(i));
+        return new NSequenceWithQuality(sequence, builder.createAndDestroy());
+    }
+}
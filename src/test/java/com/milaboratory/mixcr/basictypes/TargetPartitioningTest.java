@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.basictypes;
+
+import cc.redberry.pipe.CUtils;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.fastq.SingleFastqReader;
+import com.milaboratory.mixcr.reference.*;
+import com.milaboratory.mixcr.vdjaligners.VDJCAlignerParameters;
+import com.milaboratory.mixcr.vdjaligners.VDJCAlignerSJFirst;
+import com.milaboratory.mixcr.vdjaligners.VDJCAlignmentResult;
+import com.milaboratory.mixcr.vdjaligners.VDJCParametersPresets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.EnumMap;
+
+public class TargetPartitioningTest {
+    static final ReferencePoint[] POINTS = {ReferencePoint.UTR5Begin, ReferencePoint.V5UTRBeginTrimmed,
+            ReferencePoint.L1Begin, ReferencePoint.L1End, ReferencePoint.L2Begin, ReferencePoint.FR1Begin,
+            ReferencePoint.CDR1Begin, ReferencePoint.FR2Begin, ReferencePoint.CDR2Begin, ReferencePoint.FR3Begin,
+            ReferencePoint.CDR3Begin, ReferencePoint.VEndTrimmed, ReferencePoint.VEnd, ReferencePoint.DBegin,
+            ReferencePoint.DBeginTrimmed, ReferencePoint.DEndTrimmed, ReferencePoint.DEnd, ReferencePoint.JBegin,
+            ReferencePoint.JBeginTrimmed, ReferencePoint.CDR3End, ReferencePoint.FR4End, ReferencePoint.CBegin,
+            ReferencePoint.CExon1End, ReferencePoint.CEnd};
+
+    @Test
+    public void testCachedPositions() throws Exception {
+        VDJCAlignerParameters parameters = VDJCParametersPresets.getByName("default");
+        LociLibrary ll = LociLibraryManager.getDefault().getLibrary("mi");
+        VDJCAlignerSJFirst aligner = new VDJCAlignerSJFirst(parameters);
+        for (Allele allele : ll.getLocus(Species.HomoSapiens, Locus.IGH).getAllAlleles())
+            if (parameters.containsRequiredFeature(allele))
+                aligner.addAllele(allele);
+
+        int checked = 0;
+        try (SingleFastqReader reader = new SingleFastqReader(TargetPartitioningTest.class.getClassLoader()
+                .getResourceAsStream("sequences/sample_IGH_R1.fastq"), true)) {
+            for (SingleRead read : CUtils.it(reader)) {
+                VDJCAlignmentResult<SingleRead> result = aligner.process(read);
+                if (result.alignment == null)
+                    continue;
+                VDJCAlignments alignments = result.alignment;
+                EnumMap<GeneType, VDJCHit> topHits = new EnumMap<>(GeneType.class);
+                for (GeneType geneType : GeneType.values())
+                    if (alignments.getBestHit(geneType) != null)
+                        topHits.put(geneType, alignments.getBestHit(geneType));
+
+                for (int target = 0; target < alignments.numberOfTargets(); ++target) {
+                    TargetPartitioning forward = new TargetPartitioning(target, topHits),
+                            backward = new TargetPartitioning(target, topHits);
+
+                    int[] expected = new int[POINTS.length];
+                    for (int i = 0; i < POINTS.length; ++i)
+                        expected[i] = forward.getPosition(POINTS[i]);
+                    // filled in reverse order, so each point is computed in a different cache state
+                    for (int i = POINTS.length - 1; i >= 0; --i)
+                        Assert.assertEquals(expected[i], backward.getPosition(POINTS[i]));
+                    // served from cache
+                    for (int i = 0; i < POINTS.length; ++i)
+                        Assert.assertEquals(expected[i], forward.getPosition(POINTS[i]));
+
+                    for (int i = 0; i < POINTS.length; ++i) {
+                        ReferencePoint point = POINTS[i];
+                        if (!point.isAttachedToAlignmentBound())
+                            Assert.assertEquals(uncachedPosition(topHits, target, point), expected[i]);
+                        // points with offset bypass the cache and must not affect cached values
+                        forward.getPosition(point.move(3));
+                        Assert.assertEquals(expected[i], forward.getPosition(point));
+                    }
+                    ++checked;
+                }
+            }
+        }
+        Assert.assertTrue(checked > 10);
+    }
+
+    static int uncachedPosition(EnumMap<GeneType, VDJCHit> hits, int target, ReferencePoint point) {
+        VDJCHit hit = hits.get(point.getGeneType());
+        if (hit == null)
+            return -1;
+        int position = hit.getPosition(target, point);
+        if (position == -1)
+            return -1;
+        return position < 0 ? -2 - position : position;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.cli;
+
+import cc.redberry.pipe.CUtils;
+import com.beust.jcommander.ParameterException;
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.io.sequence.SequenceReaderCloseable;
+import com.milaboratory.mixcr.basictypes.VDJCAlignments;
+import com.milaboratory.mixcr.basictypes.VDJCAlignmentsReader;
+import com.milaboratory.mixcr.reference.Allele;
+import com.milaboratory.mixcr.reference.LociLibraryManager;
+import com.milaboratory.mixcr.vdjaligners.VDJCAligner;
+import com.milaboratory.mixcr.vdjaligners.VDJCAlignerParameters;
+import com.milaboratory.mixcr.vdjaligners.VDJCAlignmentResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ActionAlignBatchTest {
+    @Test
+    public void testReadManifest() throws Exception {
+        File manifest = writeManifest("# comment",
+                "s1\ta_R1.fastq\ta_R2.fastq\ta.vdjca",
+                "",
+                "s2\tb_L1.fastq,b_L2.fastq\t-\tb.vdjca");
+        try {
+            List<ActionAlignBatch.Sample> samples = ActionAlignBatch.readManifest(manifest.getPath());
+            Assert.assertEquals(2, samples.size());
+            ActionAlignBatch.Sample s1 = samples.get(0), s2 = samples.get(1);
+            Assert.assertEquals("s1", s1.name);
+            Assert.assertTrue(s1.isPaired());
+            Assert.assertEquals("a_R1.fastq,a_R2.fastq", s1.getInputForReport());
+            Assert.assertEquals("a.vdjca", s1.output);
+            Assert.assertEquals("s2", s2.name);
+            Assert.assertFalse(s2.isPaired());
+            Assert.assertEquals("b_L1.fastq,b_L2.fastq", s2.r1);
+            Assert.assertEquals("b.vdjca", s2.output);
+        } finally {
+            manifest.delete();
+        }
+
+        assertWrongManifest("s1\ta.fastq\ta.vdjca");
+        assertWrongManifest("s1\ta.fastq\t-\tx.vdjca", "s2\tb.fastq\t-\tx.vdjca");
+        assertWrongManifest("# no samples");
+    }
+
+    @Test
+    public void testAlignBatch() throws Exception {
+        String r1 = resource("sequences/sample_IGH_R1.fastq"), r2 = resource("sequences/sample_IGH_R2.fastq"),
+                fasta = resource("sequences/sample_IGH_R1.fasta");
+        File dir = Files.createTempDirectory("batch").toFile();
+        String[][] inputs = {{r1}, {r1, r2}, {fasta}};
+        String[] outputs = new String[inputs.length];
+        String[] lines = new String[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            outputs[i] = new File(dir, "s" + i + ".vdjca").getPath();
+            lines[i] = "s" + i + "\t" + inputs[i][0] + "\t" + (inputs[i].length == 2 ? inputs[i][1] : "-") +
+                    "\t" + outputs[i];
+        }
+        File manifest = writeManifest(lines);
+
+        try {
+            ActionAlignBatch action = new ActionAlignBatch();
+            ActionAlignBatch.AlignBatchParameters parameters = action.params();
+            parameters.parameters.add(manifest.getPath());
+            parameters.threads = 3;
+            parameters.samplesInFlight = 2;
+            action.go(null);
+
+            VDJCAlignerParameters alignerParameters = ActionAlign.getAlignerParameters(parameters);
+            List<Allele> alleles = ActionAlign.getAlleles(parameters, alignerParameters);
+            for (int i = 0; i < inputs.length; i++) {
+                VDJCAligner aligner = ActionAlign.createAligner(parameters, alignerParameters, alleles,
+                        inputs[i].length == 2);
+                List<VDJCAlignments> expected = alignSerially(aligner, inputs[i]);
+                Assert.assertFalse(expected.isEmpty());
+
+                List<VDJCAlignments> actual = new ArrayList<>();
+                try (VDJCAlignmentsReader reader = new VDJCAlignmentsReader(outputs[i],
+                        LociLibraryManager.getDefault())) {
+                    for (VDJCAlignments alignments : CUtils.it(reader))
+                        actual.add(alignments);
+                }
+                // Same alignments in the order of reads
+                Assert.assertEquals(expected.size(), actual.size());
+                for (int j = 0; j < expected.size(); j++) {
+                    Assert.assertEquals(expected.get(j).getReadId(), actual.get(j).getReadId());
+                    Assert.assertEquals(expected.get(j), actual.get(j));
+                }
+            }
+        } finally {
+            manifest.delete();
+            for (File file : dir.listFiles())
+                file.delete();
+            dir.delete();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<VDJCAlignments> alignSerially(VDJCAligner aligner, String[] inputs) throws IOException {
+        List<VDJCAlignments> result = new ArrayList<>();
+        try (SequenceReaderCloseable<? extends SequenceRead> reader =
+                     ActionAlign.createReader(Arrays.asList(inputs), 1)) {
+            for (SequenceRead read : CUtils.it(reader)) {
+                VDJCAlignments alignments = ((VDJCAlignmentResult) aligner.process(read)).alignment;
+                if (alignments != null && alignments.hasSameVJLoci(1))
+                    result.add(alignments);
+            }
+        }
+        return result;
+    }
+
+    private static void assertWrongManifest(String... lines) throws IOException {
+        File manifest = writeManifest(lines);
+        try {
+            ActionAlignBatch.readManifest(manifest.getPath());
+            Assert.fail();
+        } catch (ParameterException e) {
+            // expected
+        } finally {
+            manifest.delete();
+        }
+    }
+
+    private static File writeManifest(String... lines) throws IOException {
+        File manifest = File.createTempFile("manifest", ".tsv");
+        Files.write(manifest.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+        return manifest;
+    }
+
+    private static String resource(String name) {
+        return ActionAlignBatchTest.class.getClassLoader().getResource(name).getFile();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.cli;
+
+import com.milaboratory.mixcr.basictypes.VDJCAlignments;
+import com.milaboratory.mixcr.info.AlignmentInfoCollectorSet;
+import com.milaboratory.mixcr.info.GeneFeatureCoverageCollector;
+import com.milaboratory.mixcr.info.GeneFeatureLengthCollector;
+import com.milaboratory.mixcr.info.ReferencePointCoverageCollector;
+import com.milaboratory.mixcr.vdjaligners.VDJCParametersPresets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.milaboratory.mixcr.cli.ActionFilterAlignmentsTest.readAlignments;
+import static com.milaboratory.mixcr.cli.ActionFilterAlignmentsTest.writeAlignments;
+import static com.milaboratory.mixcr.reference.GeneFeature.CDR3;
+import static com.milaboratory.mixcr.reference.GeneFeature.FR3;
+import static com.milaboratory.mixcr.reference.ReferencePoint.CDR3Begin;
+
+public class ActionAlignmentsStatTest {
+    @Test
+    public void testThreads() throws Exception {
+        File dir = Files.createTempDirectory("alignmentsStat").toFile();
+        File input = new File(dir, "input.vdjca");
+        try {
+            writeAlignments(input, VDJCParametersPresets.getByName("default"), 3 * 4096 + 100);
+
+            String[] results = new String[2];
+            int[] threads = {1, 4};
+            for (int i = 0; i < threads.length; ++i) {
+                File output = new File(dir, "output" + threads[i] + ".txt");
+                ActionAlignmentsStat action = new ActionAlignmentsStat();
+                action.actionParameters.parameters.addAll(Arrays.asList(input.getPath(), output.getPath()));
+                action.actionParameters.threads = threads[i];
+                action.actionParameters.cdr3Lengths = true;
+                action.go(null);
+                results[i] = new String(Files.readAllBytes(output.toPath()), "UTF-8");
+            }
+
+            Assert.assertTrue(results[0].contains("Length of CDR3:"));
+            Assert.assertEquals(results[0], results[1]);
+        } finally {
+            for (File file : dir.listFiles())
+                file.delete();
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testShardsMerge() throws Exception {
+        File dir = Files.createTempDirectory("alignmentsStat").toFile();
+        File input = new File(dir, "input.vdjca");
+        try {
+            writeAlignments(input, VDJCParametersPresets.getByName("default"), 1);
+            final List<VDJCAlignments> alignments = readAlignments(input);
+
+            // Single shard
+            AlignmentInfoCollectorSet expected = createCollectors();
+            for (VDJCAlignments a : alignments)
+                expected.process(a);
+            expected.end();
+
+            // Each thread feeds its own shard with every fourth alignment
+            final AlignmentInfoCollectorSet actual = createCollectors();
+            Thread[] threads = new Thread[4];
+            for (int i = 0; i < threads.length; ++i) {
+                final int shift = i;
+                threads[i] = new Thread() {
+                    @Override
+                    public void run() {
+                        for (int j = shift; j < alignments.size(); j += 4)
+                            actual.process(alignments.get(j));
+                    }
+                };
+                threads[i].start();
+            }
+            for (Thread thread : threads)
+                thread.join();
+            actual.end();
+
+            String result = toString(expected);
+            Assert.assertTrue(result.contains("Length of CDR3:"));
+            Assert.assertEquals(result, toString(actual));
+        } finally {
+            for (File file : dir.listFiles())
+                file.delete();
+            dir.delete();
+        }
+    }
+
+    private static AlignmentInfoCollectorSet createCollectors() {
+        return new AlignmentInfoCollectorSet(
+                new GeneFeatureCoverageCollector(FR3),
+                new ReferencePointCoverageCollector(CDR3Begin, 40, 40),
+                new GeneFeatureLengthCollector(CDR3, 150));
+    }
+
+    private static String toString(AlignmentInfoCollectorSet collectors) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (PrintStream ps = new PrintStream(bos, false, "UTF-8")) {
+            collectors.write(ps);
+        }
+        return bos.toString("UTF-8");
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.cli;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+
+public class ActionDaemonTest {
+    @Test
+    public void testRequestedThreads() throws Exception {
+        Assert.assertEquals(3, ActionDaemon.requestedThreads(new String[]{"align", "-t", "3", "a", "b"}));
+        Assert.assertEquals(2, ActionDaemon.requestedThreads(new String[]{"assemble", "--threads", "2"}));
+        Assert.assertEquals(-1, ActionDaemon.requestedThreads(new String[]{"align", "a", "b"}));
+        Assert.assertEquals(-1, ActionDaemon.requestedThreads(new String[]{"align", "-t", "x"}));
+
+        ActionDaemon daemon = new ActionDaemon();
+        daemon.parameters.threads = 8;
+        Assert.assertEquals(4, daemon.jobPermits(new String[]{"align", "a", "b"}));
+        Assert.assertEquals(8, daemon.jobPermits(new String[]{"align", "-t", "16", "a", "b"}));
+        daemon.parameters.jobThreads = 2;
+        Assert.assertEquals(2, daemon.jobPermits(new String[]{"align", "a", "b"}));
+        Assert.assertEquals(3, daemon.jobPermits(new String[]{"align", "-t", "3", "a", "b"}));
+
+        // Commands without threads option use single thread; -t of exportClones is not a number of threads
+        Assert.assertEquals(-1, ActionDaemon.requestedThreads(new String[]{"exportClones", "-t", "1", "a"}));
+        Assert.assertEquals(1, daemon.jobPermits(new String[]{"exportClones", "-t", "1", "a"}));
+    }
+
+    @Test
+    public void testWithThreads() throws Exception {
+        ActionDaemon daemon = new ActionDaemon();
+        daemon.parameters.threads = 8;
+        String[] args = {"align", "-t", "64", "a", "b"};
+        Assert.assertArrayEquals(new String[]{"align", "-t", "8", "a", "b"},
+                ActionDaemon.withThreads(args, daemon.jobPermits(args)));
+        args = new String[]{"assemble", "a", "--threads", "x", "b"};
+        Assert.assertArrayEquals(new String[]{"assemble", "a", "--threads", "4", "b"},
+                ActionDaemon.withThreads(args, daemon.jobPermits(args)));
+        args = new String[]{"align", "a", "b"};
+        Assert.assertArrayEquals(new String[]{"align", "-t", "4", "a", "b"},
+                ActionDaemon.withThreads(args, daemon.jobPermits(args)));
+        args = new String[]{"exportClones", "-t", "a", "b"};
+        Assert.assertArrayEquals(args, ActionDaemon.withThreads(args, daemon.jobPermits(args)));
+    }
+
+    @Test
+    public void testJobStreams() throws Exception {
+        Path spool = Files.createTempDirectory("spool");
+        PrintStream out = System.out;
+        ByteArrayOutputStream daemonOut = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(new ActionDaemon.JobOutputStream(new PrintStream(daemonOut, true), false), true));
+        final CountDownLatch jobFinished = new CountDownLatch(1);
+        final Thread[] worker = new Thread[1];
+        try {
+            int exitCode = ActionDaemon.runJob(spool, "1", new ActionDaemon.Job() {
+                @Override
+                public void run() throws Exception {
+                    System.out.println("main");
+                    // Thread outliving the job (e.g. thread of a shared pool)
+                    worker[0] = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            System.out.println("worker");
+                            try {
+                                jobFinished.await();
+                            } catch (InterruptedException e) {
+                                throw new RuntimeException(e);
+                            }
+                            System.out.println("after job");
+                        }
+                    });
+                    worker[0].start();
+                    while (worker[0].getState() != Thread.State.WAITING)
+                        Thread.sleep(1);
+                    throw new ActionDaemon.JobExitException(3);
+                }
+            });
+            Assert.assertEquals(3, exitCode);
+            jobFinished.countDown();
+            worker[0].join();
+        } finally {
+            System.setOut(out);
+        }
+
+        Assert.assertEquals("main\nworker\n", read(spool.resolve("1" + ActionDaemon.OUT_EXTENSION))
+                .replace(System.lineSeparator(), "\n"));
+        Assert.assertEquals("after job\n", new String(daemonOut.toByteArray(), StandardCharsets.UTF_8)
+                .replace(System.lineSeparator(), "\n"));
+        delete(spool.toFile());
+    }
+
+    @Test
+    public void testDaemon() throws Exception {
+        Path spool = Files.createTempDirectory("spool");
+        // Unreadable job must not stop the daemon
+        Files.createDirectory(spool.resolve("1" + ActionDaemon.JOB_EXTENSION));
+        Files.write(spool.resolve("2" + ActionDaemon.JOB_EXTENSION),
+                "versionInfo\nnonexistent.txt\n".getBytes(StandardCharsets.UTF_8));
+
+        final ActionDaemon daemon = new ActionDaemon();
+        daemon.parameters.parameters.add(spool.toString());
+        daemon.parameters.pollInterval = 10;
+        final Exception[] error = new Exception[1];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    daemon.go(null);
+                } catch (Exception e) {
+                    error[0] = e;
+                }
+            }
+        });
+        thread.start();
+
+        Path exit1 = spool.resolve("1" + ActionDaemon.EXIT_EXTENSION),
+                exit2 = spool.resolve("2" + ActionDaemon.EXIT_EXTENSION);
+        long deadline = System.currentTimeMillis() + 60000;
+        while (!(Files.exists(exit1) && Files.exists(exit2)) && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        Files.createFile(spool.resolve(ActionDaemon.SHUTDOWN_FILE));
+        thread.join();
+
+        Assert.assertNull(error[0]);
+        Assert.assertEquals("1\n", read(exit1));
+        Assert.assertTrue(Files.exists(exit2));
+        Assert.assertFalse(Files.exists(spool.resolve("2" + ActionDaemon.RUNNING_EXTENSION)));
+        delete(spool.toFile());
+    }
+
+    private static String read(Path file) throws Exception {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null)
+            for (File f : files)
+                delete(f);
+        file.delete();
+    }
+}
@@ -1,11 +1,18 @@
 package com.milaboratory.mixcr.cli;
 
+import com.beust.jcommander.ParameterException;
 import com.milaboratory.mixcr.basictypes.Clone;
 import com.milaboratory.mixcr.export.Field;
 import com.milaboratory.mixcr.export.FieldExtractors;
+import com.milaboratory.mixcr.export.OutputMode;
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Created by poslavsky on 28/09/15.
@@ -24,4 +31,56 @@ public class ActionExportParametersTest {
         System.out.println("Available export fields:\n" + Util.printTwoColumns(
                 description[0], description[1], 21, 50, 5, "\n"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testAdditionalOutputs() throws Exception {
+        String dir = Files.createTempDirectory("export").toString();
+        String cdr3 = new File(dir, "cdr3.txt").getPath(), min = new File(dir, "min.txt").getPath();
+        ActionExportParameters parameters = parse("-count", "--also", cdr3 + "=-nFeature CDR3 -count",
+                "--also", min + "=min", "in.clns", new File(dir, "out.txt").getPath());
+        Assert.assertEquals(1, parameters.exporters.size());
+        Assert.assertEquals(Arrays.asList(cdr3, min), new ArrayList<>(parameters.additionalExporters.keySet()));
+        Assert.assertEquals(2, parameters.additionalExporters.get(cdr3).size());
+        int minFields = ActionExportParameters.getPresetParameters(OutputMode.HumanFriendly, Clone.class, "min").size();
+        Assert.assertEquals(minFields, parameters.additionalExporters.get(min).size());
+        Assert.assertEquals(Arrays.asList(new File(dir, "out.txt").getPath(), cdr3, min),
+                parameters.getOutputFiles());
+        new File(dir).delete();
+    }
+
+    @Test
+    public void testMalformedAdditionalOutputs() throws Exception {
+        String dir = Files.createTempDirectory("export").toString();
+        String out = new File(dir, "out.txt").getPath(), cdr3 = new File(dir, "cdr3.txt").getPath();
+        String[][] specs = {
+                {cdr3},                                          // no fields
+                {"=min"},                                        // no file
+                {cdr3 + "="},                                    // empty fields
+                {cdr3 + "=unknownPreset"},                       // unknown preset
+                {".=min"},                                       // stdout
+                {out + "=min"},                                  // same as the main output
+                {cdr3 + "=min", cdr3 + "=-count"}                // duplicate file
+        };
+        for (String[] spec : specs) {
+            List<String> args = new ArrayList<>();
+            for (String s : spec) {
+                args.add("--also");
+                args.add(s);
+            }
+            args.add("in.clns");
+            args.add(out);
+            try {
+                parse(args.toArray(new String[args.size()]));
+                Assert.fail(Arrays.toString(spec));
+            } catch (ParameterException e) {
+            }
+        }
+        new File(dir).delete();
+    }
+
+    private static ActionExportParameters parse(String... args) {
+        ActionExportParameters parameters = new ActionExportClones.CloneExportParameters();
+        ActionExportParameters.parse(Clone.class, args, parameters);
+        return parameters;
+    }
+}
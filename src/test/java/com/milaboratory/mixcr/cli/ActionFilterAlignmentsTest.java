@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.cli;
+
+import cc.redberry.pipe.CUtils;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.fastq.SingleFastqReader;
+import com.milaboratory.mixcr.basictypes.RawVDJCAlignments;
+import com.milaboratory.mixcr.basictypes.VDJCAlignments;
+import com.milaboratory.mixcr.basictypes.VDJCAlignmentsFooter;
+import com.milaboratory.mixcr.basictypes.VDJCAlignmentsReader;
+import com.milaboratory.mixcr.basictypes.VDJCAlignmentsWriter;
+import com.milaboratory.mixcr.cli.afiltering.AFilter;
+import com.milaboratory.mixcr.reference.*;
+import com.milaboratory.mixcr.vdjaligners.VDJCAlignerParameters;
+import com.milaboratory.mixcr.vdjaligners.VDJCAlignerSJFirst;
+import com.milaboratory.mixcr.vdjaligners.VDJCAlignmentResult;
+import com.milaboratory.mixcr.vdjaligners.VDJCParametersPresets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ActionFilterAlignmentsTest {
+    @Test
+    public void testFilter() throws Exception {
+        File dir = Files.createTempDirectory("filter").toFile();
+        File input = new File(dir, "input.vdjca");
+        try {
+            writeAlignments(input, VDJCParametersPresets.getByName("default"), 3 * 4096 + 100);
+            VDJCAlignmentsFooter footer = VDJCAlignmentsFooter.read(input);
+            Assert.assertTrue(footer.getNumberOfBlocks() > 3);
+
+            // Sequential decode-filter-encode pass
+            String filter = "contains(CDR3) && score(V) > 100";
+            AFilter aFilter = AFilter.build(filter);
+            List<VDJCAlignments> expected = new ArrayList<>();
+            for (VDJCAlignments alignments : readAlignments(input))
+                if (aFilter.accept(alignments))
+                    expected.add(alignments);
+            Assert.assertFalse(expected.isEmpty());
+            Assert.assertTrue(expected.size() < footer.getNumberOfRecords());
+
+            // Sequential (raw records) and block-parallel paths
+            for (int threads : new int[]{1, 4}) {
+                File output = new File(dir, "output" + threads + ".vdjca");
+                ActionFilterAlignments action = new ActionFilterAlignments();
+                action.parameters.parameters.addAll(Arrays.asList(input.getPath(), output.getPath()));
+                action.parameters.filter = filter;
+                action.parameters.threads = threads;
+                action.go(null);
+
+                List<VDJCAlignments> actual = readAlignments(output);
+                Assert.assertEquals(expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); ++i) {
+                    Assert.assertEquals(expected.get(i).getReadId(), actual.get(i).getReadId());
+                    Assert.assertEquals(expected.get(i), actual.get(i));
+                    Assert.assertArrayEquals(expected.get(i).getDescriptions(), actual.get(i).getDescriptions());
+                }
+
+                VDJCAlignmentsFooter outputFooter = VDJCAlignmentsFooter.read(output);
+                Assert.assertEquals(expected.size(), outputFooter.getNumberOfRecords());
+                Assert.assertEquals(footer.getNumberOfProcessedReads(), outputFooter.getNumberOfProcessedReads());
+                Assert.assertEquals(footer.getParametersHash(), outputFooter.getParametersHash());
+            }
+        } finally {
+            for (File file : dir.listFiles())
+                file.delete();
+            dir.delete();
+        }
+    }
+
+    /**
+     * Aligns test IGH reads and writes the alignments (with descriptions) to the file several times, with read ids
+     * shifted by the number of reads, so that the file contains at least {@code minRecords} records.
+     *
+     * @return number of processed reads of the file
+     */
+    static long writeAlignments(File file, VDJCAlignerParameters parameters, int minRecords) throws IOException {
+        LociLibrary ll = LociLibraryManager.getDefault().getLibrary("mi");
+        VDJCAlignerSJFirst aligner = new VDJCAlignerSJFirst(parameters);
+        for (Allele allele : ll.getLocus(Species.HomoSapiens, Locus.IGH).getAllAlleles())
+            if (parameters.containsRequiredFeature(allele))
+                aligner.addAllele(allele);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        long reads;
+        int records = 0;
+        try (SingleFastqReader reader = new SingleFastqReader(ActionFilterAlignmentsTest.class.getClassLoader()
+                .getResourceAsStream("sequences/sample_IGH_R1.fastq"), true);
+             VDJCAlignmentsWriter writer = new VDJCAlignmentsWriter(bos)) {
+            writer.header(aligner);
+            for (SingleRead read : CUtils.it(reader)) {
+                VDJCAlignmentResult<SingleRead> result = aligner.process(read);
+                if (result.alignment != null) {
+                    result.alignment.setDescriptions(new String[]{read.getDescription()});
+                    writer.write(result.alignment);
+                    ++records;
+                }
+            }
+            writer.setNumberOfProcessedReads(reads = reader.getNumberOfReads());
+        }
+
+        int copies = (minRecords + records - 1) / records;
+        try (VDJCAlignmentsWriter writer = new VDJCAlignmentsWriter(file)) {
+            for (int copy = 0; copy < copies; ++copy)
+                try (VDJCAlignmentsReader reader = new VDJCAlignmentsReader(
+                        new ByteArrayInputStream(bos.toByteArray()), ll)) {
+                    if (copy == 0)
+                        writer.header(reader.getParameters(), reader.getUsedAlleles());
+                    RawVDJCAlignments record;
+                    while ((record = reader.takeRaw()) != null)
+                        writer.writeRaw(record, copy * reads);
+                }
+            writer.setNumberOfProcessedReads(copies * reads);
+        }
+        return copies * reads;
+    }
+
+    static List<VDJCAlignments> readAlignments(File file) throws IOException {
+        List<VDJCAlignments> result = new ArrayList<>();
+        try (VDJCAlignmentsReader reader = new VDJCAlignmentsReader(file, LociLibraryManager.getDefault())) {
+            for (VDJCAlignments alignments : CUtils.it(reader))
+                result.add(alignments);
+        }
+        return result;
+    }
+}
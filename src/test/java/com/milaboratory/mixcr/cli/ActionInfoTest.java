@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.cli;
+
+import com.milaboratory.mixcr.reference.Locus;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+public class ActionInfoTest {
+    @Test
+    public void testMixedDirectory() throws Exception {
+        Path dir = Files.createTempDirectory("info");
+        try {
+            for (String name : new String[]{"b.clns", "a.vdjca", "a.clns", "report.txt"})
+                Files.createFile(dir.resolve(name));
+            ActionInfo.InfoParameters parameters = new ActionInfo.InfoParameters();
+            parameters.input = Arrays.asList(dir.toString());
+            parameters.validate();
+
+            Map<ActionInfo.FilesType, List<String>> files = parameters.getInputFilesByType();
+            Assert.assertEquals(Arrays.asList(ActionInfo.FilesType.Cloneset, ActionInfo.FilesType.Alignments),
+                    new ArrayList<>(files.keySet()));
+            Assert.assertEquals(Arrays.asList(dir.resolve("a.clns").toString(), dir.resolve("b.clns").toString()),
+                    files.get(ActionInfo.FilesType.Cloneset));
+            Assert.assertEquals(Arrays.asList(dir.resolve("a.vdjca").toString()),
+                    files.get(ActionInfo.FilesType.Alignments));
+        } finally {
+            for (File file : dir.toFile().listFiles())
+                file.delete();
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testFormat() throws Exception {
+        EnumMap<Locus, Long> counts = new EnumMap<>(Locus.class);
+        counts.put(Locus.TRB, 5L);
+        counts.put(Locus.IGH, 10L);
+        Assert.assertEquals("TRB:5,IGH:10", ActionInfo.formatLocusCounts(counts));
+        Assert.assertEquals("NA", ActionInfo.formatLocusCounts(null));
+        Assert.assertEquals("0000002a", ActionInfo.formatHash(42));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.cli;
+
+import cc.redberry.pipe.CUtils;
+import com.milaboratory.mixcr.basictypes.VDJCAlignments;
+import com.milaboratory.mixcr.basictypes.VDJCAlignmentsFooter;
+import com.milaboratory.mixcr.basictypes.VDJCAlignmentsReader;
+import com.milaboratory.mixcr.basictypes.VDJCAlignmentsWriter;
+import com.milaboratory.mixcr.reference.Allele;
+import com.milaboratory.mixcr.reference.LociLibraryManager;
+import com.milaboratory.mixcr.reference.Locus;
+import com.milaboratory.mixcr.vdjaligners.VDJCParametersPresets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+import static com.milaboratory.mixcr.cli.ActionFilterAlignmentsTest.readAlignments;
+import static com.milaboratory.mixcr.cli.ActionFilterAlignmentsTest.writeAlignments;
+
+public class ActionMergeAlignmentsTest {
+    @Test
+    public void testRaw() throws Exception {
+        testMerge(false);
+    }
+
+    @Test
+    public void testIncompatible() throws Exception {
+        testMerge(true);
+    }
+
+    private static void testMerge(boolean incompatible) throws Exception {
+        File dir = Files.createTempDirectory("merge").toFile();
+        File input1 = new File(dir, "input1.vdjca"), input2 = new File(dir, "input2.vdjca"),
+                output = new File(dir, "output.vdjca");
+        try {
+            long reads1 = writeAlignments(input1, VDJCParametersPresets.getByName("default"), 1);
+            long reads2 = writeAlignments(input2, VDJCParametersPresets.getByName("default"), 4096 + 1);
+            if (incompatible) {
+                // Same records, but alleles are enumerated in the header in other order, so records can't be
+                // copied in serialized form
+                File reversed = new File(dir, "input2r.vdjca");
+                reverseAlleles(input2, reversed);
+                input2 = reversed;
+            }
+
+            ActionMergeAlignments action = new ActionMergeAlignments();
+            action.parameters.parameters = Arrays.asList(input1.getPath(), input2.getPath(), output.getPath());
+            action.go(null);
+
+            List<VDJCAlignments> expected = readAlignments(input1);
+            for (VDJCAlignments alignments : readAlignments(input2))
+                expected.add(new VDJCAlignments(alignments.getReadId() + reads1, 0, alignments));
+            List<VDJCAlignments> actual = readAlignments(output);
+            Assert.assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); ++i) {
+                Assert.assertEquals(expected.get(i).getReadId(), actual.get(i).getReadId());
+                Assert.assertEquals(expected.get(i), actual.get(i));
+                Assert.assertArrayEquals(expected.get(i).getDescriptions(), actual.get(i).getDescriptions());
+            }
+
+            VDJCAlignmentsFooter footer1 = VDJCAlignmentsFooter.read(input1),
+                    footer2 = VDJCAlignmentsFooter.read(input2),
+                    footer = VDJCAlignmentsFooter.read(output);
+            Assert.assertEquals(expected.size(), footer.getNumberOfRecords());
+            Assert.assertEquals(reads1 + reads2, footer.getNumberOfProcessedReads());
+            Assert.assertEquals(footer1.getParametersHash(), footer.getParametersHash());
+            Map<Locus, Long> locusCounts = new HashMap<>(footer1.getLocusCounts());
+            for (Map.Entry<Locus, Long> e : footer2.getLocusCounts().entrySet()) {
+                Long count = locusCounts.get(e.getKey());
+                locusCounts.put(e.getKey(), count == null ? e.getValue() : count + e.getValue());
+            }
+            Assert.assertFalse(locusCounts.isEmpty());
+            Assert.assertEquals(locusCounts, new HashMap<>(footer.getLocusCounts()));
+        } finally {
+            for (File file : dir.listFiles())
+                file.delete();
+            dir.delete();
+        }
+    }
+
+    private static void reverseAlleles(File input, File output) throws IOException {
+        try (VDJCAlignmentsReader reader = new VDJCAlignmentsReader(input, LociLibraryManager.getDefault());
+             VDJCAlignmentsWriter writer = new VDJCAlignmentsWriter(output)) {
+            List<Allele> alleles = new ArrayList<>(reader.getUsedAlleles());
+            Assert.assertTrue(alleles.size() > 1);
+            Collections.reverse(alleles);
+            writer.header(reader.getParameters(), alleles);
+            for (VDJCAlignments alignments : CUtils.it(reader))
+                writer.write(alignments);
+            writer.setNumberOfProcessedReads(reader.getNumberOfReads());
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.cli.afiltering;
+
+import cc.redberry.pipe.CUtils;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.fastq.SingleFastqReader;
+import com.milaboratory.core.sequence.AminoAcidSequence;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.mixcr.basictypes.VDJCAlignments;
+import com.milaboratory.mixcr.basictypes.VDJCHit;
+import com.milaboratory.mixcr.reference.*;
+import com.milaboratory.mixcr.vdjaligners.VDJCAlignerParameters;
+import com.milaboratory.mixcr.vdjaligners.VDJCAlignerSJFirst;
+import com.milaboratory.mixcr.vdjaligners.VDJCAlignmentResult;
+import com.milaboratory.mixcr.vdjaligners.VDJCParametersPresets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.milaboratory.core.sequence.TranslationParameters.FromCenter;
+
+public class AFilterTest {
+    @Test
+    public void testConstantExpressions() throws Exception {
+        Assert.assertTrue(AFilter.build("1 + 2 * 3 == 7").accept(null));
+        Assert.assertTrue(AFilter.build("x = 10; y = x / 4; y > 2 && !(y >= 3)").accept(null));
+        Assert.assertTrue(AFilter.build("'abc' != \"abd\" || false").accept(null));
+        Assert.assertFalse(AFilter.build("-1 > 0").accept(null));
+    }
+
+    @Test
+    public void testCompilation() throws Exception {
+        AFilter.build("l = length(CDR3); targetAlignedTop(0, V) && l > 50");
+        AFilter.build("contains(CDR3) && startsWith(gene(V), 'TRBV12') && score(J) >= 100 && hitsCount(D) == 0");
+        AFilter.build("length(\"{CDR3Begin:CDR3End}\") > 0 && contains(aa(CDR3), 'CASS') && minQuality(FR3) > 20");
+        AFilter.build("targetAlignedAny(1) && targetMeanQuality(0) > 25 && numberOfTargets() == 2");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTypeError() throws Exception {
+        AFilter.build("length(CDR3) && true");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownFunction() throws Exception {
+        AFilter.build("foo(CDR3)");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotBoolean() throws Exception {
+        AFilter.build("length(CDR3)");
+    }
+
+    @Test
+    public void testMalformedNumber() throws Exception {
+        try {
+            AFilter.build("length(CDR3) > 1.2.3");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertFalse(e instanceof NumberFormatException);
+            Assert.assertTrue(e.getMessage().contains("position 15"));
+        }
+    }
+
+    @Test
+    public void testEvaluation() throws Exception {
+        List<VDJCAlignments> alignments = alignSample();
+        Assert.assertTrue(alignments.size() > 10);
+
+        AFilter withCDR3 = AFilter.build("contains(CDR3)"),
+                cdr3Length = AFilter.build("l = length(CDR3); contains(CDR3) && l >= 30 && l == length(CDR3)"),
+                ighv = AFilter.build("startsWith(gene(V), 'IGHV') && locus(V) == 'IGH'"),
+                vHits = AFilter.build("hitsCount(V) > 1"),
+                jScore = AFilter.build("score(J) >= 100"),
+                cdr3aa = AFilter.build("contains(aa(CDR3), 'C') && nt(CDR3) != ''"),
+                alignedTarget = AFilter.build("numberOfTargets() == 1 && targetAlignedAny(0, V)"),
+                quality = AFilter.build("targetMeanQuality(0) > 30");
+
+        int cdr3Count = 0;
+        for (VDJCAlignments a : alignments) {
+            NSequenceWithQuality cdr3 = a.getFeature(GeneFeature.CDR3);
+            VDJCHit v = a.getBestHit(GeneType.Variable), j = a.getBestHit(GeneType.Joining);
+
+            Assert.assertEquals(cdr3 != null, withCDR3.accept(a));
+            Assert.assertEquals(cdr3 != null && cdr3.size() >= 30, cdr3Length.accept(a));
+            Assert.assertEquals(v != null && v.getAllele().getGene().getName().startsWith("IGHV")
+                    && v.getAllele().getLocus() == Locus.IGH, ighv.accept(a));
+            Assert.assertEquals(a.getHits(GeneType.Variable).length > 1, vHits.accept(a));
+            Assert.assertEquals(j != null && j.getScore() >= 100, jScore.accept(a));
+            Assert.assertEquals(cdr3 != null && cdr3.size() > 0 &&
+                    AminoAcidSequence.translate(cdr3.getSequence(), FromCenter).toString().contains("C"),
+                    cdr3aa.accept(a));
+            boolean vAligned = false;
+            for (VDJCHit hit : a.getHits(GeneType.Variable))
+                vAligned |= hit.getAlignment(0) != null;
+            Assert.assertEquals(a.numberOfTargets() == 1 && vAligned, alignedTarget.accept(a));
+            Assert.assertEquals(a.getTarget(0).getQuality().meanValue() > 30, quality.accept(a));
+            if (cdr3 != null)
+                ++cdr3Count;
+        }
+        Assert.assertTrue(cdr3Count > 0);
+    }
+
+    static List<VDJCAlignments> alignSample() throws Exception {
+        VDJCAlignerParameters parameters = VDJCParametersPresets.getByName("default");
+        LociLibrary ll = LociLibraryManager.getDefault().getLibrary("mi");
+        VDJCAlignerSJFirst aligner = new VDJCAlignerSJFirst(parameters);
+        for (Allele allele : ll.getLocus(Species.HomoSapiens, Locus.IGH).getAllAlleles())
+            if (parameters.containsRequiredFeature(allele))
+                aligner.addAllele(allele);
+
+        List<VDJCAlignments> result = new ArrayList<>();
+        try (SingleFastqReader reader = new SingleFastqReader(AFilterTest.class.getClassLoader()
+                .getResourceAsStream("sequences/sample_IGH_R1.fastq"), true)) {
+            for (SingleRead read : CUtils.it(reader)) {
+                VDJCAlignmentResult<SingleRead> r = aligner.process(read);
+                if (r.alignment != null)
+                    result.add(r.alignment);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.export;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class ColumnarWriterTest {
+    @Test
+    public void testRoundTrip() throws Exception {
+        Random random = new Random(1234);
+        String[] genes = {"TRBV12-3*00", "TRBV5-1*00", "TRBV20-1*00", "TRBV7-9*00"};
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i)
+            rows.add(new String[]{
+                    "" + i,
+                    "" + random.nextDouble(),
+                    genes[random.nextInt(genes.length)],
+                    random(random, ColumnarFormat.NUCLEOTIDES, random.nextInt(60)),
+                    random(random, ColumnarFormat.AMINO_ACIDS, random.nextInt(20)),
+                    i % 3 == 0 ? "" : "text " + i
+            });
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ColumnarWriter<String[]> writer = new ColumnarWriter<>(bos, 128);
+        for (int i = 0; i < rows.get(0).length; ++i)
+            writer.attachInfoProvider(new Column(i));
+        for (String[] row : rows)
+            writer.put(row);
+        writer.close();
+
+        ColumnarReader reader = new ColumnarReader(new ByteArrayInputStream(bos.toByteArray()));
+        Assert.assertArrayEquals(new String[]{"c0", "c1", "c2", "c3", "c4", "c5"}, reader.getColumnNames());
+        ColumnarReader.Chunk chunk = reader.readChunk();
+        Assert.assertEquals(128, chunk.size());
+        Assert.assertEquals(ColumnEncoding.Long, chunk.getEncoding(0));
+        Assert.assertEquals(ColumnEncoding.Double, chunk.getEncoding(1));
+        Assert.assertEquals(ColumnEncoding.Dictionary, chunk.getEncoding(2));
+        Assert.assertEquals(ColumnEncoding.Nucleotide, chunk.getEncoding(3));
+        Assert.assertEquals(ColumnEncoding.AminoAcid, chunk.getEncoding(4));
+        Assert.assertEquals(ColumnEncoding.Raw, chunk.getEncoding(5));
+        Assert.assertEquals(5L, chunk.getLong(0, 5));
+
+        reader = new ColumnarReader(new ByteArrayInputStream(bos.toByteArray()));
+        String[] row;
+        int i = 0;
+        while ((row = reader.take()) != null)
+            Assert.assertTrue(Arrays.equals(rows.get(i++), row));
+        Assert.assertEquals(rows.size(), i);
+    }
+
+    @Test
+    public void testMixedNumericColumns() throws Exception {
+        // integer and decimal values in one chunk, in different order for each column
+        String[][] rows = {{"5", "0.5", "1.0"}, {"7", "5", "-0"}, {"0.5", "7", "2"}, {"12", "1e3", "3.0"}};
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ColumnarWriter<String[]> writer = new ColumnarWriter<>(bos, 3);
+        for (int i = 0; i < rows[0].length; ++i)
+            writer.attachInfoProvider(new Column(i));
+        for (String[] row : rows)
+            writer.put(row);
+        writer.close();
+
+        ColumnarReader reader = new ColumnarReader(new ByteArrayInputStream(bos.toByteArray()));
+        ColumnarReader.Chunk chunk = reader.readChunk();
+        for (int i = 0; i < rows[0].length; ++i) {
+            ColumnEncoding encoding = chunk.getEncoding(i);
+            Assert.assertTrue(encoding != ColumnEncoding.Long && encoding != ColumnEncoding.Double);
+        }
+        Assert.assertEquals(0.5, chunk.getDouble(0, 2), 0.0);
+        Assert.assertEquals(5L, chunk.getLong(1, 1));
+
+        reader = new ColumnarReader(new ByteArrayInputStream(bos.toByteArray()));
+        String[] row;
+        int i = 0;
+        while ((row = reader.take()) != null)
+            Assert.assertArrayEquals(rows[i++], row);
+        Assert.assertEquals(rows.length, i);
+    }
+
+    private static String random(Random random, String alphabet, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; ++i)
+            chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+        return new String(chars);
+    }
+
+    private static final class Column implements FieldExtractor<String[]> {
+        final int index;
+
+        public Column(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String getHeader() {
+            return "c" + index;
+        }
+
+        @Override
+        public String extractValue(String[] object) {
+            return object[index];
+        }
+    }
+}
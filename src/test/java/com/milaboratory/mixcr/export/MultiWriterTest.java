@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.export;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MultiWriterTest {
+    @Test
+    public void testSameAsSeparateWriters() throws Exception {
+        // Several batches and incomplete last one
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i)
+            rows.add(new String[]{"" + i, "r" + (i * 31 % 17), i % 5 == 0 ? "" : "ACGT" + i});
+
+        ByteArrayOutputStream text = new ByteArrayOutputStream(), columnar = new ByteArrayOutputStream();
+        try (MultiWriter<String[]> writer = new MultiWriter<>(Arrays.asList(
+                textWriter(text, 0, 2), columnarWriter(columnar, 1, 2)))) {
+            for (String[] row : rows)
+                writer.put(row);
+        }
+
+        ByteArrayOutputStream expectedText = new ByteArrayOutputStream(),
+                expectedColumnar = new ByteArrayOutputStream();
+        try (InfoWriter<String[]> writer = textWriter(expectedText, 0, 2)) {
+            for (String[] row : rows)
+                writer.put(row);
+        }
+        try (ColumnarWriter<String[]> writer = columnarWriter(expectedColumnar, 1, 2)) {
+            for (String[] row : rows)
+                writer.put(row);
+        }
+
+        Assert.assertArrayEquals(expectedText.toByteArray(), text.toByteArray());
+        Assert.assertArrayEquals(expectedColumnar.toByteArray(), columnar.toByteArray());
+    }
+
+    @Test
+    public void testWriterFailure() throws Exception {
+        final RuntimeException failure = new RuntimeException("failed");
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        final boolean[] closed = {false};
+        ExportWriter<String[]> failing = new ExportWriter<String[]>() {
+            @Override
+            public void put(String[] row) {
+                if (row[0].equals("300"))
+                    throw failure;
+            }
+
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        MultiWriter<String[]> writer = new MultiWriter<>(Arrays.asList(textWriter(text, 0), failing));
+        try {
+            for (int i = 0; i < 1000; ++i)
+                writer.put(new String[]{"" + i});
+        } catch (RuntimeException e) {
+            // Failure may be reported by put(), if it is detected before the end of input
+            Assert.assertSame(failure, e.getCause());
+        }
+        try {
+            writer.close();
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e == failure || e.getCause() == failure);
+        }
+        // All writers are closed anyway
+        Assert.assertTrue(closed[0]);
+        Assert.assertTrue(text.size() > 0);
+    }
+
+    @Test
+    public void testCloseFailure() throws Exception {
+        final IOException failure = new IOException("can't close");
+        ExportWriter<String[]> failing = new ExportWriter<String[]>() {
+            @Override
+            public void put(String[] row) {
+            }
+
+            @Override
+            public void close() throws IOException {
+                throw failure;
+            }
+        };
+        MultiWriter<String[]> writer = new MultiWriter<>(Arrays.asList(failing,
+                textWriter(new ByteArrayOutputStream(), 0)));
+        writer.put(new String[]{"0"});
+        try {
+            writer.close();
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertSame(failure, e);
+        }
+    }
+
+    private static InfoWriter<String[]> textWriter(ByteArrayOutputStream bos, int... columns) {
+        InfoWriter<String[]> writer = new InfoWriter<>(bos);
+        for (int column : columns)
+            writer.attachInfoProvider(new Column(column));
+        return writer;
+    }
+
+    private static ColumnarWriter<String[]> columnarWriter(ByteArrayOutputStream bos, int... columns) {
+        ColumnarWriter<String[]> writer = new ColumnarWriter<>(bos, 128);
+        for (int column : columns)
+            writer.attachInfoProvider(new Column(column));
+        return writer;
+    }
+
+    private static final class Column implements FieldExtractor<String[]> {
+        final int index;
+
+        Column(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String getHeader() {
+            return "c" + index;
+        }
+
+        @Override
+        public String extractValue(String[] object) {
+            return object[index];
+        }
+    }
+}
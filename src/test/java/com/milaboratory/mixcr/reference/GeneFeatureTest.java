@@ -79,6 +79,17 @@ public class GeneFeatureTest {
         assertEquals(expected, actual);
     }
 
+    @Test
+    public void testId() throws Exception {
+        GeneFeature f1 = new GeneFeature(CDR3, 0, 0),
+                f2 = parse("CDR3");
+        assertNotSame(f1, f2);
+        assertEquals(CDR3.getId(), f1.getId());
+        assertEquals(CDR3.getId(), f2.getId());
+        assertTrue(CDR3.getId() != FR3.getId());
+        assertTrue(CDR3.getId() != ShortCDR3.getId());
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void test2() throws Exception {
         GeneFeature f1 = create(1, 5),
@@ -134,6 +134,73 @@ public class LociLibraryIOTest {
         }
     }
 
+    @Test
+    public void testSnapshotLoad() throws Exception {
+        File source = File.createTempFile("library", ".ll");
+        File snapshot = new File(source.getPath() + ".llsnap");
+        try {
+            try (InputStream in = LociLibraryReader.class.getClassLoader().getResourceAsStream("reference/mi.ll");
+                 OutputStream out = new FileOutputStream(source)) {
+                byte[] buffer = new byte[65536];
+                int read;
+                while ((read = in.read(buffer)) > 0)
+                    out.write(buffer, 0, read);
+            }
+
+            LociLibrary library = LociLibrarySnapshot.load(source.toURI().toURL(), snapshot.toPath(), true);
+            assertTrue(snapshot.exists());
+            long[] key = LociLibrarySnapshot.sourceKey(source.toURI().toURL());
+            assertEquals(source.length(), key[0]);
+            assertEquals(source.lastModified(), key[1]);
+            LociLibrary restored = LociLibrarySnapshot.read(snapshot, key[0], key[1], true);
+            assertNotNull(restored);
+            assertEquals(library.getLoci().size(), restored.getLoci().size());
+
+            // Modified source invalidates snapshot
+            assertTrue(source.setLastModified(key[1] - 10000));
+            assertNull(LociLibrarySnapshot.read(snapshot, key[0], source.lastModified(), true));
+            LociLibrarySnapshot.load(source.toURI().toURL(), snapshot.toPath(), true);
+            assertNotNull(LociLibrarySnapshot.read(snapshot, key[0], source.lastModified(), true));
+        } finally {
+            source.delete();
+            snapshot.delete();
+        }
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        InputStream sample = LociLibraryReader.class.getClassLoader().getResourceAsStream("reference/mi.ll");
+        LociLibrary library = LociLibraryReader.read(sample, true);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        LociLibrarySnapshot.write(library, bos, 123, 456, true);
+        byte[] snapshot = bos.toByteArray();
+
+        assertNull(LociLibrarySnapshot.read(java.nio.ByteBuffer.wrap(snapshot), 123, 456, false));
+        assertNull(LociLibrarySnapshot.read(java.nio.ByteBuffer.wrap(snapshot), 124, 456, true));
+
+        LociLibrary restored = LociLibrarySnapshot.read(java.nio.ByteBuffer.wrap(snapshot), 123, 456, true);
+        assertEquals(library.getLoci().size(), restored.getLoci().size());
+        for (LocusContainer container : library.getLoci()) {
+            LocusContainer restoredContainer = restored.getLocus(container.getSpeciesAndLocus());
+            assertEquals(container.getUUID(), restoredContainer.getUUID());
+            for (GeneType geneType : GeneType.values()) {
+                List<Allele> alleles = container.getAlleles(geneType),
+                        restoredAlleles = restoredContainer.getAlleles(geneType);
+                assertEquals(alleles.size(), restoredAlleles.size());
+                for (int i = 0; i < alleles.size(); i++) {
+                    Allele expected = alleles.get(i), actual = restoredAlleles.get(i);
+                    assertEquals(expected.getId(), actual.getId());
+                    assertEquals(expected.isFunctional(), actual.isFunctional());
+                    assertEquals(expected.getGene().getIndex(), actual.getGene().getIndex());
+                    assertEquals(expected.getPartitioning(), actual.getPartitioning());
+                    for (GeneFeature feature : new GeneFeature[]{VRegion, FR3, JRegion, GermlineJCDR3Part, DRegion})
+                        assertEquals(expected.getFeature(feature), actual.getFeature(feature));
+                }
+            }
+        }
+    }
+
     @Ignore
     @Test
     public void testExportLL() throws Exception {
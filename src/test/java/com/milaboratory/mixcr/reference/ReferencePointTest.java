@@ -39,4 +39,18 @@ public class ReferencePointTest {
         for (ReferencePoint referencePoint : pointsToTest)
             Assert.assertNotNull(referencePoint.getActivationPoint());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testBasicPointIndex() throws Exception {
+        boolean[] used = new boolean[ReferencePoint.TOTAL_NUMBER_OF_BASIC_POINTS];
+        for (BasicReferencePoint basicPoint : BasicReferencePoint.values()) {
+            ReferencePoint point = new ReferencePoint(basicPoint);
+            int index = point.getBasicPointIndex();
+            Assert.assertTrue(index >= 0 && index < ReferencePoint.TOTAL_NUMBER_OF_BASIC_POINTS);
+            Assert.assertFalse(used[index]);
+            used[index] = true;
+            Assert.assertEquals(index, point.move(-2).getBasicPointIndex());
+            Assert.assertEquals(index, point.move(5).getBasicPointIndex());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class MemoryBudgetTest {
+    @Test
+    public void testSplit() throws Exception {
+        try (MemoryBudget budget = new MemoryBudget(1000)) {
+            final AtomicLong fixedUsage = new AtomicLong(0), cacheUsage = new AtomicLong(0),
+                    cacheLimit = new AtomicLong(-1);
+            MemoryBudget.Consumer a = budget.register("a", 100, 1000, 1.0, null, null);
+            MemoryBudget.Consumer b = budget.register("b", 100, 300, 1.0, new Probe(cacheUsage),
+                    new MemoryBudget.Listener() {
+                        @Override
+                        public void onLimitChanged(long limit) {
+                            cacheLimit.set(limit);
+                        }
+                    });
+            // b is capped by its maximum, the rest goes to a
+            Assert.assertEquals(300, b.getLimit());
+            Assert.assertEquals(300, cacheLimit.get());
+            Assert.assertEquals(700, a.getLimit());
+
+            // Fixed consumer takes memory from elastic ones, but minimums are guaranteed (over-committing the budget)
+            budget.registerFixed("fixed", new Probe(fixedUsage));
+            fixedUsage.set(900);
+            budget.rebalance();
+            Assert.assertEquals(100, a.getLimit());
+            Assert.assertEquals(100, b.getLimit());
+            Assert.assertEquals(100, cacheLimit.get());
+            Assert.assertEquals(100, budget.getPeakOvercommit());
+
+            // b is under pressure, so it gets double share of the free memory (capped by its maximum)
+            fixedUsage.set(200);
+            cacheUsage.set(100);
+            budget.rebalance();
+            Assert.assertEquals(300, b.getLimit());
+            Assert.assertEquals(500, a.getLimit());
+
+            b.unregister();
+            budget.rebalance();
+            Assert.assertEquals(800, a.getLimit());
+            Assert.assertEquals(3, budget.getConsumers().size());
+            Assert.assertEquals(100, budget.getConsumers().get(1).getPeak());
+        }
+    }
+
+    @Test
+    public void testOvercommit() throws Exception {
+        try (MemoryBudget budget = new MemoryBudget(1000)) {
+            final AtomicLong fixedUsage = new AtomicLong(0);
+            MemoryBudget.Consumer a = budget.register("a", 400, 1000, 1.0, null, null);
+            MemoryBudget.Consumer b = budget.register("b", 400, 1000, 1.0, null, null);
+            budget.registerFixed("fixed", new Probe(fixedUsage));
+            Assert.assertEquals(0, budget.getPeakOvercommit());
+
+            // Minimums are still guaranteed, excess is recorded
+            fixedUsage.set(500);
+            budget.rebalance();
+            Assert.assertEquals(400, a.getLimit());
+            Assert.assertEquals(400, b.getLimit());
+            Assert.assertEquals(300, budget.getPeakOvercommit());
+
+            fixedUsage.set(0);
+            budget.rebalance();
+            Assert.assertEquals(500, a.getLimit());
+            Assert.assertEquals(300, budget.getPeakOvercommit());
+        }
+    }
+
+    private static final class Probe implements MemoryBudget.Probe {
+        final AtomicLong value;
+
+        Probe(AtomicLong value) {
+            this.value = value;
+        }
+
+        @Override
+        public long getUsedBytes() {
+            return value.get();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import cc.redberry.pipe.CUtils;
+import com.milaboratory.core.io.sequence.PairedRead;
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.io.sequence.SequenceReaderCloseable;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.fastq.PairedFastqReader;
+import com.milaboratory.core.io.sequence.fastq.SingleFastqReader;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MultiLaneSequenceReaderTest {
+    @Test
+    public void test1() throws Exception {
+        String r1 = MultiLaneSequenceReaderTest.class.getResource("/sequences/sample_IGH_R1.fastq").getFile(),
+                r2 = MultiLaneSequenceReaderTest.class.getResource("/sequences/sample_IGH_R2.fastq").getFile();
+
+        List<PairedRead> expected = new ArrayList<>();
+        try (PairedFastqReader reader = new PairedFastqReader(r1, r2)) {
+            for (PairedRead read : CUtils.it(reader))
+                expected.add(read);
+        }
+
+        List<SequenceReaderCloseable<? extends SequenceRead>> lanes = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+            lanes.add(new PairedFastqReader(r1, r2));
+
+        int count = 0;
+        try (MultiLaneSequenceReader reader = new MultiLaneSequenceReader(lanes, 7, 2)) {
+            for (SequenceRead read : CUtils.it(reader)) {
+                Assert.assertEquals(count, read.getId());
+                // Chunks of 7 reads are taken from identical lanes in round-robin order
+                int round = count / 21;
+                if ((round + 1) * 7 <= expected.size()) {
+                    PairedRead exp = expected.get(round * 7 + count % 7);
+                    Assert.assertEquals(exp.getR1().getData().getQuality(), read.getRead(0).getData().getQuality());
+                    Assert.assertEquals(exp.getR2().getData().getQuality(), read.getRead(1).getData().getQuality());
+                }
+                ++count;
+            }
+            Assert.assertEquals(3 * expected.size(), count);
+            Assert.assertEquals(count, reader.getNumberOfReads());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testLaneFailure() throws Exception {
+        String r1 = MultiLaneSequenceReaderTest.class.getResource("/sequences/sample_IGH_R1.fastq").getFile();
+        List<SequenceReaderCloseable<? extends SequenceRead>> lanes = new ArrayList<>();
+        lanes.add(new SingleFastqReader(r1, true));
+        lanes.add(new FailingReader(new SingleFastqReader(r1, true), 10));
+
+        try (MultiLaneSequenceReader reader = new MultiLaneSequenceReader(lanes, 4, 2)) {
+            RuntimeException failure = null;
+            try {
+                while (reader.take() != null) ;
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            Assert.assertNotNull(failure);
+            Assert.assertTrue(failure.getCause() instanceof IllegalStateException);
+            // Subsequent calls fail with the same error instead of blocking
+            for (int i = 0; i < 2; i++)
+                try {
+                    reader.take();
+                    Assert.fail();
+                } catch (RuntimeException e) {
+                    Assert.assertSame(failure, e);
+                }
+        }
+    }
+
+    private static final class FailingReader implements SequenceReaderCloseable<SingleRead> {
+        final SingleFastqReader inner;
+        final int failAfter;
+
+        FailingReader(SingleFastqReader inner, int failAfter) {
+            this.inner = inner;
+            this.failAfter = failAfter;
+        }
+
+        @Override
+        public SingleRead take() {
+            if (inner.getNumberOfReads() == failAfter)
+                throw new IllegalStateException("Broken input.");
+            return inner.take();
+        }
+
+        @Override
+        public long getNumberOfReads() {
+            return inner.getNumberOfReads();
+        }
+
+        @Override
+        public void close() {
+            inner.close();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import cc.redberry.pipe.CUtils;
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.io.sequence.fastq.PairedFastqReader;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+public class ParallelFastqReaderTest {
+    static final String R1 = ParallelFastqReaderTest.class.getResource("/sequences/sample_IGH_R1.fastq").getFile(),
+            R2 = ParallelFastqReaderTest.class.getResource("/sequences/sample_IGH_R2.fastq").getFile();
+
+    @Test
+    public void testPlain() throws Exception {
+        assertSameReads(R1, R2);
+    }
+
+    @Test
+    public void testGzip() throws Exception {
+        File r1 = gzip(R1), r2 = gzip(R2);
+        try {
+            assertSameReads(r1.getAbsolutePath(), r2.getAbsolutePath());
+        } finally {
+            r1.delete();
+            r2.delete();
+        }
+    }
+
+    @Test
+    public void testBgzf() throws Exception {
+        File r1 = bgzip(R1), r2 = bgzip(R2);
+        try {
+            assertSameReads(r1.getAbsolutePath(), r2.getAbsolutePath());
+        } finally {
+            r1.delete();
+            r2.delete();
+        }
+    }
+
+    static File gzip(String fileName) throws Exception {
+        File file = TempFileManager.getTempFile();
+        try (GZIPOutputStream os = new GZIPOutputStream(new FileOutputStream(file))) {
+            os.write(Files.readAllBytes(new File(fileName).toPath()));
+        }
+        return file;
+    }
+
+    /**
+     * Writes file in BGZF format (series of gzip members with block size in the extra field, as produced by bgzip).
+     */
+    static File bgzip(String fileName) throws Exception {
+        File file = TempFileManager.getTempFile();
+        byte[] data = Files.readAllBytes(new File(fileName).toPath());
+        try (FileOutputStream os = new FileOutputStream(file)) {
+            // Small blocks, so that records span block boundaries
+            for (int from = 0; from < data.length; from += 1000)
+                writeBgzfBlock(os, Arrays.copyOfRange(data, from, Math.min(data.length, from + 1000)));
+            // EOF marker
+            writeBgzfBlock(os, new byte[0]);
+        }
+        return file;
+    }
+
+    private static void writeBgzfBlock(OutputStream os, byte[] data) throws Exception {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] compressed = new byte[data.length + 1024];
+        int size = deflater.deflate(compressed);
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        ByteBuffer block = ByteBuffer.allocate(18 + size + 8).order(ByteOrder.LITTLE_ENDIAN);
+        block.put(new byte[]{31, (byte) 139, 8, 4, 0, 0, 0, 0, 0, (byte) 255});
+        block.putShort((short) 6).put((byte) 'B').put((byte) 'C').putShort((short) 2);
+        block.putShort((short) (18 + size + 8 - 1));
+        block.put(compressed, 0, size);
+        block.putInt((int) crc.getValue()).putInt(data.length);
+        os.write(block.array());
+    }
+
+    static void assertSameReads(String r1, String r2) throws Exception {
+        List<SequenceRead> expected = new ArrayList<>();
+        try (WildcardsReplacingReader reader = new WildcardsReplacingReader(new PairedFastqReader(R1, R2, false))) {
+            for (SequenceRead read : CUtils.it(reader))
+                expected.add(read);
+        }
+
+        for (int threads : new int[]{1, 3}) {
+            try (ParallelFastqReader reader = new ParallelFastqReader(r1, r2, threads, 7)) {
+                int i = 0;
+                for (SequenceRead read : CUtils.it(reader)) {
+                    SequenceRead exp = expected.get(i);
+                    Assert.assertEquals(i, read.getId());
+                    for (int r = 0; r < 2; ++r) {
+                        Assert.assertFalse(read.getRead(r).getData().getSequence().containsWildcards());
+                        Assert.assertEquals(exp.getRead(r).getData(), read.getRead(r).getData());
+                        Assert.assertEquals(exp.getRead(r).getDescription(), read.getRead(r).getDescription());
+                    }
+                    ++i;
+                }
+                Assert.assertEquals(expected.size(), i);
+                Assert.assertEquals(expected.size(), reader.getNumberOfReads());
+                Assert.assertTrue(reader.isFinished());
+            }
+        }
+    }
+}
@@ -31,6 +31,7 @@ package com.milaboratory.mixcr.util;
 import org.junit.Test;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 
 public class ParseUtilTest {
     @Test
@@ -50,4 +51,17 @@ public class ParseUtilTest {
         String target = "asdjkjsdfsd,fs,(df,,,)f,{,s},df";
         assertArrayEquals(new String[]{"asdjkjsdfsd", "fs", "(df,,,)f", "{,s}", "df"}, ParseUtil.splitWithBrackets(target, ',', "(){}"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testParseSize() throws Exception {
+        assertEquals(4096, ParseUtil.parseSize("4096"));
+        assertEquals(512 * 1024, ParseUtil.parseSize("512k"));
+        assertEquals(3L << 29, ParseUtil.parseSize("1.5G"));
+        assertEquals(10L << 30, ParseUtil.parseSize("10GB"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseSizeIllegal() throws Exception {
+        ParseUtil.parseSize("10X");
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+public class PipelineMetricsTest {
+    @Test
+    public void test1() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName query = new ObjectName(PipelineMetrics.JMX_DOMAIN + ":type=Stage,pipeline=\"test\",*");
+        StageMetrics stage;
+        try (PipelineMetrics metrics = new PipelineMetrics("test")) {
+            stage = metrics.stage("Stage 1");
+            Assert.assertSame(stage, metrics.stage("Stage 1"));
+            for (int i = 0; i < 100; i++) {
+                StageMetrics.Timer timer = stage.start();
+                timer.stop(2, 10);
+            }
+            stage.addBytes(5);
+
+            Assert.assertEquals(1, server.queryNames(query, null).size());
+            ObjectName name = server.queryNames(query, null).iterator().next();
+            Assert.assertEquals(100L, server.getAttribute(name, "Invocations"));
+            Assert.assertEquals(200L, server.getAttribute(name, "Items"));
+        }
+        Assert.assertEquals(0, server.queryNames(query, null).size());
+        Assert.assertEquals(100, stage.getInvocations());
+        Assert.assertEquals(1005, stage.getBytes());
+        Assert.assertTrue(stage.toMachineReadableString().startsWith("invocations=100 items=200 bytes=1005"));
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import cc.redberry.pipe.CUtils;
+import cc.redberry.pipe.OutputPort;
+import cc.redberry.pipe.Processor;
+import cc.redberry.pipe.VoidProcessor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class PipelineTest {
+    @Test
+    public void testOrderedMap() throws Exception {
+        PipelineMetrics metrics = new PipelineMetrics("test", false);
+        try (Pipeline pipeline = new Pipeline(metrics)) {
+            OutputPort<Integer> results = pipeline.map("Square", new Range(10000), new Processor<Integer, Integer>() {
+                @Override
+                public Integer process(Integer input) {
+                    // Drop odd numbers
+                    return input % 2 == 0 ? input * input : null;
+                }
+            }, 4, true, Pipeline.QueueCapacity.ofItems(256), null, new Pipeline.ChunkSizing(1, 64, 100000));
+            int expected = 0;
+            for (Integer r : CUtils.it(results)) {
+                Assert.assertEquals(expected * expected, (int) r);
+                expected += 2;
+            }
+            Assert.assertEquals(10000, expected);
+        }
+        Assert.assertEquals(10000, metrics.stage("Square").getItems());
+        Assert.assertEquals(10000, metrics.queue("Square input").getItems());
+        Assert.assertEquals(5000, metrics.queue("Square output").getItems());
+        Assert.assertTrue(metrics.queue("Square input").getMaxDepth() <= 256);
+    }
+
+    @Test
+    public void testForEach() throws Exception {
+        final AtomicLong sum = new AtomicLong();
+        try (Pipeline pipeline = new Pipeline(new PipelineMetrics("test", false))) {
+            pipeline.forEach("Sum", new Range(1000), new VoidProcessor<Integer>() {
+                @Override
+                public void process(Integer input) {
+                    sum.addAndGet(input);
+                }
+            }, 3);
+        }
+        Assert.assertEquals(999 * 1000 / 2, sum.get());
+    }
+
+    @Test
+    public void testBytesCapacity() throws Exception {
+        PipelineMetrics metrics = new PipelineMetrics("test", false);
+        try (Pipeline pipeline = new Pipeline(metrics)) {
+            OutputPort<Integer> buffered = pipeline.buffer("Buffer", new Range(1000),
+                    new Pipeline.QueueCapacity(1000, 100), new Pipeline.Weigher<Integer>() {
+                        @Override
+                        public long weight(Integer object) {
+                            return 10;
+                        }
+                    });
+            int count = 0;
+            while (buffered.take() != null)
+                ++count;
+            Assert.assertEquals(1000, count);
+        }
+        Assert.assertTrue(metrics.queue("Buffer").getMaxDepth() <= 10);
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        try (Pipeline pipeline = new Pipeline(new PipelineMetrics("test", false))) {
+            OutputPort<Integer> results = pipeline.map("Failing", new Range(1000), new Processor<Integer, Integer>() {
+                @Override
+                public Integer process(Integer input) {
+                    if (input == 500)
+                        throw new IllegalArgumentException("500");
+                    return input;
+                }
+            }, 2, true);
+            try {
+                while (results.take() != null) ;
+                Assert.fail();
+            } catch (RuntimeException e) {
+                Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+            }
+        }
+    }
+
+    @Test
+    public void testAdaptiveChunkSize() throws Exception {
+        PipelineMetrics metrics = new PipelineMetrics("test", false);
+        try (Pipeline pipeline = new Pipeline(metrics)) {
+            pipeline.forEach("Fast", new Range(100000), new VoidProcessor<Integer>() {
+                @Override
+                public void process(Integer input) {
+                }
+            }, 2, Pipeline.QueueCapacity.ofItems(100000), null, new Pipeline.ChunkSizing(1, 1000, 10000000));
+        }
+        // Processing is fast, so chunk size should quickly reach the maximum
+        Assert.assertEquals(1000, metrics.queue("Fast input").getChunkSize());
+    }
+
+    @Test
+    public void testWorkerPool() throws Exception {
+        final Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        Processor<Integer, Integer> square = new Processor<Integer, Integer>() {
+            @Override
+            public Integer process(Integer input) {
+                threads.add(Thread.currentThread().getName());
+                return input * input;
+            }
+        };
+        try (Pipeline.WorkerPool pool = new Pipeline.WorkerPool("Shared", 2);
+             Pipeline p1 = new Pipeline(new PipelineMetrics("p1", false));
+             Pipeline p2 = new Pipeline(new PipelineMetrics("p2", false))) {
+            OutputPort<Integer> r1 = p1.map("Square", new Range(10000), square, pool, true,
+                    Pipeline.QueueCapacity.ofItems(256), null, new Pipeline.ChunkSizing(1, 64, 100000));
+            OutputPort<Integer> r2 = p2.map("Square", new Range(5000), square, pool, true,
+                    Pipeline.QueueCapacity.ofItems(256), null, new Pipeline.ChunkSizing(1, 64, 100000));
+            // Second pipeline is not consumed until the first one is finished, but doesn't block shared threads
+            int expected = 0;
+            for (Integer r : CUtils.it(r1)) {
+                Assert.assertEquals(expected * expected, (int) r);
+                ++expected;
+            }
+            Assert.assertEquals(10000, expected);
+            expected = 0;
+            for (Integer r : CUtils.it(r2)) {
+                Assert.assertEquals(expected * expected, (int) r);
+                ++expected;
+            }
+            Assert.assertEquals(5000, expected);
+        }
+        Assert.assertFalse(threads.isEmpty());
+        for (String thread : threads)
+            Assert.assertTrue(thread, thread.equals("Shared #0") || thread.equals("Shared #1"));
+    }
+
+    private static final class Range implements OutputPort<Integer> {
+        final int to;
+        int next = 0;
+
+        Range(int to) {
+            this.to = to;
+        }
+
+        @Override
+        public synchronized Integer take() {
+            return next < to ? next++ : null;
+        }
+    }
+}
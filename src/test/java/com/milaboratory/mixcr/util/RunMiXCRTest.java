@@ -5,6 +5,7 @@ import com.milaboratory.core.io.sequence.PairedRead;
 import com.milaboratory.core.io.sequence.fastq.PairedFastqReader;
 import com.milaboratory.mixcr.basictypes.*;
 import com.milaboratory.mixcr.cli.ActionAlign;
+import com.milaboratory.mixcr.reference.GeneFeature;
 import com.milaboratory.mixcr.reference.GeneType;
 import com.milaboratory.mixcr.reference.LociLibraryManager;
 import com.milaboratory.mixcr.reference.Locus;
@@ -15,6 +16,7 @@ import org.junit.Test;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -74,6 +76,31 @@ public class RunMiXCRTest {
         }
     }
 
+    @Test
+    public void testStreaming() throws Exception {
+        RunMiXCR.RunMiXCRAnalysis params = new RunMiXCR.RunMiXCRAnalysis(
+                RunMiXCR.class.getResource("/sequences/test_R1.fastq").getFile(),
+                RunMiXCR.class.getResource("/sequences/test_R2.fastq").getFile());
+
+        RunMiXCR.AssembleResult buffered = RunMiXCR.assemble(RunMiXCR.align(params));
+        RunMiXCR.AssembleResult streamed = RunMiXCR.run(params);
+
+        Assert.assertEquals(buffered.cloneSet.size(), streamed.cloneSet.size());
+        Assert.assertEquals(buffered.cloneSet.getTotalCount(), streamed.cloneSet.getTotalCount());
+        Assert.assertEquals(clones(buffered.cloneSet), clones(streamed.cloneSet));
+    }
+
+    /**
+     * Returns sorted list of CDR3 sequences and counts of clones.
+     */
+    private static List<String> clones(CloneSet cloneSet) {
+        List<String> clones = new ArrayList<>();
+        for (Clone clone : cloneSet)
+            clones.add(clone.getFeature(GeneFeature.CDR3).getSequence() + " " + clone.getCount());
+        Collections.sort(clones);
+        return clones;
+    }
+
     @Ignore
     @Test
     public void test3() throws Exception {
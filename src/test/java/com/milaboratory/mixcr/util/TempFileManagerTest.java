@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2014-2015, Bolotin Dmitry, Chudakov Dmitry, Shugay Mikhail
+ * (here and after addressed as Inventors)
+ * All Rights Reserved
+ *
+ * Permission to use, copy, modify and distribute any part of this program for
+ * educational, research and non-profit purposes, by non-profit institutions
+ * only, without fee, and without a written agreement is hereby granted,
+ * provided that the above copyright notice, this paragraph and the following
+ * three paragraphs appear in all copies.
+ *
+ * Those desiring to incorporate this work into commercial products or use for
+ * commercial purposes should contact the Inventors using one of the following
+ * email addresses: chudakovdm@mail.ru, chudakovdm@gmail.com
+ *
+ * IN NO EVENT SHALL THE INVENTORS BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+ * SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+ * ARISING OUT OF THE USE OF THIS SOFTWARE, EVEN IF THE INVENTORS HAS BEEN
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * THE SOFTWARE PROVIDED HEREIN IS ON AN "AS IS" BASIS, AND THE INVENTORS HAS
+ * NO OBLIGATION TO PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR
+ * MODIFICATIONS. THE INVENTORS MAKES NO REPRESENTATIONS AND EXTENDS NO
+ * WARRANTIES OF ANY KIND, EITHER IMPLIED OR EXPRESS, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY OR FITNESS FOR A
+ * PARTICULAR PURPOSE, OR THAT THE USE OF THE SOFTWARE WILL NOT INFRINGE ANY
+ * PATENT, TRADEMARK OR OTHER RIGHTS.
+ */
+package com.milaboratory.mixcr.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+public class TempFileManagerTest {
+    @Test
+    public void testRoundRobinAndCleanup() throws Exception {
+        File root = Files.createTempDirectory("mixcr_test").toFile();
+        File dir1 = new File(root, "d1"), dir2 = new File(root, "d2");
+        SpillFile f1, f2, f3;
+        try (TempFileManager manager = new TempFileManager("test", Arrays.asList(dir1, dir2),
+                TempFileManager.Placement.RoundRobin, false, Long.MAX_VALUE)) {
+            f1 = manager.createSpillFile();
+            f2 = manager.createSpillFile();
+            f3 = manager.createSpillFile();
+            Assert.assertEquals(f1.getFile().getParentFile(), f3.getFile().getParentFile());
+            Assert.assertFalse(f1.getFile().getParentFile().equals(f2.getFile().getParentFile()));
+            f2.delete();
+            Assert.assertFalse(f2.getFile().exists());
+            Assert.assertTrue(f1.getFile().exists());
+        }
+        Assert.assertFalse(f1.getFile().exists());
+        Assert.assertFalse(f3.getFile().exists());
+        dir1.delete();
+        dir2.delete();
+        root.delete();
+    }
+
+    @Test
+    public void testCompression() throws Exception {
+        byte[] data = new byte[300000];
+        Random random = new Random(1);
+        for (int i = 0; i < data.length; ++i)
+            // Compressible blocks followed by random ones
+            data[i] = (byte) (i < 150000 ? i % 7 : random.nextInt());
+        try (TempFileManager manager = new TempFileManager("test",
+                Arrays.asList(new File(System.getProperty("java.io.tmpdir"))),
+                TempFileManager.Placement.RoundRobin, true, Long.MAX_VALUE)) {
+            SpillFile file = manager.createSpillFile();
+            try (OutputStream os = file.openOutput()) {
+                os.write(data, 0, 1000);
+                for (int i = 1000; i < 2000; ++i)
+                    os.write(data[i]);
+                os.write(data, 2000, data.length - 2000);
+            }
+            Assert.assertTrue(file.getSize() < data.length * 3 / 4);
+            Assert.assertEquals(file.getSize(), manager.getUsedBytes());
+            byte[] read = new byte[data.length];
+            try (InputStream is = file.openInput()) {
+                int off = 0, r;
+                while ((r = is.read(read, off, Math.min(777, read.length - off))) > 0)
+                    off += r;
+                Assert.assertEquals(data.length, off);
+                Assert.assertEquals(-1, is.read());
+            }
+            Assert.assertArrayEquals(data, read);
+            file.delete();
+            Assert.assertEquals(0, manager.getUsedBytes());
+        }
+    }
+
+    @Test
+    public void testQuota() throws Exception {
+        try (TempFileManager manager = new TempFileManager("test",
+                Arrays.asList(new File(System.getProperty("java.io.tmpdir"))),
+                TempFileManager.Placement.FreeSpace, false, 100000)) {
+            SpillFile file = manager.createSpillFile();
+            try (OutputStream os = file.openOutput()) {
+                os.write(new byte[200000]);
+                Assert.fail();
+            } catch (TempFileManager.QuotaExceededException e) {
+                Assert.assertTrue(e.getMessage().contains("quota"));
+            }
+            Assert.assertTrue(manager.getUsedBytes() <= 100000);
+        }
+    }
+}
@@ -44,6 +44,24 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class VDJCAlignerSJFirstTest {
+    @Test
+    public void testSharedKAligners() throws Exception {
+        VDJCAlignerParameters parameters =
+                VDJCParametersPresets.getByName("default");
+        LociLibrary ll = LociLibraryManager.getDefault().getLibrary("mi");
+        VDJCAlignerSJFirst[] aligners = new VDJCAlignerSJFirst[2];
+        for (int i = 0; i < aligners.length; i++) {
+            aligners[i] = new VDJCAlignerSJFirst(parameters.clone());
+            for (Allele allele : ll.getLocus(Species.HomoSapiens, Locus.IGH).getAllAlleles())
+                if (parameters.containsRequiredFeature(allele))
+                    aligners[i].addAllele(allele);
+            aligners[i].init();
+        }
+        Assert.assertNotNull(aligners[0].vAligner);
+        Assert.assertSame(aligners[0].vAligner, aligners[1].vAligner);
+        Assert.assertSame(aligners[0].jAligner, aligners[1].jAligner);
+    }
+
     @Test
     public void testSerialization1() throws Exception {
         VDJCAlignerParameters parameters =